@@ -0,0 +1,5 @@
+#!/bin/bash
+
+# Runs all benchmarks with allocation profiling, other JMH options can be passed as arguments,
+# e.g. ./bench.sh Game -f 1
+java -jar target/benchmarks.jar -prof gc "$@"
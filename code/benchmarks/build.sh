@@ -0,0 +1,3 @@
+#!/bin/bash
+
+(cd ../client && mvn install -DskipTests) && mvn clean package
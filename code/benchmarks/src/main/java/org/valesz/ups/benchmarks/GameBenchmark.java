@@ -0,0 +1,112 @@
+package org.valesz.ups.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.valesz.ups.engine.ExpectiminimaxSearch;
+import org.valesz.ups.engine.TranspositionTable;
+import org.valesz.ups.model.game.Board;
+import org.valesz.ups.model.game.Game;
+import org.valesz.ups.model.game.MoveGenerator;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Game rules used by the UI, headless sessions and the server.
+ *
+ * @author Zdenek Vales
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameBenchmark {
+
+    private Game game;
+    private Board board;
+    private int[] moves;
+    private ExpectiminimaxSearch search;
+    private ExpectiminimaxSearch searchWithTable;
+    private TranspositionTable table;
+
+    public int emptyField = 11;
+    public int occupiedField = 1;
+    public int searchDepth = 4;
+
+    @Setup
+    public void setUp() {
+        game = new Game();
+        game.waitingForOpponent("valesz");
+        game.startGame("valesz", "pepa");
+        board = game.getBoard().copy();
+        moves = new int[MoveGenerator.MAX_MOVES];
+        search = new ExpectiminimaxSearch();
+        search.setMaxDepth(searchDepth);
+        table = new TranspositionTable(4 << 20);
+        searchWithTable = new ExpectiminimaxSearch();
+        searchWithTable.setMaxDepth(searchDepth);
+        searchWithTable.setTranspositionTable(table);
+    }
+
+    /**
+     * Stone is moved forward and back, so that the state is the same for every invocation.
+     */
+    @Benchmark
+    @OperationsPerInvocation(2)
+    public boolean moveStone() {
+        return game.moveStone(9, emptyField) & game.moveStone(emptyField, 9);
+    }
+
+    @Benchmark
+    public boolean isFieldEmpty() {
+        return game.isFieldEmpty(emptyField);
+    }
+
+    @Benchmark
+    public boolean isFieldEmptyOccupied() {
+        return game.isFieldEmpty(occupiedField);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(2)
+    public boolean boardMoveStone() {
+        return board.moveStone(1, 9, emptyField) & board.moveStone(1, emptyField, 9);
+    }
+
+    @Benchmark
+    public boolean boardIsFieldEmpty() {
+        return board.isFieldEmpty(emptyField);
+    }
+
+    /**
+     * All moves for every thrown value.
+     */
+    @Benchmark
+    @OperationsPerInvocation(5)
+    public int generateMoves() {
+        int count = 0;
+        for (int thrown = 1; thrown <= 5; thrown++) {
+            count += MoveGenerator.generate(board, 1, thrown, moves);
+        }
+        return count;
+    }
+
+    /**
+     * Search of the first throw of the game to the fixed depth.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int search() {
+        return search.search(board, 1, 1, TimeUnit.MINUTES.toMillis(1));
+    }
+
+    /**
+     * The same search with empty transposition table, clearing of the table is included.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int searchWithTable() {
+        table.clear();
+        return searchWithTable.search(board, 1, 1, TimeUnit.MINUTES.toMillis(1));
+    }
+}
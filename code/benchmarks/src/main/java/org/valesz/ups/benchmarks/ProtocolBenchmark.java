@@ -0,0 +1,63 @@
+package org.valesz.ups.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.valesz.ups.common.message.Message;
+import org.valesz.ups.common.message.MessageEncoder;
+import org.valesz.ups.common.message.MessageParsingException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing and creating of messages sent to the server.
+ *
+ * @author Zdenek Vales
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProtocolBenchmark {
+
+    @Param({"INFOK", "CMD6valesz", "INF01030507090204060810"})
+    public String message;
+
+    private int[] p1TurnWord;
+    private int[] p2TurnWord;
+    private MessageEncoder encoder;
+
+    @Setup
+    public void setUp() {
+        p1TurnWord = new int[] {1, 3, 5, 7, 9};
+        p2TurnWord = new int[] {2, 4, 6, 8, 10};
+        encoder = new MessageEncoder();
+    }
+
+    @Benchmark
+    public Message parseMessage() throws MessageParsingException {
+        return Message.parseMessage(message);
+    }
+
+    @Benchmark
+    public byte[] createEndTurnMessageToBytes() {
+        return Message.createEndTurnMessage(p1TurnWord, p2TurnWord).toBytes();
+    }
+
+    /**
+     * The same frame as createEndTurnMessageToBytes() encoded to the reusable buffer.
+     */
+    @Benchmark
+    public int encodeEndTurn() {
+        return encoder.encodeEndTurn(p1TurnWord, p2TurnWord).getLength();
+    }
+
+    /**
+     * Binary end turn, one stone moves every time so the delta frame is used.
+     */
+    @Benchmark
+    public int encodeBinaryEndTurn() {
+        p1TurnWord[4] = p1TurnWord[4] == 9 ? 10 : 9;
+        return encoder.encodeBinaryEndTurn(p1TurnWord, p2TurnWord).getLength();
+    }
+}
@@ -0,0 +1,68 @@
+package org.valesz.ups.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.valesz.ups.common.Constraits;
+import org.valesz.ups.common.error.ErrorCode;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Validation of user input and lookup of error codes.
+ *
+ * @author Zdenek Vales
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidationBenchmark {
+
+    public String validNick = "valesz";
+    public String invalidNick = "vale$z";
+    public String validAddress = "127.0.0.1";
+    public String invalidAddress = "127.0.0.256";
+
+    /**
+     * The first and the last code in ErrorCode enum.
+     */
+    public int firstCode = ErrorCode.NO_ERROR.code;
+    public int lastCode = ErrorCode.NO_CONNECTION.code;
+    public byte[] codeBytes = {'4', '0'};
+
+    @Benchmark
+    public int checkNickValid() {
+        return Constraits.checkNick(validNick);
+    }
+
+    @Benchmark
+    public int checkNickInvalid() {
+        return Constraits.checkNick(invalidNick);
+    }
+
+    @Benchmark
+    public boolean checkAddressValid() {
+        return Constraits.checkAddress(validAddress);
+    }
+
+    @Benchmark
+    public boolean checkAddressInvalid() {
+        return Constraits.checkAddress(invalidAddress);
+    }
+
+    @Benchmark
+    public ErrorCode getCodeByIntFirst() {
+        return ErrorCode.getCodeByInt(firstCode);
+    }
+
+    @Benchmark
+    public ErrorCode getCodeByIntLast() {
+        return ErrorCode.getCodeByInt(lastCode);
+    }
+
+    @Benchmark
+    public ErrorCode getCodeByIntBytes() {
+        return ErrorCode.getCodeByInt(codeBytes);
+    }
+}
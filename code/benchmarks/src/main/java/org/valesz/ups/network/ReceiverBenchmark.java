@@ -0,0 +1,125 @@
+package org.valesz.ups.network;
+
+import org.openjdk.jmh.annotations.*;
+import org.valesz.ups.common.message.received.AbstractReceivedMessage;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Receiving of every message type by AbstractReceiver.receiveMessage(). The benchmark is in the network package,
+ * because receiveMessage() is protected.
+ *
+ * The decoder reads the same message again and again from an endless stream, so only parsing is measured.
+ *
+ * @author Zdenek Vales
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReceiverBenchmark {
+
+    /**
+     * Receiver which does nothing on its own.
+     */
+    private static class Receiver extends AbstractReceiver {
+        @Override
+        protected AbstractReceivedMessage call() throws Exception {
+            return null;
+        }
+    }
+
+    /**
+     * Stream which returns the same bytes over and over.
+     */
+    private static class RepeatingInputStream extends InputStream {
+
+        private final byte[] data;
+        private int pos;
+
+        RepeatingInputStream(byte[] data) {
+            this.data = data;
+            this.pos = 0;
+        }
+
+        @Override
+        public int read() {
+            int b = data[pos];
+            pos = (pos + 1) % data.length;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            for (int i = 0; i < len; i++) {
+                b[off + i] = data[pos];
+                pos = (pos + 1) % data.length;
+            }
+            return len;
+        }
+    }
+
+    @Param({"OK", "ERROR", "START_GAME", "START_TURN", "END_GAME", "ALIVE"})
+    public String messageType;
+
+    private Receiver receiver;
+    private MessageDecoder decoder;
+    private MessageParser parser;
+    private byte[] bytes;
+    private int position;
+
+    @Setup
+    public void setUp() {
+        String message;
+        switch (messageType) {
+            case "OK":
+                message = "INFOK\n";
+                break;
+            case "ERROR":
+                message = "ERR40\n";
+                break;
+            case "START_GAME":
+                message = "INFSTART_GAMEvalesz,pepa;\n";
+                break;
+            case "START_TURN":
+                message = "CMD01030507090204060810\n";
+                break;
+            case "END_GAME":
+                message = "INFEND_GAMEvalesz;";
+                break;
+            case "ALIVE":
+                message = "INFALIVE\n";
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown message type "+messageType);
+        }
+
+        receiver = new Receiver();
+        bytes = message.getBytes(StandardCharsets.US_ASCII);
+        decoder = new MessageDecoder(new RepeatingInputStream(bytes));
+        parser = new MessageParser();
+        position = 0;
+    }
+
+    @Benchmark
+    public AbstractReceivedMessage receiveMessage() throws Exception {
+        return receiver.receiveMessage(decoder);
+    }
+
+    /**
+     * Bytes are passed to the parser one by one as if every byte was received by a separate read.
+     */
+    @Benchmark
+    public AbstractReceivedMessage parseByteByByte() throws Exception {
+        AbstractReceivedMessage message = null;
+        while (message == null) {
+            message = parser.parse(bytes[position] & 0xFF);
+            position = (position + 1) % bytes.length;
+        }
+        return message;
+    }
+}
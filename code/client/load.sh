@@ -0,0 +1,3 @@
+#!/bin/bash
+
+java -cp target/*-jar-with-dependencies.jar org.valesz.ups.main.LoadGenerator "$@"
@@ -22,6 +22,23 @@ public class Constraits {
      */
     public static final int MAX_NUMBER_OF_STONES = 5;
 
+    /**
+     * Chars allowed in nick, same as NICKNAME_REGEXP. Indexed by char code.
+     */
+    private static final byte NICK_FIRST_CHAR = 1;
+    private static final byte NICK_CHAR = 2;
+    private static final byte[] NICK_CHARS = new byte[128];
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) {
+            NICK_CHARS[c] = NICK_FIRST_CHAR | NICK_CHAR;
+            NICK_CHARS[Character.toUpperCase(c)] = NICK_FIRST_CHAR | NICK_CHAR;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            NICK_CHARS[c] = NICK_CHAR;
+        }
+    }
+
 
     /**
      * Checks if the address is valid ip address.
@@ -76,6 +93,16 @@ public class Constraits {
         return (l >= MIN_NICK_LENGTH && l <= MAX_NICK_LENGTH);
     }
 
+    /**
+     * Returns true if the char can be used in nick on the given position. Same rules as NICKNAME_REGEXP.
+     * @param c Char code.
+     * @param first True if it's the first char of nick.
+     * @return
+     */
+    public static boolean isNickChar(int c, boolean first) {
+        return c >= 0 && c < NICK_CHARS.length && (NICK_CHARS[c] & (first ? NICK_FIRST_CHAR : NICK_CHAR)) != 0;
+    }
+
     /**
      * Checks if the nick contains valid characters.
      * @param nick Nick to be checked. Nick is expected to be non-null.
@@ -94,8 +121,10 @@ public class Constraits {
             return 1;
         }
 
-        if(!Pattern.matches(NICKNAME_REGEXP, nick)) {
-            return 2;
+        for (int i = 1; i < nick.length(); i++) {
+            if(!isNickChar(nick.charAt(i), false)) {
+                return 2;
+            }
         }
 
         return 0;
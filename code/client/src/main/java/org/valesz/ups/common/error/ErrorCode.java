@@ -29,6 +29,24 @@ public enum ErrorCode {
 
     public final int code;
 
+    /**
+     * Error codes indexed by their numeric code.
+     */
+    private static final ErrorCode[] BY_CODE;
+
+    static {
+        int max = 0;
+        for (ErrorCode ec : values()) {
+            max = Math.max(max, ec.code);
+        }
+        BY_CODE = new ErrorCode[max + 1];
+        for (ErrorCode ec : values()) {
+            if(ec.code >= 0) {
+                BY_CODE[ec.code] = ec;
+            }
+        }
+    }
+
     ErrorCode(int code) {
         this.code = code;
     }
@@ -36,31 +54,37 @@ public enum ErrorCode {
     /**
      * Returns adequate ErrorCode object for errCode.
      * If the errCode doesn't match any ErrorCode, UNRECOGNIZED_ERROR will be returned.
+     * Error code is looked up in the table indexed by code.
      *
      * @return
      */
     public static ErrorCode getCodeByInt(int errCode) {
-        for (ErrorCode ec : values()) {
-            if(ec.code == errCode) {
-                return ec;
-            }
+        if(errCode == NO_ERROR.code) {
+            return NO_ERROR;
         }
 
-        return ErrorCode.UNRECOGNIZED_ERROR;
+        ErrorCode ec = errCode >= 0 && errCode < BY_CODE.length ? BY_CODE[errCode] : null;
+        return ec == null ? ErrorCode.UNRECOGNIZED_ERROR : ec;
     }
 
     /**
      * Converts the byte array (represented as char digits) to int and returns error code.
+     * No string is created.
      * @param buffer
      * @return
      */
     public static ErrorCode getCodeByInt(byte buffer[]) {
-        String errCode = new String(buffer);
-        try {
-            int ec = Integer.parseInt(errCode);
-            return getCodeByInt(ec);
-        } catch (NumberFormatException ex) {
+        if(buffer.length == 0 || buffer.length > 9) {
             return ErrorCode.UNRECOGNIZED_ERROR;
         }
+
+        int ec = 0;
+        for (byte b : buffer) {
+            if(b < '0' || b > '9') {
+                return ErrorCode.UNRECOGNIZED_ERROR;
+            }
+            ec = 10 * ec + (b - '0');
+        }
+        return getCodeByInt(ec);
     }
 }
@@ -1,6 +1,5 @@
 package org.valesz.ups.common.message;
 
-import org.valesz.ups.common.Constraits;
 import org.valesz.ups.common.error.Error;
 import org.valesz.ups.common.error.ErrorCode;
 
@@ -83,15 +82,25 @@ public class Message {
 
     public static Message createIsAliveMessage() {return new Message(MessageType.INF, "ALIVE");}
 
+    /**
+     * Creates a message of type INF with BIN string as a content. Asks the server for binary turn words.
+     * @return
+     */
+    public static Message createBinaryMessage() {
+        return new Message(MessageType.INF, "BIN");
+    }
+
     public static Message createEndTurnMessage(int[] p1TurnWord, int[] p2TurnWord) {
-        StringBuilder turnWordBuilder = new StringBuilder();
-        for(int i = 0; i < Constraits.MAX_NUMBER_OF_STONES; i++) {
-            turnWordBuilder.append(String.format("%02d",p1TurnWord[i]));
-        }
-        for(int i = 0; i < Constraits.MAX_NUMBER_OF_STONES; i++) {
-            turnWordBuilder.append(String.format("%02d",p2TurnWord[i]));
+        MessageEncoder encoder = new MessageEncoder().encodeEndTurn(p1TurnWord, p2TurnWord);
+        byte[] frame = encoder.toBytes();
+        int typeLen = MessageType.getMessageTypeLen();
+
+        // skip message type and the trailing new line
+        char[] turnWord = new char[frame.length - typeLen - 1];
+        for (int i = 0; i < turnWord.length; i++) {
+            turnWord[i] = (char) frame[typeLen + i];
         }
-        return new Message(MessageType.INF,turnWordBuilder.toString());
+        return new Message(MessageType.INF, new String(turnWord));
     }
 
     public Message(MessageType messageType, String content) {
@@ -161,13 +170,18 @@ public class Message {
      * @return
      */
     public byte[] toBytes() {
-        String msg = messageType.name() + content;
-        byte[] res = new byte[msg.length()+1];
+        String type = messageType.name();
+        int typeLen = type.length();
+        int contentLen = content.length();
+        byte[] res = new byte[typeLen+contentLen+1];
 
-        for (int i = 0; i < msg.length(); i++) {
-            res[i] = (byte)msg.charAt(i);
+        for (int i = 0; i < typeLen; i++) {
+            res[i] = (byte)type.charAt(i);
+        }
+        for (int i = 0; i < contentLen; i++) {
+            res[typeLen+i] = (byte)content.charAt(i);
         }
-        res[msg.length()] = '\n';
+        res[typeLen+contentLen] = '\n';
 
         return res;
     }
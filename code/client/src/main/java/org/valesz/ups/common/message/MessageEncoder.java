@@ -0,0 +1,206 @@
+package org.valesz.ups.common.message;
+
+import org.valesz.ups.common.Constraits;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes messages which will be sent to server directly into a reusable buffer.
+ * No intermediate Message or String objects are created, output is the same
+ * as Message.toBytes() of the corresponding Message.
+ *
+ * End turn may be encoded as binary frame by TurnWordCodec, if it was negotiated with the server.
+ * Every end turn, text or binary, is the base of the next binary delta frame.
+ *
+ * Every encode method overwrites the previously encoded frame. Encoder isn't thread safe,
+ * one instance should be used per connection and guarded by the same lock as the output stream.
+ *
+ * @author Zdenek Vales
+ */
+public class MessageEncoder {
+
+    public static final int DEFAULT_BUFFER_SIZE = 128;
+
+    /**
+     * Max number of chars of one int written as decimal.
+     */
+    private static final int MAX_INT_CHARS = 11;
+
+    private static final byte[] OK = {'O', 'K'};
+    private static final byte[] EXIT = {'E', 'X', 'I', 'T'};
+    private static final byte[] ALIVE = {'A', 'L', 'I', 'V', 'E'};
+    private static final byte[] BIN = {'B', 'I', 'N'};
+
+    private byte[] buffer;
+
+    private final TurnWordCodec turnWordCodec;
+
+    /**
+     * Length of the currently encoded frame.
+     */
+    private int length;
+
+    public MessageEncoder() {
+        this(DEFAULT_BUFFER_SIZE);
+    }
+
+    public MessageEncoder(int bufferSize) {
+        buffer = new byte[Math.max(bufferSize, TurnWordCodec.MAX_FRAME_LEN)];
+        length = 0;
+        turnWordCodec = new TurnWordCodec();
+    }
+
+    /**
+     * Encodes the CMD message with nick. First byte of the content is the length of the nick.
+     * @param nick
+     * @return
+     */
+    public MessageEncoder encodeNick(String nick) {
+        int nickLen = nick.length();
+        start(MessageType.CMD, nickLen + 1);
+
+        // only the first digit of the length is sent
+        int l = nickLen;
+        while (l >= 10) {
+            l /= 10;
+        }
+        buffer[length++] = (byte) ('0' + l);
+        for (int i = 0; i < nickLen; i++) {
+            buffer[length++] = (byte) nick.charAt(i);
+        }
+
+        return end();
+    }
+
+    public MessageEncoder encodeOk() {
+        return encodeInf(OK);
+    }
+
+    public MessageEncoder encodeExit() {
+        return encodeInf(EXIT);
+    }
+
+    public MessageEncoder encodeAlive() {
+        return encodeInf(ALIVE);
+    }
+
+    /**
+     * Encodes the request for binary turn words.
+     * @return
+     */
+    public MessageEncoder encodeBinary() {
+        return encodeInf(BIN);
+    }
+
+    /**
+     * Encodes the end turn message. Each stone position is written as two digits.
+     * @param p1TurnWord
+     * @param p2TurnWord
+     * @return
+     */
+    public MessageEncoder encodeEndTurn(int[] p1TurnWord, int[] p2TurnWord) {
+        start(MessageType.INF, 2 * Constraits.MAX_NUMBER_OF_STONES * MAX_INT_CHARS);
+        for (int i = 0; i < Constraits.MAX_NUMBER_OF_STONES; i++) {
+            putTwoDigits(p1TurnWord[i]);
+        }
+        for (int i = 0; i < Constraits.MAX_NUMBER_OF_STONES; i++) {
+            putTwoDigits(p2TurnWord[i]);
+        }
+        turnWordCodec.update(p1TurnWord, p2TurnWord);
+
+        return end();
+    }
+
+    /**
+     * Encodes the end turn message as binary frame, full or delta to the previous end turn.
+     * @param p1TurnWord
+     * @param p2TurnWord
+     * @return
+     */
+    public MessageEncoder encodeBinaryEndTurn(int[] p1TurnWord, int[] p2TurnWord) {
+        length = turnWordCodec.encode(p1TurnWord, p2TurnWord, buffer, 0);
+        return this;
+    }
+
+    /**
+     * Returns the length of the currently encoded frame.
+     * @return
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Writes the encoded frame to the output stream.
+     * @param out
+     * @throws IOException
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(buffer, 0, length);
+    }
+
+    /**
+     * Puts the encoded frame to the buffer.
+     * @param dst
+     */
+    public void writeTo(ByteBuffer dst) {
+        dst.put(buffer, 0, length);
+    }
+
+    /**
+     * Returns a copy of the encoded frame.
+     * @return
+     */
+    public byte[] toBytes() {
+        byte[] res = new byte[length];
+        System.arraycopy(buffer, 0, res, 0, length);
+        return res;
+    }
+
+    private MessageEncoder encodeInf(byte[] content) {
+        start(MessageType.INF, content.length);
+        System.arraycopy(content, 0, buffer, length, content.length);
+        length += content.length;
+        return end();
+    }
+
+    /**
+     * Starts a new frame by writing the message type. Makes sure the buffer is big enough for the content.
+     */
+    private void start(MessageType messageType, int maxContentLength) {
+        int needed = MessageType.getMessageTypeLen() + maxContentLength + 1;
+        if(buffer.length < needed) {
+            buffer = new byte[Math.max(needed, buffer.length * 2)];
+        }
+
+        String name = messageType.name();
+        length = 0;
+        for (int i = 0; i < name.length(); i++) {
+            buffer[length++] = (byte) name.charAt(i);
+        }
+    }
+
+    private MessageEncoder end() {
+        buffer[length++] = '\n';
+        return this;
+    }
+
+    /**
+     * Same output as String.format("%02d", value).
+     */
+    private void putTwoDigits(int value) {
+        if(value >= 0 && value < 100) {
+            buffer[length++] = (byte) ('0' + value / 10);
+            buffer[length++] = (byte) ('0' + value % 10);
+            return;
+        }
+
+        // not a valid position, slow path
+        String s = Integer.toString(value);
+        for (int i = 0; i < s.length(); i++) {
+            buffer[length++] = (byte) s.charAt(i);
+        }
+    }
+}
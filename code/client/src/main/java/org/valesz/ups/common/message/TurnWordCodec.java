@@ -0,0 +1,194 @@
+package org.valesz.ups.common.message;
+
+import org.valesz.ups.common.Constraits;
+
+/**
+ * Binary encoding of turn words. Used instead of 20 ASCII digits once it's negotiated by the INFBIN message.
+ *
+ * Every binary frame starts with a tag byte with the highest bit set, so it can't be mistaken for a text message.
+ * Full frame (tag 0x80) contains positions of all 10 stones packed to 5 bits each, 7 bytes little endian.
+ * Delta frame (tag 0x90 | k) contains only k stones which changed since the last turn word sent in the same
+ * direction, 9 bits per stone: 4 bits of stone index (0..4 first player, 5..9 second player) and 5 bits of position.
+ * Encoder uses the delta frame only if it's shorter than the full one.
+ *
+ * Every turn word, text or binary, becomes the base for the next delta, so both sides have to pass all
+ * turn words of one direction through the same codec. Codec isn't thread safe.
+ *
+ * @author Zdenek Vales
+ */
+public class TurnWordCodec {
+
+    private static final int STONES = Constraits.MAX_NUMBER_OF_STONES;
+
+    public static final int FULL_TAG = 0x80;
+    public static final int DELTA_TAG = 0x90;
+
+    private static final int TAG_MASK = 0xF0;
+    private static final int COUNT_MASK = 0x0F;
+
+    private static final int POSITION_BITS = 5;
+    private static final int POSITION_MASK = (1 << POSITION_BITS) - 1;
+    private static final int INDEX_BITS = 4;
+    private static final int DELTA_BITS = INDEX_BITS + POSITION_BITS;
+
+    /**
+     * Length of the full frame without tag.
+     */
+    public static final int FULL_LEN = (2 * STONES * POSITION_BITS + 7) / 8;
+
+    /**
+     * Max number of stones in delta frame which is shorter than the full one.
+     */
+    public static final int MAX_DELTA = 8 * (FULL_LEN - 1) / DELTA_BITS;
+
+    /**
+     * Max length of a binary frame including tag.
+     */
+    public static final int MAX_FRAME_LEN = 1 + FULL_LEN;
+
+    /**
+     * Last turn word, the first player stones followed by the second player stones.
+     */
+    private final int[] base;
+    private boolean hasBase;
+
+    public TurnWordCodec() {
+        base = new int[2 * STONES];
+        hasBase = false;
+    }
+
+    /**
+     * Returns true if the byte is the first byte of binary frame.
+     * @param b
+     * @return
+     */
+    public static boolean isTag(int b) {
+        return (b & FULL_TAG) != 0;
+    }
+
+    /**
+     * Returns the number of bytes which follow the tag or -1 if the tag isn't valid.
+     * @param tag
+     * @return
+     */
+    public static int getContentLength(int tag) {
+        int count = tag & COUNT_MASK;
+        switch (tag & TAG_MASK) {
+            case FULL_TAG:
+                return count == 0 ? FULL_LEN : -1;
+            case DELTA_TAG:
+                return count <= MAX_DELTA ? (count * DELTA_BITS + 7) / 8 : -1;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Forgets the base, next frame will be full.
+     */
+    public void reset() {
+        hasBase = false;
+    }
+
+    /**
+     * Remembers the turn word sent or received as text as the base for the next delta.
+     * @param firstPlayerStones
+     * @param secondPlayerStones
+     */
+    public void update(int[] firstPlayerStones, int[] secondPlayerStones) {
+        System.arraycopy(firstPlayerStones, 0, base, 0, STONES);
+        System.arraycopy(secondPlayerStones, 0, base, STONES, STONES);
+        hasBase = true;
+    }
+
+    /**
+     * Encodes the turn word to dst, starting with the tag.
+     * @param firstPlayerStones
+     * @param secondPlayerStones
+     * @param dst Buffer with at least MAX_FRAME_LEN bytes from offset.
+     * @param offset
+     * @return Length of the frame.
+     * @exception IllegalArgumentException Position can't be written in 5 bits.
+     */
+    public int encode(int[] firstPlayerStones, int[] secondPlayerStones, byte[] dst, int offset) {
+        long full = 0;
+        long delta = 0;
+        int changed = 0;
+        for (int i = 0; i < 2 * STONES; i++) {
+            int position = i < STONES ? firstPlayerStones[i] : secondPlayerStones[i - STONES];
+            if(position < 0 || position > POSITION_MASK) {
+                hasBase = false;
+                throw new IllegalArgumentException("Position "+position+" can't be encoded.");
+            }
+            full |= (long) position << (POSITION_BITS * i);
+            if(hasBase && base[i] != position && changed < MAX_DELTA + 1) {
+                delta |= (long) (i | position << INDEX_BITS) << (DELTA_BITS * changed);
+                changed++;
+            }
+            base[i] = position;
+        }
+
+        boolean useDelta = hasBase && changed <= MAX_DELTA;
+        hasBase = true;
+        dst[offset] = (byte) (useDelta ? DELTA_TAG | changed : FULL_TAG);
+        int len = useDelta ? (changed * DELTA_BITS + 7) / 8 : FULL_LEN;
+        putLong(useDelta ? delta : full, dst, offset + 1, len);
+        return 1 + len;
+    }
+
+    /**
+     * Decodes the content of binary frame.
+     * @param tag Tag of the frame.
+     * @param src Content of the frame, getContentLength(tag) bytes.
+     * @param offset
+     * @param firstPlayerStones Filled with decoded positions.
+     * @param secondPlayerStones Filled with decoded positions.
+     * @return False if the frame is malformed or it's delta frame and there's no base. Base is lost then.
+     */
+    public boolean decode(int tag, byte[] src, int offset, int[] firstPlayerStones, int[] secondPlayerStones) {
+        int len = getContentLength(tag);
+        if(len < 0) {
+            return false;
+        }
+        long bits = getLong(src, offset, len);
+
+        if((tag & TAG_MASK) == FULL_TAG) {
+            for (int i = 0; i < 2 * STONES; i++) {
+                base[i] = (int) (bits >>> (POSITION_BITS * i)) & POSITION_MASK;
+            }
+        } else {
+            if(!hasBase) {
+                return false;
+            }
+            int count = tag & COUNT_MASK;
+            for (int i = 0; i < count; i++) {
+                int stone = (int) (bits >>> (DELTA_BITS * i)) & ((1 << DELTA_BITS) - 1);
+                int index = stone & ((1 << INDEX_BITS) - 1);
+                if(index >= 2 * STONES) {
+                    hasBase = false;
+                    return false;
+                }
+                base[index] = stone >>> INDEX_BITS;
+            }
+        }
+
+        hasBase = true;
+        System.arraycopy(base, 0, firstPlayerStones, 0, STONES);
+        System.arraycopy(base, STONES, secondPlayerStones, 0, STONES);
+        return true;
+    }
+
+    private static void putLong(long value, byte[] dst, int offset, int len) {
+        for (int i = 0; i < len; i++) {
+            dst[offset + i] = (byte) (value >>> (8 * i));
+        }
+    }
+
+    private static long getLong(byte[] src, int offset, int len) {
+        long value = 0;
+        for (int i = 0; i < len; i++) {
+            value |= (long) (src[offset + i] & 0xFF) << (8 * i);
+        }
+        return value;
+    }
+}
@@ -24,6 +24,14 @@ public abstract class   AbstractReceivedMessage<T> {
      */
     public abstract MessageType getMessageType();
 
+    /**
+     * Calls the method of visitor for this type of message.
+     * @param visitor
+     * @param <R> Type returned by the visitor.
+     * @return Value returned by the visitor.
+     */
+    public abstract <R> R accept(ReceivedMessageVisitor<R> visitor);
+
     @Override
     public String toString() {
         String cnt = getContent() == null ? "null" : getContent().toString();
@@ -3,12 +3,19 @@ package org.valesz.ups.common.message.received;
 import org.valesz.ups.common.message.MessageType;
 
 /**
+ * Alive message has no content, so only one shared instance exists.
+ *
  * @author Zdenek Vales
  */
-public class AliveReceivedMessage extends AbstractReceivedMessage {
+public final class AliveReceivedMessage extends AbstractReceivedMessage<String> {
+
+    public static final AliveReceivedMessage INSTANCE = new AliveReceivedMessage();
+
+    private AliveReceivedMessage() {
+    }
 
     @Override
-    public Object getContent() {
+    public String getContent() {
         return "ALIVE";
     }
 
@@ -16,4 +23,9 @@ public class AliveReceivedMessage extends AbstractReceivedMessage {
     public MessageType getMessageType() {
         return MessageType.INF;
     }
+
+    @Override
+    public <R> R accept(ReceivedMessageVisitor<R> visitor) {
+        return visitor.visitAlive(this);
+    }
 }
@@ -28,4 +28,9 @@ public class EndGameReceivedMessage extends AbstractReceivedMessage<String> {
     public MessageType getMessageType() {
         return MessageType.INF;
     }
+
+    @Override
+    public <R> R accept(ReceivedMessageVisitor<R> visitor) {
+        return visitor.visitEndGame(this);
+    }
 }
@@ -28,4 +28,9 @@ public class ErrorReceivedMessage extends AbstractReceivedMessage<Error> {
     public MessageType getMessageType() {
         return MessageType.ERR;
     }
+
+    @Override
+    public <R> R accept(ReceivedMessageVisitor<R> visitor) {
+        return visitor.visitError(this);
+    }
 }
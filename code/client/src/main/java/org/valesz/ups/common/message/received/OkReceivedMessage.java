@@ -3,9 +3,16 @@ package org.valesz.ups.common.message.received;
 import org.valesz.ups.common.message.MessageType;
 
 /**
+ * OK message has no content, so only one shared instance exists.
+ *
  * @author Zdenek Vales
  */
-public class OkReceivedMessage extends AbstractReceivedMessage<String>{
+public final class OkReceivedMessage extends AbstractReceivedMessage<String>{
+
+    public static final OkReceivedMessage INSTANCE = new OkReceivedMessage();
+
+    private OkReceivedMessage() {
+    }
 
     @Override
     public String getContent() {
@@ -16,4 +23,9 @@ public class OkReceivedMessage extends AbstractReceivedMessage<String>{
     public MessageType getMessageType() {
         return MessageType.INF;
     }
+
+    @Override
+    public <R> R accept(ReceivedMessageVisitor<R> visitor) {
+        return visitor.visitOk(this);
+    }
 }
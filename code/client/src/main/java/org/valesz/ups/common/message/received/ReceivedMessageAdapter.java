@@ -0,0 +1,53 @@
+package org.valesz.ups.common.message.received;
+
+/**
+ * Visitor which passes all messages to visitOther(). Override methods for messages which should be handled.
+ *
+ * @author Zdenek Vales
+ */
+public abstract class ReceivedMessageAdapter<R> implements ReceivedMessageVisitor<R> {
+
+    /**
+     * Called for every message whose visit method isn't overridden.
+     * @param message
+     * @return Null by default.
+     */
+    protected R visitOther(AbstractReceivedMessage message) {
+        return null;
+    }
+
+    @Override
+    public R visitOk(OkReceivedMessage message) {
+        return visitOther(message);
+    }
+
+    @Override
+    public R visitAlive(AliveReceivedMessage message) {
+        return visitOther(message);
+    }
+
+    @Override
+    public R visitError(ErrorReceivedMessage message) {
+        return visitOther(message);
+    }
+
+    @Override
+    public R visitStartGame(StartGameReceivedMessage message) {
+        return visitOther(message);
+    }
+
+    @Override
+    public R visitStartTurn(StartTurnReceivedMessage message) {
+        return visitOther(message);
+    }
+
+    @Override
+    public R visitEndGame(EndGameReceivedMessage message) {
+        return visitOther(message);
+    }
+
+    @Override
+    public R visitWaitingForPlayer(WaitingForPlayerReceivedMessage message) {
+        return visitOther(message);
+    }
+}
@@ -12,6 +12,7 @@ public class ReceivedMessageTypeResolver {
 
     /**
      * Checks if the type of the message is same as provided type.
+     * To handle more types of messages, use AbstractReceivedMessage.accept() with ReceivedMessageVisitor.
      * @param message
      * @param type
      */
@@ -0,0 +1,28 @@
+package org.valesz.ups.common.message.received;
+
+/**
+ * Handles received messages by their type. Message is dispatched to the right method
+ * by AbstractReceivedMessage.accept() in one call, without checking the type of message one by one.
+ *
+ * ReceivedMessageAdapter can be used if only some types of messages are handled.
+ *
+ * @param <R> Type returned by the visitor.
+ *
+ * @author Zdenek Vales
+ */
+public interface ReceivedMessageVisitor<R> {
+
+    public R visitOk(OkReceivedMessage message);
+
+    public R visitAlive(AliveReceivedMessage message);
+
+    public R visitError(ErrorReceivedMessage message);
+
+    public R visitStartGame(StartGameReceivedMessage message);
+
+    public R visitStartTurn(StartTurnReceivedMessage message);
+
+    public R visitEndGame(EndGameReceivedMessage message);
+
+    public R visitWaitingForPlayer(WaitingForPlayerReceivedMessage message);
+}
@@ -34,4 +34,9 @@ public class StartGameReceivedMessage extends AbstractReceivedMessage<String[]>
     public MessageType getMessageType() {
         return MessageType.INF;
     }
+
+    @Override
+    public <R> R accept(ReceivedMessageVisitor<R> visitor) {
+        return visitor.visitStartGame(this);
+    }
 }
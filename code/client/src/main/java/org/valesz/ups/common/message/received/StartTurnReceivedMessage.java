@@ -44,4 +44,9 @@ public class StartTurnReceivedMessage extends AbstractReceivedMessage<int[]> {
     public MessageType getMessageType() {
         return MessageType.CMD;
     }
+
+    @Override
+    public <R> R accept(ReceivedMessageVisitor<R> visitor) {
+        return visitor.visitStartTurn(this);
+    }
 }
@@ -24,4 +24,9 @@ public class WaitingForPlayerReceivedMessage extends AbstractReceivedMessage<Str
     public MessageType getMessageType() {
         return MessageType.INF;
     }
+
+    @Override
+    public <R> R accept(ReceivedMessageVisitor<R> visitor) {
+        return visitor.visitWaitingForPlayer(this);
+    }
 }
@@ -3,7 +3,6 @@ package org.valesz.ups.controller;
 import javafx.application.Platform;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.SimpleBooleanProperty;
-import javafx.concurrent.Task;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.valesz.ups.common.error.Error;
@@ -13,7 +12,9 @@ import org.valesz.ups.common.message.received.*;
 import org.valesz.ups.main.MainApp;
 import org.valesz.ups.model.game.Game;
 import org.valesz.ups.network.AbstractReceiver;
+import org.valesz.ups.network.MessageDispatcher.Request;
 import org.valesz.ups.network.TcpClient;
+import org.valesz.ups.network.TurnClock;
 import org.valesz.ups.ui.Board;
 import org.valesz.ups.ui.MainPane;
 import org.valesz.ups.ui.Stone;
@@ -21,8 +22,7 @@ import org.valesz.ups.ui.Stone;
 import java.io.IOException;
 import java.net.SocketTimeoutException;
 import java.util.Arrays;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Game controller. Starts game, makes turns etc.
@@ -43,6 +43,10 @@ public class GameController {
         return shutdown.getValue();
     }
 
+    public void setResumeEnabled(boolean resumeEnabled) {
+        this.resumeEnabled = resumeEnabled;
+    }
+
     /**
      * Max time for turn = 2 minutes.
      */
@@ -51,14 +55,41 @@ public class GameController {
     private MainPane view;
     private Board boardView;
     private TcpClient tcpClient;
-    private Timer timer;
-    private int timeCntr;
+    private final TurnClock turnClock;
     private boolean timerPassed;
+
+    /**
+     * Set while the lost connection is being resumed and after it's resumed until the next turn starts.
+     */
+    private boolean resuming;
+    private boolean resumed;
+
+    /**
+     * If set, lost connection is resumed while the game is running. Only the java server with resume timeout
+     * keeps the seat, the C server ends the game on disconnect.
+     */
+    private boolean resumeEnabled;
     private LoginController loginController;
 
     public GameController(TcpClient tcpClient) {
 
         this.tcpClient = tcpClient;
+        this.turnClock = new TurnClock(MAX_TURN_TIME * 1000L, 1000, new TurnClock.Listener() {
+            @Override
+            public void tick(TurnClock clock) {
+                int passedTime = (int) (clock.getElapsedMs() / 1000);
+                Platform.runLater(() -> {
+                    if(clock.isRunning()) {
+                        view.updateTimerText(passedTime);
+                    }
+                });
+            }
+
+            @Override
+            public void expired(TurnClock clock) {
+                Platform.runLater(GameController.this::turnTimerAction);
+            }
+        });
     }
 
     public void setLoginController(LoginController loginController) {
@@ -246,47 +277,51 @@ public class GameController {
      */
     private void sendEndTurnMessage() {
         // send end turn message
+        Request endTurnRequest;
         try {
-            tcpClient.sendEndTurnMessage(
+            endTurnRequest = tcpClient.sendEndTurnMessage(
                     Game.getInstance().getFirstPlayer().getStones(),
                     Game.getInstance().getSecondPlayer().getStones());
         } catch (IOException e) {
-            logger.error("Exception while sending the end turn: "+e.getMessage());
-            tcpClient.disconnect();
-            MainApp.viewController.displayLoginPane();
-            displayErroMessageLoginPane("Chyba při odesílání tahové zprávy na server.");
+            handleFailure("Exception while sending the end turn: "+e.getMessage(), "Chyba při odesílání tahové zprávy na server.");
             return;
         }
 
         // wait for end turn confirm
-        tcpClient.waitForTurnConfirm(
-                event -> {
-                    AbstractReceivedMessage message = tcpClient.getPostStartReceiverService().getValue();
-                    OkReceivedMessage ok = ReceivedMessageTypeResolver.isOk(message);
-                    EndGameReceivedMessage endGame = ReceivedMessageTypeResolver.isEndGame(message);
-                    ErrorReceivedMessage err = ReceivedMessageTypeResolver.isError(message);
-
+        tcpClient.waitForResponse(endTurnRequest,
+                message -> {
                     if(getShutdown()) {
                         return;
                     }
 
-                    if (err != null) {
-                        logger.debug("Error while validating turn: "+err.getContent().toString());
-                        view.addLogMessage("Server neuznal tvůj tah a považuje ho za propadlý.\n");
-                        waitForNewTurn();
-                    } else if (endGame != null) {
-                        endGame(endGame.getContent());
-                    } else {
-                        logger.trace("Turn validation ok.");
-                        view.addLogMessage("Tah ukončen.\n");
-                        waitForNewTurn();
-                    }
+                    message.accept(new ReceivedMessageAdapter<Void>() {
+                        @Override
+                        public Void visitError(ErrorReceivedMessage err) {
+                            logger.debug("Error while validating turn: "+err.getContent().toString());
+                            view.addLogMessage("Server neuznal tvůj tah a považuje ho za propadlý.\n");
+                            waitForNewTurn();
+                            return null;
+                        }
+
+                        @Override
+                        public Void visitEndGame(EndGameReceivedMessage endGame) {
+                            endGame(endGame.getContent());
+                            return null;
+                        }
+
+                        @Override
+                        protected Void visitOther(AbstractReceivedMessage message) {
+                            logger.trace("Turn validation ok.");
+                            view.addLogMessage("Tah ukončen.\n");
+                            waitForNewTurn();
+                            return null;
+                        }
+                    });
                 },
 
-                event -> {
+                ex -> {
                     // failure
-                    Throwable ex = tcpClient.getPreStartReceiverService().getException();
-                    String msg = ex == null ? "no exception" : ex.getMessage();
+                    String msg = ex.getMessage();
                     if(ex instanceof SocketTimeoutException) {
                         handleFailure("Server stopped responding and is probably dead.", ErrorMessages.SERVER_STOPPED_RESPONDING);
                     } else if (ex instanceof MaxAttemptsReached){
@@ -311,9 +346,7 @@ public class GameController {
         tcpClient.waitForMyTurn(
                 event -> {
                     // response
-                    AbstractReceivedMessage response = tcpClient.getPostStartReceiverService().getValue();
-                    StartTurnReceivedMessage startTurn = ReceivedMessageTypeResolver.isStartTurn(response);
-                    EndGameReceivedMessage endGame = ReceivedMessageTypeResolver.isEndGame(response);
+                    AbstractReceivedMessage<?> response = tcpClient.getPostStartReceiverService().getValue();
 
                     // check shutdown
                     if(getShutdown()) {
@@ -321,14 +354,31 @@ public class GameController {
                         return;
                     }
 
-                    if( endGame != null) {
-                        endGame(endGame.getContent());
-                    } else if (startTurn != null) {
-                        newTurn(false,startTurn.getFirstPlayerStones(), startTurn.getSecondPlayerStones());
-                    } else {
-                        // wrong response
-                        logger.error("Wrong message received. Expected START_TURN, received: "+response);
+                    if(response == null) {
+                        logger.error("Wrong message received. Expected START_TURN, received: null");
+                        return;
                     }
+
+                    response.accept(new ReceivedMessageAdapter<Void>() {
+                        @Override
+                        public Void visitEndGame(EndGameReceivedMessage endGame) {
+                            endGame(endGame.getContent());
+                            return null;
+                        }
+
+                        @Override
+                        public Void visitStartTurn(StartTurnReceivedMessage startTurn) {
+                            newTurn(false,startTurn.getFirstPlayerStones(), startTurn.getSecondPlayerStones());
+                            return null;
+                        }
+
+                        @Override
+                        protected Void visitOther(AbstractReceivedMessage message) {
+                            // wrong response
+                            logger.error("Wrong message received. Expected START_TURN, received: "+message);
+                            return null;
+                        }
+                    });
                 },
                 event -> {
                     // failure
@@ -355,7 +405,11 @@ public class GameController {
      */
     public void newTurn(boolean firstTurn, int[] firstPlayerStones, int[] secondPlayerStones) {
         logger.debug("Starting new turn.");
-        if(!firstTurn) {
+        if(resumed) {
+            // the turn may be already switched if the connection was lost after the end turn
+            Game.getInstance().resumeTurn(firstPlayerStones, secondPlayerStones);
+            resumed = false;
+        } else if(!firstTurn) {
             Game.getInstance().newTurn(firstPlayerStones, secondPlayerStones);
         }
         view.newTurn();
@@ -363,65 +417,20 @@ public class GameController {
                 Game.getInstance().getSecondPlayer().getStones());
         view.focusOnThrowButton();
 
-        // this also handles the reaction to end turn message
-//        tcpClient.handleWhileTurn(
-//                event -> {
-//                    if(Thread.currentThread().isInterrupted()) {
-//                        return;
-//                    }
-//                    AbstractReceivedMessage message = tcpClient.getPostStartReceiverService().getValue();
-//                    EndGameReceivedMessage endGame = ReceivedMessageTypeResolver.isEndGame(message);
-//                    ErrorReceivedMessage err = ReceivedMessageTypeResolver.isError(message);
-//
-//                    if (err != null) {
-//                        logger.debug("Error while validating turn: "+err.getContent().toString());
-//                        view.addLogMessage("Server neuznal tvůj tah a považuje ho za propadlý.\n");
-//                        waitForNewTurn();
-//                    } else if (endGame != null) {
-//                        endGame(endGame.getContent());
-//                    } else {
-//                        logger.trace("Turn validation ok.");
-//                        waitForNewTurn();
-//                    }
-//                },
-//
-//                event -> {
-//                    // failure
-//                    if(Thread.currentThread().isInterrupted()) {
-//                        return;
-//                    }
-//                    Throwable ex = tcpClient.getPreStartReceiverService().getException();
-//                    String msg = ex == null ? "no exception" : ex.getMessage();
-//                    if(ex instanceof SocketTimeoutException) {
-//                        handleFailure("Server stopped responding and is probably dead.", ErrorMessages.SERVER_STOPPED_RESPONDING);
-//                    } else if (ex instanceof MaxAttemptsReached){
-//                        handleFailure("Maximum number of attempts to receive end turn confirmation reached.", "Maximální počet pokusů na potvrzení tahu dosažen.");
-//                    } else {
-//                        handleFailure("Error while waiting for end turn confirm message: "+msg, ErrorMessages.COMMUNICATION_BREAKDOWN);
-//                    }
-//                }
-//        );
         startTimer();
     }
 
+    /**
+     * Starts the turn clock from the time the turn was received, so that the turn is ended
+     * before the server's timeout.
+     */
     public void startTimer() {
-        timeCntr = 0;
         timerPassed = false;
-        timer = new Timer();
-        timer.scheduleAtFixedRate(new TimerTask() {
-            @Override
-            public void run() {
-                turnTimerAction();
-            }
-            // tick every second
-        }, 1000, 1000);
+        tcpClient.startTurnClock(turnClock);
     }
 
     public void stopTimer() {
-        if(timer == null) {
-            return;
-        }
-        timer.cancel();
+        turnClock.cancel();
     }
 
     /**
@@ -480,22 +489,18 @@ public class GameController {
 
     /**
      * Turn must be done in 2 minutes, after that
-     * it's automatically ended.
+     * it's automatically ended. Called on FX thread.
      */
     public void turnTimerAction() {
-        timeCntr++;
-        view.updateTimerText(timeCntr);
-        if(timeCntr == MAX_TURN_TIME) {
-            timerPassed = true;
-            logger.debug("Time for turn expired.");
-            Platform.runLater(new Task<Void>() {
-                @Override
-                protected Void call() throws Exception {
-                    GameController.this.endTurn();
-                    return null;
-                }
-            });
+        // turn could have been ended before this was run
+        if(!turnClock.isExpired()) {
+            return;
         }
+
+        view.updateTimerText(MAX_TURN_TIME);
+        timerPassed = true;
+        logger.debug("Time for turn expired.");
+        endTurn();
     }
 
     public void displayErroMessageLoginPane(String message) {
@@ -504,16 +509,66 @@ public class GameController {
         }
     }
 
+    /**
+     * Called when the server stops answering heartbeats.
+     */
+    public void serverDead() {
+        if(getShutdown()) {
+            return;
+        }
+
+        handleFailure("Server stopped answering heartbeats and is probably dead.", ErrorMessages.SERVER_STOPPED_RESPONDING);
+    }
+
     /**
      * Immediately stops the game, switches to login pane and show error message.
+     * If the game is running and resume is enabled, the session is resumed first and the game continues if it succeeds.
      * @param logMessage
      * @param displayError
      */
     private void handleFailure(String logMessage, String displayError) {
         logger.error(logMessage);
         stopTimer();
+        if(resumeEnabled && Game.getInstance().isRunning() && !resuming) {
+            resume(displayError);
+            return;
+        }
+
         tcpClient.disconnect();
         MainApp.viewController.displayLoginPane();
         displayErroMessageLoginPane(displayError);
     }
+
+    /**
+     * Reconnects to the server and sends the nick again. The game state is rebuilt
+     * from the next start turn, see newTurn().
+     * @param displayError Displayed if the resume fails.
+     */
+    private void resume(String displayError) {
+        resuming = true;
+        view.disableButtons();
+        view.resetTimerText();
+        view.addLogMessage("Spojení se serverem ztraceno, obnovuji...\n");
+        tcpClient.resume(
+                resumeNanos -> {
+                    resuming = false;
+                    if(getShutdown()) {
+                        return;
+                    }
+
+                    long resumeMs = TimeUnit.NANOSECONDS.toMillis(resumeNanos);
+                    logger.info("Session resumed in "+resumeMs+" ms.");
+                    view.addLogMessage("Spojení obnoveno za "+resumeMs+" ms.\n");
+                    resumed = true;
+                    tcpClient.startHeartbeat(this::serverDead);
+                    waitForNewTurn();
+                },
+                ex -> {
+                    resuming = false;
+                    logger.error("Session not resumed: "+ex.getMessage());
+                    tcpClient.disconnect();
+                    MainApp.viewController.displayLoginPane();
+                    displayErroMessageLoginPane(displayError);
+                });
+    }
 }
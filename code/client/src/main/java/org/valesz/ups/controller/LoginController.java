@@ -11,6 +11,7 @@ import org.valesz.ups.common.message.received.ReceivedMessageTypeResolver;
 import org.valesz.ups.main.MainApp;
 import org.valesz.ups.model.LoginData;
 import org.valesz.ups.model.game.Game;
+import org.valesz.ups.network.MessageDispatcher.Request;
 import org.valesz.ups.network.TcpClient;
 import org.valesz.ups.ui.LoginPane;
 
@@ -83,7 +84,7 @@ public class LoginController {
 
         view.disableLoginButton("Připojuji");
         view.displayMessage("");
-        tcpClient.connect(loginData.getAddress(), loginData.getPort(),
+        Error err = tcpClient.connect(loginData.getAddress(), loginData.getPort(),
                 event -> {
                     //ok
                     logger.debug("Connected.");
@@ -103,6 +104,10 @@ public class LoginController {
                     view.enableLoginButton();
                 });
 
+        if(!err.ok()) {
+            view.displayMessage("Špatný seznam serverů: "+err.msg);
+            view.enableLoginButton();
+        }
     }
 
     /**
@@ -124,8 +129,9 @@ public class LoginController {
         // send nick
         view.disableLoginButton("Potvrzuji nick...");
         logger.debug("Sending nick "+loginData.getNick()+" to server.");
+        Request nickRequest;
         try {
-            tcpClient.sendNickMessage(loginData.getNick());
+            nickRequest = tcpClient.sendNickMessage(loginData.getNick());
         } catch (IOException ex) {
             logger.error("Exception while sending the nick: "+ex.getMessage());
             tcpClient.disconnect();
@@ -135,15 +141,15 @@ public class LoginController {
         }
 
         // wait for ok message
-        tcpClient.waitForNickConfirm(
-                event -> {
+        tcpClient.waitForResponse(nickRequest,
+                response -> {
                     // ok or error message received
                     //check received response
-                    AbstractReceivedMessage response = tcpClient.getPreStartReceiverService().getValue();
                     if (ReceivedMessageTypeResolver.isOk(response) != null) {
                         // nick ok
                         Game.getInstance().waitingForOpponent(loginData.getNick());
                         tcpClient.addLastSuccessfulNick(loginData.getNick());
+                        tcpClient.startHeartbeat(MainApp.gameController::serverDead);
                         logger.debug("Login ok.");
                         int port = tcpClient.getSocket().getLocalPort();
                         view.enableLoginButton();
@@ -158,11 +164,10 @@ public class LoginController {
                     }
                 },
 
-                event -> {
+                ex -> {
                     //receiving response failed
                     view.enableLoginButton();
-                    String err = tcpClient.getPreStartReceiverService().getException().getMessage();
-                    logger.error("Error while receiving response from server: "+err);
+                    logger.error("Error while receiving response from server: "+ex.getMessage());
                     view.displayMessage("Chyba při odesílání nicku na server.");
                     tcpClient.disconnect();
                 }
@@ -170,7 +175,8 @@ public class LoginController {
     }
 
     /**
-     * Tries to reconnect to the same server. If no lastSuccessfulConnection exists, switches to LoginPane.
+     * Tries to reconnect to the same server or list of servers, the best server is selected again.
+     * If no lastSuccessfulConnection exists, switches to LoginPane.
      */
     public void reconnect() {
         LoginData lastSuc = tcpClient.getLastSuccessfulConnection();
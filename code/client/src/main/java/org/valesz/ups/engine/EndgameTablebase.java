@@ -0,0 +1,245 @@
+package org.valesz.ups.engine;
+
+import org.valesz.ups.model.game.Board;
+import org.valesz.ups.model.game.Game;
+import org.valesz.ups.model.game.MoveGenerator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Exact win probabilities of endgame positions with up to maxStones stones of each player,
+ * generated by EndgameTablebaseGenerator. The file is mapped to memory and read only by absolute gets,
+ * so the values stay off heap and one instance can be shared by all threads.
+ *
+ * File layout (little endian): magic, version, maxStones, max change of the last sweep of the generator
+ * (float) and float win probability of every position. Position is the stones of the player who is going
+ * to throw the sticks (own) and the stones of his opponent. Positions are grouped to classes by the number
+ * of stones of both players, classes of the same stone counts (a, b) and (b, a) are next to each other
+ * and ordered by the greater count.
+ * Inside the class, the index is the colex rank of own fields times the number of opponent's subsets
+ * plus the colex rank of opponent's fields among the fields free of own stones.
+ *
+ * @author Zdenek Vales
+ */
+public class EndgameTablebase {
+
+    /**
+     * With three stones of each player, both players may prefer moving back and forth to making progress
+     * and the values don't converge in reasonable time.
+     */
+    public static final int MAX_STONES = 2;
+
+    static final int MAGIC = 0x534E5442;
+    static final int VERSION = 3;
+    static final int HEADER_BYTES = 16;
+    static final int VALUE_BYTES = Float.BYTES;
+
+    private static final int FIELDS = Game.LAST_FIELD;
+
+    /**
+     * BINOMIAL[n][k] = n over k.
+     */
+    private static final int[][] BINOMIAL = new int[FIELDS + 1][MAX_STONES + 1];
+
+    static {
+        for (int n = 0; n <= FIELDS; n++) {
+            BINOMIAL[n][0] = 1;
+            for (int k = 1; k <= MAX_STONES && k <= n; k++) {
+                BINOMIAL[n][k] = BINOMIAL[n - 1][k - 1] + (k < n ? BINOMIAL[n - 1][k] : 0);
+            }
+        }
+    }
+
+    private final int maxStones;
+    private final int[][] offsets;
+    private final ByteBuffer values;
+
+    EndgameTablebase(ByteBuffer buffer) throws IOException {
+        values = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if(values.capacity() < HEADER_BYTES || values.getInt(0) != MAGIC || values.getInt(4) != VERSION) {
+            throw new IOException("Not an endgame tablebase.");
+        }
+        maxStones = values.getInt(8);
+        if(maxStones < 1 || maxStones > MAX_STONES) {
+            throw new IOException("Wrong number of stones: "+maxStones);
+        }
+        float maxDelta = values.getFloat(12);
+        if(!(maxDelta < EndgameTablebaseGenerator.EPSILON)) {
+            throw new IOException("Tablebase hasn't converged, last change "+maxDelta);
+        }
+        offsets = offsets(maxStones);
+        if(values.capacity() != HEADER_BYTES + (long) positions(maxStones) * VALUE_BYTES) {
+            throw new IOException("Wrong size of the tablebase: "+values.capacity());
+        }
+    }
+
+    /**
+     * Maps the tablebase file to memory. Tables which haven't converged aren't opened.
+     * @param file
+     * @return
+     * @throws IOException If the file can't be read, isn't a tablebase or hasn't converged.
+     */
+    public static EndgameTablebase open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new EndgameTablebase(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public int getMaxStones() {
+        return maxStones;
+    }
+
+    public int getPositions() {
+        return positions(maxStones);
+    }
+
+    /**
+     * Returns true if the position is in the table.
+     * @param own
+     * @param opponent
+     * @return
+     */
+    public boolean contains(int own, int opponent) {
+        int a = Integer.bitCount(own & Board.FIELDS);
+        int b = Integer.bitCount(opponent & Board.FIELDS);
+        return a >= 1 && a <= maxStones && b >= 1 && b <= maxStones;
+    }
+
+    /**
+     * Returns the probability that the player with own stones, who is going to throw the sticks, wins.
+     * The position has to be in the table.
+     * @param own
+     * @param opponent
+     * @return
+     */
+    public double probe(int own, int opponent) {
+        return values.getFloat(HEADER_BYTES + index(offsets, own, opponent) * VALUE_BYTES);
+    }
+
+    /**
+     * Returns the win probability of the player after his move.
+     * @param own
+     * @param opponent
+     * @param thrown
+     * @param move
+     * @return
+     */
+    public double probeMove(int own, int opponent, int thrown, int move) {
+        int newOwn = MoveGenerator.playOwn(own, move);
+        if(newOwn == 0) {
+            return 1;
+        }
+        int newOpponent = MoveGenerator.playOpponent(opponent, move);
+        return thrown >= 4 ? probe(newOwn, newOpponent) : 1 - probe(newOpponent, newOwn);
+    }
+
+    /**
+     * Returns the move with the best win probability.
+     * @param own
+     * @param opponent
+     * @param thrown
+     * @param moves Buffer for generated moves.
+     * @return Move or ExpectiminimaxSearch.NO_MOVE.
+     */
+    public int bestMove(int own, int opponent, int thrown, int[] moves) {
+        int count = MoveGenerator.generate(own, opponent, thrown, moves);
+        int best = ExpectiminimaxSearch.NO_MOVE;
+        double bestValue = -1;
+        for (int i = 0; i < count; i++) {
+            double v = probeMove(own, opponent, thrown, moves[i]);
+            if(v > bestValue) {
+                bestValue = v;
+                best = moves[i];
+            }
+        }
+        return best;
+    }
+
+    static int binomial(int n, int k) {
+        return BINOMIAL[n][k];
+    }
+
+    /**
+     * Number of positions with a own stones and b opponent's stones.
+     */
+    static int classSize(int a, int b) {
+        return BINOMIAL[FIELDS][a] * BINOMIAL[FIELDS - a][b];
+    }
+
+    /**
+     * Returns the first index of every class, offsets[a][b].
+     */
+    static int[][] offsets(int maxStones) {
+        int[][] offsets = new int[maxStones + 1][maxStones + 1];
+        int offset = 0;
+        for (int greater = 1; greater <= maxStones; greater++) {
+            for (int smaller = 1; smaller <= greater; smaller++) {
+                offsets[smaller][greater] = offset;
+                offset += classSize(smaller, greater);
+                if(smaller != greater) {
+                    offsets[greater][smaller] = offset;
+                    offset += classSize(greater, smaller);
+                }
+            }
+        }
+        return offsets;
+    }
+
+    static int positions(int maxStones) {
+        int positions = 0;
+        for (int a = 1; a <= maxStones; a++) {
+            for (int b = 1; b <= maxStones; b++) {
+                positions += classSize(a, b);
+            }
+        }
+        return positions;
+    }
+
+    static int index(int[][] offsets, int own, int opponent) {
+        int a = Integer.bitCount(own);
+        int b = Integer.bitCount(opponent);
+        return offsets[a][b] + rank(own >>> 1) * BINOMIAL[FIELDS - a][b] + rank(compress(opponent, own));
+    }
+
+    /**
+     * Colex rank of the set bits among the subsets of the same size.
+     */
+    static int rank(int bits) {
+        int rank = 0;
+        int k = 1;
+        for (int m = bits; m != 0; m &= m - 1) {
+            rank += BINOMIAL[Integer.numberOfTrailingZeros(m)][k++];
+        }
+        return rank;
+    }
+
+    /**
+     * Removes the fields of own stones from the opponent's mask, bit 0 is the first field free of own stones.
+     */
+    static int compress(int opponent, int own) {
+        int bits = 0;
+        for (int m = opponent; m != 0; m &= m - 1) {
+            int low = m & -m;
+            bits |= 1 << (Integer.numberOfTrailingZeros(low) - 1 - Integer.bitCount(own & (low - 1)));
+        }
+        return bits;
+    }
+
+    /**
+     * Inverse of compress(), places the bits to the free fields.
+     */
+    static int expand(int bits, int free) {
+        int mask = 0;
+        for (int m = free; bits != 0; m &= m - 1, bits >>>= 1) {
+            if((bits & 1) != 0) {
+                mask |= m & -m;
+            }
+        }
+        return mask;
+    }
+}
@@ -0,0 +1,289 @@
+package org.valesz.ups.engine;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.valesz.ups.model.game.Board;
+import org.valesz.ups.model.game.Game;
+import org.valesz.ups.model.game.MoveGenerator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Computes the EndgameTablebase by retrograde analysis.
+ *
+ * Stones only leave the board, so positions depend only on positions with the same or lower numbers
+ * of stones. Classes are solved from the fewest stones and every class is solved together with the class
+ * of swapped stone counts, because the turn passes between them. Stones can move backward and throws
+ * without move are skipped, so the positions of the solved pair form cycles, which are solved by value
+ * iteration until the values change less than EPSILON:
+ *
+ * P(own, opponent) = sum of THROW_WEIGHTS[t] / WEIGHT_SUM * max over moves of P after the move
+ *
+ * where P after the move is 1 if the last stone left the board, P(own', opponent') after 4 and 5 and
+ * 1 - P(opponent', own') otherwise.
+ *
+ * Up to two stones of each player converge in a few hundred sweeps. If the iteration is stopped
+ * by MAX_SWEEPS, the last change is written to the header and EndgameTablebase refuses to open the table.
+ *
+ * Every sweep reads the values of the previous one and the rows of own stones are split between
+ * the tasks of the pool, so the result doesn't depend on the number of threads.
+ *
+ * @author Zdenek Vales
+ */
+public class EndgameTablebaseGenerator {
+
+    private static final Logger logger = LogManager.getLogger(EndgameTablebaseGenerator.class);
+
+    /**
+     * Max change of a value in the last sweep.
+     */
+    public static final double EPSILON = 1e-9;
+
+    /**
+     * Value iteration of one pair of classes is stopped after this number of sweeps.
+     */
+    public static final int MAX_SWEEPS = 10000;
+
+    private static final int FIELDS = Game.LAST_FIELD;
+
+    /**
+     * All k-subsets of 30 fields in colex order, COMBINATIONS[k][rank], field 1 is bit 0.
+     */
+    private static final int[][] COMBINATIONS = new int[EndgameTablebase.MAX_STONES + 1][];
+
+    static {
+        for (int k = 0; k <= EndgameTablebase.MAX_STONES; k++) {
+            int[] combinations = new int[EndgameTablebase.binomial(FIELDS, k)];
+            int bits = (1 << k) - 1;
+            for (int i = 0; i < combinations.length; i++) {
+                combinations[i] = bits;
+                if(bits != 0) {
+                    // next subset of the same size (Gosper's hack)
+                    int low = bits & -bits;
+                    int ripple = bits + low;
+                    bits = (((ripple ^ bits) >>> 2) / low) | ripple;
+                }
+            }
+            COMBINATIONS[k] = combinations;
+        }
+    }
+
+    private final ForkJoinPool pool;
+    private final int maxStones;
+    private final int[][] offsets;
+
+    private float[] values;
+    private int sweeps;
+    private double maxDelta;
+    private long elapsedNanos;
+
+    /**
+     * @param pool Pool which runs the sweeps.
+     * @param maxStones Max number of stones of each player, 1..EndgameTablebase.MAX_STONES.
+     */
+    public EndgameTablebaseGenerator(ForkJoinPool pool, int maxStones) {
+        if(maxStones < 1 || maxStones > EndgameTablebase.MAX_STONES) {
+            throw new IllegalArgumentException("Number of stones has to be 1.."+EndgameTablebase.MAX_STONES);
+        }
+        this.pool = pool;
+        this.maxStones = maxStones;
+        this.offsets = EndgameTablebase.offsets(maxStones);
+    }
+
+    /**
+     * Computes the values of all positions.
+     */
+    public void generate() {
+        long start = System.nanoTime();
+        values = new float[EndgameTablebase.positions(maxStones)];
+        sweeps = 0;
+        maxDelta = 0;
+        for (int greater = 1; greater <= maxStones; greater++) {
+            for (int smaller = 1; smaller <= greater; smaller++) {
+                solve(smaller, greater);
+            }
+        }
+        elapsedNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Total number of sweeps of all pairs of classes.
+     * @return
+     */
+    public int getSweeps() {
+        return sweeps;
+    }
+
+    /**
+     * Max change of a value in the last sweep of any pair, more than EPSILON if MAX_SWEEPS was reached.
+     * @return
+     */
+    public double getMaxDelta() {
+        return maxDelta;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Writes the generated values to the file, which can be opened by EndgameTablebase.open().
+     * @param file
+     * @throws IOException
+     */
+    public void write(Path file) throws IOException {
+        long size = EndgameTablebase.HEADER_BYTES + (long) values.length * EndgameTablebase.VALUE_BYTES;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            fill(buffer);
+            buffer.force();
+        }
+    }
+
+    /**
+     * Returns the tablebase of generated values in heap buffer.
+     * @return
+     * @throws IllegalStateException If the values haven't converged.
+     */
+    public EndgameTablebase toTablebase() {
+        ByteBuffer buffer = ByteBuffer.allocate(EndgameTablebase.HEADER_BYTES + values.length * EndgameTablebase.VALUE_BYTES);
+        fill(buffer);
+        try {
+            return new EndgameTablebase(buffer);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private void fill(ByteBuffer buffer) {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(0, EndgameTablebase.MAGIC);
+        buffer.putInt(4, EndgameTablebase.VERSION);
+        buffer.putInt(8, maxStones);
+        buffer.putFloat(12, (float) maxDelta);
+        for (int i = 0; i < values.length; i++) {
+            buffer.putFloat(EndgameTablebase.HEADER_BYTES + i * EndgameTablebase.VALUE_BYTES, values[i]);
+        }
+    }
+
+    /**
+     * Solves the classes (a, b) and (b, a), a <= b.
+     */
+    private void solve(int a, int b) {
+        int start = offsets[a][b];
+        int length = EndgameTablebase.classSize(a, b) + (a != b ? EndgameTablebase.classSize(b, a) : 0);
+        double[] current = new double[length];
+        double[] next = new double[length];
+        Arrays.fill(current, 0.5);
+
+        int chunks = pool.getParallelism() * 4;
+        double delta = 1;
+        int pairSweeps = 0;
+        while (delta >= EPSILON && pairSweeps < MAX_SWEEPS) {
+            double[] read = current;
+            double[] write = next;
+            List<ForkJoinTask<Double>> tasks = new ArrayList<>();
+            for (int i = a; i <= b; i += Math.max(1, b - a)) {
+                int own = i;
+                int opponent = a + b - i;
+                int rows = COMBINATIONS[own].length;
+                for (int c = 0; c < chunks; c++) {
+                    int from = (int) ((long) rows * c / chunks);
+                    int to = (int) ((long) rows * (c + 1) / chunks);
+                    if(from < to) {
+                        tasks.add(pool.submit(() -> sweep(own, opponent, from, to, start, read, write)));
+                    }
+                }
+            }
+
+            delta = 0;
+            for (ForkJoinTask<Double> task : tasks) {
+                delta = Math.max(delta, task.join());
+            }
+            current = write;
+            next = read;
+            pairSweeps++;
+        }
+
+        for (int i = 0; i < length; i++) {
+            values[start + i] = (float) current[i];
+        }
+        sweeps += pairSweeps;
+        maxDelta = Math.max(maxDelta, delta);
+        if(delta >= EPSILON) {
+            logger.warn(String.format("Classes %d:%d not converged in %d sweeps, last change %.3g.", a, b, pairSweeps, delta));
+        } else {
+            logger.debug(String.format("Classes %d:%d solved in %d sweeps, last change %.3g.", a, b, pairSweeps, delta));
+        }
+    }
+
+    /**
+     * Computes new values of the rows from..to of the class (a, b).
+     * @return Max change of the values.
+     */
+    private double sweep(int a, int b, int from, int to, int start, double[] read, double[] write) {
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        int columns = EndgameTablebase.binomial(FIELDS - a, b);
+        int[] opponents = COMBINATIONS[b];
+        double delta = 0;
+        for (int row = from; row < to; row++) {
+            int own = COMBINATIONS[a][row] << 1;
+            int free = Board.FIELDS & ~own;
+            int index = offsets[a][b] + row * columns - start;
+            for (int column = 0; column < columns; column++, index++) {
+                int opponent = EndgameTablebase.expand(opponents[column], free);
+                double v = value(own, opponent, moves, start, read);
+                delta = Math.max(delta, Math.abs(v - read[index]));
+                write[index] = v;
+            }
+        }
+        return delta;
+    }
+
+    private double value(int own, int opponent, int[] moves, int start, double[] read) {
+        double sum = 0;
+        for (int t = 1; t < ExpectiminimaxSearch.THROW_WEIGHTS.length; t++) {
+            int count = MoveGenerator.generate(own, opponent, t, moves);
+            double best;
+            if(count == 0) {
+                // throw is skipped
+                best = t >= 4 ? get(own, opponent, start, read) : 1 - get(opponent, own, start, read);
+            } else {
+                best = 0;
+                for (int i = 0; i < count; i++) {
+                    int newOwn = MoveGenerator.playOwn(own, moves[i]);
+                    if(newOwn == 0) {
+                        best = 1;
+                        break;
+                    }
+                    int newOpponent = MoveGenerator.playOpponent(opponent, moves[i]);
+                    double v = t >= 4 ? get(newOwn, newOpponent, start, read) : 1 - get(newOpponent, newOwn, start, read);
+                    best = Math.max(best, v);
+                }
+            }
+            sum += ExpectiminimaxSearch.THROW_WEIGHTS[t] * best;
+        }
+        return sum / ExpectiminimaxSearch.WEIGHT_SUM;
+    }
+
+    /**
+     * Value from the previous sweep if the position is in the solved pair, final value otherwise.
+     */
+    private double get(int own, int opponent, int start, double[] read) {
+        int index = EndgameTablebase.index(offsets, own, opponent);
+        int local = index - start;
+        return local >= 0 && local < read.length ? read[local] : values[index];
+    }
+}
@@ -0,0 +1,445 @@
+package org.valesz.ups.engine;
+
+import org.valesz.ups.model.game.Board;
+import org.valesz.ups.model.game.Game;
+import org.valesz.ups.model.game.MoveGenerator;
+import org.valesz.ups.model.game.PositionKey;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Searches the best move for the thrown value by expectiminimax. Max nodes are the moves of the player
+ * on turn, chance nodes are the throws of the sticks weighted by THROW_WEIGHTS. Throw of 4 or 5 is followed
+ * by another chance node of the same player, other throws by the chance node of the opponent.
+ * If there's no possible move, the throw is skipped.
+ *
+ * Values are from the point of view of the player on turn (negamax) and are bounded by -WIN..WIN,
+ * so chance nodes are pruned by Star1. Before the full search, chance nodes probe the first move
+ * of every throw, which gives the lower bound of the throw for Star2 cut-offs.
+ *
+ * Search is iteratively deepened until the time budget is spent, the result of the last finished
+ * depth is used. Depth is the number of throws searched ahead.
+ *
+ * If the TranspositionTable is set, results of chance and max nodes are stored in it. Stored bounds cut off
+ * the search of the same position reached by other order of moves and stored best moves are searched first.
+ * Keys are relative to the player on turn, who is always the first player of the key.
+ *
+ * If the EndgameTablebase is set, positions in the table aren't searched: the root move is chosen by the win
+ * probabilities of the table and chance nodes are valued WIN * (2 * probability - 1).
+ *
+ * The state is kept in the masks of Board passed as arguments and all buffers are allocated
+ * by the constructor, so one instance should be used by one thread only.
+ *
+ * @author Zdenek Vales
+ */
+public class ExpectiminimaxSearch implements MoveSearch {
+
+    public static final int NO_MOVE = -1;
+
+    /**
+     * Value of the won game.
+     */
+    public static final double WIN = 1000;
+
+    /**
+     * Max depth of the search.
+     */
+    public static final int MAX_DEPTH = 64;
+
+    /**
+     * Weights of thrown values 1..5 (index is the thrown value), there are four sticks, so the sum is 16.
+     * Game.throwSticks() throws with the same probabilities.
+     */
+    public static final int[] THROW_WEIGHTS = {0, 4, 6, 4, 1, 1};
+    public static final int WEIGHT_SUM = 16;
+
+    /**
+     * Bonus for own stone protected from switching by neighbour.
+     */
+    private static final int PROTECTED_BONUS = 2;
+
+    /**
+     * Time is checked every CHECK_INTERVAL + 1 nodes.
+     */
+    private static final int CHECK_INTERVAL = 4095;
+
+    private final int[][] moves = new int[MAX_DEPTH + 1][MoveGenerator.MAX_MOVES];
+    private final int[][] scores = new int[MAX_DEPTH + 1][MoveGenerator.MAX_MOVES];
+    private final double[][] lowerBounds = new double[MAX_DEPTH + 1][THROW_WEIGHTS.length];
+
+    private TranspositionTable table;
+    private EndgameTablebase tablebase;
+    private int maxDepth = MAX_DEPTH;
+    private long deadline;
+    private boolean aborted;
+
+    private long nodes;
+    private int depth;
+    private double value;
+
+    /**
+     * Limits the depth of the search, useful when the result has to be the same regardless of the time.
+     * @param maxDepth 1..MAX_DEPTH
+     */
+    public void setMaxDepth(int maxDepth) {
+        this.maxDepth = Math.max(1, Math.min(maxDepth, MAX_DEPTH));
+    }
+
+    /**
+     * Table shared with other searches, null by default.
+     * @param table
+     */
+    public void setTranspositionTable(TranspositionTable table) {
+        this.table = table;
+    }
+
+    /**
+     * Tablebase shared with other searches, null by default.
+     * @param tablebase
+     */
+    public void setTablebase(EndgameTablebase tablebase) {
+        this.tablebase = tablebase;
+    }
+
+    /**
+     * Number of nodes searched by the last search.
+     * @return
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Last finished depth of the last search.
+     * @return
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Expected value of the move found by the last search.
+     * @return
+     */
+    public double getValue() {
+        return value;
+    }
+
+    /**
+     * Searches the best move of the player.
+     * @param firstPlayerStones
+     * @param secondPlayerStones
+     * @param player Player on turn, 1 or 2.
+     * @param thrown Thrown value 1..5.
+     * @param budgetMs Max time of the search.
+     * @return Move encoded by MoveGenerator or NO_MOVE if there's no possible move.
+     */
+    public int search(int[] firstPlayerStones, int[] secondPlayerStones, int player, int thrown, long budgetMs) {
+        return search(Board.fromStones(firstPlayerStones, secondPlayerStones), player, thrown, budgetMs);
+    }
+
+    @Override
+    public int search(Board board, int player, int thrown, long budgetMs) {
+        int own = board.getMask(player);
+        int opponent = board.getMask(3 - player);
+        deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMs);
+        aborted = false;
+        nodes = 0;
+        depth = 0;
+        value = 0;
+        if(table != null) {
+            table.newSearch();
+        }
+
+        int[] rootMoves = moves[0];
+        int count = orderMoves(own, opponent, thrown, 0);
+        if(count == 0) {
+            return NO_MOVE;
+        }
+        int best = rootMoves[0];
+        if(count == 1) {
+            return best;
+        }
+        if(tablebase != null && tablebase.contains(own, opponent)) {
+            best = tablebase.bestMove(own, opponent, thrown, rootMoves);
+            value = WIN * (2 * tablebase.probeMove(own, opponent, thrown, best) - 1);
+            return best;
+        }
+
+        for (int d = 1; d <= maxDepth; d++) {
+            double alpha = -WIN - 1;
+            int iterationBest = NO_MOVE;
+            for (int i = 0; i < count && !aborted; i++) {
+                int move = rootMoves[i];
+                double v = playAndSearch(own, opponent, move, thrown, d, 0, alpha, WIN + 1);
+                if(!aborted && v > alpha) {
+                    alpha = v;
+                    iterationBest = move;
+                }
+            }
+            if(aborted) {
+                break;
+            }
+
+            best = iterationBest;
+            value = alpha;
+            depth = d;
+            moveToFront(rootMoves, count, best);
+            if(alpha >= WIN || alpha <= -WIN) {
+                // result is known
+                break;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Chance node: the player with own stones throws the sticks.
+     */
+    private double chance(int own, int opponent, int depth, int ply, double alpha, double beta) {
+        if(tablebase != null && tablebase.contains(own, opponent)) {
+            nodes++;
+            return WIN * (2 * tablebase.probe(own, opponent) - 1);
+        }
+        if(depth == 0) {
+            nodes++;
+            return evaluate(own, opponent);
+        }
+        if(tick()) {
+            return 0;
+        }
+        long key = 0;
+        if(table != null) {
+            key = PositionKey.of(own, opponent, 1, 0);
+            double v = cutoff(table.probe(key), depth, alpha, beta);
+            if(!Double.isNaN(v)) {
+                return v;
+            }
+        }
+
+        double[] lower = lowerBounds[ply];
+        double lowerSum = -WIN * WEIGHT_SUM;
+        for (int t = 1; t < THROW_WEIGHTS.length; t++) {
+            lower[t] = -WIN;
+        }
+
+        // Star2: the first move of every throw is the lower bound of the throw
+        for (int t = 1; t < THROW_WEIGHTS.length; t++) {
+            int w = THROW_WEIGHTS[t];
+            double othersLower = lowerSum + w * WIN;
+            double a = (WEIGHT_SUM * alpha - (WEIGHT_SUM - w) * WIN) / w;
+            double b = (WEIGHT_SUM * beta - othersLower) / w;
+            double probeAlpha = Math.max(a, -WIN);
+            double v = decision(own, opponent, t, depth, ply, probeAlpha, Math.min(b, WIN), true);
+            if(aborted) {
+                return 0;
+            }
+            if(v >= b) {
+                return store(key, depth, beta, TranspositionTable.LOWER, NO_MOVE);
+            }
+            if(v > probeAlpha) {
+                lower[t] = v;
+                lowerSum = othersLower + w * v;
+            }
+        }
+
+        // Star1: the rest of throws is bounded by lower bounds and WIN
+        double sum = 0;
+        double lowerRest = lowerSum;
+        int restWeight = WEIGHT_SUM;
+        for (int t = 1; t < THROW_WEIGHTS.length; t++) {
+            int w = THROW_WEIGHTS[t];
+            restWeight -= w;
+            lowerRest -= w * lower[t];
+            double a = (WEIGHT_SUM * alpha - sum - WIN * restWeight) / w;
+            double b = (WEIGHT_SUM * beta - sum - lowerRest) / w;
+            double v = decision(own, opponent, t, depth, ply, Math.max(a, lower[t]), Math.min(b, WIN), false);
+            if(aborted) {
+                return 0;
+            }
+            if(v <= a) {
+                return store(key, depth, alpha, TranspositionTable.UPPER, NO_MOVE);
+            }
+            if(v >= b) {
+                return store(key, depth, beta, TranspositionTable.LOWER, NO_MOVE);
+            }
+            sum += w * v;
+        }
+
+        return store(key, depth, sum / WEIGHT_SUM, TranspositionTable.EXACT, NO_MOVE);
+    }
+
+    /**
+     * Max node: the player with own stones moves by the thrown value.
+     * @param probe If true, only the first move is searched and nothing is stored to the table.
+     */
+    private double decision(int own, int opponent, int thrown, int depth, int ply, double alpha, double beta, boolean probe) {
+        nodes++;
+        int count = orderMoves(own, opponent, thrown, ply);
+        if(count == 0) {
+            return next(own, opponent, thrown, depth, ply, alpha, beta);
+        }
+
+        int[] plyMoves = moves[ply];
+        long key = 0;
+        if(table != null) {
+            key = PositionKey.of(own, opponent, 1, thrown);
+            long data = table.probe(key);
+            if(!probe) {
+                double v = cutoff(data, depth, alpha, beta);
+                if(!Double.isNaN(v)) {
+                    return v;
+                }
+            }
+            if(data != TranspositionTable.MISS) {
+                moveToFront(plyMoves, count, TranspositionTable.getMove(data));
+            }
+        }
+
+        int best = NO_MOVE;
+        for (int i = 0; i < count; i++) {
+            double v = playAndSearch(own, opponent, plyMoves[i], thrown, depth, ply, alpha, beta);
+            if(aborted) {
+                return 0;
+            }
+            if(v >= beta) {
+                return probe ? beta : store(key, depth, beta, TranspositionTable.LOWER, plyMoves[i]);
+            }
+            if(v > alpha) {
+                alpha = v;
+                best = plyMoves[i];
+            }
+            if(probe) {
+                return alpha;
+            }
+        }
+        return store(key, depth, alpha, best == NO_MOVE ? TranspositionTable.UPPER : TranspositionTable.EXACT, best);
+    }
+
+    /**
+     * Returns the stored value if it's deep enough and it's exact or out of the window, NaN otherwise.
+     */
+    private static double cutoff(long data, int depth, double alpha, double beta) {
+        if(data == TranspositionTable.MISS || TranspositionTable.getDepth(data) < depth) {
+            return Double.NaN;
+        }
+        double v = TranspositionTable.getValue(data);
+        switch (TranspositionTable.getBound(data)) {
+            case TranspositionTable.EXACT:
+                return v;
+            case TranspositionTable.LOWER:
+                return v >= beta ? beta : Double.NaN;
+            case TranspositionTable.UPPER:
+                return v <= alpha ? alpha : Double.NaN;
+            default:
+                return Double.NaN;
+        }
+    }
+
+    /**
+     * Stores the value to the table if it's set.
+     * @return The value.
+     */
+    private double store(long key, int depth, double value, int bound, int move) {
+        if(table != null) {
+            table.store(key, depth, value, bound, move);
+        }
+        return value;
+    }
+
+    private double playAndSearch(int own, int opponent, int move, int thrown, int depth, int ply, double alpha, double beta) {
+        int newOwn = MoveGenerator.playOwn(own, move);
+        if(newOwn == 0) {
+            return WIN;
+        }
+        return next(newOwn, MoveGenerator.playOpponent(opponent, move), thrown, depth, ply, alpha, beta);
+    }
+
+    /**
+     * Chance node after the move: the same player throws again after 4 and 5.
+     */
+    private double next(int own, int opponent, int thrown, int depth, int ply, double alpha, double beta) {
+        if(thrown >= 4) {
+            return chance(own, opponent, depth - 1, ply + 1, alpha, beta);
+        }
+        return -chance(opponent, own, depth - 1, ply + 1, -beta, -alpha);
+    }
+
+    /**
+     * Generates moves to the buffer of the ply and sorts them: leaving the board, switching the opponent's stone,
+     * forward moves closer to the end and backward moves.
+     * @return Number of moves.
+     */
+    private int orderMoves(int own, int opponent, int thrown, int ply) {
+        int[] plyMoves = moves[ply];
+        int[] plyScores = scores[ply];
+        int count = MoveGenerator.generate(own, opponent, thrown, plyMoves);
+        for (int i = 0; i < count; i++) {
+            int move = plyMoves[i];
+            int from = MoveGenerator.getFrom(move);
+            int to = MoveGenerator.getTo(move);
+            int score;
+            if(MoveGenerator.isLeave(move)) {
+                score = 4 * Game.OUT_OF_BOARD;
+            } else {
+                score = (to > from ? Game.OUT_OF_BOARD : 0) + ((opponent & Board.bit(to)) != 0 ? 2 * Game.OUT_OF_BOARD : 0) + to;
+            }
+
+            // insertion sort, there's at most MAX_MOVES moves
+            int j = i;
+            while (j > 0 && plyScores[j - 1] < score) {
+                plyMoves[j] = plyMoves[j - 1];
+                plyScores[j] = plyScores[j - 1];
+                j--;
+            }
+            plyMoves[j] = move;
+            plyScores[j] = score;
+        }
+        return count;
+    }
+
+    private static void moveToFront(int[] moves, int count, int move) {
+        for (int i = 0; i < count; i++) {
+            if(moves[i] == move) {
+                System.arraycopy(moves, 0, moves, 1, i);
+                moves[0] = move;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Counts the node and checks the time.
+     * @return True if the search should stop.
+     */
+    private boolean tick() {
+        if((++nodes & CHECK_INTERVAL) == 0 && System.nanoTime() - deadline > 0) {
+            aborted = true;
+        }
+        return aborted;
+    }
+
+    /**
+     * Evaluates the position for the player with own stones: difference of the distances of stones
+     * from leaving the board and stones protected from switching.
+     * @param own
+     * @param opponent
+     * @return Value in (-WIN, WIN).
+     */
+    public static double evaluate(int own, int opponent) {
+        return distance(opponent) - distance(own)
+                + PROTECTED_BONUS * (Integer.bitCount(MoveGenerator.protectedStones(own)) - Integer.bitCount(MoveGenerator.protectedStones(opponent)));
+    }
+
+    /**
+     * Sum of the number of fields every stone has to go to leave the board.
+     */
+    private static int distance(int mask) {
+        int distance = 0;
+        for (int m = mask; m != 0; m &= m - 1) {
+            distance += Game.OUT_OF_BOARD - Integer.numberOfTrailingZeros(m);
+        }
+        return distance;
+    }
+}
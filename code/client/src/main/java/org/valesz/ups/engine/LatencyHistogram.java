@@ -0,0 +1,104 @@
+package org.valesz.ups.engine;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread safe histogram of latencies in microseconds. Every power of two is divided to
+ * SUB_BUCKETS buckets, so the relative error of the recorded value is at most 1/SUB_BUCKETS.
+ *
+ * Recording doesn't allocate and doesn't lock.
+ *
+ * @author Zdenek Vales
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Values up to 2^MAX_BITS us (about 19 hours) can be recorded, bigger values are stored to the last bucket.
+     */
+    private static final int MAX_BITS = 36;
+
+    private final AtomicLongArray counts;
+
+    public LatencyHistogram() {
+        counts = new AtomicLongArray((MAX_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKETS);
+    }
+
+    /**
+     * Records the latency.
+     * @param nanos Latency in nanoseconds.
+     */
+    public void recordNanos(long nanos) {
+        record(nanos / 1000);
+    }
+
+    /**
+     * Records the latency.
+     * @param micros Latency in microseconds.
+     */
+    public void record(long micros) {
+        counts.incrementAndGet(bucketIndex(micros));
+    }
+
+    /**
+     * Returns the number of recorded values.
+     * @return
+     */
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the value (in us) at the percentile. Returned value is the upper bound of the bucket
+     * containing the percentile.
+     * @param percentile Percentile from 0 to 100.
+     * @return Value in microseconds or 0 if nothing is recorded.
+     */
+    public long getPercentile(double percentile) {
+        long total = getCount();
+        if(total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if(seen >= rank) {
+                return bucketUpperBound(i);
+            }
+        }
+
+        return bucketUpperBound(counts.length() - 1);
+    }
+
+    static int bucketIndex(long micros) {
+        if(micros < SUB_BUCKETS) {
+            return (int) Math.max(0, micros);
+        }
+
+        int highestBit = 63 - Long.numberOfLeadingZeros(micros);
+        if(highestBit >= MAX_BITS) {
+            return (MAX_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKETS - 1;
+        }
+        int shift = highestBit - SUB_BUCKET_BITS;
+        int sub = (int) (micros >> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long bucketUpperBound(int index) {
+        if(index < SUB_BUCKETS) {
+            return index;
+        }
+
+        int shift = index / SUB_BUCKETS - 1;
+        int sub = index % SUB_BUCKETS;
+        return (((long) (SUB_BUCKETS + sub + 1)) << shift) - 1;
+    }
+}
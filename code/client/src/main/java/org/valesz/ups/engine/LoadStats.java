@@ -0,0 +1,134 @@
+package org.valesz.ups.engine;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistics collected by sessions during load test. Can be shared by any number of sessions.
+ *
+ * @author Zdenek Vales
+ */
+public class LoadStats {
+
+    private final LongAdder connects = new LongAdder();
+    private final LongAdder games = new LongAdder();
+    private final LongAdder turns = new LongAdder();
+    private final LongAdder rejectedTurns = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder resumes = new LongAdder();
+
+    private final LatencyHistogram connectLatency = new LatencyHistogram();
+    private final LatencyHistogram nickConfirmLatency = new LatencyHistogram();
+    private final LatencyHistogram turnConfirmLatency = new LatencyHistogram();
+    private final LatencyHistogram resumeLatency = new LatencyHistogram();
+
+    private final long start;
+
+    public LoadStats() {
+        start = System.nanoTime();
+    }
+
+    public void connected(long latencyNanos) {
+        connects.increment();
+        connectLatency.recordNanos(latencyNanos);
+    }
+
+    public void nickConfirmed(long latencyNanos) {
+        nickConfirmLatency.recordNanos(latencyNanos);
+    }
+
+    /**
+     * End turn was confirmed (by OK or error).
+     * @param latencyNanos Time from sending the end turn message to receiving the response.
+     * @param rejected True if the server has rejected the turn.
+     */
+    public void turnConfirmed(long latencyNanos, boolean rejected) {
+        turns.increment();
+        if(rejected) {
+            rejectedTurns.increment();
+        }
+        turnConfirmLatency.recordNanos(latencyNanos);
+    }
+
+    /**
+     * Lost connection was resumed.
+     * @param latencyNanos Time from the connection loss to the confirmed nick.
+     */
+    public void resumed(long latencyNanos) {
+        resumes.increment();
+        resumeLatency.recordNanos(latencyNanos);
+    }
+
+    public void gameFinished() {
+        games.increment();
+    }
+
+    public void sessionFailed() {
+        failures.increment();
+    }
+
+    public long getConnects() {
+        return connects.sum();
+    }
+
+    public long getGames() {
+        return games.sum();
+    }
+
+    public long getTurns() {
+        return turns.sum();
+    }
+
+    public long getRejectedTurns() {
+        return rejectedTurns.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    public long getResumes() {
+        return resumes.sum();
+    }
+
+    public LatencyHistogram getConnectLatency() {
+        return connectLatency;
+    }
+
+    public LatencyHistogram getNickConfirmLatency() {
+        return nickConfirmLatency;
+    }
+
+    public LatencyHistogram getTurnConfirmLatency() {
+        return turnConfirmLatency;
+    }
+
+    public LatencyHistogram getResumeLatency() {
+        return resumeLatency;
+    }
+
+    /**
+     * Prints the report to the output.
+     * @param out
+     */
+    public void report(PrintStream out) {
+        double seconds = Math.max(1, System.nanoTime() - start) / 1e9;
+
+        out.printf("Elapsed: %.1f s%n", seconds);
+        out.printf("Connects: %d (%.1f/s)%n", getConnects(), getConnects() / seconds);
+        out.printf("Games: %d (%.1f/min)%n", getGames(), getGames() / seconds * 60);
+        out.printf("Turns: %d (%.1f/s), rejected: %d%n", getTurns(), getTurns() / seconds, getRejectedTurns());
+        out.printf("Failed sessions: %d%n", getFailures());
+        out.printf("Resumed connections: %d%n", getResumes());
+        printLatency(out, "Connect", connectLatency);
+        printLatency(out, "Nick confirm", nickConfirmLatency);
+        printLatency(out, "End turn -> OK", turnConfirmLatency);
+        printLatency(out, "Connection lost -> resumed", resumeLatency);
+    }
+
+    private static void printLatency(PrintStream out, String name, LatencyHistogram histogram) {
+        out.printf("%s latency [us]: p50=%d p99=%d p999=%d (n=%d)%n", name,
+                histogram.getPercentile(50), histogram.getPercentile(99), histogram.getPercentile(99.9),
+                histogram.getCount());
+    }
+}
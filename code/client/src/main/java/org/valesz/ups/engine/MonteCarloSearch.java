@@ -0,0 +1,461 @@
+package org.valesz.ups.engine;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.valesz.ups.model.game.Board;
+import org.valesz.ups.model.game.MoveGenerator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Searches the best move for the thrown value by Monte Carlo Tree Search. Used for positions which are
+ * too deep for ExpectiminimaxSearch.
+ *
+ * Tree has decision nodes (the player moves by the thrown value, children are selected by UCT) and
+ * chance nodes (the player throws, child is sampled by THROW_WEIGHTS, the probabilities of Game.throwSticks()).
+ * Every iteration adds one node and finishes the game by a playout chosen by MovePolicy.
+ *
+ * Search is root-parallel: every task of the ForkJoinPool builds its own tree with its own random
+ * generator and nothing is shared until the visits of root moves are summed, so the number of playouts
+ * grows with the number of cores. Trees are arrays of the size given by the memory budget allocated by the first
+ * search and reused by next ones, when a tree is full, iterations just run playouts from its leaves.
+ *
+ * With the max number of playouts set, the result depends only on the seed. One instance should be used
+ * by one thread only.
+ *
+ * @author Zdenek Vales
+ */
+public class MonteCarloSearch implements MoveSearch {
+
+    private static final Logger logger = LogManager.getLogger(MonteCarloSearch.class);
+
+    /**
+     * Bytes used by one node of the tree.
+     */
+    public static final int NODE_BYTES = 24;
+
+    /**
+     * Default memory budget of all trees.
+     */
+    public static final long DEF_MEMORY = 64L << 20;
+
+    public static final double EXPLORATION = Math.sqrt(2);
+
+    /**
+     * Playout which doesn't end after this number of throws is decided by ExpectiminimaxSearch.evaluate().
+     */
+    public static final int MAX_PLAYOUT_THROWS = 1000;
+
+    /**
+     * Max depth of the tree.
+     */
+    public static final int MAX_PATH = 1024;
+
+    /**
+     * Playouts between checks of the time.
+     */
+    private static final int CHECK_INTERVAL = 16;
+
+    /**
+     * Thrown values for random.nextInt(WEIGHT_SUM), every value is there THROW_WEIGHTS times.
+     */
+    private static final int[] THROWS = new int[ExpectiminimaxSearch.WEIGHT_SUM];
+
+    static {
+        int i = 0;
+        for (int t = 1; t < ExpectiminimaxSearch.THROW_WEIGHTS.length; t++) {
+            for (int w = 0; w < ExpectiminimaxSearch.THROW_WEIGHTS[t]; w++) {
+                THROWS[i++] = t;
+            }
+        }
+    }
+
+    private final ForkJoinPool pool;
+    private final Tree[] trees;
+    private final MovePolicy policy;
+
+    private long maxPlayouts = Long.MAX_VALUE;
+
+    private long playouts;
+    private long elapsedNanos;
+    private long[] rootVisits = new long[0];
+
+    /**
+     * Uses all cores of the common pool, default memory and MovePolicy.GREEDY playouts.
+     * @param seed
+     */
+    public MonteCarloSearch(long seed) {
+        this(ForkJoinPool.commonPool(), ForkJoinPool.commonPool().getParallelism(), DEF_MEMORY, seed, MovePolicy.GREEDY);
+    }
+
+    /**
+     * @param pool Pool which runs the trees.
+     * @param trees Number of trees, usually the parallelism of the pool.
+     * @param memoryBytes Memory of all trees.
+     * @param seed Seed of random generators, tree i uses seed + i.
+     * @param policy Policy of playouts.
+     */
+    public MonteCarloSearch(ForkJoinPool pool, int trees, long memoryBytes, long seed, MovePolicy policy) {
+        this.pool = pool;
+        this.policy = policy;
+        this.trees = new Tree[Math.max(1, trees)];
+        long capacity = memoryBytes / this.trees.length / NODE_BYTES;
+        for (int i = 0; i < this.trees.length; i++) {
+            this.trees[i] = new Tree((int) Math.max(2 + MoveGenerator.MAX_MOVES, Math.min(capacity, Integer.MAX_VALUE - 8)), seed + i);
+        }
+    }
+
+    /**
+     * Throws the sticks with the probabilities of Game.throwSticks().
+     * @param random
+     * @return 1..5
+     */
+    static int throwSticks(SplittableRandom random) {
+        return THROWS[random.nextInt(THROWS.length)];
+    }
+
+    /**
+     * Limits the number of playouts of every tree, so that the result doesn't depend on the time.
+     * @param maxPlayouts
+     */
+    public void setMaxPlayouts(long maxPlayouts) {
+        this.maxPlayouts = maxPlayouts;
+    }
+
+    /**
+     * Number of playouts of all trees in the last search.
+     * @return
+     */
+    public long getPlayouts() {
+        return playouts;
+    }
+
+    public double getPlayoutsPerSecond() {
+        return elapsedNanos == 0 ? 0 : playouts * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * Number of nodes of all trees after the last search.
+     * @return
+     */
+    public long getTreeNodes() {
+        long nodes = 0;
+        for (Tree tree : trees) {
+            nodes += tree.size;
+        }
+        return nodes;
+    }
+
+    /**
+     * Memory used by nodes of all trees after the last search.
+     * @return
+     */
+    public long getTreeBytes() {
+        return getTreeNodes() * NODE_BYTES;
+    }
+
+    /**
+     * Memory of all trees, allocated by the first search.
+     * @return
+     */
+    public long getAllocatedBytes() {
+        long bytes = 0;
+        for (Tree tree : trees) {
+            bytes += (long) tree.capacity * NODE_BYTES;
+        }
+        return bytes;
+    }
+
+    /**
+     * Visits of the root moves summed over all trees in the last search, in the order of MoveGenerator.
+     * @return
+     */
+    public long[] getRootVisits() {
+        return rootVisits;
+    }
+
+    @Override
+    public int search(Board board, int player, int thrown, long budgetMs) {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(budgetMs);
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        int count = MoveGenerator.generate(board.getMask(player), board.getMask(3 - player), thrown, moves);
+        playouts = 0;
+        elapsedNanos = 0;
+        rootVisits = new long[count];
+        if(count == 0) {
+            return ExpectiminimaxSearch.NO_MOVE;
+        }
+        if(count == 1) {
+            return moves[0];
+        }
+
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(trees.length);
+        for (Tree tree : trees) {
+            tasks.add(pool.submit(() -> tree.search(board.getMask(1), board.getMask(2), player, thrown, deadline)));
+        }
+
+        long[] rootWins = new long[count];
+        for (int i = 0; i < trees.length; i++) {
+            tasks.get(i).join();
+            Tree tree = trees[i];
+            playouts += tree.playouts;
+            for (int c = 0; c < count; c++) {
+                rootVisits[c] += tree.visits[tree.firstChild[0] + c];
+                rootWins[c] += tree.wins[tree.firstChild[0] + c];
+            }
+        }
+        elapsedNanos = System.nanoTime() - start;
+        logger.debug(String.format("%d playouts in %d ms, %.0f playouts/s, trees use %d kB of %d kB.", playouts,
+                TimeUnit.NANOSECONDS.toMillis(elapsedNanos), getPlayoutsPerSecond(), getTreeBytes() >> 10, getAllocatedBytes() >> 10));
+
+        int best = 0;
+        for (int c = 1; c < count; c++) {
+            if(rootVisits[c] > rootVisits[best] || rootVisits[c] == rootVisits[best] && rootWins[c] > rootWins[best]) {
+                best = c;
+            }
+        }
+        return moves[best];
+    }
+
+    /**
+     * Tree of one task stored in arrays. Node 0 is the root decision node.
+     */
+    private class Tree {
+        private final int capacity;
+        private final SplittableRandom random;
+
+        private int[] firstMask;
+        private int[] secondMask;
+        /**
+         * 0 if the node isn't expanded.
+         */
+        private int[] firstChild;
+        private int[] visits;
+        /**
+         * Wins of the mover.
+         */
+        private int[] wins;
+        private byte[] childCount;
+        /**
+         * Player who throws or moves in the node.
+         */
+        private byte[] player;
+        /**
+         * Player who moved to the node, 0 for decision nodes.
+         */
+        private byte[] mover;
+        /**
+         * Thrown value for decision nodes, 0 for chance nodes.
+         */
+        private byte[] thrown;
+
+        private final int[] moves = new int[MoveGenerator.MAX_MOVES];
+        private final int[] path = new int[MAX_PATH];
+        private int size;
+        private long playouts;
+
+        private Tree(int capacity, long seed) {
+            this.capacity = capacity;
+            this.random = new SplittableRandom(seed);
+        }
+
+        private void allocate() {
+            firstMask = new int[capacity];
+            secondMask = new int[capacity];
+            firstChild = new int[capacity];
+            visits = new int[capacity];
+            wins = new int[capacity];
+            childCount = new byte[capacity];
+            player = new byte[capacity];
+            mover = new byte[capacity];
+            thrown = new byte[capacity];
+        }
+
+        private void search(int firstPlayerMask, int secondPlayerMask, int rootPlayer, int rootThrown, long deadline) {
+            if(firstMask == null) {
+                allocate();
+            }
+            size = 0;
+            playouts = 0;
+            int root = add(firstPlayerMask, secondPlayerMask, rootPlayer, rootThrown, 0);
+            expandDecision(root);
+
+            while (playouts < maxPlayouts && (playouts % CHECK_INTERVAL != 0 || System.nanoTime() - deadline < 0)) {
+                iterate();
+                playouts++;
+            }
+        }
+
+        /**
+         * Selects the path to a new node, runs the playout and updates nodes on the path.
+         */
+        private void iterate() {
+            int node = 0;
+            int length = 0;
+            path[length++] = node;
+            int winner = 0;
+
+            while (length < MAX_PATH) {
+                if(thrown[node] != 0) {
+                    if(firstChild[node] == 0 && !expandDecision(node)) {
+                        break;
+                    }
+                    node = select(node);
+                } else {
+                    winner = winner(node);
+                    if(winner != 0) {
+                        break;
+                    }
+                    if(firstChild[node] == 0 && !expandChance(node)) {
+                        break;
+                    }
+                    node = firstChild[node] + throwSticks(random) - 1;
+                }
+                path[length++] = node;
+                if(visits[node] == 0) {
+                    break;
+                }
+            }
+
+            if(winner == 0) {
+                winner = playout(node);
+            }
+            for (int i = 0; i < length; i++) {
+                int n = path[i];
+                visits[n]++;
+                if(mover[n] == winner) {
+                    wins[n]++;
+                }
+            }
+        }
+
+        /**
+         * Unvisited child first, otherwise the child with the best UCT.
+         */
+        private int select(int node) {
+            int first = firstChild[node];
+            int count = childCount[node];
+            double logVisits = Math.log(visits[node]);
+            int best = first;
+            double bestValue = -1;
+            for (int c = first; c < first + count; c++) {
+                if(visits[c] == 0) {
+                    return c;
+                }
+                double value = (double) wins[c] / visits[c] + EXPLORATION * Math.sqrt(logVisits / visits[c]);
+                if(value > bestValue) {
+                    bestValue = value;
+                    best = c;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Adds chance nodes for all moves, or one node if there's no move.
+         * @return False if the tree is full.
+         */
+        private boolean expandDecision(int node) {
+            int p = player[node];
+            int t = thrown[node];
+            int own = p == 1 ? firstMask[node] : secondMask[node];
+            int opponent = p == 1 ? secondMask[node] : firstMask[node];
+            int count = MoveGenerator.generate(own, opponent, t, moves);
+            if(size + Math.max(count, 1) > capacity) {
+                return false;
+            }
+
+            int next = t >= 4 ? p : 3 - p;
+            firstChild[node] = size;
+            childCount[node] = (byte) Math.max(count, 1);
+            if(count == 0) {
+                add(firstMask[node], secondMask[node], next, 0, p);
+            }
+            for (int i = 0; i < count; i++) {
+                int newOwn = MoveGenerator.playOwn(own, moves[i]);
+                int newOpponent = MoveGenerator.playOpponent(opponent, moves[i]);
+                add(p == 1 ? newOwn : newOpponent, p == 1 ? newOpponent : newOwn, next, 0, p);
+            }
+            return true;
+        }
+
+        /**
+         * Adds decision nodes for all thrown values.
+         * @return False if the tree is full.
+         */
+        private boolean expandChance(int node) {
+            int count = ExpectiminimaxSearch.THROW_WEIGHTS.length - 1;
+            if(size + count > capacity) {
+                return false;
+            }
+
+            firstChild[node] = size;
+            childCount[node] = (byte) count;
+            for (int t = 1; t <= count; t++) {
+                add(firstMask[node], secondMask[node], player[node], t, 0);
+            }
+            return true;
+        }
+
+        private int add(int first, int second, int nodePlayer, int nodeThrown, int nodeMover) {
+            int node = size++;
+            firstMask[node] = first;
+            secondMask[node] = second;
+            player[node] = (byte) nodePlayer;
+            thrown[node] = (byte) nodeThrown;
+            mover[node] = (byte) nodeMover;
+            firstChild[node] = 0;
+            childCount[node] = 0;
+            visits[node] = 0;
+            wins[node] = 0;
+            return node;
+        }
+
+        private int winner(int node) {
+            if(firstMask[node] == 0) {
+                return 1;
+            }
+            return secondMask[node] == 0 ? 2 : 0;
+        }
+
+        /**
+         * Plays the game from the node to the end.
+         * @return Winner.
+         */
+        private int playout(int node) {
+            int first = firstMask[node];
+            int second = secondMask[node];
+            int p = player[node];
+            int t = thrown[node];
+
+            for (int throwsLeft = MAX_PLAYOUT_THROWS; throwsLeft > 0; throwsLeft--) {
+                if(t == 0) {
+                    t = throwSticks(random);
+                }
+                int own = p == 1 ? first : second;
+                int opponent = p == 1 ? second : first;
+                int count = MoveGenerator.generate(own, opponent, t, moves);
+                if(count > 0) {
+                    int m = policy.choose(own, opponent, t, moves, count, random);
+                    own = MoveGenerator.playOwn(own, m);
+                    if(own == 0) {
+                        return p;
+                    }
+                    opponent = MoveGenerator.playOpponent(opponent, m);
+                    first = p == 1 ? own : opponent;
+                    second = p == 1 ? opponent : own;
+                }
+                p = t >= 4 ? p : 3 - p;
+                t = 0;
+            }
+
+            return ExpectiminimaxSearch.evaluate(first, second) >= 0 ? 1 : 2;
+        }
+    }
+}
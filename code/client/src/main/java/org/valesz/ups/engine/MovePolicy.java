@@ -0,0 +1,35 @@
+package org.valesz.ups.engine;
+
+import org.valesz.ups.model.game.MoveGenerator;
+
+import java.util.SplittableRandom;
+
+/**
+ * Chooses one of the generated moves without search. Used by playouts of MonteCarloSearch and by SelfPlaySimulator.
+ *
+ * @author Zdenek Vales
+ */
+public interface MovePolicy {
+
+    /**
+     * Plays random moves.
+     */
+    public static final MovePolicy RANDOM = (own, opponent, thrown, moves, count, random) -> moves[random.nextInt(count)];
+
+    /**
+     * Plays like SimpleStrategy: leaves the board if possible, otherwise moves the last stone forward.
+     */
+    public static final MovePolicy GREEDY = (own, opponent, thrown, moves, count, random) ->
+            MoveGenerator.isLeave(moves[count - 1]) ? moves[count - 1] : moves[0];
+
+    /**
+     * @param own Mask of stones of the player on turn.
+     * @param opponent Mask of opponent's stones.
+     * @param thrown
+     * @param moves Moves generated by MoveGenerator.
+     * @param count Number of moves, at least 1.
+     * @param random Random generator of the caller.
+     * @return Chosen move.
+     */
+    public int choose(int own, int opponent, int thrown, int[] moves, int count, SplittableRandom random);
+}
@@ -0,0 +1,21 @@
+package org.valesz.ups.engine;
+
+import org.valesz.ups.model.game.Board;
+
+/**
+ * Searches the best move of the player for the thrown value.
+ *
+ * @author Zdenek Vales
+ */
+public interface MoveSearch {
+
+    /**
+     * Searches the best move of the player.
+     * @param board
+     * @param player Player on turn, 1 or 2.
+     * @param thrown Thrown value 1..5.
+     * @param budgetMs Max time of the search.
+     * @return Move encoded by MoveGenerator or ExpectiminimaxSearch.NO_MOVE if there's no possible move.
+     */
+    public int search(Board board, int player, int thrown, long budgetMs);
+}
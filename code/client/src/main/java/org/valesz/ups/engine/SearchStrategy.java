@@ -0,0 +1,49 @@
+package org.valesz.ups.engine;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.valesz.ups.model.game.Game;
+import org.valesz.ups.model.game.MoveGenerator;
+
+/**
+ * Plays the move found by MoveSearch for every throw, ExpectiminimaxSearch is used by default.
+ *
+ * Strategy keeps its own search, so one instance should be used by one session only.
+ *
+ * @author Zdenek Vales
+ */
+public class SearchStrategy implements TurnStrategy {
+
+    private static final Logger logger = LogManager.getLogger(SearchStrategy.class);
+
+    private final MoveSearch search;
+    private final long budgetMs;
+
+    public SearchStrategy(long budgetMs) {
+        this(new ExpectiminimaxSearch(), budgetMs);
+    }
+
+    /**
+     * @param search
+     * @param budgetMs Time of the search of one throw. Throw of 4 or 5 is followed by another search,
+     *                 so the turn should take several budgets at most.
+     */
+    public SearchStrategy(MoveSearch search, long budgetMs) {
+        this.search = search;
+        this.budgetMs = budgetMs;
+    }
+
+    @Override
+    public void playTurn(Game game) {
+        do {
+            int thrown = game.throwSticks();
+            int move = search.search(game.getBoard(), game.getCurrentPlayerNum(), thrown, budgetMs);
+            if(move == ExpectiminimaxSearch.NO_MOVE) {
+                continue;
+            }
+
+            logger.trace(String.format("Thrown %d, moving %d -> %d.", thrown, MoveGenerator.getFrom(move), MoveGenerator.getTo(move)));
+            game.playMove(move);
+        } while (game.canThrowAgain());
+    }
+}
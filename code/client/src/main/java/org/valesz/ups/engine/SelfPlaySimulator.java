@@ -0,0 +1,172 @@
+package org.valesz.ups.engine;
+
+import org.valesz.ups.model.game.Board;
+import org.valesz.ups.model.game.MoveGenerator;
+import org.valesz.ups.model.game.Player;
+import org.valesz.ups.server.TurnValidator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Plays complete games in process by the rules of Game, with moves chosen by MovePolicy for each player.
+ * Used to get statistics of the rules, like first player advantage or length of games, without the server.
+ *
+ * Games are split into shards run by the ForkJoinPool. Every shard has its own SplittableRandom stream
+ * and its own SelfPlayStats, which are merged when all shards are finished, so the result depends only
+ * on the seed and the number of shards.
+ *
+ * Every turn can be also checked by TurnValidator, to count turns which the server would reject
+ * with BAD_TURN. Validation is much slower than the game itself.
+ *
+ * @author Zdenek Vales
+ */
+public class SelfPlaySimulator {
+
+    /**
+     * Game which isn't finished after this number of turns is counted as unfinished.
+     */
+    public static final int MAX_TURNS = 10000;
+
+    private static final int FIRST_PLAYER_MASK = Board.toMask(new Player("", Player.FIRST_PLAYER_INIT_POS).getStones());
+    private static final int SECOND_PLAYER_MASK = Board.toMask(new Player("", Player.SECOND_PLAYER_INIT_POS).getStones());
+
+    private final ForkJoinPool pool;
+    private final int shards;
+    private final MovePolicy firstPlayerPolicy;
+    private final MovePolicy secondPlayerPolicy;
+    private final long seed;
+
+    private boolean validate;
+
+    /**
+     * Uses all cores of the common pool.
+     * @param firstPlayerPolicy
+     * @param secondPlayerPolicy
+     * @param seed
+     */
+    public SelfPlaySimulator(MovePolicy firstPlayerPolicy, MovePolicy secondPlayerPolicy, long seed) {
+        this(ForkJoinPool.commonPool(), ForkJoinPool.commonPool().getParallelism(), firstPlayerPolicy, secondPlayerPolicy, seed);
+    }
+
+    /**
+     * @param pool Pool which runs the shards.
+     * @param shards Number of shards, usually the parallelism of the pool.
+     * @param firstPlayerPolicy
+     * @param secondPlayerPolicy
+     * @param seed Seed of the stream which is split to shards.
+     */
+    public SelfPlaySimulator(ForkJoinPool pool, int shards, MovePolicy firstPlayerPolicy, MovePolicy secondPlayerPolicy, long seed) {
+        this.pool = pool;
+        this.shards = Math.max(1, shards);
+        this.firstPlayerPolicy = firstPlayerPolicy;
+        this.secondPlayerPolicy = secondPlayerPolicy;
+        this.seed = seed;
+    }
+
+    /**
+     * If true, every turn is checked by TurnValidator.
+     * @param validate
+     */
+    public void setValidate(boolean validate) {
+        this.validate = validate;
+    }
+
+    /**
+     * Plays the games and waits until they are finished.
+     * @param games
+     * @return Merged stats of all shards.
+     */
+    public SelfPlayStats run(long games) {
+        long start = System.nanoTime();
+        SplittableRandom random = new SplittableRandom(seed);
+        List<ForkJoinTask<SelfPlayStats>> tasks = new ArrayList<>(shards);
+        for (int i = 0; i < shards; i++) {
+            long shardGames = games / shards + (i < games % shards ? 1 : 0);
+            SplittableRandom shardRandom = random.split();
+            tasks.add(pool.submit(() -> play(shardGames, shardRandom)));
+        }
+
+        SelfPlayStats stats = new SelfPlayStats();
+        for (ForkJoinTask<SelfPlayStats> task : tasks) {
+            stats.merge(task.join());
+        }
+        stats.setElapsedNanos(System.nanoTime() - start);
+        return stats;
+    }
+
+    /**
+     * Plays games of one shard.
+     */
+    private SelfPlayStats play(long games, SplittableRandom random) {
+        SelfPlayStats stats = new SelfPlayStats();
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        TurnValidator validator = validate ? new TurnValidator() : null;
+        Board before = new Board();
+        Board after = new Board();
+
+        for (long game = 0; game < games; game++) {
+            // masks of the player on turn and his opponent, swapped after every turn
+            int own = FIRST_PLAYER_MASK;
+            int opponent = SECOND_PLAYER_MASK;
+            int player = 1;
+            int winner = 0;
+            int turn = 0;
+            long throwsCount = 0;
+            long passes = 0;
+
+            while (winner == 0 && turn < MAX_TURNS) {
+                turn++;
+                if(validator != null) {
+                    setBoard(before, own, opponent, player);
+                }
+                MovePolicy policy = player == 1 ? firstPlayerPolicy : secondPlayerPolicy;
+                int throwsInTurn = 0;
+                int thrown;
+                do {
+                    thrown = MonteCarloSearch.throwSticks(random);
+                    throwsInTurn++;
+                    int count = MoveGenerator.generate(own, opponent, thrown, moves);
+                    if(count == 0) {
+                        passes++;
+                        continue;
+                    }
+
+                    int move = policy.choose(own, opponent, thrown, moves, count, random);
+                    opponent = MoveGenerator.playOpponent(opponent, move);
+                    own = MoveGenerator.playOwn(own, move);
+                    if(own == 0) {
+                        winner = player;
+                    }
+                } while (thrown >= 4 && winner == 0);
+
+                throwsCount += throwsInTurn;
+                stats.turnPlayed(throwsInTurn);
+                if(validator != null) {
+                    setBoard(after, own, opponent, player);
+                    stats.turnValidated(validator.isValidTurn(before, after, player), throwsInTurn);
+                }
+
+                int tmp = own;
+                own = opponent;
+                opponent = tmp;
+                player = 3 - player;
+            }
+
+            stats.gamePlayed(winner, turn, throwsCount, passes);
+        }
+
+        return stats;
+    }
+
+    private static void setBoard(Board board, int own, int opponent, int player) {
+        if(player == 1) {
+            board.set(own, opponent);
+        } else {
+            board.set(opponent, own);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package org.valesz.ups.engine;
+
+import org.valesz.ups.server.TurnValidator;
+
+import java.io.PrintStream;
+
+/**
+ * Results of games played by SelfPlaySimulator. Every shard counts its own games and the stats
+ * are merged when all shards are finished, so the class isn't thread safe.
+ *
+ * @author Zdenek Vales
+ */
+public class SelfPlayStats {
+
+    /**
+     * Turns with more throws are counted in the last item of the histogram.
+     */
+    public static final int MAX_COUNTED_THROWS = 16;
+
+    private long games;
+    private long firstPlayerWins;
+    private long secondPlayerWins;
+    private long turns;
+    private long maxTurns;
+    private long throwsCount;
+    private long passes;
+    private final long[] throwsPerTurn = new long[MAX_COUNTED_THROWS + 1];
+
+    private long validatedTurns;
+    private long rejectedLongTurns;
+    private long rejectedOtherTurns;
+
+    private long elapsedNanos;
+
+    /**
+     * Counts finished turn.
+     * @param throwsInTurn
+     */
+    void turnPlayed(int throwsInTurn) {
+        turns++;
+        throwsPerTurn[Math.min(throwsInTurn, MAX_COUNTED_THROWS)]++;
+    }
+
+    /**
+     * Counts the turn checked by TurnValidator.
+     * @param valid
+     * @param throwsInTurn
+     */
+    void turnValidated(boolean valid, int throwsInTurn) {
+        validatedTurns++;
+        if(!valid) {
+            if(throwsInTurn > TurnValidator.MAX_THROWS) {
+                rejectedLongTurns++;
+            } else {
+                rejectedOtherTurns++;
+            }
+        }
+    }
+
+    /**
+     * Counts finished game.
+     * @param winner 1 or 2, 0 if the game wasn't finished.
+     * @param gameTurns
+     * @param gameThrows
+     * @param gamePasses Throws without any possible move.
+     */
+    void gamePlayed(int winner, int gameTurns, long gameThrows, long gamePasses) {
+        games++;
+        throwsCount += gameThrows;
+        passes += gamePasses;
+        if(winner == 1) {
+            firstPlayerWins++;
+        } else if (winner == 2) {
+            secondPlayerWins++;
+        }
+        maxTurns = Math.max(maxTurns, gameTurns);
+    }
+
+    void setElapsedNanos(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Adds the stats of other shard.
+     * @param other
+     */
+    public void merge(SelfPlayStats other) {
+        games += other.games;
+        firstPlayerWins += other.firstPlayerWins;
+        secondPlayerWins += other.secondPlayerWins;
+        turns += other.turns;
+        maxTurns = Math.max(maxTurns, other.maxTurns);
+        throwsCount += other.throwsCount;
+        passes += other.passes;
+        for (int i = 0; i < throwsPerTurn.length; i++) {
+            throwsPerTurn[i] += other.throwsPerTurn[i];
+        }
+        validatedTurns += other.validatedTurns;
+        rejectedLongTurns += other.rejectedLongTurns;
+        rejectedOtherTurns += other.rejectedOtherTurns;
+    }
+
+    public long getGames() {
+        return games;
+    }
+
+    public long getFirstPlayerWins() {
+        return firstPlayerWins;
+    }
+
+    public long getSecondPlayerWins() {
+        return secondPlayerWins;
+    }
+
+    /**
+     * Games which reached SelfPlaySimulator.MAX_TURNS.
+     * @return
+     */
+    public long getUnfinished() {
+        return games - firstPlayerWins - secondPlayerWins;
+    }
+
+    public long getTurns() {
+        return turns;
+    }
+
+    public long getMaxTurns() {
+        return maxTurns;
+    }
+
+    public long getThrows() {
+        return throwsCount;
+    }
+
+    /**
+     * Throws without any possible move.
+     * @return
+     */
+    public long getPasses() {
+        return passes;
+    }
+
+    /**
+     * Number of turns with the given number of throws.
+     * @param throwsInTurn
+     * @return
+     */
+    public long getTurns(int throwsInTurn) {
+        return throwsInTurn < 0 || throwsInTurn > MAX_COUNTED_THROWS ? 0 : throwsPerTurn[throwsInTurn];
+    }
+
+    /**
+     * Turns with more throws than TurnValidator.MAX_THROWS, which the validator can't always reach.
+     * @return
+     */
+    public long getLongTurns() {
+        long count = 0;
+        for (int i = TurnValidator.MAX_THROWS + 1; i < throwsPerTurn.length; i++) {
+            count += throwsPerTurn[i];
+        }
+        return count;
+    }
+
+    public long getValidatedTurns() {
+        return validatedTurns;
+    }
+
+    /**
+     * Valid turns rejected by TurnValidator with BAD_TURN because they have more than MAX_THROWS throws.
+     * @return
+     */
+    public long getRejectedLongTurns() {
+        return rejectedLongTurns;
+    }
+
+    /**
+     * Valid turns rejected by TurnValidator with BAD_TURN for other reason (MAX_STATES reached).
+     * @return
+     */
+    public long getRejectedOtherTurns() {
+        return rejectedOtherTurns;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public double getGamesPerSecond() {
+        return elapsedNanos == 0 ? 0 : games * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * Prints the report to the output.
+     * @param out
+     */
+    public void report(PrintStream out) {
+        double finished = Math.max(1, firstPlayerWins + secondPlayerWins);
+        out.printf("Elapsed: %.1f s%n", elapsedNanos / 1e9);
+        out.printf("Games: %d (%.0f/s), unfinished: %d%n", games, getGamesPerSecond(), getUnfinished());
+        out.printf("First player wins: %.3f %%, second player wins: %.3f %%%n",
+                100 * firstPlayerWins / finished, 100 * secondPlayerWins / finished);
+        out.printf("Game length: %.1f turns avg, %d max, %.1f throws avg%n",
+                turns / (double) Math.max(1, games), maxTurns, throwsCount / (double) Math.max(1, games));
+        out.printf("Throws without move: %.2f %%%n", 100.0 * passes / Math.max(1, throwsCount));
+        out.printf("Turns with more than %d throws: %d (%.5f %%)%n", TurnValidator.MAX_THROWS, getLongTurns(),
+                100.0 * getLongTurns() / Math.max(1, turns));
+        if(validatedTurns > 0) {
+            out.printf("BAD_TURN of valid turns: %d too long, %d other (of %d validated)%n",
+                    rejectedLongTurns, rejectedOtherTurns, validatedTurns);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package org.valesz.ups.engine;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Runs headless sessions concurrently on a thread pool.
+ *
+ * Each running session occupies one thread while it waits for messages, so the pool
+ * should be at least as big as the number of sessions which should play at once.
+ *
+ * @author Zdenek Vales
+ */
+public class SenetEngine {
+
+    private static final Logger logger = LogManager.getLogger(SenetEngine.class);
+
+    private final ExecutorService executor;
+
+    public SenetEngine(int threads) {
+        executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private int cntr = 0;
+
+            @Override
+            public synchronized Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "senet-session-"+(cntr++));
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Starts the session.
+     * @param session
+     * @return
+     */
+    public Future<SessionResult> submit(SenetSession session) {
+        return executor.submit(session);
+    }
+
+    /**
+     * Runs all sessions and waits until they're finished.
+     * @param sessions
+     * @return Results in the same order as sessions.
+     * @throws InterruptedException
+     */
+    public List<SessionResult> runAll(List<SenetSession> sessions) throws InterruptedException {
+        List<Future<SessionResult>> futures = new ArrayList<>(sessions.size());
+        for (SenetSession session : sessions) {
+            futures.add(submit(session));
+        }
+
+        List<SessionResult> results = new ArrayList<>(sessions.size());
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                results.add(futures.get(i).get());
+            } catch (ExecutionException ex) {
+                // call() catches all exceptions, this shouldn't happen
+                logger.error("Session failed: "+ex.getCause());
+                SessionResult result = new SessionResult(sessions.get(i).getNick());
+                result.setError(ex);
+                results.add(result);
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Stops the engine, running sessions are interrupted.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
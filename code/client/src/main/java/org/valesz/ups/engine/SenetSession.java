@@ -0,0 +1,373 @@
+package org.valesz.ups.engine;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.valesz.ups.common.error.EndOfStreamReached;
+import org.valesz.ups.common.error.Error;
+import org.valesz.ups.common.error.MaxAttemptsReached;
+import org.valesz.ups.common.error.ReceivingException;
+import org.valesz.ups.common.message.received.*;
+import org.valesz.ups.model.game.Game;
+import org.valesz.ups.network.MessageDispatcher.Request;
+import org.valesz.ups.network.NioTransport;
+import org.valesz.ups.network.SenetConnection;
+import org.valesz.ups.network.ServerSelector;
+import org.valesz.ups.network.SessionResumer;
+import org.valesz.ups.network.TurnClock;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Headless player. Logs in, waits for the game to start and plays turns chosen by TurnStrategy
+ * until the game ends. No JavaFX is needed, so many sessions can run in one JVM.
+ *
+ * Every session has its own Game and SenetConnection. If resume is set, lost connection during game
+ * is replaced by a new one to the same server, see SessionResumer.
+ *
+ * If the transport is set, connections are made by NioTransport and servers are tried one by one
+ * in the order of ServerSelector.rank(). Otherwise ServerSelector connects blocking sockets.
+ *
+ * @author Zdenek Vales
+ */
+public class SenetSession implements Callable<SessionResult> {
+
+    private static final Logger logger = LogManager.getLogger(SenetSession.class);
+
+    /**
+     * Max time for turn, same as in the GUI client. In ms.
+     */
+    public static final int MAX_TURN_TIME_MS = 2*60*1000;
+
+    /**
+     * Kinds of messages received during the game.
+     */
+    private enum Received {
+        START_TURN,
+        TURN_OK,
+        TURN_REJECTED,
+        END_GAME,
+        OTHER
+    }
+
+    /**
+     * Resolves the kind of message by one call of accept().
+     */
+    private static final ReceivedMessageVisitor<Received> KIND = new ReceivedMessageAdapter<Received>() {
+        @Override
+        protected Received visitOther(AbstractReceivedMessage message) {
+            return Received.OTHER;
+        }
+
+        @Override
+        public Received visitOk(OkReceivedMessage message) {
+            return Received.TURN_OK;
+        }
+
+        @Override
+        public Received visitError(ErrorReceivedMessage message) {
+            return Received.TURN_REJECTED;
+        }
+
+        @Override
+        public Received visitStartTurn(StartTurnReceivedMessage message) {
+            return Received.START_TURN;
+        }
+
+        @Override
+        public Received visitEndGame(EndGameReceivedMessage message) {
+            return Received.END_GAME;
+        }
+    };
+
+    private final String address;
+    private final int port;
+    private final String nick;
+    private final TurnStrategy strategy;
+    private final Game game;
+
+    /**
+     * Time to wait before the turn is sent. In ms.
+     */
+    private int turnDelayMs;
+
+    /**
+     * Statistics of load test, may be null.
+     */
+    private LoadStats stats;
+
+    /**
+     * If true, binary turn words are negotiated after login.
+     */
+    private boolean binaryTurnWords;
+
+    /**
+     * If true, lost connection during game is resumed by SessionResumer.
+     */
+    private boolean resume;
+
+    /**
+     * Transport shared by sessions, null for blocking sockets.
+     */
+    private NioTransport transport;
+
+    /**
+     * Current connection and the server it's connected to.
+     */
+    private SenetConnection connection;
+    private InetSocketAddress server;
+
+    /**
+     * Set after resume, the next start turn starts my turn regardless of the local state.
+     */
+    private boolean resumed;
+
+    public SenetSession(String address, int port, String nick) {
+        this(address, port, nick, new SimpleStrategy());
+    }
+
+    public SenetSession(String address, int port, String nick, TurnStrategy strategy) {
+        this.address = address;
+        this.port = port;
+        this.nick = nick;
+        this.strategy = strategy;
+        this.game = new Game();
+        this.turnDelayMs = 0;
+    }
+
+    public String getNick() {
+        return nick;
+    }
+
+    public Game getGame() {
+        return game;
+    }
+
+    /**
+     * Current connection, it's replaced when the session is resumed. Null if the session isn't running.
+     * @return
+     */
+    public SenetConnection getConnection() {
+        return connection;
+    }
+
+    public void setTurnDelayMs(int turnDelayMs) {
+        this.turnDelayMs = turnDelayMs;
+    }
+
+    public void setStats(LoadStats stats) {
+        this.stats = stats;
+    }
+
+    public void setBinaryTurnWords(boolean binaryTurnWords) {
+        this.binaryTurnWords = binaryTurnWords;
+    }
+
+    public void setResume(boolean resume) {
+        this.resume = resume;
+    }
+
+    public void setTransport(NioTransport transport) {
+        this.transport = transport;
+    }
+
+    @Override
+    public SessionResult call() {
+        SessionResult result = new SessionResult(nick);
+        long start = System.currentTimeMillis();
+
+        long connectStart = System.nanoTime();
+        try {
+            connect();
+            if(stats != null) {
+                stats.connected(System.nanoTime() - connectStart);
+            }
+            login(connection);
+            play(result);
+            if(stats != null) {
+                stats.gameFinished();
+            }
+        } catch (Exception ex) {
+            logger.error("Session "+nick+" failed: "+ex);
+            result.setError(ex);
+            if(stats != null) {
+                stats.sessionFailed();
+            }
+        } finally {
+            if(connection != null) {
+                connection.close();
+                connection = null;
+            }
+        }
+
+        result.setDurationMs(System.currentTimeMillis() - start);
+        game.resetGame();
+        return result;
+    }
+
+    /**
+     * Connects to one of the servers and sets the connection and server.
+     */
+    private void connect() throws IOException, InterruptedException {
+        List<InetSocketAddress> servers = ServerSelector.parse(address, port);
+        if(transport == null) {
+            ServerSelector.Candidate selected = new ServerSelector(servers, ServerSelector.CONNECT_TIMEOUT).select();
+            connection = selected.getConnection();
+            server = selected.getAddress();
+            return;
+        }
+
+        IOException lastError = null;
+        for (InetSocketAddress candidate : ServerSelector.rank(servers)) {
+            try {
+                connection = SenetConnection.connect(transport, candidate.getHostString(), candidate.getPort(), ServerSelector.CONNECT_TIMEOUT);
+                server = candidate;
+                return;
+            } catch (IOException ex) {
+                logger.debug("Server "+ServerSelector.name(candidate)+" failed: "+ex.getMessage());
+                lastError = ex;
+            }
+        }
+        throw lastError;
+    }
+
+    /**
+     * Sends the nick and waits for confirmation.
+     */
+    private void login(SenetConnection connection) throws Exception {
+        long sent = System.nanoTime();
+        AbstractReceivedMessage response = expect(connection.waitForResponse(connection.sendNick(nick)));
+        if(stats != null) {
+            stats.nickConfirmed(System.nanoTime() - sent);
+        }
+        ErrorReceivedMessage err = ReceivedMessageTypeResolver.isError(response);
+        if(err != null) {
+            logger.error("Server rejected nick "+nick+": "+err.getContent());
+            throw new ReceivingException(err.getContent());
+        }
+
+        logger.debug("Login of "+nick+" ok.");
+        game.waitingForOpponent(nick);
+
+        if(binaryTurnWords && !connection.negotiateBinary()) {
+            logger.debug("Server doesn't support binary turn words, "+nick+" uses text.");
+        }
+    }
+
+    /**
+     * Waits for start game and plays until the end game is received.
+     */
+    private void play(SessionResult result) throws Exception {
+        StartGameReceivedMessage startGame = ReceivedMessageTypeResolver.isStartGame(expect(connection.waitForStartGame()));
+        game.startGame(startGame.getFirstNickname(), startGame.getSecondNickname());
+        logger.debug("Game of "+nick+" has started.");
+        TurnClock turnClock = new TurnClock(MAX_TURN_TIME_MS, 0, clock -> logger.warn("Time for turn of "+nick+" expired."));
+
+        // the first player doesn't receive the start turn message
+        AbstractReceivedMessage<?> message = null;
+        if(!game.isMyTurn()) {
+            message = waitForMyTurn(result);
+        }
+
+        while (true) {
+            Received kind = message == null ? Received.OTHER : message.accept(KIND);
+            if(kind == Received.END_GAME) {
+                String winner = ((EndGameReceivedMessage) message).getContent();
+                logger.debug("Game of "+nick+" ended, winner: "+winner);
+                result.setWinner(winner);
+                return;
+            }
+
+            if(kind == Received.START_TURN) {
+                StartTurnReceivedMessage startTurn = (StartTurnReceivedMessage) message;
+                if(resumed) {
+                    // local turn may be switched already if the connection was lost after the end turn
+                    game.resumeTurn(startTurn.getFirstPlayerStones(), startTurn.getSecondPlayerStones());
+                    resumed = false;
+                } else {
+                    game.newTurn(startTurn.getFirstPlayerStones(), startTurn.getSecondPlayerStones());
+                }
+            }
+
+            // my turn, the delay never exceeds the time left
+            turnClock.start(connection.getDispatcher());
+            strategy.playTurn(game);
+            if(turnDelayMs > 0) {
+                Thread.sleep(Math.min(turnDelayMs, turnClock.getRemainingMs()));
+            }
+            turnClock.cancel();
+            game.endTurn();
+            long sent = System.nanoTime();
+            try {
+                Request endTurn = connection.sendEndTurn(game.getFirstPlayer().getStones(), game.getSecondPlayer().getStones());
+                result.turnPlayed();
+                message = expect(connection.waitForResponse(endTurn));
+            } catch (IOException | EndOfStreamReached | MaxAttemptsReached ex) {
+                // server sends the start turn again if the end turn was lost
+                resume(result, ex);
+                message = waitForMyTurn(result);
+                continue;
+            }
+
+            kind = message.accept(KIND);
+            boolean rejected = kind == Received.TURN_REJECTED;
+            if(rejected) {
+                logger.warn("Turn of "+nick+" rejected.");
+                result.turnRejected();
+            }
+            if(kind != Received.END_GAME) {
+                if(stats != null) {
+                    stats.turnConfirmed(System.nanoTime() - sent, rejected);
+                }
+                message = waitForMyTurn(result);
+            }
+        }
+    }
+
+    /**
+     * Waits for start turn or end game, the session is resumed if the connection is lost.
+     */
+    private AbstractReceivedMessage waitForMyTurn(SessionResult result) throws Exception {
+        while (true) {
+            try {
+                return expect(connection.waitForMyTurn());
+            } catch (IOException | EndOfStreamReached | MaxAttemptsReached ex) {
+                resume(result, ex);
+            }
+        }
+    }
+
+    /**
+     * Replaces the lost connection by a new one to the same server. Throws the cause if resuming
+     * is disabled or fails.
+     */
+    private void resume(SessionResult result, Exception cause) throws Exception {
+        long lostAt = System.nanoTime();
+        if(!resume) {
+            throw cause;
+        }
+
+        logger.warn("Connection of "+nick+" lost: "+cause.getMessage()+", resuming.");
+        connection.close();
+        connection = null;
+        SessionResumer resumer = new SessionResumer(server, nick, binaryTurnWords, transport);
+        connection = resumer.resume(lostAt);
+        resumed = true;
+        result.resumed(resumer.getResumeNanos());
+        if(stats != null) {
+            stats.resumed(resumer.getResumeNanos());
+        }
+    }
+
+    /**
+     * Null is returned only if the waiting was cancelled.
+     */
+    private AbstractReceivedMessage expect(AbstractReceivedMessage message) throws ReceivingException {
+        if(message == null) {
+            throw new ReceivingException(Error.GENERAL_ERROR("Waiting for message cancelled."));
+        }
+        return message;
+    }
+}
@@ -0,0 +1,133 @@
+package org.valesz.ups.engine;
+
+/**
+ * Result of one headless session.
+ *
+ * @author Zdenek Vales
+ */
+public class SessionResult {
+
+    private final String nick;
+
+    /**
+     * Nick of the winner or null if the game hasn't ended properly.
+     */
+    private String winner;
+
+    /**
+     * Number of turns sent to server.
+     */
+    private int turns;
+
+    /**
+     * Number of turns the server didn't accept.
+     */
+    private int rejectedTurns;
+
+    /**
+     * Exception which ended the session or null.
+     */
+    private Exception error;
+
+    private long durationMs;
+
+    /**
+     * Number of times the lost connection was resumed and the total time of resuming.
+     */
+    private int resumes;
+    private long resumeNanos;
+
+    public SessionResult(String nick) {
+        this.nick = nick;
+    }
+
+    public String getNick() {
+        return nick;
+    }
+
+    public String getWinner() {
+        return winner;
+    }
+
+    public void setWinner(String winner) {
+        this.winner = winner;
+    }
+
+    /**
+     * Returns true if the game has ended and I am the winner.
+     * @return
+     */
+    public boolean isWinner() {
+        return nick.equals(winner);
+    }
+
+    public int getTurns() {
+        return turns;
+    }
+
+    public void turnPlayed() {
+        turns++;
+    }
+
+    public int getRejectedTurns() {
+        return rejectedTurns;
+    }
+
+    public void turnRejected() {
+        rejectedTurns++;
+    }
+
+    public Exception getError() {
+        return error;
+    }
+
+    public void setError(Exception error) {
+        this.error = error;
+    }
+
+    /**
+     * Returns true if the game has ended without error.
+     * @return
+     */
+    public boolean isOk() {
+        return error == null && winner != null;
+    }
+
+    public long getDurationMs() {
+        return durationMs;
+    }
+
+    public void setDurationMs(long durationMs) {
+        this.durationMs = durationMs;
+    }
+
+    public int getResumes() {
+        return resumes;
+    }
+
+    /**
+     * Total time from connection losses to confirmed nicks, in ns.
+     * @return
+     */
+    public long getResumeNanos() {
+        return resumeNanos;
+    }
+
+    public void resumed(long resumeNanos) {
+        resumes++;
+        this.resumeNanos += resumeNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "SessionResult{" +
+                "nick='" + nick + '\'' +
+                ", winner='" + winner + '\'' +
+                ", turns=" + turns +
+                ", rejectedTurns=" + rejectedTurns +
+                ", resumes=" + resumes +
+                ", error=" + error +
+                ", durationMs=" + durationMs +
+                '}';
+    }
+}
@@ -0,0 +1,31 @@
+package org.valesz.ups.engine;
+
+import org.valesz.ups.model.game.Game;
+import org.valesz.ups.model.game.MoveGenerator;
+
+/**
+ * Plays the first possible move. Stone on the last field always leaves the board, otherwise
+ * forward moves are preferred to backward ones.
+ *
+ * Strategy keeps its own buffer of moves, so one instance should be used by one session only.
+ *
+ * @author Zdenek Vales
+ */
+public class SimpleStrategy implements TurnStrategy {
+
+    private final int[] moves = new int[MoveGenerator.MAX_MOVES];
+
+    @Override
+    public void playTurn(Game game) {
+        do {
+            game.throwSticks();
+            int count = game.generateMoves(moves);
+            if(count == 0) {
+                continue;
+            }
+
+            // leaving the board is always the last move, forward moves are the first ones
+            game.playMove(MoveGenerator.isLeave(moves[count - 1]) ? moves[count - 1] : moves[0]);
+        } while (game.canThrowAgain());
+    }
+}
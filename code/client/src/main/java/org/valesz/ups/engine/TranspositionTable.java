@@ -0,0 +1,170 @@
+package org.valesz.ups.engine;
+
+import org.valesz.ups.model.game.PositionKey;
+
+import java.util.Arrays;
+
+/**
+ * Fixed size hash table of searched positions, indexed by PositionKey.hash().
+ *
+ * Every entry is two longs in one primitive array: the data (value, depth, bound, best move and generation)
+ * and the exact key xored with the data. Threads read and write entries without locks, entry half-written by
+ * other thread doesn't match its key and is treated as missing, so the table can be shared by concurrent searches.
+ *
+ * Entries are in buckets of two. The first entry of the bucket is replaced by deeper searches or by any
+ * search if it's from older generation, the second one is always replaced.
+ *
+ * @author Zdenek Vales
+ */
+public class TranspositionTable {
+
+    /**
+     * Returned by probe() if the position isn't in the table.
+     */
+    public static final long MISS = 0;
+
+    /**
+     * Value is exact, lower bound or upper bound of the position.
+     */
+    public static final int EXACT = 1;
+    public static final int LOWER = 2;
+    public static final int UPPER = 3;
+
+    /**
+     * Bytes of one entry.
+     */
+    public static final int ENTRY_BYTES = 16;
+
+    /**
+     * Default size of the table.
+     */
+    public static final long DEF_MEMORY = 64L << 20;
+
+    private static final int DEPTH_SHIFT = 32;
+    private static final int BOUND_SHIFT = 40;
+    private static final int MOVE_SHIFT = 42;
+    private static final int GENERATION_SHIFT = 56;
+    private static final long DEPTH_MASK = 0xFF;
+    private static final long MOVE_MASK = 0x7FF;
+
+    private final long[] entries;
+    private final int bucketMask;
+
+    /**
+     * Generation of entries stored by current searches. Concurrent increments may be lost, which only makes
+     * the entries older later.
+     */
+    private volatile int generation;
+
+    /**
+     * @param memoryBytes Size of the table, rounded down to the power of two entries.
+     */
+    public TranspositionTable(long memoryBytes) {
+        long buckets = Long.highestOneBit(Math.max(1, memoryBytes / (2 * ENTRY_BYTES)));
+        buckets = Math.min(buckets, 1 << 26);
+        entries = new long[(int) buckets * 4];
+        bucketMask = (int) buckets - 1;
+    }
+
+    /**
+     * Starts a new search, entries of previous searches are replaced first.
+     */
+    public void newSearch() {
+        generation = (generation + 1) & 0xFF;
+    }
+
+    public void clear() {
+        Arrays.fill(entries, 0);
+    }
+
+    public int getEntries() {
+        return entries.length / 2;
+    }
+
+    public long getBytes() {
+        return (long) entries.length * Long.BYTES;
+    }
+
+    /**
+     * Returns the data of the position.
+     * @param key Key of the position from PositionKey.
+     * @return Data for getValue(), getDepth(), getBound() and getMove() or MISS.
+     */
+    public long probe(long key) {
+        int index = index(key);
+        long data = entries[index];
+        if(data != MISS && (entries[index + 1] ^ data) == key) {
+            return data;
+        }
+        data = entries[index + 2];
+        if(data != MISS && (entries[index + 3] ^ data) == key) {
+            return data;
+        }
+        return MISS;
+    }
+
+    /**
+     * Stores the result of the search of the position.
+     * @param key Key of the position from PositionKey.
+     * @param depth Depth of the search, 0..255.
+     * @param value
+     * @param bound EXACT, LOWER or UPPER.
+     * @param move Best move or ExpectiminimaxSearch.NO_MOVE.
+     */
+    public void store(long key, int depth, double value, int bound, int move) {
+        // bounds are rounded to float conservatively
+        float stored = (float) value;
+        if(bound == LOWER && stored > value) {
+            stored = Math.nextDown(stored);
+        } else if(bound == UPPER && stored < value) {
+            stored = Math.nextUp(stored);
+        }
+        int current = generation;
+        long data = (Float.floatToRawIntBits(stored) & 0xFFFFFFFFL)
+                | ((long) depth & DEPTH_MASK) << DEPTH_SHIFT
+                | (long) bound << BOUND_SHIFT
+                | ((long) (move + 1) & MOVE_MASK) << MOVE_SHIFT
+                | (long) current << GENERATION_SHIFT;
+
+        int index = index(key);
+        long first = entries[index];
+        boolean firstSame = (entries[index + 1] ^ first) == key;
+        boolean secondSame = (entries[index + 3] ^ entries[index + 2]) == key;
+        if(!secondSame && (firstSame || first == MISS || getDepth(first) <= depth || getGeneration(first) != current)) {
+            entries[index] = data;
+            entries[index + 1] = key ^ data;
+        } else {
+            entries[index + 2] = data;
+            entries[index + 3] = key ^ data;
+        }
+    }
+
+    public static double getValue(long data) {
+        return Float.intBitsToFloat((int) data);
+    }
+
+    public static int getDepth(long data) {
+        return (int) ((data >>> DEPTH_SHIFT) & DEPTH_MASK);
+    }
+
+    public static int getBound(long data) {
+        return (int) ((data >>> BOUND_SHIFT) & 3);
+    }
+
+    /**
+     * Returns the best move or ExpectiminimaxSearch.NO_MOVE.
+     * @param data
+     * @return
+     */
+    public static int getMove(long data) {
+        return (int) ((data >>> MOVE_SHIFT) & MOVE_MASK) - 1;
+    }
+
+    private static int getGeneration(long data) {
+        return (int) (data >>> GENERATION_SHIFT);
+    }
+
+    private int index(long key) {
+        return ((int) PositionKey.hash(key) & bucketMask) << 2;
+    }
+}
@@ -0,0 +1,19 @@
+package org.valesz.ups.engine;
+
+import org.valesz.ups.model.game.Game;
+
+/**
+ * Decides how the headless player plays its turn.
+ *
+ * @author Zdenek Vales
+ */
+public interface TurnStrategy {
+
+    /**
+     * Throws the sticks and moves the stones of the current player. Called only when it's my turn.
+     * When this method returns, the player must not be able to throw again, so that the turn can be ended.
+     *
+     * @param game Game of the session.
+     */
+    public void playTurn(Game game);
+}
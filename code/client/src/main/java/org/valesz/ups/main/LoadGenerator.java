@@ -0,0 +1,262 @@
+package org.valesz.ups.main;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.valesz.ups.common.Constraits;
+import org.valesz.ups.engine.EndgameTablebase;
+import org.valesz.ups.engine.ExpectiminimaxSearch;
+import org.valesz.ups.engine.LoadStats;
+import org.valesz.ups.engine.MonteCarloSearch;
+import org.valesz.ups.engine.MovePolicy;
+import org.valesz.ups.engine.SearchStrategy;
+import org.valesz.ups.engine.SenetEngine;
+import org.valesz.ups.engine.SenetSession;
+import org.valesz.ups.engine.SessionResult;
+import org.valesz.ups.engine.SimpleStrategy;
+import org.valesz.ups.engine.TranspositionTable;
+import org.valesz.ups.engine.TurnStrategy;
+import org.valesz.ups.network.NioTransport;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Command line load generator. Starts a number of headless bots which play full games
+ * against the server and reports throughput and latencies.
+ *
+ * Arguments are given the same way as to the server:
+ * ip <address or list of servers> port <port> clients <number of bots> games <games per bot> delay <ms before each turn> interval <report interval in s>
+ * binary <1 to negotiate binary turn words> resume <1 to resume lost connections> search <ms of search per throw>
+ * engine <expectiminimax or mcts> tablebase <file generated by TablebaseApp> nio <1 to serve all bots by one NioTransport thread>
+ *
+ * @author Zdenek Vales
+ */
+public class LoadGenerator {
+
+    private static final Logger logger = LogManager.getLogger(LoadGenerator.class);
+
+    public static final String DEF_ADDRESS = "127.0.0.1";
+    public static final int DEF_PORT = 65000;
+    public static final int DEF_CLIENTS = 10;
+    public static final int DEF_GAMES = 1;
+    public static final int DEF_DELAY = 0;
+    public static final int DEF_INTERVAL = 10;
+    public static final int DEF_BINARY = 0;
+    public static final int DEF_RESUME = 0;
+    public static final int DEF_SEARCH = 0;
+    public static final String DEF_ENGINE = "expectiminimax";
+    public static final String DEF_TABLEBASE = "";
+    public static final int DEF_NIO = 0;
+
+    /**
+     * Prefix of bot nicks, the rest is the number of the bot.
+     */
+    public static final String NICK_PREFIX = "bot";
+
+    private String address = DEF_ADDRESS;
+    private int port = DEF_PORT;
+    private int clients = DEF_CLIENTS;
+    private int games = DEF_GAMES;
+    private int delay = DEF_DELAY;
+    private int interval = DEF_INTERVAL;
+    private int binary = DEF_BINARY;
+    private int resume = DEF_RESUME;
+    private int search = DEF_SEARCH;
+    private String engine = DEF_ENGINE;
+    private int nio = DEF_NIO;
+
+    /**
+     * Shared by all expectiminimax bots, created with the first one.
+     */
+    private TranspositionTable table;
+
+    private String tablebaseFile = DEF_TABLEBASE;
+    private EndgameTablebase tablebase;
+
+    public static void main(String[] args) throws InterruptedException {
+        LoadGenerator generator = new LoadGenerator();
+        if(!generator.loadArguments(args)) {
+            printHelp();
+            return;
+        }
+
+        generator.run();
+    }
+
+    public static void printHelp() {
+        System.out.println("Usage: ip <address> port <port> clients <number> games <number> delay <ms> interval <s> binary <0|1> resume <0|1> search <ms> engine <expectiminimax|mcts> tablebase <file> nio <0|1>");
+        System.out.println("ip: Address of the server or list of servers address[:port] separated by commas, each bot connects to the fastest one. "+DEF_ADDRESS+" is used by default.");
+        System.out.println("port: Port of the server. "+DEF_PORT+" is used by default.");
+        System.out.println("clients: Number of bots playing at once, should be even. "+DEF_CLIENTS+" is used by default.");
+        System.out.println("games: Number of games played by each bot. "+DEF_GAMES+" is used by default.");
+        System.out.println("delay: Time in ms the bot waits before sending each turn. "+DEF_DELAY+" is used by default.");
+        System.out.println("interval: Interval of intermediate reports in seconds, 0 disables them. "+DEF_INTERVAL+" is used by default.");
+        System.out.println("binary: 1 to negotiate binary turn words, text is used if the server doesn't support them. "+DEF_BINARY+" is used by default.");
+        System.out.println("resume: 1 to resume connections lost during game, the server has to keep the seat. "+DEF_RESUME+" is used by default.");
+        System.out.println("search: Time in ms the bot searches the best move for each throw, 0 plays the first possible move. "+DEF_SEARCH+" is used by default.");
+        System.out.println("engine: Search used by bots, mcts bots share all cores and "+(MonteCarloSearch.DEF_MEMORY >> 20)+" MB for trees, expectiminimax bots share "+(TranspositionTable.DEF_MEMORY >> 20)+" MB transposition table. "+DEF_ENGINE+" is used by default.");
+        System.out.println("tablebase: Endgame tablebase used by expectiminimax bots, no tablebase is used by default.");
+        System.out.println("nio: 1 to connect all bots by one non-blocking transport thread instead of a reader thread per bot. "+DEF_NIO+" is used by default.");
+    }
+
+    /**
+     * Loads the arguments. Returns false if they are not valid.
+     * @param args
+     * @return
+     */
+    public boolean loadArguments(String[] args) {
+        if(args.length % 2 != 0) {
+            return false;
+        }
+
+        try {
+            for (int i = 0; i < args.length; i += 2) {
+                String value = args[i+1];
+                switch (args[i]) {
+                    case "ip":
+                        address = value;
+                        break;
+                    case "port":
+                        port = Integer.parseInt(value);
+                        break;
+                    case "clients":
+                        clients = Integer.parseInt(value);
+                        break;
+                    case "games":
+                        games = Integer.parseInt(value);
+                        break;
+                    case "delay":
+                        delay = Integer.parseInt(value);
+                        break;
+                    case "interval":
+                        interval = Integer.parseInt(value);
+                        break;
+                    case "binary":
+                        binary = Integer.parseInt(value);
+                        break;
+                    case "resume":
+                        resume = Integer.parseInt(value);
+                        break;
+                    case "search":
+                        search = Integer.parseInt(value);
+                        break;
+                    case "engine":
+                        engine = value;
+                        break;
+                    case "tablebase":
+                        tablebaseFile = value;
+                        break;
+                    case "nio":
+                        nio = Integer.parseInt(value);
+                        break;
+                    default:
+                        return false;
+                }
+            }
+        } catch (NumberFormatException ex) {
+            return false;
+        }
+
+        // every bot needs a valid unique nick
+        if(clients < 1 || Constraits.checkNick(NICK_PREFIX+(clients-1)) != 0) {
+            System.out.println("Too many clients.");
+            return false;
+        }
+
+        if(!tablebaseFile.isEmpty()) {
+            try {
+                tablebase = EndgameTablebase.open(Paths.get(tablebaseFile));
+            } catch (IOException ex) {
+                System.out.println("Can't open the tablebase: "+ex.getMessage());
+                return false;
+            }
+        }
+
+        return games > 0 && delay >= 0 && interval >= 0 && (binary == 0 || binary == 1) && (resume == 0 || resume == 1) && (nio == 0 || nio == 1) && search >= 0
+                && ("expectiminimax".equals(engine) || "mcts".equals(engine));
+    }
+
+    /**
+     * Creates the strategy of the bot.
+     * @param bot Number of the bot, used as the seed of mcts.
+     * @return
+     */
+    private TurnStrategy createStrategy(int bot) {
+        if(search == 0) {
+            return new SimpleStrategy();
+        }
+        if("mcts".equals(engine)) {
+            ForkJoinPool pool = ForkJoinPool.commonPool();
+            return new SearchStrategy(new MonteCarloSearch(pool, pool.getParallelism(), MonteCarloSearch.DEF_MEMORY / clients,
+                    bot, MovePolicy.GREEDY), search);
+        }
+        if(table == null) {
+            table = new TranspositionTable(TranspositionTable.DEF_MEMORY);
+        }
+        ExpectiminimaxSearch expectiminimax = new ExpectiminimaxSearch();
+        expectiminimax.setTranspositionTable(table);
+        expectiminimax.setTablebase(tablebase);
+        return new SearchStrategy(expectiminimax, search);
+    }
+
+    public void run() throws InterruptedException {
+        logger.info(String.format("Starting %d bots, %d games each, against %s:%d.", clients, games, address, port));
+        if(clients % 2 != 0) {
+            logger.warn("Odd number of bots, the last one may wait for an opponent forever.");
+        }
+
+        NioTransport transport = null;
+        if(nio == 1) {
+            try {
+                transport = new NioTransport();
+            } catch (IOException ex) {
+                logger.error("Can't open the transport: "+ex.getMessage());
+                return;
+            }
+            transport.start();
+        }
+
+        LoadStats stats = new LoadStats();
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+        if(interval > 0) {
+            reporter.scheduleAtFixedRate(() -> stats.report(System.out), interval, interval, TimeUnit.SECONDS);
+        }
+
+        // bot i plays its games one after another on its own thread
+        List<SenetSession> sessions = new ArrayList<>(clients * games);
+        for (int game = 0; game < games; game++) {
+            for (int i = 0; i < clients; i++) {
+                SenetSession session = new SenetSession(address, port, NICK_PREFIX+i, createStrategy(i));
+                session.setTurnDelayMs(delay);
+                session.setStats(stats);
+                session.setBinaryTurnWords(binary == 1);
+                session.setResume(resume == 1);
+                session.setTransport(transport);
+                sessions.add(session);
+            }
+        }
+
+        SenetEngine engine = new SenetEngine(clients);
+        List<SessionResult> results = engine.runAll(sessions);
+        engine.shutdown();
+        reporter.shutdownNow();
+        if(transport != null) {
+            transport.stop();
+        }
+
+        for (SessionResult result : results) {
+            if(result.getError() != null) {
+                logger.error("Session of "+result.getNick()+" failed: "+result.getError());
+            }
+        }
+
+        System.out.println("=== Final report ===");
+        stats.report(System.out);
+    }
+}
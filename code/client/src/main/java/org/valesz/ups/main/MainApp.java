@@ -16,6 +16,9 @@ import org.valesz.ups.network.TcpClient;
 /**
  * Main javafx application.
  *
+ * Arguments: resume <1 to resume the game after lost connection, only the java server with resume timeout
+ * supports it, 0 by default>
+ *
  * @author Zdenek Vales
  */
 public class MainApp extends Application{
@@ -29,6 +32,7 @@ public class MainApp extends Application{
     public static final int DEF_LOGIN_WIDTH = 640;
     public static final int DEF_LOGIN_HEIGHT = 280;
     public static final String DEF_TITLE = "Senet - klient";
+    public static final int DEF_RESUME = 0;
 
 
     /**
@@ -46,8 +50,29 @@ public class MainApp extends Application{
 
     public static void main(String[] args) {
         logger.info("Initializing main app.");
+        int resume = DEF_RESUME;
+        try {
+            if(args.length % 2 != 0) {
+                throw new IllegalArgumentException();
+            }
+            for (int i = 0; i < args.length; i += 2) {
+                if(!"resume".equals(args[i])) {
+                    throw new IllegalArgumentException();
+                }
+                resume = Integer.parseInt(args[i+1]);
+                if(resume != 0 && resume != 1) {
+                    throw new IllegalArgumentException();
+                }
+            }
+        } catch (IllegalArgumentException ex) {
+            System.out.println("Usage: resume <0|1>");
+            System.out.println("Defaults: resume "+DEF_RESUME);
+            return;
+        }
+
         tcpClient = new TcpClient();
         initControllers();
+        gameController.setResumeEnabled(resume == 1);
 
         Application.launch(args);
     }
@@ -0,0 +1,88 @@
+package org.valesz.ups.main;
+
+import org.valesz.ups.engine.MovePolicy;
+import org.valesz.ups.engine.SelfPlaySimulator;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Plays games by SelfPlaySimulator from command line and prints the stats.
+ *
+ * Arguments are given the same way as to the server:
+ * games <number of games> threads <number of threads> seed <seed> first <random or greedy> second <random or greedy>
+ * validate <1 to check every turn by TurnValidator>
+ *
+ * @author Zdenek Vales
+ */
+public class SelfPlayApp {
+
+    public static final long DEF_GAMES = 1000000;
+    public static final int DEF_THREADS = Runtime.getRuntime().availableProcessors();
+    public static final long DEF_SEED = 0;
+    public static final String DEF_POLICY = "random";
+    public static final int DEF_VALIDATE = 0;
+
+    public static void main(String[] args) {
+        long games = DEF_GAMES;
+        int threads = DEF_THREADS;
+        long seed = DEF_SEED;
+        MovePolicy first = policy(DEF_POLICY);
+        MovePolicy second = policy(DEF_POLICY);
+        int validate = DEF_VALIDATE;
+
+        try {
+            if(args.length % 2 != 0) {
+                throw new IllegalArgumentException();
+            }
+            for (int i = 0; i < args.length; i += 2) {
+                switch (args[i]) {
+                    case "games":
+                        games = Long.parseLong(args[i+1]);
+                        break;
+                    case "threads":
+                        threads = Integer.parseInt(args[i+1]);
+                        break;
+                    case "seed":
+                        seed = Long.parseLong(args[i+1]);
+                        break;
+                    case "first":
+                        first = policy(args[i+1]);
+                        break;
+                    case "second":
+                        second = policy(args[i+1]);
+                        break;
+                    case "validate":
+                        validate = Integer.parseInt(args[i+1]);
+                        break;
+                    default:
+                        throw new IllegalArgumentException();
+                }
+            }
+            if(games < 1 || threads < 1) {
+                throw new IllegalArgumentException();
+            }
+        } catch (IllegalArgumentException ex) {
+            System.out.println("Usage: games <number> threads <number> seed <number> first <random|greedy> second <random|greedy> validate <0|1>");
+            System.out.println("Defaults: games "+DEF_GAMES+" threads "+DEF_THREADS+" seed "+DEF_SEED+" first "+DEF_POLICY
+                    +" second "+DEF_POLICY+" validate "+DEF_VALIDATE);
+            return;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        SelfPlaySimulator simulator = new SelfPlaySimulator(pool, threads, first, second, seed);
+        simulator.setValidate(validate == 1);
+        simulator.run(games).report(System.out);
+        pool.shutdown();
+    }
+
+    private static MovePolicy policy(String name) {
+        switch (name) {
+            case "random":
+                return MovePolicy.RANDOM;
+            case "greedy":
+                return MovePolicy.GREEDY;
+            default:
+                throw new IllegalArgumentException("Unknown policy "+name);
+        }
+    }
+}
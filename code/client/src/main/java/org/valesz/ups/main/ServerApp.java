@@ -0,0 +1,67 @@
+package org.valesz.ups.main;
+
+import org.valesz.ups.server.SenetServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+/**
+ * Runs the java senet server from command line.
+ *
+ * Arguments are given the same way as to the C server:
+ * ip <address> port <port> alive <ms of idle time before alive message, 0 disables it>
+ * resume <ms for which the seat of disconnected player is kept, 0 disables it>
+ *
+ * @author Zdenek Vales
+ */
+public class ServerApp {
+
+    public static final String DEF_ADDRESS = "0.0.0.0";
+    public static final int DEF_PORT = 65000;
+    public static final int DEF_ALIVE = 500;
+    public static final int DEF_RESUME = 0;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String address = DEF_ADDRESS;
+        int port = DEF_PORT;
+        int alive = DEF_ALIVE;
+        int resume = DEF_RESUME;
+
+        try {
+            if(args.length % 2 != 0) {
+                throw new IllegalArgumentException();
+            }
+            for (int i = 0; i < args.length; i += 2) {
+                switch (args[i]) {
+                    case "ip":
+                        address = args[i+1];
+                        break;
+                    case "port":
+                        port = Integer.parseInt(args[i+1]);
+                        break;
+                    case "alive":
+                        alive = Integer.parseInt(args[i+1]);
+                        break;
+                    case "resume":
+                        resume = Integer.parseInt(args[i+1]);
+                        break;
+                    default:
+                        throw new IllegalArgumentException();
+                }
+            }
+        } catch (IllegalArgumentException ex) {
+            System.out.println("Usage: ip <address> port <port> alive <ms> resume <ms>");
+            System.out.println("Defaults: ip "+DEF_ADDRESS+" port "+DEF_PORT+" alive "+DEF_ALIVE+" resume "+DEF_RESUME);
+            return;
+        }
+
+        SenetServer server = new SenetServer(new InetSocketAddress(address, port));
+        server.setAliveInterval(alive);
+        server.setResumeTimeout(resume);
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+        while (server.isRunning()) {
+            Thread.sleep(1000);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package org.valesz.ups.main;
+
+import org.valesz.ups.engine.EndgameTablebase;
+import org.valesz.ups.engine.EndgameTablebaseGenerator;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Generates the endgame tablebase by EndgameTablebaseGenerator from command line and writes it to the file.
+ *
+ * Arguments are given the same way as to the server:
+ * stones <max stones of each player> threads <number of threads> file <output file>
+ *
+ * @author Zdenek Vales
+ */
+public class TablebaseApp {
+
+    public static final int DEF_STONES = 2;
+    public static final int DEF_THREADS = Runtime.getRuntime().availableProcessors();
+    public static final String DEF_FILE = "tablebase.bin";
+
+    public static void main(String[] args) throws IOException {
+        int stones = DEF_STONES;
+        int threads = DEF_THREADS;
+        String file = DEF_FILE;
+
+        try {
+            if(args.length % 2 != 0) {
+                throw new IllegalArgumentException();
+            }
+            for (int i = 0; i < args.length; i += 2) {
+                switch (args[i]) {
+                    case "stones":
+                        stones = Integer.parseInt(args[i+1]);
+                        break;
+                    case "threads":
+                        threads = Integer.parseInt(args[i+1]);
+                        break;
+                    case "file":
+                        file = args[i+1];
+                        break;
+                    default:
+                        throw new IllegalArgumentException();
+                }
+            }
+            if(stones < 1 || stones > EndgameTablebase.MAX_STONES || threads < 1) {
+                throw new IllegalArgumentException();
+            }
+        } catch (IllegalArgumentException ex) {
+            System.out.println("Usage: stones <1.."+EndgameTablebase.MAX_STONES+"> threads <number> file <path>");
+            System.out.println("Defaults: stones "+DEF_STONES+" threads "+DEF_THREADS+" file "+DEF_FILE);
+            return;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        EndgameTablebaseGenerator generator = new EndgameTablebaseGenerator(pool, stones);
+        generator.generate();
+        pool.shutdown();
+        generator.write(Paths.get(file));
+        if(generator.getMaxDelta() >= EndgameTablebaseGenerator.EPSILON) {
+            System.out.printf("Values haven't converged, last change %.3g, the tablebase can't be used.%n", generator.getMaxDelta());
+            return;
+        }
+
+        EndgameTablebase tablebase = EndgameTablebase.open(Paths.get(file));
+        System.out.printf("Positions: %d, %d sweeps, last change %.3g%n", tablebase.getPositions(), generator.getSweeps(), generator.getMaxDelta());
+        System.out.printf("Elapsed: %.1f s, written to %s%n", generator.getElapsedNanos() / 1e9, file);
+    }
+}
@@ -0,0 +1,247 @@
+package org.valesz.ups.model.game;
+
+import org.valesz.ups.common.Constraits;
+
+/**
+ * Board of the game stored as two occupancy masks, one per player. Bit n of the mask is set
+ * if the player has a stone on the field n (1..30). Bit 0 and bit 31 are never set, stones out
+ * of board are not stored - every player has MAX_NUMBER_OF_STONES stones, so the number of stones
+ * out of board is the number of missing bits.
+ *
+ * Players are numbered 1 and 2 the same way as in Game.
+ *
+ * @author Zdenek Vales
+ */
+public class Board {
+
+    /**
+     * Bits of fields 1..30.
+     */
+    public static final int FIELDS = ((1 << (Game.LAST_FIELD + 1)) - 1) & ~1;
+
+    private int firstPlayer;
+    private int secondPlayer;
+
+    /**
+     * Creates an empty board.
+     */
+    public Board() {
+        this(0, 0);
+    }
+
+    public Board(int firstPlayerMask, int secondPlayerMask) {
+        set(firstPlayerMask, secondPlayerMask);
+    }
+
+    /**
+     * Creates a board from stones of both players.
+     * @param firstPlayerStones
+     * @param secondPlayerStones
+     * @return
+     */
+    public static Board fromStones(int[] firstPlayerStones, int[] secondPlayerStones) {
+        return new Board(toMask(firstPlayerStones), toMask(secondPlayerStones));
+    }
+
+    /**
+     * Returns the bit of the field.
+     * @param field
+     * @return
+     */
+    public static int bit(int field) {
+        return field < 1 || field > Game.LAST_FIELD ? 0 : 1 << field;
+    }
+
+    /**
+     * Converts stones to the mask. Stones out of board are skipped.
+     * @param stones
+     * @return
+     */
+    public static int toMask(int[] stones) {
+        int mask = 0;
+        for (int s : stones) {
+            mask |= bit(s);
+        }
+        return mask;
+    }
+
+    /**
+     * Converts the mask to stones sorted by field, stones out of board are at the end.
+     * @param mask
+     * @param stones Array of MAX_NUMBER_OF_STONES items to be filled.
+     * @return stones
+     */
+    public static int[] toStones(int mask, int[] stones) {
+        int i = 0;
+        for (int m = mask & FIELDS; m != 0 && i < stones.length; m &= m - 1) {
+            stones[i++] = Integer.numberOfTrailingZeros(m);
+        }
+        while (i < stones.length) {
+            stones[i++] = Game.OUT_OF_BOARD;
+        }
+        return stones;
+    }
+
+    /**
+     * Returns true if the opponent's stone on the field can't be switched, because there's
+     * another opponent's stone next to it. Stone out of board is next to the field 30.
+     * @param opponentMask
+     * @param field
+     * @return
+     */
+    public static boolean isProtected(int opponentMask, int field) {
+        return (opponentMask & (bit(field - 1) | bit(field + 1))) != 0
+                || field == Game.LAST_FIELD && hasOutOfBoard(opponentMask);
+    }
+
+    /**
+     * Returns true if some stone of the mask is out of board.
+     * @param mask
+     * @return
+     */
+    public static boolean hasOutOfBoard(int mask) {
+        return Integer.bitCount(mask & FIELDS) < Constraits.MAX_NUMBER_OF_STONES;
+    }
+
+    public void set(int firstPlayerMask, int secondPlayerMask) {
+        this.firstPlayer = firstPlayerMask & FIELDS;
+        this.secondPlayer = secondPlayerMask & FIELDS;
+    }
+
+    public void set(Board board) {
+        set(board.firstPlayer, board.secondPlayer);
+    }
+
+    /**
+     * Returns the mask of the player (1 or 2).
+     * @param player
+     * @return
+     */
+    public int getMask(int player) {
+        return player == 1 ? firstPlayer : secondPlayer;
+    }
+
+    /**
+     * Returns the mask of all occupied fields.
+     * @return
+     */
+    public int getOccupied() {
+        return firstPlayer | secondPlayer;
+    }
+
+    public boolean isFieldEmpty(int field) {
+        return (getOccupied() & bit(field)) == 0;
+    }
+
+    public boolean isStoneOnField(int player, int field) {
+        return (getMask(player) & bit(field)) != 0;
+    }
+
+    /**
+     * Returns the number of player's stones which are out of board.
+     * @param player
+     * @return
+     */
+    public int getOutOfBoard(int player) {
+        return Constraits.MAX_NUMBER_OF_STONES - Integer.bitCount(getMask(player));
+    }
+
+    /**
+     * Returns true if all stones of the player are out of board.
+     * @param player
+     * @return
+     */
+    public boolean isWinner(int player) {
+        return getMask(player) == 0;
+    }
+
+    /**
+     * Returns true if the player's stone on the from field can be moved to the to field. The field
+     * has to be empty or there has to be a single opponent's stone, which will be switched.
+     * @param player
+     * @param from
+     * @param to
+     * @return
+     */
+    public boolean canMove(int player, int from, int to) {
+        int other = getMask(3 - player);
+        int toBit = bit(to);
+        if((getMask(player) & bit(from)) == 0 || toBit == 0) {
+            return false;
+        }
+
+        return (getOccupied() & toBit) == 0 || (other & toBit) != 0 && !isProtected(other, to);
+    }
+
+    /**
+     * Moves the player's stone, opponent's stone on the to field is switched.
+     * @param player
+     * @param from
+     * @param to
+     * @return False if the move isn't possible.
+     */
+    public boolean moveStone(int player, int from, int to) {
+        if(!canMove(player, from, to)) {
+            return false;
+        }
+
+        int move = bit(from) | bit(to);
+        int toBit = bit(to);
+        if(player == 1) {
+            if((secondPlayer & toBit) != 0) {
+                secondPlayer ^= move;
+            }
+            firstPlayer ^= move;
+        } else {
+            if((firstPlayer & toBit) != 0) {
+                firstPlayer ^= move;
+            }
+            secondPlayer ^= move;
+        }
+        return true;
+    }
+
+    /**
+     * Moves the player's stone on the field 30 out of board.
+     * @param player
+     * @return False if the player doesn't have stone on the field 30.
+     */
+    public boolean leaveBoard(int player) {
+        if(!isStoneOnField(player, Game.LAST_FIELD)) {
+            return false;
+        }
+
+        if(player == 1) {
+            firstPlayer ^= bit(Game.LAST_FIELD);
+        } else {
+            secondPlayer ^= bit(Game.LAST_FIELD);
+        }
+        return true;
+    }
+
+    public Board copy() {
+        return new Board(firstPlayer, secondPlayer);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        Board board = (Board) o;
+        return firstPlayer == board.firstPlayer && secondPlayer == board.secondPlayer;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * firstPlayer + secondPlayer;
+    }
+
+    @Override
+    public String toString() {
+        return "Board{" +
+                "firstPlayer=" + Integer.toBinaryString(firstPlayer) +
+                ", secondPlayer=" + Integer.toBinaryString(secondPlayer) +
+                '}';
+    }
+}
@@ -1,6 +1,5 @@
 package org.valesz.ups.model.game;
 
-import org.valesz.ups.common.Constraits;
 import org.valesz.ups.common.error.NotMyTurnException;
 
 import java.util.Random;
@@ -65,6 +64,11 @@ public class Game {
 
     private static Game instance;
 
+    /**
+     * Stones of both players as bit masks.
+     */
+    private final Board board;
+
     /**
      * True if the player already moved a stone in this turn.
      */
@@ -77,6 +81,10 @@ public class Game {
 
 
 
+    /**
+     * Returns the game shared by the UI of this client.
+     * @return
+     */
     public static Game getInstance() {
         if(instance == null) {
             instance = new Game();
@@ -85,7 +93,12 @@ public class Game {
         return instance;
     }
 
-    private Game() {
+    /**
+     * Creates a new game independent of the shared instance. Used by headless sessions,
+     * each of them plays its own game.
+     */
+    public Game() {
+        board = new Board();
         resetGame();
     }
 
@@ -96,6 +109,7 @@ public class Game {
         thrownValue = -1;
         alreadyMoved = false;
         throwAgain = false;
+        syncBoard();
     }
 
     public Player getFirstPlayer() {
@@ -104,6 +118,7 @@ public class Game {
 
     public void setFirstPlayer(Player firstPlayer) {
         this.firstPlayer = firstPlayer;
+        syncBoard();
     }
 
     public Player getSecondPlayer() {
@@ -112,6 +127,7 @@ public class Game {
 
     public void setSecondPlayer(Player secondPlayer) {
         this.secondPlayer = secondPlayer;
+        syncBoard();
     }
 
     public boolean isWinner() {
@@ -160,6 +176,7 @@ public class Game {
 
         this.firstPlayer = new Player(firstPlayer,Player.FIRST_PLAYER_INIT_POS);
         this.secondPlayer = new Player(secondPlayer,Player.SECOND_PLAYER_INIT_POS);
+        syncBoard();
 
         this.state = GameState.RUNNING;
     }
@@ -176,6 +193,24 @@ public class Game {
 
         firstPlayer.setStones(firstPlayerStones);
         secondPlayer.setStones(secondPlayerStones);
+        syncBoard();
+    }
+
+    /**
+     * Starts my turn with the stones received after the connection was resumed. Unlike newTurn(),
+     * the turn isn't switched, so the local state doesn't matter.
+     * @param firstPlayerStones
+     * @param secondPlayerStones
+     */
+    public void resumeTurn(int[] firstPlayerStones, int[] secondPlayerStones) {
+        thrownValue = -1;
+        alreadyMoved = false;
+        throwAgain = false;
+        turn = myPlayer;
+
+        firstPlayer.setStones(firstPlayerStones);
+        secondPlayer.setStones(secondPlayerStones);
+        syncBoard();
     }
 
     /**
@@ -207,7 +242,7 @@ public class Game {
             if(tmp < 37.5) {
                 thrownValue = 2;
                 throwAgain = false;
-            } else if (tmp < 65.5) {
+            } else if (tmp < 62.5) {
                 thrownValue = 1;
                 throwAgain = false;
             } else if (tmp < 87.5) {
@@ -242,34 +277,19 @@ public class Game {
      * @return
      */
     public boolean moveStone(int fromField, int toFiled) {
-
-        Player player = getCurrentPlayer();
-        Player other = getOtherPlayer();
-        if(isFieldEmpty(toFiled)) {
-            // move the players stone from one field to another empty field
-            player.moveStone(fromField, toFiled);
-            if(!canThrowAgain()) {
-                alreadyMoved = true;
-            }
-            return true;
-        } else {
-            // if there's a stone, check that it's opponent's stone and the switch is possible
-            if(other.isStoneOnField(toFiled)) {
-                // check that the switch is possible
-                // switch is possible if there aren't two opponent's stones next to each other
-                if (!other.isStoneOnField(toFiled -1) && !other.isStoneOnField(toFiled+1)) {
-                    //switch stones
-                    player.moveStone(fromField, toFiled);
-                    other.moveStone(toFiled, fromField);
-                    if(!canThrowAgain()) {
-                        alreadyMoved = true;
-                    }
-                    return true;
-                }
-            }
+        boolean switched = board.isStoneOnField(getOtherPlayerNum(), toFiled);
+        if(!board.moveStone(turn, fromField, toFiled)) {
+            return false;
         }
 
-        return false;
+        getCurrentPlayer().moveStone(fromField, toFiled);
+        if(switched) {
+            getOtherPlayer().moveStone(toFiled, fromField);
+        }
+        if(!canThrowAgain()) {
+            alreadyMoved = true;
+        }
+        return true;
     }
 
     /**
@@ -312,6 +332,14 @@ public class Game {
         return turn == 1 ? firstPlayer : secondPlayer;
     }
 
+    /**
+     * Returns the number (1 or 2) of the other player.
+     * @return
+     */
+    public int getOtherPlayerNum() {
+        return turn == 1 ? 2 : 1;
+    }
+
     /**
      * Returns the other player.
      * @return
@@ -371,16 +399,7 @@ public class Game {
      * @return
      */
     public boolean isFieldEmpty(int field) {
-        boolean empty = true;
-        for (int s : firstPlayer.getStones()) {
-            empty = empty && (s != field);
-        }
-
-        for (int s : secondPlayer.getStones()) {
-            empty = empty && (s != field);
-        }
-
-        return empty;
+        return board.isFieldEmpty(field);
     }
 
     /**
@@ -395,19 +414,9 @@ public class Game {
      * Removes the stone which is currently on the field 30 out of board.
      */
     public void leaveBoard() {
-        int[] p1Stones = getFirstPlayer().getStones();
-        int[] p2Stones = getSecondPlayer().getStones();
-        for (int i = 0; i < Constraits.MAX_NUMBER_OF_STONES; i++) {
-            if(p1Stones[i] == LAST_FIELD) {
-                p1Stones[i] = OUT_OF_BOARD;
-                if(!canThrowAgain()) {
-                    alreadyMoved = true;
-                }
-                return;
-            }
-
-            if(p2Stones[i] == LAST_FIELD) {
-                p2Stones[i] = OUT_OF_BOARD;
+        for (int player = 1; player <= 2; player++) {
+            if(board.leaveBoard(player)) {
+                (player == 1 ? firstPlayer : secondPlayer).moveStone(LAST_FIELD, OUT_OF_BOARD);
                 if(!canThrowAgain()) {
                     alreadyMoved = true;
                 }
@@ -422,22 +431,64 @@ public class Game {
      * @return
      */
     public boolean currentPlayerOnLastField() {
-        int cp = getCurrentPlayerNum();
-        int[] stones;
-        if(cp == 1) {
-            stones = getFirstPlayer().getStones();
-        } else {
-            stones = getSecondPlayer().getStones();
+        return board.isStoneOnField(turn, LAST_FIELD);
+    }
+
+    /**
+     * Writes all legal moves of the current player for the thrown value to the buffer.
+     * Moves are encoded by MoveGenerator. If the sticks haven't been thrown yet or the player
+     * already moved, no move is generated.
+     *
+     * @param moves Buffer for at least MoveGenerator.MAX_MOVES moves.
+     * @return Number of moves.
+     */
+    public int generateMoves(int[] moves) {
+        if(!alreadyThrown() || isAlreadyMoved()) {
+            return 0;
         }
 
-        for (int i = 0; i < stones.length; i++) {
-            if(stones[i] == LAST_FIELD) {
-                return true;
+        return MoveGenerator.generate(board, turn, thrownValue, moves);
+    }
+
+    /**
+     * Plays the move generated by generateMoves().
+     * @param move
+     * @return False if the move isn't possible.
+     */
+    public boolean playMove(int move) {
+        if(MoveGenerator.isLeave(move)) {
+            if(!currentPlayerOnLastField()) {
+                return false;
             }
+            leaveBoard();
+            return true;
         }
 
-        return false;
+        return moveStone(MoveGenerator.getFrom(move), MoveGenerator.getTo(move));
+    }
+
+    /**
+     * Returns the exact key of the current position (stones, player on turn and thrown value).
+     * @return
+     */
+    public long getPositionKey() {
+        return PositionKey.of(board, turn, alreadyThrown() ? thrownValue : 0);
     }
 
+    /**
+     * Returns the board with stones of both players. The board is kept in sync with
+     * stones of Player objects by this class.
+     * @return
+     */
+    public Board getBoard() {
+        return board;
+    }
 
+    /**
+     * Updates the board from the stones of players.
+     */
+    private void syncBoard() {
+        board.set(firstPlayer == null ? 0 : Board.toMask(firstPlayer.getStones()),
+                secondPlayer == null ? 0 : Board.toMask(secondPlayer.getStones()));
+    }
 }
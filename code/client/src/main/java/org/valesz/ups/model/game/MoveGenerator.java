@@ -0,0 +1,145 @@
+package org.valesz.ups.model.game;
+
+import org.valesz.ups.common.Constraits;
+
+/**
+ * Generates all legal moves of a player for the thrown value. Moves are written as ints into
+ * the buffer given by the caller, so nothing is allocated.
+ *
+ * Move is encoded as (from << 5) | to. Leaving the board is the move from the field 30
+ * to OUT_OF_BOARD.
+ *
+ * Moves are generated for all stones at once using the masks of Board: a stone can move to
+ * any field which isn't occupied by the player and which doesn't contain a protected opponent's stone.
+ *
+ * @author Zdenek Vales
+ */
+public class MoveGenerator {
+
+    /**
+     * Max number of moves for one throw: every stone forward and backward and leaving the board.
+     */
+    public static final int MAX_MOVES = 2 * Constraits.MAX_NUMBER_OF_STONES + 1;
+
+    private static final int FIELD_BITS = 5;
+    private static final int FIELD_MASK = (1 << FIELD_BITS) - 1;
+
+    public static int encode(int from, int to) {
+        return (from << FIELD_BITS) | to;
+    }
+
+    public static int getFrom(int move) {
+        return move >>> FIELD_BITS;
+    }
+
+    public static int getTo(int move) {
+        return move & FIELD_MASK;
+    }
+
+    /**
+     * Returns true if the move is leaving the board.
+     * @param move
+     * @return
+     */
+    public static boolean isLeave(int move) {
+        return getTo(move) == Game.OUT_OF_BOARD;
+    }
+
+    /**
+     * Returns the mask of opponent's stones which can't be switched. Stone on the field 30 is
+     * protected by opponent's stone out of board too, see Board.isProtected().
+     * @param opponentMask
+     * @return
+     */
+    public static int protectedStones(int opponentMask) {
+        int protectedMask = opponentMask & ((opponentMask << 1) | (opponentMask >>> 1));
+        if(Board.hasOutOfBoard(opponentMask)) {
+            protectedMask |= opponentMask & Board.bit(Game.LAST_FIELD);
+        }
+        return protectedMask;
+    }
+
+    /**
+     * Generates all legal moves of the player. Forward moves are first, then backward moves and
+     * leaving the board is the last one. Moves of one direction are sorted by the from field.
+     *
+     * @param board
+     * @param player 1 or 2.
+     * @param thrown Thrown value 1..5.
+     * @param moves Buffer for at least MAX_MOVES moves.
+     * @return Number of generated moves.
+     */
+    public static int generate(Board board, int player, int thrown, int[] moves) {
+        return generate(board.getMask(player), board.getMask(3 - player), thrown, moves);
+    }
+
+    /**
+     * Generates all legal moves of the player whose stones are in the own mask, the same way
+     * as generate(Board, int, int, int[]).
+     *
+     * @param own Mask of player's stones.
+     * @param opponent Mask of opponent's stones.
+     * @param thrown Thrown value 1..5.
+     * @param moves Buffer for at least MAX_MOVES moves.
+     * @return Number of generated moves.
+     */
+    public static int generate(int own, int opponent, int thrown, int[] moves) {
+        int allowed = Board.FIELDS & ~own & ~protectedStones(opponent);
+        int count = 0;
+
+        for (int m = own & (allowed >>> thrown); m != 0; m &= m - 1) {
+            int from = Integer.numberOfTrailingZeros(m);
+            moves[count++] = encode(from, from + thrown);
+        }
+
+        for (int m = own & (allowed << thrown); m != 0; m &= m - 1) {
+            int from = Integer.numberOfTrailingZeros(m);
+            moves[count++] = encode(from, from - thrown);
+        }
+
+        if((own & Board.bit(Game.LAST_FIELD)) != 0) {
+            moves[count++] = encode(Game.LAST_FIELD, Game.OUT_OF_BOARD);
+        }
+
+        return count;
+    }
+
+    /**
+     * Returns the mask of player's stones after the generated move.
+     * @param own Mask of player's stones.
+     * @param move
+     * @return
+     */
+    public static int playOwn(int own, int move) {
+        if(isLeave(move)) {
+            return own & ~Board.bit(Game.LAST_FIELD);
+        }
+        return own ^ (Board.bit(getFrom(move)) | Board.bit(getTo(move)));
+    }
+
+    /**
+     * Returns the mask of opponent's stones after the player's generated move. Switched stone goes
+     * to the from field.
+     * @param opponent Mask of opponent's stones.
+     * @param move
+     * @return
+     */
+    public static int playOpponent(int opponent, int move) {
+        int to = Board.bit(getTo(move));
+        if((opponent & to) == 0) {
+            return opponent;
+        }
+        return opponent ^ (Board.bit(getFrom(move)) | to);
+    }
+
+    /**
+     * Plays the generated move on the board.
+     * @param board
+     * @param player
+     * @param move
+     * @return False if the move isn't possible.
+     */
+    public static boolean play(Board board, int player, int move) {
+        return isLeave(move) ? board.leaveBoard(player) : board.moveStone(player, getFrom(move), getTo(move));
+    }
+}
@@ -0,0 +1,162 @@
+package org.valesz.ups.model.game;
+
+/**
+ * Packs the position into one long: stones of both players, player on turn and the thrown value.
+ * Stones of one player are interchangeable, so the masks of Board describe the position completely
+ * and the key is exact - two positions are the same if and only if their keys are equal.
+ *
+ * Layout:
+ * bits 0..29 - fields 1..30 of the first player
+ * bits 30..59 - fields 1..30 of the second player
+ * bit 60 - player on turn (0 for the first player, 1 for the second one)
+ * bits 61..63 - thrown value, 0 if the sticks haven't been thrown yet
+ *
+ * Every field of every player has its own bit, so the key is a Zobrist hash with one-bit keys: a move
+ * changes the key by xor of the bits of changed fields. The bits aren't random, so hash() has to be used
+ * to index hash tables.
+ *
+ * @author Zdenek Vales
+ */
+public class PositionKey {
+
+    private static final int FIELD_BITS = Game.LAST_FIELD;
+    private static final long FIELDS_MASK = (1L << FIELD_BITS) - 1;
+    private static final int TURN_SHIFT = 2 * FIELD_BITS;
+    private static final int THROWN_SHIFT = TURN_SHIFT + 1;
+
+    private PositionKey() {
+    }
+
+    /**
+     * Returns the key of the position.
+     * @param firstPlayerMask
+     * @param secondPlayerMask
+     * @param player 1 or 2.
+     * @param thrown 1..5, 0 if the sticks haven't been thrown.
+     * @return
+     */
+    public static long of(int firstPlayerMask, int secondPlayerMask, int player, int thrown) {
+        return fields(firstPlayerMask) | (fields(secondPlayerMask) << FIELD_BITS)
+                | ((player == 2 ? 1L : 0L) << TURN_SHIFT) | ((long) thrown << THROWN_SHIFT);
+    }
+
+    public static long of(Board board, int player, int thrown) {
+        return of(board.getMask(1), board.getMask(2), player, thrown);
+    }
+
+    public static long of(int[] firstPlayerStones, int[] secondPlayerStones, int player, int thrown) {
+        return of(Board.toMask(firstPlayerStones), Board.toMask(secondPlayerStones), player, thrown);
+    }
+
+    private static long fields(int mask) {
+        return (mask & Board.FIELDS) >>> 1;
+    }
+
+    public static int getFirstPlayerMask(long key) {
+        return (int) (key & FIELDS_MASK) << 1;
+    }
+
+    public static int getSecondPlayerMask(long key) {
+        return (int) ((key >>> FIELD_BITS) & FIELDS_MASK) << 1;
+    }
+
+    public static int getMask(long key, int player) {
+        return player == 1 ? getFirstPlayerMask(key) : getSecondPlayerMask(key);
+    }
+
+    /**
+     * Returns the player on turn.
+     * @param key
+     * @return 1 or 2.
+     */
+    public static int getPlayer(long key) {
+        return (int) ((key >>> TURN_SHIFT) & 1) + 1;
+    }
+
+    /**
+     * Returns the thrown value.
+     * @param key
+     * @return 1..5, 0 if the sticks haven't been thrown.
+     */
+    public static int getThrown(long key) {
+        return (int) (key >>> THROWN_SHIFT);
+    }
+
+    /**
+     * Bit of the player's stone on the field.
+     * @param player
+     * @param field 1..30
+     * @return
+     */
+    public static long bit(int player, int field) {
+        return 1L << (field - 1 + (player == 1 ? 0 : FIELD_BITS));
+    }
+
+    /**
+     * Moves the player's stone from one field to another, opponent's stone on the to field is switched.
+     * The move is expected to be valid.
+     * @param key
+     * @param player
+     * @param from
+     * @param to
+     * @return
+     */
+    public static long moveStone(long key, int player, int from, int to) {
+        long change = bit(player, from) | bit(player, to);
+        long opponentTo = bit(3 - player, to);
+        if((key & opponentTo) != 0) {
+            change |= opponentTo | bit(3 - player, from);
+        }
+        return key ^ change;
+    }
+
+    /**
+     * Moves the player's stone on the field 30 out of board.
+     * @param key
+     * @param player
+     * @return
+     */
+    public static long leaveBoard(long key, int player) {
+        return key & ~bit(player, Game.LAST_FIELD);
+    }
+
+    /**
+     * Plays the move generated by MoveGenerator.
+     * @param key
+     * @param player
+     * @param move
+     * @return
+     */
+    public static long play(long key, int player, int move) {
+        return MoveGenerator.isLeave(move) ? leaveBoard(key, player)
+                : moveStone(key, player, MoveGenerator.getFrom(move), MoveGenerator.getTo(move));
+    }
+
+    public static long withThrown(long key, int thrown) {
+        return (key & ~(7L << THROWN_SHIFT)) | ((long) thrown << THROWN_SHIFT);
+    }
+
+    /**
+     * Passes the turn to the other player, the sticks aren't thrown.
+     * @param key
+     * @return
+     */
+    public static long endTurn(long key) {
+        return withThrown(key, 0) ^ (1L << TURN_SHIFT);
+    }
+
+    /**
+     * Mixes the bits of the key (finalizer of MurmurHash3), so that any bits of the result can be used
+     * as index of hash table.
+     * @param key
+     * @return
+     */
+    public static long hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
@@ -0,0 +1,45 @@
+package org.valesz.ups.network;
+
+import org.valesz.ups.common.error.ReceivingException;
+import org.valesz.ups.common.message.received.AbstractReceivedMessage;
+
+import java.io.IOException;
+
+/**
+ * Listener for events of a connection handled by NioTransport.
+ *
+ * All methods are called from the event loop thread of the transport, so they should
+ * return quickly and never block.
+ *
+ * @author Zdenek Vales
+ */
+public interface ConnectionListener {
+
+    /**
+     * Called when the connection is established.
+     * @param connection
+     */
+    public void onConnected(NioConnection connection);
+
+    /**
+     * Called for every received and parsed message.
+     * @param connection
+     * @param message
+     */
+    public void onMessage(NioConnection connection, AbstractReceivedMessage message);
+
+    /**
+     * Called when the received message can't be parsed. The connection stays open.
+     * @param connection
+     * @param ex
+     */
+    public void onReceivingError(NioConnection connection, ReceivingException ex);
+
+    /**
+     * Called when the connection is closed.
+     * @param connection
+     * @param cause Exception which caused closing of the connection or null if the connection was closed
+     *              normally or by the other side.
+     */
+    public void onClosed(NioConnection connection, IOException cause);
+}
@@ -4,51 +4,54 @@ import javafx.concurrent.Service;
 import javafx.concurrent.Task;
 
 import java.net.InetSocketAddress;
-import java.net.Socket;
+import java.util.List;
 
 /**
- * Service used for connecting to server.
+ * Service used for connecting to server. If more servers are given, they are connected in parallel
+ * and the one with the lowest latency is used, see ServerSelector.
  *
  * @author Zdenek Vales
  */
-public class ConnectionService extends Service<Socket>{
+public class ConnectionService extends Service<ServerSelector.Candidate>{
 
     /**
      * Maximum waiting time for connection. In ms.
      */
-    public static final int MAX_TIMEOUT = 30000;
+    public static final int MAX_TIMEOUT = ServerSelector.CONNECT_TIMEOUT;
 
-    private final String address;
-    private final int port;
+    private final List<InetSocketAddress> servers;
 
     /**
-     * A task which will return a socket if the connection is successful.
+     * A task which will return the selected connection if the connection is successful.
      */
-    private class ConnectionTask extends Task<Socket> {
+    private class ConnectionTask extends Task<ServerSelector.Candidate> {
 
-        private final String address;
-        private final int port;
+        private final List<InetSocketAddress> servers;
 
-        public ConnectionTask(String address, int port) {
-            this.address = address;
-            this.port = port;
+        public ConnectionTask(List<InetSocketAddress> servers) {
+            this.servers = servers;
         }
 
         @Override
-        protected Socket call() throws Exception {
-            Socket s = new Socket();
-            s.connect(new InetSocketAddress(address, port), MAX_TIMEOUT);
-            return s;
+        protected ServerSelector.Candidate call() throws Exception {
+            return new ServerSelector(servers, MAX_TIMEOUT).select();
         }
     }
 
+    /**
+     * @param address Address or list of servers, see ServerSelector.parse().
+     * @param port Default port.
+     */
     public ConnectionService(String address, int port) {
-        this.address = address;
-        this.port = port;
+        this(ServerSelector.parse(address, port));
+    }
+
+    public ConnectionService(List<InetSocketAddress> servers) {
+        this.servers = servers;
     }
 
     @Override
-    protected Task<Socket> createTask() {
-        return new ConnectionTask(address, port);
+    protected Task<ServerSelector.Candidate> createTask() {
+        return new ConnectionTask(servers);
     }
 }
@@ -0,0 +1,202 @@
+package org.valesz.ups.network;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.valesz.ups.network.MessageDispatcher.Request;
+
+import java.io.IOException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks that the server is alive by the INFALIVE/INFOK exchange on the existing connection.
+ *
+ * Alive message is sent only if nothing was received for the probe interval, any received frame proves
+ * that the server lives. The interval is derived from the server's timeout budget: maxMissed intervals
+ * plus the time to wait for the last answer (few round trip times, see MessageDispatcher.getProbeTimeoutMs())
+ * fit in the budget. Round trip times are measured by the dispatcher.
+ *
+ * If the alive isn't answered and nothing else is received till the next check, the heartbeat is missed.
+ * After maxMissed heartbeats missed in a row, the server is considered dead and the listener is called.
+ *
+ * @author Zdenek Vales
+ */
+public class Heartbeat {
+
+    private static final Logger logger = LogManager.getLogger(Heartbeat.class);
+
+    /**
+     * Shortest possible probe interval.
+     */
+    public static final int MIN_INTERVAL = 10;
+
+    private final MessageDispatcher dispatcher;
+    private final int budgetMs;
+    private final int maxMissed;
+
+    private Runnable onDead;
+    private ScheduledFuture<?> task;
+    private boolean running;
+    private Request pending;
+    private long pendingSentAt;
+    private int missed;
+    private int sent;
+    private int skipped;
+    private boolean dead;
+
+    /**
+     * @param dispatcher Dispatcher of the connection.
+     * @param budgetMs Time in which the dead server should be detected, usually the timeout of the server.
+     * @param maxMissed Number of heartbeats missed in a row after which the server is dead.
+     */
+    public Heartbeat(MessageDispatcher dispatcher, int budgetMs, int maxMissed) {
+        this.dispatcher = dispatcher;
+        this.budgetMs = budgetMs;
+        this.maxMissed = maxMissed;
+    }
+
+    /**
+     * Starts checking the server.
+     * @param onDead Called once from the scheduler thread when the server is considered dead.
+     */
+    public synchronized void start(Runnable onDead) {
+        stop();
+        this.onDead = onDead;
+        missed = 0;
+        dead = false;
+        running = true;
+        schedule(getIntervalMs());
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if(task != null) {
+            task.cancel(false);
+            task = null;
+        }
+        pending = null;
+    }
+
+    public synchronized boolean isDead() {
+        return dead;
+    }
+
+    public synchronized int getMissed() {
+        return missed;
+    }
+
+    /**
+     * Returns the number of sent alive messages.
+     * @return
+     */
+    public synchronized int getSentCount() {
+        return sent;
+    }
+
+    /**
+     * Returns the number of checks which didn't need alive message, because some frame was received.
+     * @return
+     */
+    public synchronized int getSkippedCount() {
+        return skipped;
+    }
+
+    /**
+     * Round trip times of the connection.
+     * @return
+     */
+    public RttEstimator getRtt() {
+        return dispatcher.getRtt();
+    }
+
+    /**
+     * Current probe interval in ms.
+     * @return
+     */
+    public int getIntervalMs() {
+        return Math.max(MIN_INTERVAL, (budgetMs - dispatcher.getProbeTimeoutMs()) / maxMissed);
+    }
+
+    private void schedule(long delayMs) {
+        task = MessageDispatcher.getScheduler().schedule(this::beat, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sends the next alive message if nothing was received for the interval or counts the missed one.
+     */
+    private void beat() {
+        int intervalMs = getIntervalMs();
+        long now = System.nanoTime();
+        long lastReceived = dispatcher.getLastReceived();
+        synchronized (this) {
+            if(dead || !running) {
+                return;
+            }
+
+            if(pending != null) {
+                if(lastReceived - pendingSentAt > 0) {
+                    // server sends data, the answer is just late
+                    missed = 0;
+                } else {
+                    missed++;
+                    logger.warn("Heartbeat missed ("+missed+"/"+maxMissed+").");
+                    if(missed >= maxMissed) {
+                        died();
+                        return;
+                    }
+                }
+                schedule(intervalMs);
+                return;
+            }
+
+            long idleMs = TimeUnit.NANOSECONDS.toMillis(now - lastReceived);
+            if(idleMs < intervalMs) {
+                skipped++;
+                schedule(intervalMs - idleMs);
+                return;
+            }
+
+            pendingSentAt = now;
+            sent++;
+        }
+
+        try {
+            Request request = dispatcher.sendAlive();
+            synchronized (this) {
+                if(!running) {
+                    return;
+                }
+                pending = request;
+                schedule(intervalMs);
+            }
+            request.getResponse().thenAccept(response -> answered(request));
+        } catch (IOException ex) {
+            logger.error("Error while sending heartbeat: "+ex.getMessage());
+            synchronized (this) {
+                died();
+            }
+        }
+    }
+
+    private synchronized void answered(Request request) {
+        if(request != pending) {
+            return;
+        }
+
+        pending = null;
+        missed = 0;
+    }
+
+    private void died() {
+        if(dead) {
+            return;
+        }
+
+        dead = true;
+        stop();
+        logger.error("Server didn't answer "+maxMissed+" heartbeats, it's probably dead.");
+        if(onDead != null) {
+            onDead.run();
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package org.valesz.ups.network;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.valesz.ups.common.error.*;
+import org.valesz.ups.common.message.MessageType;
+import org.valesz.ups.common.message.received.AbstractReceivedMessage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Decoder which reads the incoming stream in blocks into a reusable buffer
+ * and parses received messages from it by MessageParser.
+ *
+ * One decoder should be used for the whole connection, because bytes which are already
+ * buffered but not yet parsed would be lost with the decoder.
+ *
+ * Decoder created without input stream works in push mode - received data are passed to it
+ * by feed() and messages are taken out by tryDecode(), which returns null until the whole message is received.
+ * The parser remembers where it stopped, so already parsed bytes are never parsed again.
+ *
+ * After a malformed frame the decoder skips buffered bytes up to the next frame boundary - new line or
+ * the beginning of message type - so the rest of the bad frame doesn't cause more errors. Number of skipped
+ * bytes is counted.
+ *
+ * @author Zdenek Vales
+ */
+public class MessageDecoder {
+
+    private static final Logger logger = LogManager.getLogger(MessageDecoder.class);
+
+    /**
+     * Default size of the buffer. Much more than the longest message.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 1024;
+
+    private final InputStream input;
+
+    private final byte[] buffer;
+
+    private final MessageParser parser;
+
+    /**
+     * Position of the next byte to be parsed.
+     */
+    private int position;
+
+    /**
+     * End of the valid data in buffer.
+     */
+    private int limit;
+
+    /**
+     * True after a malformed frame until the next frame boundary is found.
+     */
+    private boolean resyncing;
+
+    /**
+     * Bytes skipped by the current resync and by all of them.
+     */
+    private int resyncDiscarded;
+    private long discarded;
+
+    /**
+     * Creates a decoder in push mode.
+     */
+    public MessageDecoder() {
+        this(null, DEFAULT_BUFFER_SIZE);
+    }
+
+    public MessageDecoder(InputStream input) {
+        this(input, DEFAULT_BUFFER_SIZE);
+    }
+
+    public MessageDecoder(InputStream input, int bufferSize) {
+        this.input = input;
+        this.buffer = new byte[bufferSize];
+        this.parser = new MessageParser();
+        this.position = 0;
+        this.limit = 0;
+    }
+
+    /**
+     * Enables binary turn words in the parser, see MessageParser.setBinary().
+     * @param binary
+     */
+    public void setBinary(boolean binary) {
+        parser.setBinary(binary);
+    }
+
+    /**
+     * Returns the number of bytes which are already buffered but not yet parsed.
+     * @return
+     */
+    public int getBufferedCount() {
+        return limit - position;
+    }
+
+    /**
+     * Returns the total number of bytes skipped after malformed frames.
+     * @return
+     */
+    public long getDiscardedCount() {
+        return discarded;
+    }
+
+    /**
+     * Returns true if the decoder is skipping the rest of malformed frame.
+     * @return
+     */
+    public boolean isResyncing() {
+        return resyncing;
+    }
+
+    /**
+     * Copies as many bytes from the src as possible to the buffer. Push mode only.
+     * @param src Received data.
+     * @return Number of copied bytes.
+     */
+    public int feed(ByteBuffer src) {
+        if(buffer.length - limit < src.remaining()) {
+            compact();
+        }
+
+        int len = Math.min(src.remaining(), buffer.length - limit);
+        src.get(buffer, limit, len);
+        limit += len;
+        return len;
+    }
+
+    /**
+     * Parses buffered data until the next message is complete. Push mode only.
+     * @return Parsed message or null if the whole message isn't received yet.
+     *
+     * @exception ReceivingException Thrown when the buffered message is malformed. Same as in decode().
+     */
+    public AbstractReceivedMessage tryDecode() throws ReceivingException {
+        while (position < limit) {
+            if(resyncing && !resync()) {
+                return null;
+            }
+
+            AbstractReceivedMessage message;
+            try {
+                message = parser.parse(buffer[position++] & 0xFF);
+            } catch (BadMsgTypeReceived | BadMsgContentException | BadNickFormatException ex) {
+                // malformed frame, the rest of it is skipped, starting with the bad byte which may begin the next frame
+                position--;
+                resyncing = true;
+                resyncDiscarded = 0;
+                throw ex;
+            }
+            if(message != null) {
+                return message;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Tries to receive and parse the next message. Throws exception if
+     * some gibberish text is received or message cannot be parsed.
+     *
+     * If the socket times out in the middle of the message, the parser keeps the already received
+     * part of the message and continues with it by the next call.
+     *
+     * @return Received message.
+     *
+     * @exception IOException Thrown when error during reading form stream occurs.
+     * @exception ReceivingException Thrown when the message type can't be received. Or the message can't be received.
+     * @exception BadMsgTypeReceived Thrown when the message type is received, but can't be recognized.
+     * @exception BadMsgContentException Thrown when the message is received, but its content is malformed.
+     * @exception BadNickFormatException Thrown when the message should contain nick, but the nick is malformed.
+     * @exception EndOfStreamReached Thrown when the unexpected end of stream is reached.
+     * @exception java.net.SocketTimeoutException Thrown when the socket times out.
+     */
+    public AbstractReceivedMessage decode() throws IOException, ReceivingException {
+        while (true) {
+            AbstractReceivedMessage message = tryDecode();
+            if(message != null) {
+                return message;
+            }
+
+            if(!fill()) {
+                parser.endOfStream();
+            }
+        }
+    }
+
+    /**
+     * Reads the next block of data from input to the buffer. Called only when all buffered data are parsed.
+     * Returns false if the end of stream is reached or there's no input stream.
+     */
+    private boolean fill() throws IOException {
+        if(input == null) {
+            return false;
+        }
+
+        position = 0;
+        limit = 0;
+        int received = input.read(buffer, 0, buffer.length);
+        if(received <= 0) {
+            return false;
+        }
+        limit = received;
+        return true;
+    }
+
+    /**
+     * Skips buffered bytes up to the next new line (inclusive) or the beginning of message type in one scan.
+     * Returns false if all buffered bytes were skipped and the boundary wasn't found yet.
+     */
+    private boolean resync() {
+        int start = position;
+        int typeLen = MessageType.getMessageTypeLen();
+        while (position < limit) {
+            if(buffer[position] == '\n') {
+                position++;
+                resyncing = false;
+                break;
+            }
+            if(MessageParser.isTypePrefix(buffer, position, Math.min(typeLen, limit - position))) {
+                resyncing = false;
+                break;
+            }
+            position++;
+        }
+
+        resyncDiscarded += position - start;
+        discarded += position - start;
+        if(!resyncing && resyncDiscarded > 0) {
+            logger.warn("Skipped "+resyncDiscarded+" bytes of malformed frame.");
+        }
+        return !resyncing;
+    }
+
+    /**
+     * Moves the data which aren't parsed yet to the beginning of the buffer.
+     */
+    private void compact() {
+        int len = limit - position;
+        System.arraycopy(buffer, position, buffer, 0, len);
+        position = 0;
+        limit = len;
+        if(len == buffer.length) {
+            logger.warn("Buffer full of data which aren't parsed yet.");
+        }
+    }
+}
@@ -0,0 +1,843 @@
+package org.valesz.ups.network;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.valesz.ups.common.error.EndOfStreamReached;
+import org.valesz.ups.common.error.ErrorCode;
+import org.valesz.ups.common.error.MaxAttemptsReached;
+import org.valesz.ups.common.error.ReceivingException;
+import org.valesz.ups.common.message.Message;
+import org.valesz.ups.common.message.MessageEncoder;
+import org.valesz.ups.common.message.received.AbstractReceivedMessage;
+import org.valesz.ups.common.message.received.ErrorReceivedMessage;
+import org.valesz.ups.common.message.received.ExpectedMessageComparator;
+import org.valesz.ups.common.message.received.OkReceivedMessage;
+import org.valesz.ups.common.message.received.ReceivedMessageTypeResolver;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.*;
+
+/**
+ * Persistent reader of one connection. The reader thread blocks until the next message arrives
+ * and passes it to the current subscription. Timeouts of subscriptions are handled by a shared scheduler,
+ * so no polling is needed while waiting. Connection handled by NioTransport doesn't start the reader thread,
+ * its event loop pushes received messages to the dispatcher instead.
+ *
+ * Alive messages are answered immediately. Messages received while there's no subscription are
+ * kept and passed to the next subscription.
+ *
+ * Nick, end turn and alive messages sent by the client are requests: the server answers each of them with OK or ERR
+ * in the order they were sent. Request is registered before it is written, so its response is never
+ * missed, and more requests may be outstanding at once. OK and ERR messages complete the oldest outstanding request,
+ * they are passed to the subscription only if there's no outstanding request. ERR which can't be the response
+ * (any ERR while alive is the oldest request, TIMEOUT always) is passed to the subscription too. End game
+ * completes outstanding end turn requests.
+ *
+ * Time of the last received frame and round trip times of alive requests are tracked per connection.
+ * Subscription doesn't send alive message if some frame was received since its timeout started, and waits
+ * for the answer only a few round trip times.
+ *
+ * @author Zdenek Vales
+ */
+public class MessageDispatcher implements Runnable {
+
+    private static final Logger logger = LogManager.getLogger(MessageDispatcher.class);
+
+    /**
+     * Max number of messages kept while there's no subscription.
+     */
+    public static final int MAX_BACKLOG = 64;
+
+    /**
+     * Answer to alive is waited for at least this long, even if round trip time is much shorter.
+     */
+    public static final int MIN_PROBE_TIMEOUT = 1000;
+
+    /**
+     * Answer to alive is waited for this many times the 99th percentile of round trip time.
+     */
+    public static final int PROBE_TIMEOUT_RTTS = 8;
+
+    private static ScheduledExecutorService scheduler;
+
+    /**
+     * Returns the scheduler shared by all dispatchers.
+     * @return
+     */
+    static synchronized ScheduledExecutorService getScheduler() {
+        if(scheduler == null) {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+                Thread t = new Thread(r, "dispatcher-timeouts");
+                t.setDaemon(true);
+                return t;
+            });
+            executor.setRemoveOnCancelPolicy(true);
+            scheduler = executor;
+        }
+        return scheduler;
+    }
+
+    /**
+     * Message or receiving error waiting for the next subscription.
+     */
+    private static class Received {
+        private final AbstractReceivedMessage message;
+        private final ReceivingException error;
+
+        private Received(AbstractReceivedMessage message, ReceivingException error) {
+            this.message = message;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Messages sent by the client which are answered by the server.
+     */
+    public enum RequestType {
+        NICK,
+        END_TURN,
+        ALIVE,
+        BINARY
+    }
+
+    /**
+     * OK is a shared instance, so it can be delivered without allocation.
+     */
+    private static final Received RECEIVED_OK = new Received(OkReceivedMessage.INSTANCE, null);
+
+    private final MessageDecoder decoder;
+    private final OutputStream outToServer;
+
+    /**
+     * Encoder for outgoing messages, guarded by the lock of outToServer.
+     */
+    private final MessageEncoder encoder;
+    private final Deque<Received> backlog;
+
+    /**
+     * Requests waiting for response in the order they were sent.
+     */
+    private final Deque<Request> outstanding;
+
+    /**
+     * Currently active subscription or null.
+     */
+    private Subscription current;
+
+    /**
+     * Set when the connection is broken. All following subscriptions fail with this exception.
+     */
+    private Exception failure;
+
+    private Thread readerThread;
+
+    private volatile boolean running;
+
+    /**
+     * Set when the server accepts binary turn words, end turns are sent as binary frames then.
+     */
+    private volatile boolean binaryTurnWords;
+
+    /**
+     * Time (System.nanoTime()) of the last received frame, valid or not.
+     */
+    private volatile long lastReceived;
+
+    /**
+     * Time (System.nanoTime()) when the last START_GAME or START_TURN message was received.
+     */
+    private volatile long turnStartedAt;
+
+    private final RttEstimator rtt;
+
+    public MessageDispatcher(MessageDecoder decoder, OutputStream outToServer) {
+        this.decoder = decoder;
+        this.outToServer = outToServer;
+        this.encoder = new MessageEncoder();
+        this.backlog = new ArrayDeque<>();
+        this.outstanding = new ArrayDeque<>();
+        this.lastReceived = System.nanoTime();
+        this.turnStartedAt = lastReceived;
+        this.rtt = new RttEstimator();
+    }
+
+    /**
+     * Starts the reader thread. Does nothing if it is already running.
+     */
+    public synchronized void start() {
+        if(readerThread != null) {
+            return;
+        }
+
+        running = true;
+        readerThread = new Thread(this, "message-dispatcher");
+        readerThread.setDaemon(true);
+        readerThread.start();
+    }
+
+    /**
+     * Stops dispatching and cancels current subscription and outstanding requests. The reader thread itself ends
+     * once the underlying stream is closed.
+     */
+    public synchronized void stop() {
+        running = false;
+        if(current != null) {
+            current.cancel();
+        }
+        while (!outstanding.isEmpty()) {
+            outstanding.poll().cancel();
+        }
+    }
+
+    /**
+     * Sends data to the server. Can be called from any thread.
+     * @param data
+     * @throws IOException
+     */
+    public void send(byte[] data) throws IOException {
+        synchronized (outToServer) {
+            outToServer.write(data);
+            outToServer.flush();
+        }
+    }
+
+    public void send(Message message) throws IOException {
+        send(message.toBytes());
+    }
+
+    /**
+     * Sends the nick. Server responds with OK or ERR.
+     * @param nick
+     * @return Request waiting for the response.
+     * @throws IOException
+     */
+    public Request sendNick(String nick) throws IOException {
+        synchronized (outToServer) {
+            return writeRequest(RequestType.NICK, encoder.encodeNick(nick));
+        }
+    }
+
+    public void sendOk() throws IOException {
+        synchronized (outToServer) {
+            writeEncoded(encoder.encodeOk());
+        }
+    }
+
+    public void sendExit() throws IOException {
+        synchronized (outToServer) {
+            writeEncoded(encoder.encodeExit());
+        }
+    }
+
+    /**
+     * Sends the alive message. Server responds with OK.
+     * @return Request waiting for the response.
+     * @throws IOException
+     */
+    public Request sendAlive() throws IOException {
+        synchronized (outToServer) {
+            return writeRequest(RequestType.ALIVE, encoder.encodeAlive());
+        }
+    }
+
+    /**
+     * Sends the end turn. Server responds with OK or ERR, end game may be received instead.
+     * @param p1TurnWord
+     * @param p2TurnWord
+     * @return Request waiting for the response.
+     * @throws IOException
+     */
+    public Request sendEndTurn(int[] p1TurnWord, int[] p2TurnWord) throws IOException {
+        synchronized (outToServer) {
+            return writeRequest(RequestType.END_TURN, binaryTurnWords
+                    ? encoder.encodeBinaryEndTurn(p1TurnWord, p2TurnWord)
+                    : encoder.encodeEndTurn(p1TurnWord, p2TurnWord));
+        }
+    }
+
+    /**
+     * Asks the server for binary turn words. If the server responds with OK, following end turns are sent
+     * as binary frames. Server which doesn't know binary turn words responds with ERR and text is used.
+     * @return Request waiting for the response.
+     * @throws IOException
+     */
+    public Request sendBinary() throws IOException {
+        synchronized (outToServer) {
+            return writeRequest(RequestType.BINARY, encoder.encodeBinary());
+        }
+    }
+
+    public boolean isBinaryTurnWords() {
+        return binaryTurnWords;
+    }
+
+    /**
+     * Returns the time (System.nanoTime()) of the last received frame.
+     * @return
+     */
+    public long getLastReceived() {
+        return lastReceived;
+    }
+
+    /**
+     * Returns the time (System.nanoTime()) when the last turn was started by START_GAME or START_TURN message.
+     * @return
+     */
+    public long getTurnStartedAt() {
+        return turnStartedAt;
+    }
+
+    /**
+     * Round trip times of alive requests.
+     * @return
+     */
+    public RttEstimator getRtt() {
+        return rtt;
+    }
+
+    /**
+     * Time to wait for the answer to alive message: PROBE_TIMEOUT_RTTS times the 99th percentile of round trip time,
+     * but at least MIN_PROBE_TIMEOUT and at most TcpClient.MAX_ALIVE_TIMEOUT. If no round trip time is known yet,
+     * TcpClient.MAX_ALIVE_TIMEOUT is used.
+     * @return Timeout in ms.
+     */
+    public int getProbeTimeoutMs() {
+        if(rtt.getCount() == 0) {
+            return TcpClient.MAX_ALIVE_TIMEOUT;
+        }
+
+        long timeout = PROBE_TIMEOUT_RTTS * rtt.getP99() / 1000;
+        return (int) Math.max(MIN_PROBE_TIMEOUT, Math.min(TcpClient.MAX_ALIVE_TIMEOUT, timeout));
+    }
+
+    /**
+     * Must be called with the lock of outToServer held.
+     */
+    private void writeEncoded(MessageEncoder encoded) throws IOException {
+        encoded.writeTo(outToServer);
+        outToServer.flush();
+    }
+
+    /**
+     * Registers the request and writes it. Must be called with the lock of outToServer held, so that
+     * requests are registered in the same order they are written.
+     */
+    private Request writeRequest(RequestType type, MessageEncoder encoded) throws IOException {
+        Request request = new Request(type);
+        synchronized (this) {
+            if(failure != null) {
+                request.fail(failure);
+                return request;
+            }
+            request.sentAt = System.nanoTime();
+            outstanding.add(request);
+        }
+
+        try {
+            writeEncoded(encoded);
+        } catch (IOException ex) {
+            synchronized (this) {
+                outstanding.remove(request);
+            }
+            request.fail(ex);
+            throw ex;
+        }
+        return request;
+    }
+
+    /**
+     * Passes the response to the oldest outstanding request.
+     * @return False if the message isn't a response to any request.
+     */
+    private synchronized boolean completeRequest(AbstractReceivedMessage message) {
+        if(outstanding.isEmpty()) {
+            return false;
+        }
+
+        if(ReceivedMessageTypeResolver.isOk(message) != null || isResponseError(outstanding.peek(), message)) {
+            Request request = outstanding.poll();
+            if(request.type == RequestType.ALIVE) {
+                rtt.recordNanos(lastReceived - request.sentAt);
+            }
+            if(request.type == RequestType.BINARY && ReceivedMessageTypeResolver.isOk(message) != null) {
+                logger.debug("Binary turn words accepted by the server.");
+                decoder.setBinary(true);
+                binaryTurnWords = true;
+            }
+            request.complete(message);
+            return true;
+        }
+
+        if(ReceivedMessageTypeResolver.isEndGame(message) != null) {
+            boolean endTurnOutstanding = false;
+            for (Request request : outstanding) {
+                endTurnOutstanding |= request.type == RequestType.END_TURN;
+            }
+            if(endTurnOutstanding) {
+                logger.debug("End game received while waiting for end turn confirm.");
+                while (!outstanding.isEmpty()) {
+                    outstanding.poll().complete(message);
+                }
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns true if the message is ERR which can be the response to the request. Alive is always answered
+     * by OK and TIMEOUT is sent by the server on its own (turn or nick timeout), such errors are passed
+     * to the subscription.
+     */
+    private static boolean isResponseError(Request request, AbstractReceivedMessage message) {
+        ErrorReceivedMessage error = ReceivedMessageTypeResolver.isError(message);
+        return error != null && request.type != RequestType.ALIVE && error.getContent().code != ErrorCode.TIMEOUT;
+    }
+
+    /**
+     * Creates a new subscription which will receive messages until the expected one arrives. Previous subscription
+     * is cancelled.
+     *
+     * Every receiving error or unexpected message increases the attempt counter of the subscription. When
+     * maxTimeoutMs passes without the expected message, alive message is sent, unless some frame was received
+     * meanwhile. If OK is received (or alive isn't needed), attempt counter is increased, otherwise the subscription
+     * fails with SocketTimeoutException after getProbeTimeoutMs().
+     *
+     * @param expectedMessageComparator Comparator which will return true if the received message is the expected one.
+     * @param maxTimeoutMs Time after which the alive message is sent. TcpClient.NO_TIMEOUT to wait forever.
+     * @param maxAttempts Max number of attempts. TcpClient.INF_ATTEMPTS for infinite number of attempts.
+     * @param endGameCompletes If true, end game message completes the subscription even if it's not expected.
+     * @return
+     */
+    public synchronized Subscription subscribe(ExpectedMessageComparator expectedMessageComparator, int maxTimeoutMs,
+                                               int maxAttempts, boolean endGameCompletes) {
+        if(current != null) {
+            current.cancel();
+        }
+
+        Subscription subscription = new Subscription(expectedMessageComparator, maxTimeoutMs, maxAttempts, endGameCompletes);
+        current = subscription;
+
+        while (!subscription.isDone() && !backlog.isEmpty()) {
+            deliver(backlog.poll());
+        }
+        if(!subscription.isDone() && failure != null) {
+            subscription.fail(failure);
+        }
+        if(!subscription.isDone()) {
+            subscription.scheduleTimeout(maxTimeoutMs);
+        }
+
+        return subscription;
+    }
+
+    /**
+     * Passes the received message or error to the current subscription. If there's none, it is kept in backlog.
+     */
+    private synchronized void deliver(Received received) {
+        if(current == null || current.isDone()) {
+            current = null;
+            if(backlog.size() >= MAX_BACKLOG) {
+                logger.warn("Backlog full, dropping the oldest message.");
+                backlog.poll();
+            }
+            backlog.add(received);
+            return;
+        }
+
+        if(received.message != null) {
+            current.onMessage(received.message);
+        } else {
+            current.onError(received.error);
+        }
+    }
+
+    /**
+     * Stops receiving and fails the current subscription.
+     */
+    private synchronized void fail(Exception ex) {
+        failure = ex;
+        if(current != null && !current.isDone()) {
+            current.fail(ex);
+        }
+        while (!outstanding.isEmpty()) {
+            outstanding.poll().fail(ex);
+        }
+    }
+
+    /**
+     * Handles the received message. Called by the reader thread, or by NioConnection if the dispatcher
+     * isn't started and messages are pushed to it.
+     * @param message
+     * @return False if the connection failed.
+     */
+    boolean received(AbstractReceivedMessage message) {
+        lastReceived = System.nanoTime();
+        if(ReceivedMessageTypeResolver.isAliveMessage(message) != null) {
+            logger.debug("Is alive message received, sending ok.");
+            try {
+                sendOk();
+            } catch (IOException ex) {
+                logger.error("Error while sending ok: "+ex.getMessage());
+                fail(ex);
+                return false;
+            }
+            return true;
+        }
+
+        if(ReceivedMessageTypeResolver.isStartTurn(message) != null ||
+                ReceivedMessageTypeResolver.isStartGame(message) != null) {
+            turnStartedAt = lastReceived;
+        }
+
+        if(!completeRequest(message)) {
+            deliver(message == OkReceivedMessage.INSTANCE ? RECEIVED_OK : new Received(message, null));
+        }
+        return true;
+    }
+
+    /**
+     * Handles the message which couldn't be parsed.
+     * @param ex
+     */
+    void receivingError(ReceivingException ex) {
+        lastReceived = System.nanoTime();
+        deliver(new Received(null, ex));
+    }
+
+    /**
+     * Connection was closed, current subscription and outstanding requests fail.
+     * @param cause
+     */
+    void closed(Exception cause) {
+        fail(cause);
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            AbstractReceivedMessage message;
+            try {
+                message = decoder.decode();
+            } catch (SocketTimeoutException ex) {
+                continue;
+            } catch (EndOfStreamReached ex) {
+                logger.debug("End of stream reached.");
+                closed(ex);
+                break;
+            } catch (ReceivingException ex) {
+                receivingError(ex);
+                continue;
+            } catch (IOException ex) {
+                if(running) {
+                    logger.error("Error while receiving message: "+ex.getMessage());
+                }
+                closed(ex);
+                break;
+            }
+
+            if(!received(message)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Waiting for the expected message. All callbacks are called under the lock of the dispatcher.
+     */
+    public class Subscription {
+
+        private final ExpectedMessageComparator expectedMessageComparator;
+        private final int maxTimeoutMs;
+        private final int maxAttempts;
+        private final boolean endGameCompletes;
+        private final CompletableFuture<AbstractReceivedMessage> result;
+
+        private int attemptCntr;
+
+        /**
+         * True if the alive message was sent and OK is expected.
+         */
+        private boolean aliveSent;
+        private ScheduledFuture<?> timeout;
+
+        /**
+         * Time (System.nanoTime()) when the current timeout was scheduled.
+         */
+        private long timeoutStarted;
+
+        private Subscription(ExpectedMessageComparator expectedMessageComparator, int maxTimeoutMs, int maxAttempts, boolean endGameCompletes) {
+            this.expectedMessageComparator = expectedMessageComparator;
+            this.maxTimeoutMs = maxTimeoutMs;
+            this.maxAttempts = maxAttempts;
+            this.endGameCompletes = endGameCompletes;
+            this.result = new CompletableFuture<>();
+        }
+
+        public boolean isDone() {
+            return result.isDone();
+        }
+
+        /**
+         * Blocks until the expected message is received.
+         * @return Expected message, end game message (if endGameCompletes is set) or null if the subscription was cancelled.
+         *
+         * @exception SocketTimeoutException Server isn't responding.
+         * @exception IOException Exception during reading/writing from/to data stream.
+         * @exception MaxAttemptsReached Max number of attempts reached while receiving the expected message.
+         * @exception EndOfStreamReached Thrown when the unexpected end of stream is reached.
+         * @exception InterruptedException Waiting thread was interrupted.
+         */
+        public AbstractReceivedMessage await() throws IOException, MaxAttemptsReached, EndOfStreamReached, InterruptedException {
+            return MessageDispatcher.await(result);
+        }
+
+        /**
+         * Cancels the subscription, await() will return null.
+         */
+        public void cancel() {
+            synchronized (MessageDispatcher.this) {
+                cancelTimeout();
+                result.cancel(false);
+                if(current == this) {
+                    current = null;
+                }
+            }
+        }
+
+        private void complete(AbstractReceivedMessage message) {
+            cancelTimeout();
+            result.complete(message);
+        }
+
+        private void fail(Exception ex) {
+            cancelTimeout();
+            result.completeExceptionally(ex);
+        }
+
+        private void cancelTimeout() {
+            if(timeout != null) {
+                timeout.cancel(false);
+                timeout = null;
+            }
+        }
+
+        private void scheduleTimeout(int delayMs) {
+            cancelTimeout();
+            if(maxTimeoutMs != TcpClient.NO_TIMEOUT) {
+                timeoutStarted = System.nanoTime();
+                timeout = getScheduler().schedule(this::onTimeout, delayMs, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        /**
+         * Increases the attempt counter and fails if the max number of attempts is reached.
+         */
+        private void attemptFailed() {
+            attemptCntr++;
+            if(attemptCntr >= maxAttempts && maxAttempts != TcpClient.INF_ATTEMPTS) {
+                logger.error("Maximum number of attempts reached.");
+                fail(new MaxAttemptsReached());
+            }
+        }
+
+        private void onMessage(AbstractReceivedMessage message) {
+            if (expectedMessageComparator.isExpected(message)) {
+                logger.debug("Expected message received.");
+                complete(message);
+
+            } else if (endGameCompletes && ReceivedMessageTypeResolver.isEndGame(message) != null) {
+                logger.debug("End game received.");
+                complete(message);
+
+            } else {
+                logger.debug("Unexpected message received: "+message+". Incrementing the attempt counter.");
+                attemptFailed();
+            }
+        }
+
+        private void onError(ReceivingException ex) {
+            logger.warn("Error occurred while receiving the message: "+ex.error.code.name()+". Increasing the attempt counter.");
+            attemptFailed();
+        }
+
+        /**
+         * Response to the alive message sent by this subscription was received.
+         */
+        private void onAliveResponse() {
+            synchronized (MessageDispatcher.this) {
+                if(isDone() || !aliveSent) {
+                    return;
+                }
+
+                logger.debug("Server lives, incrementing attempt counter.");
+                aliveSent = false;
+                attemptFailed();
+                if(!isDone()) {
+                    scheduleTimeout(maxTimeoutMs);
+                }
+            }
+        }
+
+        private void onTimeout() {
+            boolean sendAlive;
+            synchronized (MessageDispatcher.this) {
+                if(isDone()) {
+                    return;
+                }
+
+                if(aliveSent) {
+                    logger.error("Server not responding.");
+                    fail(new SocketTimeoutException("Server not responding."));
+                    return;
+                }
+
+                if(lastReceived - timeoutStarted > 0) {
+                    // server lives, no need to ask
+                    logger.debug("Max timeout reached, but frames were received meanwhile. Incrementing attempt counter.");
+                    attemptFailed();
+                    if(!isDone()) {
+                        scheduleTimeout(maxTimeoutMs);
+                    }
+                    return;
+                }
+
+                logger.error("Max timeout reached. Sending is alive message");
+                aliveSent = true;
+                sendAlive = true;
+                scheduleTimeout(getProbeTimeoutMs());
+            }
+
+            if(sendAlive) {
+                try {
+                    sendAlive().getResponse().thenAccept(response -> onAliveResponse());
+                } catch (IOException ex) {
+                    logger.error("Error while sending alive message: "+ex.getMessage());
+                    synchronized (MessageDispatcher.this) {
+                        fail(ex);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Request sent to the server waiting for its response.
+     */
+    public class Request {
+
+        private final RequestType type;
+        private final CompletableFuture<AbstractReceivedMessage> response;
+        private ScheduledFuture<?> timeout;
+
+        /**
+         * Time (System.nanoTime()) when the request was written.
+         */
+        private long sentAt;
+
+        private Request(RequestType type) {
+            this.type = type;
+            this.response = new CompletableFuture<>();
+        }
+
+        public RequestType getType() {
+            return type;
+        }
+
+        /**
+         * Future completed by OK or ERR message (or end game for end turn). Completed exceptionally
+         * if the connection breaks or the timeout passes, cancelled when the dispatcher is stopped.
+         * @return
+         */
+        public CompletableFuture<AbstractReceivedMessage> getResponse() {
+            return response;
+        }
+
+        /**
+         * Fails the request with SocketTimeoutException if no response is received in time. Request which timed out
+         * is removed from the outstanding requests, so the following responses complete the following requests.
+         * @param timeoutMs Max time in ms, TcpClient.NO_TIMEOUT to wait forever.
+         * @return this
+         */
+        public synchronized Request setTimeout(int timeoutMs) {
+            if(timeout != null) {
+                timeout.cancel(false);
+                timeout = null;
+            }
+            if(timeoutMs != TcpClient.NO_TIMEOUT && !response.isDone()) {
+                timeout = getScheduler().schedule(() -> {
+                    synchronized (MessageDispatcher.this) {
+                        if(response.isDone()) {
+                            return;
+                        }
+                        outstanding.remove(this);
+                        logger.error("No response to "+type+" received in "+timeoutMs+" ms.");
+                        fail(new SocketTimeoutException("Server not responding."));
+                    }
+                }, timeoutMs, TimeUnit.MILLISECONDS);
+            }
+            return this;
+        }
+
+        /**
+         * Blocks until the response is received.
+         * @return Response or null if the request was cancelled.
+         *
+         * @exception SocketTimeoutException Server isn't responding.
+         * @exception IOException Exception during reading/writing from/to data stream.
+         * @exception EndOfStreamReached Thrown when the unexpected end of stream is reached.
+         * @exception InterruptedException Waiting thread was interrupted.
+         */
+        public AbstractReceivedMessage await() throws IOException, MaxAttemptsReached, EndOfStreamReached, InterruptedException {
+            return MessageDispatcher.await(response);
+        }
+
+        private void complete(AbstractReceivedMessage message) {
+            cancelTimeout();
+            response.complete(message);
+        }
+
+        private void fail(Exception ex) {
+            cancelTimeout();
+            response.completeExceptionally(ex);
+        }
+
+        private void cancel() {
+            cancelTimeout();
+            response.cancel(false);
+        }
+
+        private synchronized void cancelTimeout() {
+            if(timeout != null) {
+                timeout.cancel(false);
+                timeout = null;
+            }
+        }
+    }
+
+    /**
+     * Waits for the result and unwraps the exception it was completed with.
+     */
+    private static AbstractReceivedMessage await(CompletableFuture<AbstractReceivedMessage> result) throws IOException, MaxAttemptsReached, EndOfStreamReached, InterruptedException {
+        try {
+            return result.get();
+        } catch (CancellationException ex) {
+            return null;
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if(cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof MaxAttemptsReached) {
+                throw (MaxAttemptsReached) cause;
+            } else if (cause instanceof EndOfStreamReached) {
+                throw (EndOfStreamReached) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
@@ -0,0 +1,477 @@
+package org.valesz.ups.network;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.valesz.ups.common.Constraits;
+import org.valesz.ups.common.error.*;
+import org.valesz.ups.common.error.Error;
+import org.valesz.ups.common.message.MessageType;
+import org.valesz.ups.common.message.TurnWordCodec;
+import org.valesz.ups.common.message.received.*;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Resumable parser of messages sent by the server. Received bytes are passed to parse() one by one
+ * as they come and the parser remembers where it stopped, so a message may be split to any number of chunks.
+ *
+ * Parser is driven by tables indexed by the received byte: class of the char (digit, white space or other),
+ * its upper case variant and the expected word for the first char of message type and INF message.
+ * Nothing is allocated per byte, only the parsed message and its content. OK and ALIVE messages are shared instances.
+ *
+ * Once binary turn words are negotiated (see setBinary()), start turn may also come as binary frame of TurnWordCodec,
+ * recognized by its tag byte. Before that, tag byte is a bad message type. Every start turn, text or binary,
+ * is the base of the next delta frame, so one parser should be used for the whole connection.
+ *
+ * When malformed message is received, exception is thrown and the parser starts again with the next byte.
+ *
+ * @author Zdenek Vales
+ */
+public class MessageParser {
+
+    private static final Logger logger = LogManager.getLogger(MessageParser.class);
+
+    private enum State {
+        TYPE,
+        INF,
+        INF_WORD,
+        FIRST_NICK,
+        SECOND_NICK,
+        WINNER,
+        ERR_CODE,
+        TURN_WORD,
+        BINARY_TURN_WORD
+    }
+
+    private static final byte[] OK = word("OK");
+    private static final byte[] START_GAME = word("START_GAME");
+    private static final byte[] END_GAME = word("END_GAME");
+    private static final byte[] ALIVE = word("ALIVE");
+
+    private static final int ERR_CODE_LEN = 2;
+    private static final int TURN_WORD_LEN = 4 * Constraits.MAX_NUMBER_OF_STONES;
+
+    /**
+     * Char classes.
+     */
+    private static final byte OTHER = 0;
+    private static final byte DIGIT = 1;
+    private static final byte SKIP = 2;
+
+    private static final byte[] CHAR_CLASS = new byte[256];
+    private static final byte[] UPPER = new byte[256];
+
+    /**
+     * Message type and INF word by its first char.
+     */
+    private static final MessageType[] TYPES = new MessageType[256];
+    private static final byte[][] TYPE_NAMES = new byte[256][];
+    private static final byte[][] INF_WORDS = new byte[256][];
+
+    static {
+        for (int c = 0; c < 256; c++) {
+            UPPER[c] = (byte) (c >= 'a' && c <= 'z' ? c - 'a' + 'A' : c);
+            CHAR_CLASS[c] = c >= '0' && c <= '9' ? DIGIT : c == '\n' || c == ' ' ? SKIP : OTHER;
+        }
+
+        for (MessageType mt : MessageType.values()) {
+            byte[] name = word(mt.name());
+            register(TYPE_NAMES, name);
+            TYPES[name[0]] = mt;
+            TYPES[Character.toLowerCase(name[0])] = mt;
+        }
+
+        register(INF_WORDS, OK);
+        register(INF_WORDS, START_GAME);
+        register(INF_WORDS, END_GAME);
+        register(INF_WORDS, ALIVE);
+    }
+
+    private State state;
+
+    /**
+     * Type of the parsed message, set in the TYPE state.
+     */
+    private MessageType type;
+
+    /**
+     * Word which is being matched and the number of already matched chars.
+     */
+    private byte[] expectedWord;
+    private int matched;
+
+    private final char[] nick;
+    private int nickLen;
+    private String firstNick;
+
+    private int errCode;
+
+    private final int[] turnWord;
+    private int turnWordLen;
+
+    private final TurnWordCodec turnWordCodec;
+    private final byte[] binaryTurnWord;
+    private int binaryTag;
+
+    /**
+     * Set when the server accepted binary turn words, tag bytes are recognized then.
+     */
+    private boolean binary;
+
+    public MessageParser() {
+        nick = new char[Constraits.MAX_NICK_LENGTH];
+        turnWord = new int[TURN_WORD_LEN / 2];
+        turnWordCodec = new TurnWordCodec();
+        binaryTurnWord = new byte[TurnWordCodec.FULL_LEN];
+        reset();
+    }
+
+    /**
+     * Enables binary turn words, should be called once the server accepts them.
+     * @param binary
+     */
+    public void setBinary(boolean binary) {
+        this.binary = binary;
+    }
+
+    public boolean isBinary() {
+        return binary;
+    }
+
+    /**
+     * Returns true if a message is partially parsed.
+     * @return
+     */
+    public boolean isParsing() {
+        return state != State.TYPE || matched > 0;
+    }
+
+    /**
+     * Returns true if the data may be the beginning of message type. If there are less bytes than
+     * the length of message type, only the available ones are checked.
+     * @param data
+     * @param offset
+     * @param length Number of available bytes.
+     * @return
+     */
+    public static boolean isTypePrefix(byte[] data, int offset, int length) {
+        byte[] name = TYPE_NAMES[data[offset] & 0xFF];
+        if(name == null) {
+            return false;
+        }
+
+        int len = Math.min(length, name.length);
+        for (int i = 1; i < len; i++) {
+            if(UPPER[data[offset + i] & 0xFF] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Forgets the partially parsed message.
+     */
+    public void reset() {
+        state = State.TYPE;
+        type = null;
+        expectedWord = null;
+        matched = 0;
+        nickLen = 0;
+        firstNick = null;
+        errCode = 0;
+        turnWordLen = 0;
+    }
+
+    /**
+     * Parses one received byte.
+     * @param b Received byte, 0..255.
+     * @return Parsed message if the byte completes it, null otherwise.
+     *
+     * @exception BadMsgTypeReceived Thrown when the message type can't be recognized.
+     * @exception BadMsgContentException Thrown when the content of message is malformed.
+     * @exception BadNickFormatException Thrown when the message should contain nick, but the nick is malformed.
+     * @exception ReceivingException Thrown when the error code or winner can't be received.
+     */
+    public AbstractReceivedMessage parse(int b) throws ReceivingException {
+        switch (state) {
+            case TYPE:
+                return parseType(b);
+            case INF:
+                expectedWord = INF_WORDS[b];
+                if(expectedWord == null) {
+                    logger.error(String.format("Bad character %c while receiving INF message.", (char) b));
+                    throw error(new BadMsgContentException());
+                }
+                state = State.INF_WORD;
+                matched = 1;
+                return completeInfWord();
+            case INF_WORD:
+                if(UPPER[b] != expectedWord[matched]) {
+                    logger.error(String.format("Bad character %c on position %d while receiving %s message.",
+                            (char) b, matched, new String(expectedWord, StandardCharsets.US_ASCII)));
+                    throw error(new BadMsgContentException());
+                }
+                matched++;
+                return completeInfWord();
+            case FIRST_NICK:
+                if(parseNick(b, ',', true)) {
+                    firstNick = new String(nick, 0, nickLen);
+                    logger.trace("1st nick received: "+firstNick);
+                    nickLen = 0;
+                    state = State.SECOND_NICK;
+                }
+                return null;
+            case SECOND_NICK:
+                if(parseNick(b, ';', true)) {
+                    String secondNick = new String(nick, 0, nickLen);
+                    String first = firstNick;
+                    reset();
+                    logger.trace("Received: START_GAME, p1="+first+", p2="+secondNick);
+                    return new StartGameReceivedMessage(first, secondNick);
+                }
+                return null;
+            case WINNER:
+                if(parseNick(b, ';', false)) {
+                    String winner = new String(nick, 0, nickLen);
+                    reset();
+                    logger.trace("Received: END_GAME");
+                    return new EndGameReceivedMessage(winner);
+                }
+                return null;
+            case ERR_CODE:
+                return parseErrCode(b);
+            case TURN_WORD:
+                return parseTurnWord(b);
+            case BINARY_TURN_WORD:
+                binaryTurnWord[matched++] = (byte) b;
+                return completeBinaryTurnWord();
+            default:
+                throw error(new BadMsgTypeReceived());
+        }
+    }
+
+    /**
+     * Called when the stream ends. Partially parsed message is lost. Message with incomplete nick
+     * or turn word is considered malformed, otherwise EndOfStreamReached is thrown.
+     * @exception ReceivingException Always.
+     */
+    public void endOfStream() throws ReceivingException {
+        switch (state) {
+            case FIRST_NICK:
+            case SECOND_NICK:
+            case WINNER:
+                throw nickError();
+            case TURN_WORD:
+                logger.error("Whole turn word of player "+(turnWordLen / (TURN_WORD_LEN / 2) + 1)+" wasn't specified!");
+                throw error(new BadMsgContentException());
+            case BINARY_TURN_WORD:
+                logger.error("Whole binary turn word wasn't received!");
+                throw error(new BadMsgContentException());
+            default:
+                if(isParsing()) {
+                    logger.error("End of stream reached while receiving "+(type == null ? "message type" : type+" message")+".");
+                }
+                reset();
+                throw new EndOfStreamReached();
+        }
+    }
+
+    /**
+     * Message type, white space chars at the beginning of the message are filtered out.
+     */
+    private AbstractReceivedMessage parseType(int b) throws ReceivingException {
+        if(CHAR_CLASS[b] == SKIP) {
+            return null;
+        }
+
+        if(binary && matched == 0 && TurnWordCodec.isTag(b)) {
+            if(TurnWordCodec.getContentLength(b) < 0) {
+                logger.error(String.format("Bad tag 0x%02x of binary turn word.", b));
+                throw error(new BadMsgTypeReceived());
+            }
+            type = MessageType.CMD;
+            binaryTag = b;
+            state = State.BINARY_TURN_WORD;
+            return completeBinaryTurnWord();
+        }
+
+        if(matched == 0) {
+            expectedWord = TYPE_NAMES[b];
+            if(expectedWord == null) {
+                throw error(new BadMsgTypeReceived());
+            }
+            type = TYPES[b];
+        } else if (UPPER[b] != expectedWord[matched]) {
+            throw error(new BadMsgTypeReceived());
+        }
+
+        if(++matched < expectedWord.length) {
+            return null;
+        }
+
+        matched = 0;
+        expectedWord = null;
+        switch (type) {
+            case INF:
+                state = State.INF;
+                break;
+            case ERR:
+                state = State.ERR_CODE;
+                break;
+            case CMD:
+                logger.debug("Receiving CMD message.");
+                state = State.TURN_WORD;
+                break;
+        }
+        return null;
+    }
+
+    /**
+     * Checks whether the whole INF word is matched and continues with the rest of message.
+     */
+    private AbstractReceivedMessage completeInfWord() {
+        if(matched < expectedWord.length) {
+            return null;
+        }
+
+        byte[] word = expectedWord;
+        if(word == START_GAME) {
+            state = State.FIRST_NICK;
+            return null;
+        } else if (word == END_GAME) {
+            state = State.WINNER;
+            return null;
+        }
+
+        reset();
+        if(word == OK) {
+            logger.trace("Received: OK");
+            return OkReceivedMessage.INSTANCE;
+        }
+        logger.trace("Received ALIVE");
+        return AliveReceivedMessage.INSTANCE;
+    }
+
+    /**
+     * Appends the char to nick.
+     * @param delimiter Char which terminates nick.
+     * @param checkChars If true, chars of nick are checked by Constraits.isNickChar(), otherwise only length is checked.
+     * @return True if the whole nick is received.
+     */
+    private boolean parseNick(int b, char delimiter, boolean checkChars) throws ReceivingException {
+        if(b == delimiter) {
+            if(nickLen < Constraits.MIN_NICK_LENGTH) {
+                throw nickError();
+            }
+            return true;
+        }
+
+        if(b == '\n' || nickLen >= Constraits.MAX_NICK_LENGTH
+                || checkChars && !Constraits.isNickChar(b, nickLen == 0)) {
+            throw nickError();
+        }
+
+        nick[nickLen++] = (char) b;
+        return false;
+    }
+
+    private ReceivingException nickError() {
+        if(state == State.WINNER) {
+            logger.error("Empty nick received!");
+            return error(new ReceivingException(Error.GENERAL_ERROR(ErrorMessages.RECEIVING_RESPONSE)));
+        }
+
+        logger.error("Error while receiving the "+(state == State.FIRST_NICK ? "1st" : "2nd")+" nick from START_GAME message");
+        return error(new BadNickFormatException());
+    }
+
+    /**
+     * 2 digits with error code.
+     */
+    private AbstractReceivedMessage parseErrCode(int b) throws ReceivingException {
+        if(CHAR_CLASS[b] != DIGIT) {
+            logger.error(String.format("Bad character %c on position %d while receiving error message.", (char) b, matched));
+            throw error(new BadMsgContentException());
+        }
+
+        errCode = 10 * errCode + (b - '0');
+        if(++matched < ERR_CODE_LEN) {
+            return null;
+        }
+
+        ErrorCode ec = ErrorCode.getCodeByInt(errCode);
+        reset();
+        if (ec == ErrorCode.NO_ERROR) {
+            logger.error("Error, wrong error code received.");
+            throw new ReceivingException(Error.GENERAL_ERROR(ErrorMessages.UNRECOGNIZED_ERROR));
+        }
+
+        return new ErrorReceivedMessage(ec);
+    }
+
+    /**
+     * 20 digits, 2 digits per stone, 5 stones of the first player and then 5 stones of the second player.
+     */
+    private AbstractReceivedMessage parseTurnWord(int b) throws ReceivingException {
+        final int stones = Constraits.MAX_NUMBER_OF_STONES;
+        if(CHAR_CLASS[b] != DIGIT) {
+            logger.error(String.format("Bad character %c on position %d while receiving turn word of player %d.",
+                    (char) b, turnWordLen % (2 * stones), turnWordLen / (2 * stones) + 1));
+            throw error(new BadMsgContentException());
+        }
+
+        int stone = turnWordLen / 2;
+        turnWord[stone] = (turnWordLen % 2 == 0 ? 0 : 10 * turnWord[stone]) + (b - '0');
+        if(++turnWordLen < TURN_WORD_LEN) {
+            return null;
+        }
+
+        int[] firstPlayerStones = new int[stones];
+        int[] secondPlayerStones = new int[stones];
+        System.arraycopy(turnWord, 0, firstPlayerStones, 0, stones);
+        System.arraycopy(turnWord, stones, secondPlayerStones, 0, stones);
+        turnWordCodec.update(firstPlayerStones, secondPlayerStones);
+        reset();
+        return new StartTurnReceivedMessage(firstPlayerStones, secondPlayerStones);
+    }
+
+    /**
+     * Tag and getContentLength(tag) bytes of binary turn word.
+     */
+    private AbstractReceivedMessage completeBinaryTurnWord() throws ReceivingException {
+        if(matched < TurnWordCodec.getContentLength(binaryTag)) {
+            return null;
+        }
+
+        int[] firstPlayerStones = new int[Constraits.MAX_NUMBER_OF_STONES];
+        int[] secondPlayerStones = new int[Constraits.MAX_NUMBER_OF_STONES];
+        if(!turnWordCodec.decode(binaryTag, binaryTurnWord, 0, firstPlayerStones, secondPlayerStones)) {
+            logger.error(String.format("Malformed binary turn word with tag 0x%02x.", binaryTag));
+            throw error(new BadMsgContentException());
+        }
+        reset();
+        logger.trace("Received: binary START_TURN");
+        return new StartTurnReceivedMessage(firstPlayerStones, secondPlayerStones);
+    }
+
+    /**
+     * Resets the parser so that the next byte starts a new message and returns the exception.
+     */
+    private <T extends ReceivingException> T error(T ex) {
+        reset();
+        return ex;
+    }
+
+    private static byte[] word(String word) {
+        return word.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Registers the word under both cases of its first char.
+     */
+    private static void register(byte[][] table, byte[] word) {
+        table[word[0]] = word;
+        table[Character.toLowerCase(word[0])] = word;
+    }
+}
@@ -0,0 +1,281 @@
+package org.valesz.ups.network;
+
+import org.valesz.ups.common.error.ReceivingException;
+import org.valesz.ups.common.message.Message;
+import org.valesz.ups.common.message.received.AbstractReceivedMessage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * One connection handled by NioTransport.
+ *
+ * Reading, parsing and writing is done by the event loop thread of the transport,
+ * messages can be sent from any thread.
+ *
+ * @author Zdenek Vales
+ */
+public class NioConnection {
+
+    private final NioTransport transport;
+    private final SocketChannel channel;
+    private final InetSocketAddress address;
+    private final ConnectionListener listener;
+
+    /**
+     * Decoder in push mode, accessed only by the event loop thread.
+     */
+    private final MessageDecoder decoder;
+    private final ByteBuffer readBuffer;
+
+    private final Queue<ByteBuffer> writeQueue;
+
+    private final OutputStream outputStream;
+
+    /**
+     * True if enabling OP_WRITE is already scheduled in the event loop.
+     */
+    private final AtomicBoolean writeRequested;
+
+    private SelectionKey key;
+
+    /**
+     * Time (System.nanoTime()) when the connecting times out.
+     */
+    private long connectDeadline;
+
+    private volatile boolean connected;
+    private volatile boolean closed;
+
+    /**
+     * Object attached by the user of the connection.
+     */
+    private volatile Object attachment;
+
+    NioConnection(NioTransport transport, SocketChannel channel, InetSocketAddress address, ConnectionListener listener) {
+        this.transport = transport;
+        this.channel = channel;
+        this.address = address;
+        this.listener = listener;
+        this.decoder = new MessageDecoder();
+        this.readBuffer = ByteBuffer.allocateDirect(MessageDecoder.DEFAULT_BUFFER_SIZE);
+        this.writeQueue = new ConcurrentLinkedQueue<>();
+        this.writeRequested = new AtomicBoolean(false);
+        this.outputStream = new QueueingOutputStream();
+    }
+
+    /**
+     * Collects written bytes and queues them to be sent on flush.
+     */
+    private class QueueingOutputStream extends ByteArrayOutputStream {
+
+        @Override
+        public synchronized void flush() {
+            if(size() > 0) {
+                send(toByteArray());
+                reset();
+            }
+        }
+    }
+
+    public InetSocketAddress getAddress() {
+        return address;
+    }
+
+    public boolean isConnected() {
+        return connected && !closed;
+    }
+
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    public Object getAttachment() {
+        return attachment;
+    }
+
+    public void setAttachment(Object attachment) {
+        this.attachment = attachment;
+    }
+
+    /**
+     * Output stream for MessageDispatcher. Written bytes are queued to be sent when the stream is flushed.
+     * @return
+     */
+    public OutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    /**
+     * Decoder of received messages. Must be used only by the event loop thread, for example from the listener.
+     * @return
+     */
+    public MessageDecoder getDecoder() {
+        return decoder;
+    }
+
+    /**
+     * Queues the message to be sent. Can be called from any thread.
+     * @param message
+     */
+    public void send(Message message) {
+        send(message.toBytes());
+    }
+
+    /**
+     * Queues the bytes to be sent. The array must not be modified after this call.
+     * Messages queued before the connection is established are sent right after connecting.
+     * @param data
+     */
+    public void send(byte[] data) {
+        if(closed) {
+            return;
+        }
+
+        writeQueue.add(ByteBuffer.wrap(data));
+        if(connected && writeRequested.compareAndSet(false, true)) {
+            transport.execute(this::enableWrite);
+        }
+    }
+
+    /**
+     * Closes the connection. Listener will be notified from the event loop thread.
+     */
+    public void close() {
+        transport.execute(() -> transport.closeConnection(this, null));
+    }
+
+    SocketChannel getChannel() {
+        return channel;
+    }
+
+    ConnectionListener getListener() {
+        return listener;
+    }
+
+    SelectionKey getKey() {
+        return key;
+    }
+
+    void setKey(SelectionKey key) {
+        this.key = key;
+    }
+
+    long getConnectDeadline() {
+        return connectDeadline;
+    }
+
+    void setConnectDeadline(long connectDeadline) {
+        this.connectDeadline = connectDeadline;
+    }
+
+    /**
+     * Marks the connection as closed. Returns false if it was already closed.
+     */
+    boolean markClosed() {
+        if(closed) {
+            return false;
+        }
+        closed = true;
+        return true;
+    }
+
+    /**
+     * Called by the event loop when the connection is established.
+     */
+    void connected() {
+        connected = true;
+        writeRequested.set(!writeQueue.isEmpty());
+        key.interestOps(writeQueue.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        listener.onConnected(this);
+    }
+
+    void handleConnect() throws IOException {
+        if(channel.finishConnect()) {
+            transport.connectFinished(this);
+            connected();
+        }
+    }
+
+    /**
+     * Reads available data from the channel and passes parsed messages to the listener.
+     */
+    void handleRead() throws IOException {
+        int received = channel.read(readBuffer);
+        if(received < 0) {
+            transport.closeConnection(this, null);
+            return;
+        }
+
+        readBuffer.flip();
+        while (readBuffer.hasRemaining() && !closed) {
+            decoder.feed(readBuffer);
+            decodeBuffered();
+        }
+        readBuffer.clear();
+    }
+
+    private void decodeBuffered() {
+        while (!closed) {
+            AbstractReceivedMessage message;
+            try {
+                message = decoder.tryDecode();
+            } catch (ReceivingException ex) {
+                listener.onReceivingError(this, ex);
+                continue;
+            }
+
+            if(message == null) {
+                return;
+            }
+            listener.onMessage(this, message);
+        }
+    }
+
+    /**
+     * Writes as much queued data as possible. When the queue is empty, stops waiting for OP_WRITE.
+     */
+    void handleWrite() throws IOException {
+        ByteBuffer data;
+        while ((data = writeQueue.peek()) != null) {
+            channel.write(data);
+            if(data.hasRemaining()) {
+                // socket buffer is full, wait for the next OP_WRITE
+                return;
+            }
+            writeQueue.poll();
+        }
+
+        key.interestOps(SelectionKey.OP_READ);
+        writeRequested.set(false);
+
+        // something could have been queued meanwhile
+        if(!writeQueue.isEmpty() && writeRequested.compareAndSet(false, true)) {
+            enableWrite();
+        }
+    }
+
+    private void enableWrite() {
+        if(closed || key == null || !key.isValid()) {
+            return;
+        }
+        key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    }
+
+    @Override
+    public String toString() {
+        return "NioConnection{" +
+                "address=" + address +
+                ", connected=" + connected +
+                ", closed=" + closed +
+                '}';
+    }
+}
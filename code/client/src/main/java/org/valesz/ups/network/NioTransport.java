@@ -0,0 +1,267 @@
+package org.valesz.ups.network;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-blocking transport. One event loop thread with a selector handles connecting, reading and writing
+ * of any number of connections. Received messages are parsed and passed to the ConnectionListener of the connection.
+ *
+ * Alternative to the blocking socket used by TcpClient, it doesn't depend on JavaFX. Headless sessions
+ * use it through SenetConnection, so many of them are served by one thread.
+ *
+ * @author Zdenek Vales
+ */
+public class NioTransport implements Runnable {
+
+    private static final Logger logger = LogManager.getLogger(NioTransport.class);
+
+    /**
+     * Maximum waiting time for connection. In ms.
+     */
+    public static final int CONNECT_TIMEOUT = ServerSelector.CONNECT_TIMEOUT;
+
+    /**
+     * Max time the selector waits, so that connect timeouts are checked. In ms.
+     */
+    private static final int SELECT_TIMEOUT = 1000;
+
+    private final Selector selector;
+
+    /**
+     * Tasks to be run by the event loop thread.
+     */
+    private final Queue<Runnable> pendingTasks;
+
+    /**
+     * Connections which are not connected yet. Accessed only by the event loop thread.
+     */
+    private final List<NioConnection> connecting;
+
+    private final AtomicInteger openConnections;
+
+    private Thread loopThread;
+
+    private volatile boolean running;
+
+    public NioTransport() throws IOException {
+        selector = Selector.open();
+        pendingTasks = new ConcurrentLinkedQueue<>();
+        connecting = new ArrayList<>();
+        openConnections = new AtomicInteger(0);
+    }
+
+    /**
+     * Starts the event loop thread.
+     */
+    public synchronized void start() {
+        if(running) {
+            return;
+        }
+
+        running = true;
+        loopThread = new Thread(this, "nio-transport");
+        loopThread.setDaemon(true);
+        loopThread.start();
+    }
+
+    /**
+     * Stops the event loop and closes all connections.
+     */
+    public synchronized void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Returns the number of connections which are not closed yet.
+     * @return
+     */
+    public int getOpenConnections() {
+        return openConnections.get();
+    }
+
+    /**
+     * Starts connecting to the server. The listener will be notified once the connection is established.
+     * @param address
+     * @param port
+     * @param listener
+     * @return Connection object. Messages may be queued even before the connection is established.
+     * @throws IOException Channel can't be opened or the transport isn't running.
+     */
+    public synchronized NioConnection connect(String address, int port, ConnectionListener listener) throws IOException {
+        // connect queued after the event loop ended would never run
+        if(!running) {
+            throw new IOException("Transport isn't running.");
+        }
+
+        SocketChannel channel = SocketChannel.open();
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, Boolean.TRUE);
+        channel.setOption(StandardSocketOptions.SO_REUSEADDR, Boolean.TRUE);
+
+        InetSocketAddress remote = new InetSocketAddress(address, port);
+        NioConnection connection = new NioConnection(this, channel, remote, listener);
+        openConnections.incrementAndGet();
+        execute(() -> register(connection));
+
+        return connection;
+    }
+
+    /**
+     * Runs the task in the event loop thread.
+     * @param task
+     */
+    void execute(Runnable task) {
+        pendingTasks.add(task);
+        if(Thread.currentThread() != loopThread) {
+            selector.wakeup();
+        }
+    }
+
+    private void register(NioConnection connection) {
+        SocketChannel channel = connection.getChannel();
+        try {
+            boolean connected = channel.connect(connection.getAddress());
+            connection.setKey(channel.register(selector, connected ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT, connection));
+            if(connected) {
+                connection.connected();
+            } else {
+                connection.setConnectDeadline(System.nanoTime() + CONNECT_TIMEOUT * 1000000L);
+                connecting.add(connection);
+            }
+        } catch (IOException ex) {
+            logger.error(String.format("Error while connecting to %s: %s", connection.getAddress(), ex.getMessage()));
+            closeConnection(connection, ex);
+        }
+    }
+
+    void connectFinished(NioConnection connection) {
+        connecting.remove(connection);
+    }
+
+    /**
+     * Closes the connection and notifies its listener. Must be called from the event loop thread.
+     * @param connection
+     * @param cause
+     */
+    void closeConnection(NioConnection connection, IOException cause) {
+        if(!connection.markClosed()) {
+            return;
+        }
+
+        connecting.remove(connection);
+        if(connection.getKey() != null) {
+            connection.getKey().cancel();
+        }
+        try {
+            connection.getChannel().close();
+        } catch (IOException e) {
+            logger.error("Error while closing the channel: "+e.getMessage());
+        }
+        openConnections.decrementAndGet();
+        connection.getListener().onClosed(connection, cause);
+    }
+
+    private void runPendingTasks() {
+        Runnable task;
+        while ((task = pendingTasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private void checkConnectTimeouts() {
+        if(connecting.isEmpty()) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        for (int i = connecting.size() - 1; i >= 0; i--) {
+            NioConnection connection = connecting.get(i);
+            if(now - connection.getConnectDeadline() > 0) {
+                logger.error("Connection to "+connection.getAddress()+" timed out.");
+                closeConnection(connection, new SocketTimeoutException("Connect timed out"));
+            }
+        }
+    }
+
+    private void handleKey(SelectionKey key) {
+        NioConnection connection = (NioConnection) key.attachment();
+        try {
+            if(key.isConnectable()) {
+                connection.handleConnect();
+            }
+            if(key.isValid() && key.isReadable()) {
+                connection.handleRead();
+            }
+            if(key.isValid() && key.isWritable()) {
+                connection.handleWrite();
+            }
+        } catch (CancelledKeyException ex) {
+            // connection was closed meanwhile
+        } catch (IOException ex) {
+            logger.error("I/O error on connection "+connection.getAddress()+": "+ex.getMessage());
+            closeConnection(connection, ex);
+        }
+    }
+
+    @Override
+    public void run() {
+        logger.debug("Starting NIO event loop.");
+        while (running) {
+            try {
+                selector.select(SELECT_TIMEOUT);
+            } catch (IOException ex) {
+                logger.error("Error in select: "+ex.getMessage());
+                break;
+            }
+
+            runPendingTasks();
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                if(key.isValid()) {
+                    handleKey(key);
+                }
+            }
+
+            checkConnectTimeouts();
+        }
+
+        // shut down, connect() can't queue new connections after this
+        synchronized (this) {
+            running = false;
+        }
+        runPendingTasks();
+        for (SelectionKey key : new ArrayList<>(selector.keys())) {
+            closeConnection((NioConnection) key.attachment(), null);
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            logger.error("Error while closing the selector: "+e.getMessage());
+        }
+        logger.debug("NIO event loop stopped.");
+    }
+}
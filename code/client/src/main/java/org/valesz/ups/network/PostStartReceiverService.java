@@ -18,6 +18,8 @@ public class PostStartReceiverService extends Service<AbstractReceivedMessage> {
 
     private Socket socket;
 
+    private MessageDispatcher dispatcher;
+
     private ExpectedMessageComparator expectedMessageComparator;
 
     private int maxTimeoutMs;
@@ -30,6 +32,10 @@ public class PostStartReceiverService extends Service<AbstractReceivedMessage> {
         this.socket = socket;
     }
 
+    public void setDispatcher(MessageDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
     public void setExpectedMessageComparator(ExpectedMessageComparator expectedMessageComparator) {
         this.expectedMessageComparator = expectedMessageComparator;
     }
@@ -52,7 +58,7 @@ public class PostStartReceiverService extends Service<AbstractReceivedMessage> {
 
     @Override
     protected Task<AbstractReceivedMessage> createTask() {
-        task = new PostStartReceiver(socket, expectedMessageComparator, maxTimeoutMs, maxAttempts);
+        task = new PostStartReceiver(socket, dispatcher, expectedMessageComparator, maxTimeoutMs, maxAttempts);
         return task;
     }
 }
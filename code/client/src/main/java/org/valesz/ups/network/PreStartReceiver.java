@@ -2,11 +2,8 @@ package org.valesz.ups.network;
 
 import org.valesz.ups.common.error.EndOfStreamReached;
 import org.valesz.ups.common.error.MaxAttemptsReached;
-import org.valesz.ups.common.error.ReceivingException;
-import org.valesz.ups.common.message.Message;
 import org.valesz.ups.common.message.received.AbstractReceivedMessage;
 import org.valesz.ups.common.message.received.ExpectedMessageComparator;
-import org.valesz.ups.common.message.received.ReceivedMessageTypeResolver;
 
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
@@ -27,9 +24,13 @@ public class PreStartReceiver extends AbstractReceiver {
     private final Socket socket;
 
     /**
-     * For every attempt to receive the expected message which times out, a counter will be increased by MAX_WAITING_TIMEOUT.
-     * Once this counter reaches maxTimeoutMs, alive message is sent. If OK is received, attempt counter is increased.
-     * and timeout counter is set to 0. Otherwise SocketTimeoutException is thrown.
+     * Dispatcher of the connection. If null, a new one will be created for the socket.
+     */
+    private final MessageDispatcher dispatcher;
+
+    /**
+     * If the expected message isn't received in maxTimeoutMs, alive message is sent. If OK is received, attempt counter is increased
+     * and the timeout starts again. Otherwise SocketTimeoutException is thrown.
      */
     private final int maxTimeoutMs;
 
@@ -54,123 +55,44 @@ public class PreStartReceiver extends AbstractReceiver {
 
      */
     public PreStartReceiver(Socket socket, ExpectedMessageComparator expectedMessageComparator, int maxTimeoutMs, int maxAttempts) {
+        this(socket, null, expectedMessageComparator, maxTimeoutMs, maxAttempts);
+    }
+
+    public PreStartReceiver(Socket socket, MessageDispatcher dispatcher, ExpectedMessageComparator expectedMessageComparator, int maxTimeoutMs, int maxAttempts) {
         this.socket = socket;
+        this.dispatcher = dispatcher;
         this.expectedMessageComparator = expectedMessageComparator;
         this.maxTimeoutMs = maxTimeoutMs;
         this.maxAttempts = maxAttempts;
     }
 
-    /**
-     * Tries tto receive the OK message. If exception raises or anything else is received,
-     * null is returned.
-     * @param inFromServer
-     * @return
-     */
-    private AbstractReceivedMessage receiveOk(DataInputStream inFromServer) {
-        AbstractReceivedMessage receivedMessage = null;
+    public AbstractReceivedMessage waitForMessage(DataInputStream inFromServer, DataOutputStream outToServer) throws IOException, MaxAttemptsReached, EndOfStreamReached {
+        MessageDispatcher streamDispatcher = new MessageDispatcher(new MessageDecoder(inFromServer), outToServer);
         try {
-            receivedMessage = receiveMessage(inFromServer);
-        } catch (Exception e) {
-            return  null;
-        }
-
-        return ReceivedMessageTypeResolver.isOk(receivedMessage);
-    }
-
-    /**
-     * If the value of attempts is >= maxAttempts,
-     * MaxAttemptsReached is thrown.
-     * @param attempts
-     */
-    private void checkAttempts(int attempts) throws MaxAttemptsReached {
-        if(attempts >= maxAttempts) {
-            logger.error("Maximum number of attempts reached.");
-            throw new MaxAttemptsReached();
+            return waitForMessage(streamDispatcher);
+        } finally {
+            streamDispatcher.stop();
         }
     }
 
-    public AbstractReceivedMessage waitForMessage(DataInputStream inFromServer, DataOutputStream outToServer) throws IOException, MaxAttemptsReached, EndOfStreamReached {
-        AbstractReceivedMessage receivedMessage = null;
-        AbstractReceivedMessage okReceived = null;
-        int timeoutCntr = 0;
-        int attemptCntr = 0;
-
-        while (!expectedMessageComparator.isExpected(receivedMessage)) {
-
-            // check before and after waiting for message
-            if(Thread.currentThread().isInterrupted()) {
-                return null;
-            }
-
-            try {
-                receivedMessage = receiveMessage(inFromServer);
-                if(Thread.currentThread().isInterrupted()) {
-                    return null;
-                }
-
-                // handle some errors
-            } catch (SocketTimeoutException ex) {
-                // socket timed out => increase cntr
-//                logger.warn("Socket timed out, increasing the timeout counter.");
-                timeoutCntr += MAX_WAITING_TIMEOUT;
-                if(timeoutCntr >= maxTimeoutMs) {
-                    logger.error("Max timeout reached. Sending is alive message");
-                    outToServer.write(Message.createIsAliveMessage().toBytes());
-
-                    // receive ok message
-                    socket.setSoTimeout(TcpClient.MAX_ALIVE_TIMEOUT);
-                    okReceived = receiveOk(inFromServer);
-                    if(okReceived == null) {
-                        logger.error("Server not responding.");
-                        throw new SocketTimeoutException();
-                    } else {
-                        socket.setSoTimeout(TcpClient.MAX_WAITING_TIMEOUT);
-                        logger.debug("Server lives, incrementing attempt counter.");
-                        timeoutCntr = 0;
-                        attemptCntr++;
-                        // check attempts
-                        checkAttempts(attemptCntr);
-                    }
-                }
-                continue;
-
-            } catch (EndOfStreamReached ex) {
-                throw ex;
-            } catch (ReceivingException ex) {
-                // error occured => increase the attemptCntr
-                logger.warn("Error occurred while receiving the message: "+ex.error.code.name()+". Increasing the attempt counter.");
-                attemptCntr++;
-                // check attempts
-                checkAttempts(attemptCntr);
-                continue;
-            }
-
-            // handle expected message
-            if (expectedMessageComparator.isExpected(receivedMessage)) {
-                logger.debug("Expected message received.");
-
-                // handle alive message
-            } else if(ReceivedMessageTypeResolver.isAliveMessage(receivedMessage) != null) {
-                // send ok
-                logger.debug("Is alive message received, sending ok.");
-                outToServer.write(Message.createOKMessage().toBytes());
-
-                // handle unexpected message
-            } else {
-                logger.debug("Unexpected message received: "+receivedMessage.toString()+". incrementing the attempt counter.");
-                attemptCntr++;
-                checkAttempts(attemptCntr);
-            }
+    public AbstractReceivedMessage waitForMessage(MessageDispatcher dispatcher) throws IOException, MaxAttemptsReached, EndOfStreamReached {
+        MessageDispatcher.Subscription subscription = dispatcher.subscribe(expectedMessageComparator, maxTimeoutMs, maxAttempts, false);
+        dispatcher.start();
+        try {
+            return subscription.await();
+        } catch (InterruptedException ex) {
+            subscription.cancel();
+            Thread.currentThread().interrupt();
+            return null;
         }
-
-        return receivedMessage;
     }
 
     @Override
     protected AbstractReceivedMessage call() throws Exception {
-        socket.setSoTimeout(MAX_WAITING_TIMEOUT);
-        DataInputStream inFromServer = new DataInputStream(socket.getInputStream());
-        DataOutputStream outToServer = new DataOutputStream(socket.getOutputStream());
-        return waitForMessage(inFromServer, outToServer);
+        MessageDispatcher socketDispatcher = dispatcher;
+        if(socketDispatcher == null) {
+            socketDispatcher = new MessageDispatcher(new MessageDecoder(socket.getInputStream()), socket.getOutputStream());
+        }
+        return waitForMessage(socketDispatcher);
     }
 }
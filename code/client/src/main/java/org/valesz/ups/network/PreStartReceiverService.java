@@ -19,6 +19,8 @@ public class PreStartReceiverService extends Service<AbstractReceivedMessage> {
 
     private Socket socket;
 
+    private MessageDispatcher dispatcher;
+
     private ExpectedMessageComparator expectedMessageComparator;
 
     private int maxTimeoutMs;
@@ -29,6 +31,10 @@ public class PreStartReceiverService extends Service<AbstractReceivedMessage> {
         this.socket = socket;
     }
 
+    public void setDispatcher(MessageDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
     public void setExpectedMessageComparator(ExpectedMessageComparator expectedMessageComparator) {
         this.expectedMessageComparator = expectedMessageComparator;
     }
@@ -43,6 +49,6 @@ public class PreStartReceiverService extends Service<AbstractReceivedMessage> {
 
     @Override
     protected Task<AbstractReceivedMessage> createTask() {
-        return new PreStartReceiver(socket, expectedMessageComparator, maxTimeoutMs, maxAttempts);
+        return new PreStartReceiver(socket, dispatcher, expectedMessageComparator, maxTimeoutMs, maxAttempts);
     }
 }
@@ -0,0 +1,90 @@
+package org.valesz.ups.network;
+
+import java.util.Arrays;
+
+/**
+ * Rolling statistics of round trip times of one connection. Last WINDOW values are kept
+ * for min, average and 99th percentile. All values are in microseconds.
+ *
+ * Thread safe.
+ *
+ * @author Zdenek Vales
+ */
+public class RttEstimator {
+
+    /**
+     * Number of last round trip times used for statistics.
+     */
+    public static final int WINDOW = 128;
+
+    /**
+     * Round trip times in us, ring buffer.
+     */
+    private final long[] rtts;
+    private int count;
+    private int next;
+
+    public RttEstimator() {
+        rtts = new long[WINDOW];
+    }
+
+    /**
+     * Records the round trip time.
+     * @param nanos Round trip time in nanoseconds.
+     */
+    public synchronized void recordNanos(long nanos) {
+        rtts[next] = nanos / 1000;
+        next = (next + 1) % WINDOW;
+        count = Math.min(count + 1, WINDOW);
+    }
+
+    /**
+     * Returns the number of round trip times in statistics.
+     * @return
+     */
+    public synchronized int getCount() {
+        return count;
+    }
+
+    /**
+     * Min round trip time in us, 0 if nothing is recorded yet.
+     * @return
+     */
+    public synchronized long getMin() {
+        long min = count == 0 ? 0 : Long.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            min = Math.min(min, rtts[i]);
+        }
+        return min;
+    }
+
+    /**
+     * Average round trip time in us, 0 if nothing is recorded yet.
+     * @return
+     */
+    public synchronized long getAvg() {
+        if(count == 0) {
+            return 0;
+        }
+
+        long sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += rtts[i];
+        }
+        return sum / count;
+    }
+
+    /**
+     * 99th percentile of round trip time in us, 0 if nothing is recorded yet.
+     * @return
+     */
+    public synchronized long getP99() {
+        if(count == 0) {
+            return 0;
+        }
+
+        long[] sorted = Arrays.copyOf(rtts, count);
+        Arrays.sort(sorted);
+        return sorted[(int) Math.ceil(0.99 * count) - 1];
+    }
+}
@@ -0,0 +1,245 @@
+package org.valesz.ups.network;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.valesz.ups.common.error.EndOfStreamReached;
+import org.valesz.ups.common.error.MaxAttemptsReached;
+import org.valesz.ups.common.error.ReceivingException;
+import org.valesz.ups.common.message.received.AbstractReceivedMessage;
+import org.valesz.ups.common.message.received.ExpectedMessageComparator;
+import org.valesz.ups.common.message.received.ReceivedMessageTypeResolver;
+import org.valesz.ups.network.MessageDispatcher.Request;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * One connection to the senet server. Contains the protocol logic used by both TcpClient
+ * and headless sessions, doesn't depend on JavaFX. The connection uses either blocking socket with its own
+ * reader thread or NioTransport shared by many connections.
+ *
+ * All waitFor methods block the calling thread until the expected message is received.
+ * Nick and end turn are requests, their response is waited for by waitForResponse().
+ *
+ * @author Zdenek Vales
+ */
+public class SenetConnection implements Closeable {
+
+    private static final Logger logger = LogManager.getLogger(SenetConnection.class);
+
+    /**
+     * Accepts only start game messages.
+     */
+    public static final ExpectedMessageComparator START_GAME = message -> message != null &&
+            ReceivedMessageTypeResolver.isStartGame(message) != null;
+
+    /**
+     * Accepts only start turn messages.
+     */
+    public static final ExpectedMessageComparator START_TURN = message -> message != null &&
+            ReceivedMessageTypeResolver.isStartTurn(message) != null;
+
+    /**
+     * Socket of blocking connection or connection of NioTransport, the other one is null.
+     */
+    private final Socket socket;
+    private final NioConnection nioConnection;
+    private final MessageDispatcher dispatcher;
+
+    /**
+     * Connects to the server.
+     * @param address
+     * @param port
+     * @param timeoutMs Max time to wait for connection.
+     * @return
+     * @throws IOException
+     */
+    public static SenetConnection connect(String address, int port, int timeoutMs) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(address, port), timeoutMs);
+            return new SenetConnection(socket);
+        } catch (IOException ex) {
+            socket.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Connects to the server through the transport. No reader thread is started, received messages
+     * are passed to the dispatcher by the event loop of the transport.
+     * @param transport
+     * @param address
+     * @param port
+     * @param timeoutMs Max time to wait for connection.
+     * @return
+     * @throws IOException Connecting failed or timed out.
+     * @throws InterruptedException
+     */
+    public static SenetConnection connect(NioTransport transport, String address, int port, int timeoutMs) throws IOException, InterruptedException {
+        NioListener listener = new NioListener();
+        NioConnection nioConnection = transport.connect(address, port, listener);
+        try {
+            listener.connected.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException ex) {
+            throw ex.getCause() instanceof IOException ? (IOException) ex.getCause() : new IOException(ex.getCause());
+        } catch (TimeoutException ex) {
+            nioConnection.close();
+            throw new SocketTimeoutException("Connect timed out");
+        } catch (InterruptedException ex) {
+            nioConnection.close();
+            throw ex;
+        }
+        return new SenetConnection(nioConnection, listener.dispatcher);
+    }
+
+    /**
+     * Creates the connection for already connected socket and starts receiving messages.
+     * @param socket
+     * @throws IOException
+     */
+    public SenetConnection(Socket socket) throws IOException {
+        this.socket = socket;
+        this.nioConnection = null;
+        socket.setReuseAddress(true);
+        socket.setTcpNoDelay(true);
+        socket.setSoTimeout(0);
+        dispatcher = new MessageDispatcher(new MessageDecoder(socket.getInputStream()), socket.getOutputStream());
+        dispatcher.start();
+    }
+
+    private SenetConnection(NioConnection nioConnection, MessageDispatcher dispatcher) {
+        this.socket = null;
+        this.nioConnection = nioConnection;
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * Passes events of the connection of NioTransport to the dispatcher.
+     */
+    private static class NioListener implements ConnectionListener {
+
+        private final CompletableFuture<Void> connected = new CompletableFuture<>();
+        private volatile MessageDispatcher dispatcher;
+
+        @Override
+        public void onConnected(NioConnection nioConnection) {
+            // created before anything is read, in the event loop thread which uses the decoder
+            dispatcher = new MessageDispatcher(nioConnection.getDecoder(), nioConnection.getOutputStream());
+            connected.complete(null);
+        }
+
+        @Override
+        public void onMessage(NioConnection nioConnection, AbstractReceivedMessage message) {
+            dispatcher.received(message);
+        }
+
+        @Override
+        public void onReceivingError(NioConnection nioConnection, ReceivingException ex) {
+            dispatcher.receivingError(ex);
+        }
+
+        @Override
+        public void onClosed(NioConnection nioConnection, IOException cause) {
+            if(dispatcher == null) {
+                connected.completeExceptionally(cause != null ? cause : new IOException("Connection closed."));
+                return;
+            }
+            dispatcher.closed(cause != null ? cause : new EndOfStreamReached());
+        }
+    }
+
+    /**
+     * Socket of the connection, null if the connection is handled by NioTransport.
+     * @return
+     */
+    public Socket getSocket() {
+        return socket;
+    }
+
+    public MessageDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    public boolean isConnected() {
+        if(nioConnection != null) {
+            return nioConnection.isConnected();
+        }
+        return socket.isConnected() && !socket.isClosed();
+    }
+
+    public Request sendNick(String nick) throws IOException {
+        return dispatcher.sendNick(nick);
+    }
+
+    public Request sendEndTurn(int[] firstPlayerTurnWord, int[] secondPlayerTurnWord) throws IOException {
+        return dispatcher.sendEndTurn(firstPlayerTurnWord, secondPlayerTurnWord);
+    }
+
+    public void sendOk() throws IOException {
+        dispatcher.sendOk();
+    }
+
+    public void sendExit() throws IOException {
+        dispatcher.sendExit();
+    }
+
+    /**
+     * Waits for ok or error message as a response to the request. End game message can be returned
+     * as a response to end turn.
+     * @param request
+     * @return
+     */
+    public AbstractReceivedMessage waitForResponse(Request request) throws IOException, MaxAttemptsReached, EndOfStreamReached, InterruptedException {
+        return request.setTimeout(TcpClient.MAX_TIMEOUT).await();
+    }
+
+    /**
+     * Asks the server for binary turn words and waits for the response.
+     * @return True if the server accepted binary turn words, false if the text ones are used.
+     */
+    public boolean negotiateBinary() throws IOException, MaxAttemptsReached, EndOfStreamReached, InterruptedException {
+        AbstractReceivedMessage response = waitForResponse(dispatcher.sendBinary());
+        return ReceivedMessageTypeResolver.isOk(response) != null;
+    }
+
+    /**
+     * Waits for start game message.
+     * @return
+     */
+    public AbstractReceivedMessage waitForStartGame() throws IOException, MaxAttemptsReached, EndOfStreamReached, InterruptedException {
+        return dispatcher.subscribe(START_GAME, TcpClient.MAX_TIMEOUT, TcpClient.MAX_ATTEMPTS, false).await();
+    }
+
+    /**
+     * Waits for start turn message. End game message can be returned too.
+     * @return
+     */
+    public AbstractReceivedMessage waitForMyTurn() throws IOException, MaxAttemptsReached, EndOfStreamReached, InterruptedException {
+        return dispatcher.subscribe(START_TURN, TcpClient.MAX_TIMEOUT, TcpClient.MAX_ATTEMPTS, true).await();
+    }
+
+    /**
+     * Stops receiving and closes the socket.
+     */
+    @Override
+    public void close() {
+        dispatcher.stop();
+        if(nioConnection != null) {
+            nioConnection.close();
+            return;
+        }
+        try {
+            socket.close();
+        } catch (IOException e) {
+            logger.error("Error while closing the socket: "+e.getMessage());
+        }
+    }
+}
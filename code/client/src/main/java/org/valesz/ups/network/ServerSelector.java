@@ -0,0 +1,331 @@
+package org.valesz.ups.network;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.valesz.ups.common.message.received.AbstractReceivedMessage;
+import org.valesz.ups.common.message.received.ReceivedMessageTypeResolver;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Connects to several servers at once and keeps the connection with the lowest latency.
+ *
+ * Latency of a server is the time of TCP handshake plus the round trip time of the first INFALIVE/INFOK exchange.
+ * After the first server answers, the others get a short window to answer too, then the best connection is kept
+ * and the rest are closed.
+ *
+ * With only one server there's nothing to choose from, so no alive is sent and the connection is returned
+ * right after the handshake.
+ *
+ * Latencies are cached for the process, the next selection starts with the best known server and
+ * failed servers are tried last.
+ *
+ * @author Zdenek Vales
+ */
+public class ServerSelector {
+
+    private static final Logger logger = LogManager.getLogger(ServerSelector.class);
+
+    /**
+     * Maximum waiting time for connection. In ms.
+     */
+    public static final int CONNECT_TIMEOUT = 30000;
+
+    /**
+     * Min time to wait for other servers after the first one answers. In ms.
+     */
+    public static final int MIN_SELECTION_WINDOW = 100;
+
+    /**
+     * Separates servers in the list.
+     */
+    public static final String SERVER_SEPARATOR = ",";
+
+    /**
+     * Latency cached for servers which couldn't be connected.
+     */
+    private static final long FAILED = Long.MAX_VALUE;
+
+    /**
+     * Latencies of the last selections in ns.
+     */
+    private static final Map<InetSocketAddress, Long> latencies = new ConcurrentHashMap<>();
+
+    /**
+     * Connection to one server with its measured latency.
+     */
+    public static class Candidate {
+        private final InetSocketAddress address;
+        private final SenetConnection connection;
+        private final long connectNanos;
+        private final long rttNanos;
+
+        private Candidate(InetSocketAddress address, SenetConnection connection, long connectNanos, long rttNanos) {
+            this.address = address;
+            this.connection = connection;
+            this.connectNanos = connectNanos;
+            this.rttNanos = rttNanos;
+        }
+
+        public InetSocketAddress getAddress() {
+            return address;
+        }
+
+        public SenetConnection getConnection() {
+            return connection;
+        }
+
+        /**
+         * Time of TCP handshake in ns.
+         * @return
+         */
+        public long getConnectNanos() {
+            return connectNanos;
+        }
+
+        /**
+         * Round trip time of the first alive message in ns, 0 if it wasn't measured.
+         * @return
+         */
+        public long getRttNanos() {
+            return rttNanos;
+        }
+
+        public long getLatencyNanos() {
+            return connectNanos + rttNanos;
+        }
+    }
+
+    private final List<InetSocketAddress> servers;
+    private final int timeoutMs;
+
+    /**
+     * @param servers Servers to select from.
+     * @param timeoutMs Max time to connect and max time to wait for the answer to alive.
+     */
+    public ServerSelector(List<InetSocketAddress> servers, int timeoutMs) {
+        this.servers = servers;
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * Parses the list of servers separated by SERVER_SEPARATOR. Every server is address with
+     * optional port, default port is used for servers without one.
+     * @param servers For example "127.0.0.1:65000,127.0.0.1".
+     * @param defaultPort
+     * @return
+     * @exception IllegalArgumentException Port isn't a number or there's no server.
+     */
+    public static List<InetSocketAddress> parse(String servers, int defaultPort) {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (String server : servers.split(SERVER_SEPARATOR)) {
+            server = server.trim();
+            if(server.isEmpty()) {
+                continue;
+            }
+
+            int colon = server.lastIndexOf(':');
+            if(colon < 0) {
+                addresses.add(InetSocketAddress.createUnresolved(server, defaultPort));
+            } else {
+                addresses.add(InetSocketAddress.createUnresolved(server.substring(0, colon), Integer.parseInt(server.substring(colon + 1))));
+            }
+        }
+
+        if(addresses.isEmpty()) {
+            throw new IllegalArgumentException("No server in '"+servers+"'.");
+        }
+        return addresses;
+    }
+
+    /**
+     * Sorts the servers by cached latency, servers without latency are placed before failed ones.
+     * @param servers
+     * @return New list.
+     */
+    public static List<InetSocketAddress> rank(List<InetSocketAddress> servers) {
+        List<InetSocketAddress> ranked = new ArrayList<>(servers);
+        ranked.sort(Comparator.comparingLong(ServerSelector::rankOf));
+        return ranked;
+    }
+
+    /**
+     * Returns the cached latency of the server in ns, -1 if it's unknown and Long.MAX_VALUE if the server failed.
+     * @param server
+     * @return
+     */
+    public static long getCachedLatency(InetSocketAddress server) {
+        return latencies.getOrDefault(server, -1L);
+    }
+
+    public static void clearCache() {
+        latencies.clear();
+    }
+
+    private static long rankOf(InetSocketAddress server) {
+        // unknown servers go after the known working ones
+        long latency = getCachedLatency(server);
+        return latency < 0 ? FAILED - 1 : latency;
+    }
+
+    /**
+     * Returns address:port of the server.
+     * @param server
+     * @return
+     */
+    public static String name(InetSocketAddress server) {
+        return server.getHostString()+":"+server.getPort();
+    }
+
+    /**
+     * Connects to all servers and returns the connection with the lowest latency.
+     * Other connections are closed.
+     * @return
+     * @throws IOException No server could be connected.
+     */
+    public Candidate select() throws IOException {
+        List<InetSocketAddress> ranked = rank(servers);
+        List<Socket> sockets = new ArrayList<>();
+        ExecutorService pool = Executors.newFixedThreadPool(ranked.size(), r -> {
+            Thread t = new Thread(r, "server-selector");
+            t.setDaemon(true);
+            return t;
+        });
+        CompletionService<Candidate> completion = new ExecutorCompletionService<>(pool);
+        for (InetSocketAddress server : ranked) {
+            Socket socket = new Socket();
+            sockets.add(socket);
+            completion.submit(() -> measure(server, socket));
+        }
+
+        Candidate best = null;
+        Exception lastError = null;
+        int finished = 0;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(2L * timeoutMs);
+        try {
+            while (finished < ranked.size()) {
+                long remaining = deadline - System.nanoTime();
+                Future<Candidate> future = remaining > 0 ? completion.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                if(future == null) {
+                    break;
+                }
+                finished++;
+
+                try {
+                    Candidate candidate = future.get();
+                    latencies.put(candidate.getAddress(), candidate.getLatencyNanos());
+                    if(best == null) {
+                        // give the others a chance
+                        long window = Math.max(TimeUnit.MILLISECONDS.toNanos(MIN_SELECTION_WINDOW), candidate.getLatencyNanos());
+                        deadline = Math.min(deadline, System.nanoTime() + window);
+                    }
+                    if(best == null || candidate.getLatencyNanos() < best.getLatencyNanos()) {
+                        if(best != null) {
+                            best.getConnection().close();
+                        }
+                        best = candidate;
+                    } else {
+                        candidate.getConnection().close();
+                    }
+                } catch (ExecutionException ex) {
+                    lastError = ex;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            if(best != null) {
+                best.getConnection().close();
+                best = null;
+            }
+            lastError = ex;
+        } finally {
+            close(sockets, best, pool, completion);
+        }
+
+        if(best == null) {
+            if(lastError instanceof ExecutionException && lastError.getCause() instanceof IOException) {
+                throw (IOException) lastError.getCause();
+            }
+            throw new SocketTimeoutException("No server answered.");
+        }
+
+        logger.info(String.format("Server %s selected, connect %d us, rtt %d us.", name(best.getAddress()),
+                TimeUnit.NANOSECONDS.toMicros(best.getConnectNanos()), TimeUnit.NANOSECONDS.toMicros(best.getRttNanos())));
+        return best;
+    }
+
+    /**
+     * Connects to the server and measures the first alive. Failed server is cached as failed.
+     */
+    private Candidate measure(InetSocketAddress server, Socket socket) throws Exception {
+        SenetConnection connection = null;
+        try {
+            long start = System.nanoTime();
+            socket.connect(new InetSocketAddress(server.getHostString(), server.getPort()), timeoutMs);
+            long connected = System.nanoTime();
+            connection = new SenetConnection(socket);
+            if(servers.size() == 1) {
+                return new Candidate(server, connection, connected - start, 0);
+            }
+
+            AbstractReceivedMessage response = connection.getDispatcher().sendAlive().setTimeout(timeoutMs).await();
+            long answered = System.nanoTime();
+            if(ReceivedMessageTypeResolver.isOk(response) == null) {
+                throw new IOException("Server "+name(server)+" didn't answer alive with ok.");
+            }
+            return new Candidate(server, connection, connected - start, answered - connected);
+        } catch (Exception ex) {
+            // socket closed by select() means the server was just too slow
+            if(!socket.isClosed()) {
+                logger.debug("Server "+name(server)+" failed: "+ex.getMessage());
+                latencies.put(server, FAILED);
+            }
+            if(connection != null) {
+                connection.close();
+            } else {
+                socket.close();
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Closes sockets of all servers except the selected one, stops the pool and closes connections
+     * which were established after the selection ended.
+     */
+    private void close(List<Socket> sockets, Candidate best, ExecutorService pool, CompletionService<Candidate> completion) {
+        for (Socket socket : sockets) {
+            if(best == null || socket != best.getConnection().getSocket()) {
+                try {
+                    socket.close();
+                } catch (IOException ex) {
+                    logger.debug("Error while closing the socket: "+ex.getMessage());
+                }
+            }
+        }
+        pool.shutdown();
+
+        Future<Candidate> late;
+        while ((late = completion.poll()) != null) {
+            try {
+                Candidate candidate = late.get();
+                if(candidate != best) {
+                    candidate.getConnection().close();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException ex) {
+                // already closed
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package org.valesz.ups.network;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.valesz.ups.common.error.ReceivingException;
+import org.valesz.ups.common.message.received.AbstractReceivedMessage;
+import org.valesz.ups.common.message.received.ReceivedMessageTypeResolver;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gets the player back to his game after the connection was lost. Reconnects to the same server
+ * with exponential backoff and sends the nick again. Server which keeps the seat of disconnected player
+ * answers OK and sends the start turn when it's the player's turn, so the game state is rebuilt from it.
+ *
+ * The nick may be rejected for a while if the server hasn't noticed the lost connection yet, so ERR is
+ * retried the same way as failed connect.
+ *
+ * @author Zdenek Vales
+ */
+public class SessionResumer {
+
+    private static final Logger logger = LogManager.getLogger(SessionResumer.class);
+
+    /**
+     * Backoff between attempts, doubled after every failed one. In ms.
+     */
+    public static final int MIN_BACKOFF = 50;
+    public static final int MAX_BACKOFF = 2000;
+
+    /**
+     * Max time of resuming, should be shorter than the time for which the server keeps the seat. In ms.
+     */
+    public static final int MAX_RESUME_TIME = 10000;
+
+    private final InetSocketAddress server;
+    private final String nick;
+    private final boolean binaryTurnWords;
+
+    /**
+     * Transport of the new connection, null for blocking socket.
+     */
+    private final NioTransport transport;
+
+    private int attempts;
+    private long resumeNanos;
+
+    /**
+     * @param server Server where the game is played.
+     * @param nick Nick of the player.
+     * @param binaryTurnWords If true, binary turn words are negotiated again.
+     */
+    public SessionResumer(InetSocketAddress server, String nick, boolean binaryTurnWords) {
+        this(server, nick, binaryTurnWords, null);
+    }
+
+    /**
+     * @param server Server where the game is played.
+     * @param nick Nick of the player.
+     * @param binaryTurnWords If true, binary turn words are negotiated again.
+     * @param transport Transport of the new connection, null for blocking socket.
+     */
+    public SessionResumer(InetSocketAddress server, String nick, boolean binaryTurnWords, NioTransport transport) {
+        this.server = server;
+        this.nick = nick;
+        this.binaryTurnWords = binaryTurnWords;
+        this.transport = transport;
+    }
+
+    /**
+     * Number of attempts of the last resume.
+     * @return
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * Time from the connection loss to the confirmed nick in the last successful resume, in ns.
+     * @return
+     */
+    public long getResumeNanos() {
+        return resumeNanos;
+    }
+
+    /**
+     * Tries to resume until the nick is confirmed or MAX_RESUME_TIME passes.
+     * @param lostAt Time (System.nanoTime()) when the connection was lost.
+     * @return New connection.
+     * @throws IOException Resume failed.
+     * @throws InterruptedException
+     */
+    public SenetConnection resume(long lostAt) throws IOException, InterruptedException {
+        long deadline = lostAt + TimeUnit.MILLISECONDS.toNanos(MAX_RESUME_TIME);
+        int backoff = MIN_BACKOFF;
+        attempts = 0;
+        Exception lastError = null;
+
+        while (true) {
+            attempts++;
+            int timeoutMs = (int) Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+            SenetConnection connection = null;
+            try {
+                connection = transport == null
+                        ? SenetConnection.connect(server.getHostString(), server.getPort(), timeoutMs)
+                        : SenetConnection.connect(transport, server.getHostString(), server.getPort(), timeoutMs);
+                AbstractReceivedMessage response = connection.getDispatcher().sendNick(nick).setTimeout(timeoutMs).await();
+                if(ReceivedMessageTypeResolver.isOk(response) != null) {
+                    if(binaryTurnWords && !connection.negotiateBinary()) {
+                        logger.debug("Server doesn't support binary turn words, "+nick+" uses text.");
+                    }
+                    resumeNanos = System.nanoTime() - lostAt;
+                    logger.info(String.format("Session of %s resumed after %d ms, %d attempts.", nick,
+                            TimeUnit.NANOSECONDS.toMillis(resumeNanos), attempts));
+                    return connection;
+                }
+                lastError = new IOException("Nick rejected: "+response);
+            } catch (IOException | ReceivingException ex) {
+                lastError = ex;
+            }
+
+            if(connection != null) {
+                connection.close();
+            }
+            logger.debug("Resume attempt "+attempts+" of "+nick+" failed: "+lastError.getMessage());
+            if(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoff) > deadline) {
+                throw new SocketTimeoutException("Session of "+nick+" not resumed in "+MAX_RESUME_TIME+" ms: "+lastError.getMessage());
+            }
+            Thread.sleep(backoff);
+            backoff = Math.min(2 * backoff, MAX_BACKOFF);
+        }
+    }
+}
@@ -1,22 +1,22 @@
 package org.valesz.ups.network;
 
+import javafx.application.Platform;
 import javafx.concurrent.WorkerStateEvent;
 import javafx.event.EventHandler;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.valesz.ups.common.error.Error;
 import org.valesz.ups.common.error.ReceivingException;
-import org.valesz.ups.common.message.Message;
 import org.valesz.ups.common.message.received.AbstractReceivedMessage;
-import org.valesz.ups.common.message.received.ReceivedMessageTypeResolver;
 import org.valesz.ups.model.LoginData;
+import org.valesz.ups.network.MessageDispatcher.Request;
 
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketException;
+import java.util.concurrent.CancellationException;
+import java.util.function.Consumer;
 
 /**
  * Class used for communication with senet server.
@@ -27,11 +27,6 @@ public class TcpClient {
 
     public static final Logger logger = LogManager.getLogger(TcpClient.class);
 
-    /**
-     * Max time to wait for new turn message.
-     */
-    public static final int MAX_WAITING_TIMEOUT = 1000;
-
     public static final int MAX_ALIVE_TIMEOUT = 10000;
 
     public static final int NO_TIMEOUT = -1;
@@ -45,8 +40,30 @@ public class TcpClient {
 
     public static final int INF_ATTEMPTS = -1;
 
+    /**
+     * Time in which the dead server should be detected by heartbeats.
+     */
+    public static final int HEARTBEAT_BUDGET = MAX_TIMEOUT;
+
+    /**
+     * Number of heartbeats missed in a row after which the server is considered dead.
+     */
+    public static final int MAX_MISSED_HEARTBEATS = 3;
+
     private LoginData lastSuccessfulConnection;
+
+    /**
+     * Server selected by the last successful connect, the session is resumed there.
+     */
+    private InetSocketAddress server;
     private Socket socket;
+
+    /**
+     * Current connection. Its dispatcher is shared by all receivers so that no buffered data is lost
+     * between them and no polling is needed while waiting for messages.
+     */
+    private SenetConnection connection;
+    private Heartbeat heartbeat;
     private ConnectionService connectionService;
 
     private PreStartReceiverService preStartReceiverService;
@@ -54,16 +71,22 @@ public class TcpClient {
 
     /**
      * Tries to connect to the server and if the connection is successful,
-     * NO_ERROR is returned.
+     * NO_ERROR is returned. Address may be a list of servers (see ServerSelector.parse()),
+     * the one with the lowest latency is used then.
      * @param address
-     * @param port
+     * @param port Default port.
      * @return
      */
     public Error connect(String address, int port,
                          EventHandler<WorkerStateEvent> successCallback,
                          EventHandler<WorkerStateEvent> failCallback) {
 
-        connectionService = new ConnectionService(address, port);
+        try {
+            connectionService = new ConnectionService(address, port);
+        } catch (IllegalArgumentException ex) {
+            logger.error("Bad server list '"+address+"': "+ex.getMessage());
+            return Error.GENERAL_ERROR(ex.getMessage());
+        }
         connectionService.setOnFailed(event -> {
             String err = String.format("Error while connecting to %s:%d",address, port);
             logger.error(err);
@@ -71,21 +94,16 @@ public class TcpClient {
             failCallback.handle(event);
         });
         connectionService.setOnSucceeded(event -> {
-            this.socket = connectionService.getValue();
-            try {
-                socket.setReuseAddress(true);
-                socket.setSoTimeout(MAX_WAITING_TIMEOUT);
-                preStartReceiverService = new PreStartReceiverService();
-                postStartReceiverService = new PostStartReceiverService();
+            ServerSelector.Candidate selected = connectionService.getValue();
+            connection = selected.getConnection();
+            socket = connection.getSocket();
+            server = selected.getAddress();
+            preStartReceiverService = new PreStartReceiverService();
+            postStartReceiverService = new PostStartReceiverService();
 
-                lastSuccessfulConnection = new LoginData("", address, port);
-            } catch (IOException e) {
-                logger.debug("Error setting reuse address.");
-                socket = null;
-
-                failCallback.handle(event);
-                return;
-            }
+            // the whole list is kept, so that reconnect selects the server again
+            lastSuccessfulConnection = new LoginData("", address, port);
+            logger.debug("Connected to "+ServerSelector.name(selected.getAddress())+".");
 
             successCallback.handle(event);
         });
@@ -99,19 +117,20 @@ public class TcpClient {
      */
     public void disconnect() {
         if(isConnected()) {
-            try {
-                if(preStartReceiverService != null) {
-                    preStartReceiverService.cancel();
-                }
-                if(postStartReceiverService != null) {
-                    postStartReceiverService.cancel();
-                }
-                socket.close();
-            } catch (IOException e) {
-                logger.error("Error while closing the socket: "+e.getMessage());
+            if(preStartReceiverService != null) {
+                preStartReceiverService.cancel();
             }
+            if(postStartReceiverService != null) {
+                postStartReceiverService.cancel();
+            }
+            connection.close();
+        }
+        if(heartbeat != null) {
+            heartbeat.stop();
+            heartbeat = null;
         }
         socket = null;
+        connection = null;
     }
 
     /**
@@ -122,14 +141,19 @@ public class TcpClient {
         return socket != null && socket.isConnected();
     }
 
-    public void sendEndTurnMessage(int[] firstPlayerTurnWord,
-                                   int[] secondPlayerTurnWord) throws IOException {
+    /**
+     * Sends the end turn message. Response is waited for by waitForResponse().
+     * @param firstPlayerTurnWord
+     * @param secondPlayerTurnWord
+     * @return Request waiting for the turn confirm.
+     */
+    public Request sendEndTurnMessage(int[] firstPlayerTurnWord,
+                                      int[] secondPlayerTurnWord) throws IOException {
         if(!isConnected()) {
-            return ;
+            throw new SocketException("Not connected.");
         }
 
-        DataOutputStream dos = new DataOutputStream(socket.getOutputStream());
-        dos.write(Message.createEndTurnMessage(firstPlayerTurnWord, secondPlayerTurnWord).toBytes());
+        return connection.sendEndTurn(firstPlayerTurnWord, secondPlayerTurnWord);
     }
 
     public void sendExitMessage() throws IOException {
@@ -137,8 +161,7 @@ public class TcpClient {
             return ;
         }
 
-        DataOutputStream dos = new DataOutputStream(socket.getOutputStream());
-        dos.write(Message.createExitMessage().toBytes());
+        connection.sendExit();
     }
 
     public void sendOkMessage() throws IOException {
@@ -146,8 +169,7 @@ public class TcpClient {
             return ;
         }
 
-        DataOutputStream dos = new DataOutputStream(socket.getOutputStream());
-        dos.write(Message.createOKMessage().toBytes());
+        connection.sendOk();
     }
 
     public Socket getSocket() {
@@ -171,31 +193,30 @@ public class TcpClient {
     }
 
     /**
-     * Uses PreStartReceiverService to wait for response. Waiting is successful if
-     * ok message or error message is received in time.
+     * Waits for the response to the request without blocking. Callbacks are called on the JavaFX application thread,
+     * success callback with ok or error message (or end game as a response to end turn). Nothing is called if
+     * the request is cancelled by disconnect.
+     * @param request
      * @param successCallback
      * @param failCallback
      */
-    public void waitForNickConfirm(EventHandler<WorkerStateEvent> successCallback,
-                                   EventHandler<WorkerStateEvent> failCallback) {
-        preStartReceiverService.setOnSucceeded(successCallback);
-        preStartReceiverService.setOnFailed(failCallback);
-        preStartReceiverService.setMaxAttempts(MAX_ATTEMPTS);
-        preStartReceiverService.setMaxTimeoutMs(MAX_TIMEOUT);
-        preStartReceiverService.setSocket(socket);
-        preStartReceiverService.setExpectedMessageComparator(message -> {
-            if(message == null) {
-                return false;
+    public void waitForResponse(Request request,
+                                Consumer<AbstractReceivedMessage<?>> successCallback,
+                                Consumer<Throwable> failCallback) {
+        request.setTimeout(MAX_TIMEOUT).getResponse().whenComplete((response, ex) -> {
+            if(ex instanceof CancellationException) {
+                logger.debug("Waiting for response to "+request.getType()+" cancelled.");
+                return;
             }
 
-            // accept ok messages and errors
-            if(ReceivedMessageTypeResolver.isOk(message) != null || ReceivedMessageTypeResolver.isError(message) != null) {
-                return true;
-            } else {
-                return false;
-            }
+            Platform.runLater(() -> {
+                if(ex == null) {
+                    successCallback.accept(response);
+                } else {
+                    failCallback.accept(ex);
+                }
+            });
         });
-        preStartReceiverService.restart();
     }
 
     /**
@@ -211,40 +232,11 @@ public class TcpClient {
         preStartReceiverService.setMaxAttempts(MAX_ATTEMPTS);
         preStartReceiverService.setMaxTimeoutMs(MAX_TIMEOUT);
         preStartReceiverService.setSocket(socket);
-        preStartReceiverService.setExpectedMessageComparator(message -> {
-            if(message == null) {
-                return false;
-            }
-            // accept only start_game messages
-            return ReceivedMessageTypeResolver.isStartGame(message) != null;
-        });
+        preStartReceiverService.setDispatcher(connection.getDispatcher());
+        preStartReceiverService.setExpectedMessageComparator(SenetConnection.START_GAME);
         preStartReceiverService.restart();
     }
 
-    /**
-     * Uses PostStartReceiverService to receive either OK or error message indicating the validation of turn.
-     * @param successCallback
-     * @param failCallback
-     */
-    public void waitForTurnConfirm(EventHandler<WorkerStateEvent> successCallback,
-                                   EventHandler<WorkerStateEvent> failCallback) {
-//        postStartReceiverService.cancel();
-        postStartReceiverService.setOnSucceeded(successCallback);
-        postStartReceiverService.setOnFailed(failCallback);
-        postStartReceiverService.setMaxTimeoutMs(MAX_TIMEOUT);
-        postStartReceiverService.setMaxAttempts(MAX_ATTEMPTS);
-        postStartReceiverService.setSocket(socket);
-        postStartReceiverService.setExpectedMessageComparator(message -> {
-            if(message == null) {
-                return false;
-            }
-
-            // accept only start turn messages
-            return ReceivedMessageTypeResolver.isOk(message) != null || ReceivedMessageTypeResolver.isError(message) != null;
-        });
-        postStartReceiverService.restart();
-    }
-
     /**
      * Uses post-start game receiver to wait for response. Waiting is successful if start
      * turn message or end game message is received.
@@ -253,84 +245,107 @@ public class TcpClient {
      */
     public void waitForMyTurn(EventHandler<WorkerStateEvent> successCallback,
                               EventHandler<WorkerStateEvent> failCallback) {
-//        postStartReceiverService.cancel();
         postStartReceiverService.setOnSucceeded(successCallback);
         postStartReceiverService.setOnFailed(failCallback);
         postStartReceiverService.setMaxTimeoutMs(MAX_TIMEOUT);
         postStartReceiverService.setMaxAttempts(MAX_ATTEMPTS);
         postStartReceiverService.setSocket(socket);
-        postStartReceiverService.setExpectedMessageComparator(message -> {
-            if(message == null) {
-                return false;
-            }
-
-            // accept only start turn messages
-            return ReceivedMessageTypeResolver.isStartTurn(message) != null;
-        });
+        postStartReceiverService.setDispatcher(connection.getDispatcher());
+        postStartReceiverService.setExpectedMessageComparator(SenetConnection.START_TURN);
         postStartReceiverService.restart();
     }
 
     /**
-     * Using the PostStartGameReceiverService runs a task which will be periodically receiving messages,
-     * while the player does his turn. This task is ended when either ok, err or end game message is received.
-     * Ok or err is response to the sent end turn message.
-     *
-     * @param successCallback
-     * @param failCallback
+     * Sends a nick message to socket. Response is waited for by waitForResponse().
+     * @param nick
+     * @return Request waiting for the nick confirm.
      */
-    public void handleWhileTurn(EventHandler<WorkerStateEvent> successCallback,
-                                EventHandler<WorkerStateEvent> failCallback) {
-//        postStartReceiverService.cancel();
-        postStartReceiverService.setOnSucceeded(successCallback);
-        postStartReceiverService.setOnFailed(failCallback);
-        postStartReceiverService.setMaxTimeoutMs(NO_TIMEOUT);
-        postStartReceiverService.setMaxAttempts(INF_ATTEMPTS);
-        postStartReceiverService.setSocket(socket);
-        postStartReceiverService.setExpectedMessageComparator(message -> {
-
-            if(message == null) {
-                return false;
-            }
+    public Request sendNickMessage(String nick) throws IOException {
+        if (!isConnected()) {
+            throw new SocketException("Not connected.");
+        }
 
-            // nothing is expected
-            return ReceivedMessageTypeResolver.isOk(message) != null || ReceivedMessageTypeResolver.isError(message) != null;
-        });
-        postStartReceiverService.restart();
+        return connection.sendNick(nick);
     }
 
     /**
-     * Sends a nick message to socket.
-     * @param nick
+     * Starts sending heartbeats over the current connection.
+     * @param onDead Called on the JavaFX application thread if the server stops answering heartbeats.
      */
-    public void sendNickMessage(String nick) throws IOException {
-        if (!socket.isConnected()) {
+    public void startHeartbeat(Runnable onDead) {
+        if(!isConnected()) {
             return;
         }
 
-        DataOutputStream dos = new DataOutputStream(socket.getOutputStream());
-        dos.write(Message.createNickMessage(nick).toBytes());
+        if(heartbeat != null) {
+            heartbeat.stop();
+        }
+        heartbeat = new Heartbeat(connection.getDispatcher(), HEARTBEAT_BUDGET, MAX_MISSED_HEARTBEATS);
+        heartbeat.start(() -> Platform.runLater(onDead));
     }
 
     /**
-     * Checks, if the other side of current connection is still alive.
-     * @param maxTimeout
+     * Checks, if the other side of current connection is still alive. Server is alive
+     * until it misses MAX_MISSED_HEARTBEATS heartbeats in a row.
      * @return
      */
-    public boolean isAlive(int maxTimeout) {
-        if(!isConnected()) {
-            return false;
-        }
+    public boolean isAlive() {
+        return isConnected() && (heartbeat == null || !heartbeat.isDead());
+    }
 
-        Socket s = new Socket();
+    /**
+     * Heartbeat of the current connection with round trip times, null if it isn't started.
+     * @return
+     */
+    public Heartbeat getHeartbeat() {
+        return heartbeat;
+    }
 
-        try {
-            s.connect(new InetSocketAddress(socket.getInetAddress().getHostAddress(), socket.getPort()), maxTimeout);
-            s.close();
-            return true;
-        } catch (Exception e) {
-            return  false;
+    /**
+     * Starts the turn clock from the time the current turn was received from the server.
+     * If there's no connection, the clock starts now.
+     * @param clock
+     */
+    public void startTurnClock(TurnClock clock) {
+        if(connection == null) {
+            clock.start();
+        } else {
+            clock.start(connection.getDispatcher());
         }
+    }
 
+    /**
+     * Drops the current connection and resumes the session with the last successful nick on the same server
+     * in the background, see SessionResumer. Callbacks are called on the JavaFX application thread, success callback
+     * with the time of resuming in ns. Heartbeat has to be started again.
+     * @param successCallback
+     * @param failCallback
+     */
+    public void resume(Consumer<Long> successCallback, Consumer<Throwable> failCallback) {
+        long lostAt = System.nanoTime();
+        disconnect();
+        if(lastSuccessfulConnection == null || server == null) {
+            failCallback.accept(new SocketException("No session to resume."));
+            return;
+        }
+
+        SessionResumer resumer = new SessionResumer(server, lastSuccessfulConnection.getNick(), false);
+        Thread resumeThread = new Thread(() -> {
+            try {
+                SenetConnection resumed = resumer.resume(lostAt);
+                Platform.runLater(() -> {
+                    connection = resumed;
+                    socket = resumed.getSocket();
+                    preStartReceiverService = new PreStartReceiverService();
+                    postStartReceiverService = new PostStartReceiverService();
+                    successCallback.accept(resumer.getResumeNanos());
+                });
+            } catch (IOException | InterruptedException ex) {
+                Platform.runLater(() -> failCallback.accept(ex));
+            }
+        }, "session-resume");
+        resumeThread.setDaemon(true);
+        resumeThread.start();
     }
 
     public void addLastSuccessfulNick(String nick) {
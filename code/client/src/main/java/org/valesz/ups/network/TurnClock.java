@@ -0,0 +1,221 @@
+package org.valesz.ups.network;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Countdown of one turn. All clocks share the scheduler of dispatchers, so no thread is created per turn
+ * and many clocks may run at once.
+ *
+ * Deadline is computed from System.nanoTime() when the clock is started, ticks are aligned to the start of the turn,
+ * so late ticks (GC pauses etc.) don't delay the following ones or the expiry. Time while the clock is paused
+ * is added to the deadline.
+ *
+ * Listener is called from the scheduler thread and should return quickly.
+ *
+ * @author Zdenek Vales
+ */
+public class TurnClock {
+
+    /**
+     * Called by the clock.
+     */
+    public interface Listener {
+
+        /**
+         * Called every tick while the clock runs, not called if the tick is 0.
+         * @param clock
+         */
+        default void tick(TurnClock clock) {}
+
+        /**
+         * Called once when the deadline is reached.
+         * @param clock
+         */
+        void expired(TurnClock clock);
+    }
+
+    private final long durationNanos;
+    private final long tickNanos;
+    private final Listener listener;
+
+    private long startedAt;
+    private long pausedNanos;
+    private long pausedAt;
+    private boolean running;
+    private boolean paused;
+    private boolean expired;
+
+    /**
+     * Incremented by every start and cancel, so that already running task of the previous turn is ignored.
+     */
+    private int generation;
+    private ScheduledFuture<?> task;
+
+    /**
+     * @param durationMs Length of the turn.
+     * @param tickMs Interval of ticks, 0 for no ticks.
+     * @param listener
+     */
+    public TurnClock(long durationMs, long tickMs, Listener listener) {
+        this.durationNanos = TimeUnit.MILLISECONDS.toNanos(durationMs);
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMs);
+        this.listener = listener;
+    }
+
+    /**
+     * Starts the countdown of new turn now.
+     */
+    public void start() {
+        start(System.nanoTime());
+    }
+
+    /**
+     * Starts the countdown of new turn which was started by the server, based on the time the turn
+     * was received by the dispatcher.
+     *
+     * Server starts its turn timer about half of round trip time before the START_TURN (or START_GAME) message
+     * arrives and the end turn message needs another half to reach it. So the local clock is started one 99th
+     * percentile of round trip time earlier, to end the turn before the server's timeout.
+     * @param dispatcher
+     */
+    public void start(MessageDispatcher dispatcher) {
+        long rttNanos = TimeUnit.MICROSECONDS.toNanos(dispatcher.getRtt().getP99());
+        start(dispatcher.getTurnStartedAt() - rttNanos);
+    }
+
+    /**
+     * Starts the countdown of new turn, the previous one is cancelled.
+     * @param startedAt Start of the turn, System.nanoTime().
+     */
+    public synchronized void start(long startedAt) {
+        cancel();
+        this.startedAt = startedAt;
+        pausedNanos = 0;
+        paused = false;
+        expired = false;
+        running = true;
+        scheduleNext(System.nanoTime());
+    }
+
+    /**
+     * Stops the countdown without calling the listener.
+     */
+    public synchronized void cancel() {
+        generation++;
+        running = false;
+        paused = false;
+        expired = false;
+        if(task != null) {
+            task.cancel(false);
+            task = null;
+        }
+    }
+
+    /**
+     * Stops the countdown until resume() is called.
+     */
+    public synchronized void pause() {
+        if(!running || paused) {
+            return;
+        }
+
+        pausedAt = System.nanoTime();
+        paused = true;
+        generation++;
+        if(task != null) {
+            task.cancel(false);
+            task = null;
+        }
+    }
+
+    public synchronized void resume() {
+        if(!running || !paused) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        pausedNanos += now - pausedAt;
+        paused = false;
+        scheduleNext(now);
+    }
+
+    public synchronized boolean isRunning() {
+        return running;
+    }
+
+    public synchronized boolean isPaused() {
+        return paused;
+    }
+
+    public synchronized boolean isExpired() {
+        return expired;
+    }
+
+    /**
+     * Time elapsed from the start of the turn without pauses, in ms.
+     * @return
+     */
+    public synchronized long getElapsedMs() {
+        return TimeUnit.NANOSECONDS.toMillis(elapsedNanos(now()));
+    }
+
+    /**
+     * Time remaining to the deadline in ms, 0 if the clock is expired.
+     * @return
+     */
+    public synchronized long getRemainingMs() {
+        return TimeUnit.NANOSECONDS.toMillis(Math.max(0, durationNanos - elapsedNanos(now())));
+    }
+
+    private long now() {
+        return paused ? pausedAt : System.nanoTime();
+    }
+
+    private long elapsedNanos(long now) {
+        if(expired) {
+            return durationNanos;
+        }
+        return now - startedAt - pausedNanos;
+    }
+
+    /**
+     * Schedules the next tick or the expiry, whichever comes first.
+     */
+    private void scheduleNext(long now) {
+        long elapsed = elapsedNanos(now);
+        long delay = durationNanos - elapsed;
+        if(tickNanos > 0) {
+            long nextTick = (elapsed / tickNanos + 1) * tickNanos;
+            delay = Math.min(delay, nextTick - elapsed);
+        }
+
+        int scheduled = generation;
+        task = MessageDispatcher.getScheduler().schedule(() -> fire(scheduled), Math.max(0, delay), TimeUnit.NANOSECONDS);
+    }
+
+    private void fire(int scheduled) {
+        boolean expiredNow;
+        synchronized (this) {
+            if(scheduled != generation || !running || paused) {
+                return;
+            }
+
+            long now = System.nanoTime();
+            expiredNow = elapsedNanos(now) >= durationNanos;
+            if(expiredNow) {
+                running = false;
+                expired = true;
+                task = null;
+            } else {
+                scheduleNext(now);
+            }
+        }
+
+        if(expiredNow) {
+            listener.expired(this);
+        } else if(tickNanos > 0) {
+            listener.tick(this);
+        }
+    }
+}
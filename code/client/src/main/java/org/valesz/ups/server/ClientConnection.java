@@ -0,0 +1,390 @@
+package org.valesz.ups.server;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.valesz.ups.common.Constraits;
+import org.valesz.ups.common.error.ErrorCode;
+import org.valesz.ups.common.message.TurnWordCodec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+
+/**
+ * Connection of one client to SenetServer. Everything is done by the event loop thread of the server.
+ *
+ * @author Zdenek Vales
+ */
+class ClientConnection implements ClientMessageHandler {
+
+    private static final Logger logger = LogManager.getLogger(ClientConnection.class);
+
+    enum State {
+        /**
+         * Waiting for nick.
+         */
+        LOGIN,
+
+        /**
+         * Nick is ok, waiting for opponent.
+         */
+        WAITING,
+
+        /**
+         * In game.
+         */
+        PLAYING,
+
+        /**
+         * Last messages are being written, then the connection is closed.
+         */
+        CLOSING
+    }
+
+    private static final byte[] OK_FRAME = "INFOK\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ALIVE_FRAME = "INFALIVE\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final SenetServer server;
+    private final SocketChannel channel;
+    private final ClientMessageParser parser;
+    private final Queue<ByteBuffer> writeQueue;
+
+    private SelectionKey key;
+    private State state;
+    private String nick;
+    private int nickAttempts;
+    private ServerGame game;
+    private boolean closed;
+
+    /**
+     * True if the client asked for binary turn words. Start turns are sent as binary frames of startTurnCodec then.
+     */
+    private boolean binary;
+    private final TurnWordCodec startTurnCodec;
+
+    /**
+     * Time (System.nanoTime()) of connecting and of the last received data.
+     */
+    private final long connectedAt;
+    private long lastReceived;
+
+    /**
+     * Time when the alive message was sent, 0 if the alive isn't waiting for response.
+     */
+    private long aliveSentAt;
+
+    ClientConnection(SenetServer server, SocketChannel channel) {
+        this.server = server;
+        this.channel = channel;
+        this.parser = new ClientMessageParser();
+        this.writeQueue = new ArrayDeque<>();
+        this.startTurnCodec = new TurnWordCodec();
+        this.state = State.LOGIN;
+        this.connectedAt = System.nanoTime();
+        this.lastReceived = connectedAt;
+    }
+
+    SocketChannel getChannel() {
+        return channel;
+    }
+
+    void setKey(SelectionKey key) {
+        this.key = key;
+    }
+
+    SelectionKey getKey() {
+        return key;
+    }
+
+    State getState() {
+        return state;
+    }
+
+    String getNick() {
+        return nick;
+    }
+
+    ServerGame getGame() {
+        return game;
+    }
+
+    void setGame(ServerGame game) {
+        this.game = game;
+        state = State.PLAYING;
+    }
+
+    long getConnectedAt() {
+        return connectedAt;
+    }
+
+    long getLastReceived() {
+        return lastReceived;
+    }
+
+    long getAliveSentAt() {
+        return aliveSentAt;
+    }
+
+    /**
+     * Marks the connection as closed. Returns false if it was already closed.
+     * @return
+     */
+    boolean markClosed() {
+        if(closed) {
+            return false;
+        }
+        closed = true;
+        return true;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Reads available data to the shared buffer and parses them.
+     * @param buffer
+     * @throws IOException
+     */
+    void handleRead(ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        int read = channel.read(buffer);
+        if(read < 0) {
+            logger.debug("Client "+nick+" closed the connection.");
+            server.closeConnection(this);
+            return;
+        }
+
+        lastReceived = System.nanoTime();
+        buffer.flip();
+        while (buffer.hasRemaining() && state != State.CLOSING && !closed) {
+            parser.parse(buffer.get(), this);
+        }
+    }
+
+    /**
+     * Writes queued data, stops waiting for OP_WRITE when everything is written.
+     * @throws IOException
+     */
+    void handleWrite() throws IOException {
+        ByteBuffer buffer;
+        while ((buffer = writeQueue.peek()) != null) {
+            channel.write(buffer);
+            if(buffer.hasRemaining()) {
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            }
+            writeQueue.poll();
+        }
+
+        key.interestOps(SelectionKey.OP_READ);
+        if(state == State.CLOSING) {
+            server.closeConnection(this);
+        }
+    }
+
+    /**
+     * Sends the remaining messages and closes the connection. No other messages are handled.
+     */
+    void closeAfterWrite() {
+        if(closed) {
+            return;
+        }
+
+        state = State.CLOSING;
+        if(writeQueue.isEmpty()) {
+            server.closeConnection(this);
+        }
+    }
+
+    void sendOk() {
+        send(OK_FRAME);
+    }
+
+    void sendAlive() {
+        aliveSentAt = System.nanoTime();
+        send(ALIVE_FRAME);
+    }
+
+    void sendError(ErrorCode errorCode) {
+        send(String.format("ERR%02d\n", errorCode.code));
+    }
+
+    void sendStartGame(String firstPlayer, String secondPlayer) {
+        send("INFSTART_GAME"+firstPlayer+","+secondPlayer+";\n");
+    }
+
+    /**
+     * Start turn message with the current state. Binary frame is sent if the client asked for it.
+     */
+    void sendStartTurn(int[] firstPlayerStones, int[] secondPlayerStones) {
+        if(binary) {
+            byte[] frame = new byte[TurnWordCodec.MAX_FRAME_LEN];
+            int len = startTurnCodec.encode(firstPlayerStones, secondPlayerStones, frame, 0);
+            send(Arrays.copyOf(frame, len));
+            return;
+        }
+        startTurnCodec.update(firstPlayerStones, secondPlayerStones);
+
+        byte[] frame = new byte[3 + 4 * Constraits.MAX_NUMBER_OF_STONES + 1];
+        int pos = 0;
+        frame[pos++] = 'C';
+        frame[pos++] = 'M';
+        frame[pos++] = 'D';
+        for (int s : firstPlayerStones) {
+            frame[pos++] = (byte) ('0' + s / 10);
+            frame[pos++] = (byte) ('0' + s % 10);
+        }
+        for (int s : secondPlayerStones) {
+            frame[pos++] = (byte) ('0' + s / 10);
+            frame[pos++] = (byte) ('0' + s % 10);
+        }
+        frame[pos] = '\n';
+        send(frame);
+    }
+
+    /**
+     * End game message, the C server doesn't end it with a new line.
+     */
+    void sendEndGame(String winner) {
+        send("INFEND_GAME"+winner+";");
+    }
+
+    private void send(String message) {
+        send(message.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Queues the frame and tries to write it right away.
+     */
+    private void send(byte[] frame) {
+        if(closed) {
+            return;
+        }
+
+        boolean writing = !writeQueue.isEmpty();
+        writeQueue.add(ByteBuffer.wrap(frame));
+        if(writing) {
+            return;
+        }
+
+        try {
+            handleWrite();
+        } catch (IOException ex) {
+            logger.error("Error while writing to "+nick+": "+ex.getMessage());
+            server.closeConnection(this);
+        }
+    }
+
+    /**
+     * Called when the message isn't expected in the current state.
+     */
+    private void unexpected() {
+        if(state == State.PLAYING) {
+            sendError(game.isOnTurn(this) ? ErrorCode.UNEXPECTED_MESSAGE : ErrorCode.NOT_MY_TURN);
+        } else if (state == State.LOGIN) {
+            nickRejected(ErrorCode.UNEXPECTED_MESSAGE);
+        } else {
+            sendError(ErrorCode.UNEXPECTED_MESSAGE);
+        }
+    }
+
+    private void nickRejected(ErrorCode errorCode) {
+        nickAttempts++;
+        if(nickAttempts >= SenetServer.MAX_NICK_ATTEMPTS) {
+            logger.debug("Too many nick attempts.");
+            sendError(ErrorCode.MAX_ATTEMPTS);
+            closeAfterWrite();
+        } else {
+            sendError(errorCode);
+        }
+    }
+
+    @Override
+    public void onNick(String nick) {
+        if(state != State.LOGIN) {
+            unexpected();
+            return;
+        }
+
+        ClientConnection suspended = server.getSuspended(nick);
+        if(suspended != null) {
+            this.nick = nick;
+            sendOk();
+            server.resume(suspended, this);
+            return;
+        }
+
+        ErrorCode res = server.registerNick(this, nick);
+        if(res != ErrorCode.NO_ERROR) {
+            logger.debug("Nick "+nick+" rejected: "+res);
+            nickRejected(res);
+            return;
+        }
+
+        this.nick = nick;
+        state = State.WAITING;
+        sendOk();
+        server.waitForOpponent(this);
+    }
+
+    @Override
+    public void onOk() {
+        if(aliveSentAt == 0) {
+            unexpected();
+            return;
+        }
+
+        // response to alive
+        aliveSentAt = 0;
+    }
+
+    @Override
+    public void onAlive() {
+        if(state != State.CLOSING) {
+            sendOk();
+        }
+    }
+
+    @Override
+    public void onExit() {
+        logger.debug("Client "+nick+" exits.");
+        server.closeConnection(this);
+    }
+
+    @Override
+    public void onBinary() {
+        if(state != State.CLOSING) {
+            logger.debug("Client "+nick+" uses binary turn words.");
+            binary = true;
+            sendOk();
+        }
+    }
+
+    @Override
+    public void onEndTurn(int[] firstPlayerStones, int[] secondPlayerStones) {
+        if(state != State.PLAYING) {
+            unexpected();
+            return;
+        }
+
+        if(!game.isOnTurn(this)) {
+            sendError(ErrorCode.NOT_MY_TURN);
+            return;
+        }
+
+        game.endTurn(firstPlayerStones, secondPlayerStones);
+    }
+
+    @Override
+    public void onError(ErrorCode errorCode) {
+        if(state != State.CLOSING) {
+            sendError(errorCode);
+        }
+    }
+}
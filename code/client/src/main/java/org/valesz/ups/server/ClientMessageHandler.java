@@ -0,0 +1,50 @@
+package org.valesz.ups.server;
+
+import org.valesz.ups.common.error.ErrorCode;
+
+/**
+ * Handler of messages parsed by ClientMessageParser.
+ *
+ * @author Zdenek Vales
+ */
+public interface ClientMessageHandler {
+
+    /**
+     * CMD message with nick.
+     * @param nick
+     */
+    public void onNick(String nick);
+
+    /**
+     * INFOK message.
+     */
+    public void onOk();
+
+    /**
+     * INFALIVE message.
+     */
+    public void onAlive();
+
+    /**
+     * INFEXIT message.
+     */
+    public void onExit();
+
+    /**
+     * INFBIN message, client asks for binary turn words.
+     */
+    public void onBinary();
+
+    /**
+     * End turn message, text or binary. Arrays are reused by the parser, so they must be copied if they are needed later.
+     * @param firstPlayerStones
+     * @param secondPlayerStones
+     */
+    public void onEndTurn(int[] firstPlayerStones, int[] secondPlayerStones);
+
+    /**
+     * Received bytes which are not a valid message. Parsing continues with the next byte.
+     * @param errorCode BAD_MSG_TYPE or BAD_MSG_CONTENT.
+     */
+    public void onError(ErrorCode errorCode);
+}
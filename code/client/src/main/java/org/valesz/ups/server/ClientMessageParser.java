@@ -0,0 +1,254 @@
+package org.valesz.ups.server;
+
+import org.valesz.ups.common.Constraits;
+import org.valesz.ups.common.error.ErrorCode;
+import org.valesz.ups.common.message.MessageType;
+import org.valesz.ups.common.message.TurnWordCodec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parser of messages sent by clients to the server. Works in push mode, received bytes are passed
+ * to parse() as they come and the parser remembers where it stopped, so a message may be split to any number of reads.
+ *
+ * Messages are parsed the same way as by the C server: the message type and then the fixed length content.
+ * Line breaks between messages are skipped. End turn may also come as binary frame of TurnWordCodec.
+ *
+ * @author Zdenek Vales
+ */
+public class ClientMessageParser {
+
+    private enum State {
+        TYPE,
+        NICK_LENGTH,
+        NICK,
+        INF,
+        INF_WORD,
+        TURN_WORD,
+        BINARY_TURN_WORD
+    }
+
+    private static final int TYPE_LEN = MessageType.getMessageTypeLen();
+    private static final int TURN_WORD_LEN = 4 * Constraits.MAX_NUMBER_OF_STONES;
+
+    private static final byte[] CMD = MessageType.CMD.name().getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] INF = MessageType.INF.name().getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] OK = {'O', 'K'};
+    private static final byte[] EXIT = {'E', 'X', 'I', 'T'};
+    private static final byte[] ALIVE = {'A', 'L', 'I', 'V', 'E'};
+    private static final byte[] BIN = {'B', 'I', 'N'};
+
+    /**
+     * Bytes of the currently parsed part of message.
+     */
+    private final byte[] frame;
+    private int frameLen;
+
+    private State state;
+
+    /**
+     * Length of nick or binary turn word, or the expected INF word.
+     */
+    private byte[] expectedWord;
+    private int expectedLen;
+
+    private final int[] firstPlayerStones;
+    private final int[] secondPlayerStones;
+
+    private final TurnWordCodec turnWordCodec;
+    private int binaryTag;
+
+    public ClientMessageParser() {
+        frame = new byte[TURN_WORD_LEN];
+        firstPlayerStones = new int[Constraits.MAX_NUMBER_OF_STONES];
+        secondPlayerStones = new int[Constraits.MAX_NUMBER_OF_STONES];
+        turnWordCodec = new TurnWordCodec();
+        reset();
+    }
+
+    /**
+     * Parses all remaining bytes in the buffer and passes complete messages to the handler.
+     * @param buffer
+     * @param handler
+     */
+    public void parse(ByteBuffer buffer, ClientMessageHandler handler) {
+        while (buffer.hasRemaining()) {
+            parse(buffer.get(), handler);
+        }
+    }
+
+    /**
+     * Parses one byte.
+     * @param b
+     * @param handler
+     */
+    public void parse(byte b, ClientMessageHandler handler) {
+        switch (state) {
+            case TYPE:
+                if(frameLen == 0 && (b == '\n' || b == '\r')) {
+                    return;
+                }
+                if(frameLen == 0 && TurnWordCodec.isTag(b)) {
+                    binaryTag = b & 0xFF;
+                    expectedLen = TurnWordCodec.getContentLength(binaryTag);
+                    if(expectedLen < 0) {
+                        error(ErrorCode.BAD_MSG_TYPE, handler);
+                        return;
+                    }
+                    next(State.BINARY_TURN_WORD);
+                    completeBinaryTurnWord(handler);
+                    return;
+                }
+                frame[frameLen++] = upper(b);
+                if(frameLen == TYPE_LEN) {
+                    if(matches(CMD)) {
+                        next(State.NICK_LENGTH);
+                    } else if (matches(INF)) {
+                        next(State.INF);
+                    } else {
+                        error(ErrorCode.BAD_MSG_TYPE, handler);
+                    }
+                }
+                break;
+
+            case NICK_LENGTH:
+                if(!isDigit(b)) {
+                    error(ErrorCode.BAD_MSG_CONTENT, handler);
+                    return;
+                }
+                expectedLen = b - '0';
+                next(State.NICK);
+                if(expectedLen == 0) {
+                    reset();
+                    handler.onNick("");
+                }
+                break;
+
+            case NICK:
+                frame[frameLen++] = b;
+                if(frameLen == expectedLen) {
+                    String nick = new String(frame, 0, frameLen, StandardCharsets.US_ASCII);
+                    reset();
+                    handler.onNick(nick);
+                }
+                break;
+
+            case INF:
+                b = upper(b);
+                if(isDigit(b)) {
+                    next(State.TURN_WORD);
+                    frame[frameLen++] = b;
+                    return;
+                }
+                expectedWord = b == OK[0] ? OK : b == EXIT[0] ? EXIT : b == ALIVE[0] ? ALIVE : b == BIN[0] ? BIN : null;
+                if(expectedWord == null) {
+                    error(ErrorCode.BAD_MSG_CONTENT, handler);
+                    return;
+                }
+                next(State.INF_WORD);
+                frameLen = 1;
+                break;
+
+            case INF_WORD:
+                if(upper(b) != expectedWord[frameLen]) {
+                    error(ErrorCode.BAD_MSG_CONTENT, handler);
+                    return;
+                }
+                if(++frameLen == expectedWord.length) {
+                    byte[] word = expectedWord;
+                    reset();
+                    if(word == OK) {
+                        handler.onOk();
+                    } else if (word == EXIT) {
+                        handler.onExit();
+                    } else if (word == BIN) {
+                        handler.onBinary();
+                    } else {
+                        handler.onAlive();
+                    }
+                }
+                break;
+
+            case TURN_WORD:
+                if(!isDigit(b)) {
+                    error(ErrorCode.BAD_MSG_CONTENT, handler);
+                    return;
+                }
+                frame[frameLen++] = b;
+                if(frameLen == TURN_WORD_LEN) {
+                    for (int i = 0; i < Constraits.MAX_NUMBER_OF_STONES; i++) {
+                        firstPlayerStones[i] = twoDigits(2 * i);
+                        secondPlayerStones[i] = twoDigits(2 * (i + Constraits.MAX_NUMBER_OF_STONES));
+                    }
+                    turnWordCodec.update(firstPlayerStones, secondPlayerStones);
+                    reset();
+                    handler.onEndTurn(firstPlayerStones, secondPlayerStones);
+                }
+                break;
+
+            case BINARY_TURN_WORD:
+                frame[frameLen++] = b;
+                completeBinaryTurnWord(handler);
+                break;
+        }
+    }
+
+    /**
+     * Forgets the partially parsed message.
+     */
+    public void reset() {
+        state = State.TYPE;
+        frameLen = 0;
+        expectedWord = null;
+        expectedLen = 0;
+    }
+
+    /**
+     * Decodes the binary turn word once all its bytes are received.
+     */
+    private void completeBinaryTurnWord(ClientMessageHandler handler) {
+        if(frameLen < expectedLen) {
+            return;
+        }
+
+        boolean decoded = turnWordCodec.decode(binaryTag, frame, 0, firstPlayerStones, secondPlayerStones);
+        reset();
+        if(decoded) {
+            handler.onEndTurn(firstPlayerStones, secondPlayerStones);
+        } else {
+            handler.onError(ErrorCode.BAD_MSG_CONTENT);
+        }
+    }
+
+    private void next(State newState) {
+        state = newState;
+        frameLen = 0;
+    }
+
+    private void error(ErrorCode errorCode, ClientMessageHandler handler) {
+        reset();
+        handler.onError(errorCode);
+    }
+
+    private boolean matches(byte[] type) {
+        for (int i = 0; i < TYPE_LEN; i++) {
+            if(frame[i] != type[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int twoDigits(int pos) {
+        return (frame[pos] - '0') * 10 + frame[pos + 1] - '0';
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static byte upper(byte b) {
+        return b >= 'a' && b <= 'z' ? (byte) (b - 'a' + 'A') : b;
+    }
+}
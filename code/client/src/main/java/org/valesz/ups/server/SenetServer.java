@@ -0,0 +1,450 @@
+package org.valesz.ups.server;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.valesz.ups.common.Constraits;
+import org.valesz.ups.common.error.ErrorCode;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Java implementation of the senet server. Speaks the same protocol as the C server, so
+ * clients can be tested end-to-end without it.
+ *
+ * One event loop thread with a selector handles all connections and games. Players are paired in the order
+ * they log in, the player who logged in first starts the game. Turns are validated by TurnValidator.
+ *
+ * @author Zdenek Vales
+ */
+public class SenetServer implements Runnable, Closeable {
+
+    private static final Logger logger = LogManager.getLogger(SenetServer.class);
+
+    /**
+     * Limits used by the C server. In ms.
+     */
+    public static final int MAX_NICK_ATTEMPTS = 3;
+    public static final int MAX_NICK_TIMEOUT = 10000;
+    public static final int ALIVE_TIMEOUT = 100000;
+    public static final int MAX_TURN_WAITING_TIMEOUT = 125000;
+
+    /**
+     * Interval of checking timeouts. In ms.
+     */
+    private static final int TICK = 100;
+
+    private static final int READ_BUFFER_SIZE = 4096;
+
+    private final InetSocketAddress address;
+
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread loopThread;
+    private volatile boolean running;
+
+    /**
+     * Buffer shared by all connections, data are parsed right after reading.
+     */
+    private final ByteBuffer readBuffer;
+
+    private final TurnValidator validator;
+
+    /**
+     * Everything below is accessed only by the event loop thread.
+     */
+    private final Set<ClientConnection> connections;
+    private final Map<String, ClientConnection> nicks;
+    private final Set<ServerGame> games;
+    private ClientConnection waitingPlayer;
+
+    private final AtomicInteger runningGames;
+    private final AtomicLong gamesPlayed;
+    private final AtomicLong turnsPlayed;
+
+    /**
+     * Max number of connections, 0 means unlimited.
+     */
+    private int maxConnections;
+
+    /**
+     * Idle time after which the alive message is sent. In ms, 0 disables alive messages.
+     */
+    private int aliveInterval;
+
+    /**
+     * Time in ms for which the seat of the player who lost connection during game is kept. 0 ends the game
+     * right away, as the C server does.
+     */
+    private int resumeTimeout;
+
+    /**
+     * Creates server listening on the port on all interfaces. Port 0 means any free port.
+     * @param port
+     */
+    public SenetServer(int port) {
+        this(new InetSocketAddress(port));
+    }
+
+    public SenetServer(InetSocketAddress address) {
+        this.address = address;
+        readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        validator = new TurnValidator();
+        connections = new HashSet<>();
+        nicks = new HashMap<>();
+        games = new HashSet<>();
+        runningGames = new AtomicInteger(0);
+        gamesPlayed = new AtomicLong(0);
+        turnsPlayed = new AtomicLong(0);
+        maxConnections = 0;
+        aliveInterval = 0;
+        resumeTimeout = 0;
+    }
+
+    /**
+     * Disabled by default, as in the C server.
+     * @param resumeTimeout
+     */
+    public void setResumeTimeout(int resumeTimeout) {
+        this.resumeTimeout = resumeTimeout;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    /**
+     * The C server uses 500 ms.
+     * @param aliveInterval
+     */
+    public void setAliveInterval(int aliveInterval) {
+        this.aliveInterval = aliveInterval;
+    }
+
+    /**
+     * Binds the server socket and starts the event loop thread.
+     * @throws IOException
+     */
+    public synchronized void start() throws IOException {
+        if(running) {
+            return;
+        }
+
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, Boolean.TRUE);
+        serverChannel.bind(address, 1024);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        running = true;
+        loopThread = new Thread(this, "senet-server");
+        loopThread.setDaemon(true);
+        loopThread.start();
+        logger.info("Server listening on "+serverChannel.getLocalAddress());
+    }
+
+    /**
+     * Stops the event loop, closes all connections and waits until it's done.
+     */
+    public void stop() {
+        running = false;
+        if(selector != null) {
+            selector.wakeup();
+        }
+        if(loopThread != null && Thread.currentThread() != loopThread) {
+            try {
+                loopThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        stop();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Returns the port the server listens on.
+     * @return
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    public int getRunningGames() {
+        return runningGames.get();
+    }
+
+    public long getGamesPlayed() {
+        return gamesPlayed.get();
+    }
+
+    public long getTurnsPlayed() {
+        return turnsPlayed.get();
+    }
+
+    TurnValidator getValidator() {
+        return validator;
+    }
+
+    /**
+     * Checks the nick and registers it for the connection.
+     * @return NO_ERROR if the nick is ok.
+     */
+    ErrorCode registerNick(ClientConnection connection, String nick) {
+        if(Constraits.checkNick(nick) != 0) {
+            return ErrorCode.BAD_NICKNAME;
+        }
+
+        if(nicks.containsKey(nick)) {
+            return ErrorCode.NICK_ALREADY_EXIST;
+        }
+
+        nicks.put(nick, connection);
+        return ErrorCode.NO_ERROR;
+    }
+
+    /**
+     * Returns the lost connection of the player with the nick if he can resume his game, null otherwise.
+     * @param nick
+     * @return
+     */
+    ClientConnection getSuspended(String nick) {
+        ClientConnection suspended = nicks.get(nick);
+        if(suspended == null || !suspended.isClosed() || suspended.getGame() == null || !suspended.getGame().isSuspended(suspended)) {
+            return null;
+        }
+        return suspended;
+    }
+
+    /**
+     * Moves the player from the lost connection to the new one.
+     * @param suspended
+     * @param connection
+     */
+    void resume(ClientConnection suspended, ClientConnection connection) {
+        nicks.put(suspended.getNick(), connection);
+        suspended.getGame().resume(suspended, connection);
+    }
+
+    /**
+     * Starts the game if there's another waiting player, otherwise the player waits.
+     */
+    void waitForOpponent(ClientConnection connection) {
+        if(waitingPlayer == null) {
+            waitingPlayer = connection;
+            return;
+        }
+
+        ServerGame game = new ServerGame(this, waitingPlayer, connection);
+        waitingPlayer = null;
+        games.add(game);
+        runningGames.incrementAndGet();
+        game.start();
+    }
+
+    void turnPlayed() {
+        turnsPlayed.incrementAndGet();
+    }
+
+    void gameEnded(ServerGame game) {
+        if(games.remove(game)) {
+            runningGames.decrementAndGet();
+            gamesPlayed.incrementAndGet();
+        }
+
+        // nicks of suspended players are free now
+        ClientConnection player = game.getCurrentPlayer();
+        releaseNick(player);
+        releaseNick(game.getOtherPlayer(player));
+    }
+
+    private void releaseNick(ClientConnection connection) {
+        String nick = connection.getNick();
+        if(connection.isClosed() && nick != null && nicks.get(nick) == connection) {
+            nicks.remove(nick);
+        }
+    }
+
+    /**
+     * Closes the connection. If the player was in game, the opponent wins.
+     */
+    void closeConnection(ClientConnection connection) {
+        if(!connection.markClosed()) {
+            return;
+        }
+
+        if(connection.getKey() != null) {
+            connection.getKey().cancel();
+        }
+        try {
+            connection.getChannel().close();
+        } catch (IOException e) {
+            logger.error("Error while closing the channel: "+e.getMessage());
+        }
+
+        connections.remove(connection);
+        ServerGame game = connection.getGame();
+        boolean suspend = resumeTimeout > 0 && game != null && !game.isEnded();
+        if(!suspend) {
+            // nick of suspended player stays reserved
+            releaseNick(connection);
+        }
+        if(waitingPlayer == connection) {
+            waitingPlayer = null;
+        }
+        if(suspend) {
+            game.suspend(connection);
+        } else if(game != null) {
+            game.leave(connection);
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, Boolean.TRUE);
+            ClientConnection connection = new ClientConnection(this, channel);
+            connection.setKey(channel.register(selector, SelectionKey.OP_READ, connection));
+            connections.add(connection);
+
+            if(maxConnections > 0 && connections.size() > maxConnections) {
+                logger.warn("Too many connections.");
+                connection.sendError(ErrorCode.SERVER_FULL);
+                connection.closeAfterWrite();
+            }
+        }
+    }
+
+    private void handleKey(SelectionKey key) {
+        ClientConnection connection = (ClientConnection) key.attachment();
+        try {
+            if(key.isReadable()) {
+                connection.handleRead(readBuffer);
+            }
+            if(key.isValid() && key.isWritable()) {
+                connection.handleWrite();
+            }
+        } catch (CancelledKeyException ex) {
+            // connection was closed meanwhile
+        } catch (IOException ex) {
+            logger.debug("I/O error on connection of "+connection.getNick()+": "+ex.getMessage());
+            closeConnection(connection);
+        }
+    }
+
+    /**
+     * Checks nick, alive, turn and resume timeouts.
+     */
+    private void checkTimeouts() {
+        long now = System.nanoTime();
+        for (ClientConnection connection : new ArrayList<>(connections)) {
+            if(connection.isClosed()) {
+                continue;
+            }
+
+            ClientConnection.State state = connection.getState();
+            if(state == ClientConnection.State.LOGIN && elapsedMs(connection.getConnectedAt(), now) > MAX_NICK_TIMEOUT) {
+                logger.debug("Nick not received in time.");
+                connection.sendError(ErrorCode.TIMEOUT);
+                connection.closeAfterWrite();
+            } else if (connection.getAliveSentAt() != 0) {
+                if(elapsedMs(connection.getAliveSentAt(), now) > ALIVE_TIMEOUT) {
+                    logger.debug("Client "+connection.getNick()+" doesn't respond.");
+                    closeConnection(connection);
+                }
+            } else if (aliveInterval > 0 && state != ClientConnection.State.LOGIN && state != ClientConnection.State.CLOSING
+                    && elapsedMs(connection.getLastReceived(), now) > aliveInterval) {
+                connection.sendAlive();
+            }
+        }
+
+        for (ServerGame game : new ArrayList<>(games)) {
+            if(!game.isEnded() && elapsedMs(game.getTurnStartedAt(), now) > MAX_TURN_WAITING_TIMEOUT) {
+                game.turnTimeout();
+            }
+            if(!game.isEnded() && resumeTimeout > 0) {
+                game.checkSuspended(now, resumeTimeout);
+            }
+        }
+    }
+
+    private static long elapsedMs(long since, long now) {
+        return (now - since) / 1000000L;
+    }
+
+    @Override
+    public void run() {
+        long lastCheck = System.nanoTime();
+        while (running) {
+            try {
+                selector.select(TICK);
+            } catch (IOException ex) {
+                logger.error("Error in select: "+ex.getMessage());
+                break;
+            }
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                if(!key.isValid()) {
+                    continue;
+                }
+
+                if(key.isAcceptable()) {
+                    try {
+                        accept();
+                    } catch (IOException ex) {
+                        logger.error("Error while accepting connection: "+ex.getMessage());
+                    }
+                } else {
+                    handleKey(key);
+                }
+            }
+
+            long now = System.nanoTime();
+            if(elapsedMs(lastCheck, now) >= TICK) {
+                checkTimeouts();
+                lastCheck = now;
+            }
+        }
+
+        // shut down
+        for (ClientConnection connection : new ArrayList<>(connections)) {
+            closeConnection(connection);
+        }
+        try {
+            serverChannel.close();
+            selector.close();
+        } catch (IOException e) {
+            logger.error("Error while closing the server: "+e.getMessage());
+        }
+        running = false;
+        logger.info("Server stopped.");
+    }
+}
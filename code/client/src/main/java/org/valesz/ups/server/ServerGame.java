@@ -0,0 +1,218 @@
+package org.valesz.ups.server;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.valesz.ups.common.Constraits;
+import org.valesz.ups.common.error.ErrorCode;
+import org.valesz.ups.model.game.Game;
+import org.valesz.ups.model.game.Player;
+
+/**
+ * One game on SenetServer. Accessed only by the event loop thread of the server.
+ *
+ * @author Zdenek Vales
+ */
+class ServerGame {
+
+    private static final Logger logger = LogManager.getLogger(ServerGame.class);
+
+    private final SenetServer server;
+    private ClientConnection firstPlayer;
+    private ClientConnection secondPlayer;
+
+    /**
+     * Time (System.nanoTime()) when the connection of the player was lost, 0 if the player is connected.
+     */
+    private long firstSuspendedAt;
+    private long secondSuspendedAt;
+
+    private final int[] firstPlayerStones;
+    private final int[] secondPlayerStones;
+
+    /**
+     * 1 or 2 - current turn.
+     */
+    private int turn;
+
+    /**
+     * Time (System.nanoTime()) when the current turn started.
+     */
+    private long turnStartedAt;
+
+    private boolean ended;
+
+    ServerGame(SenetServer server, ClientConnection firstPlayer, ClientConnection secondPlayer) {
+        this.server = server;
+        this.firstPlayer = firstPlayer;
+        this.secondPlayer = secondPlayer;
+        firstPlayerStones = new Player(firstPlayer.getNick(), Player.FIRST_PLAYER_INIT_POS).getStones();
+        secondPlayerStones = new Player(secondPlayer.getNick(), Player.SECOND_PLAYER_INIT_POS).getStones();
+    }
+
+    /**
+     * Sends the start game to both players. The first player plays the first turn without the start turn message.
+     */
+    void start() {
+        turn = 1;
+        turnStartedAt = System.nanoTime();
+        firstPlayer.setGame(this);
+        secondPlayer.setGame(this);
+        firstPlayer.sendStartGame(firstPlayer.getNick(), secondPlayer.getNick());
+        secondPlayer.sendStartGame(firstPlayer.getNick(), secondPlayer.getNick());
+        logger.debug("Game "+firstPlayer.getNick()+" x "+secondPlayer.getNick()+" started.");
+    }
+
+    boolean isOnTurn(ClientConnection player) {
+        return !ended && getCurrentPlayer() == player;
+    }
+
+    long getTurnStartedAt() {
+        return turnStartedAt;
+    }
+
+    boolean isEnded() {
+        return ended;
+    }
+
+    ClientConnection getCurrentPlayer() {
+        return turn == 1 ? firstPlayer : secondPlayer;
+    }
+
+    ClientConnection getOtherPlayer(ClientConnection player) {
+        return player == firstPlayer ? secondPlayer : firstPlayer;
+    }
+
+    /**
+     * Validates the turn of the current player, checks the winner and starts the turn of the other player.
+     * Invalid turn is rejected and the state stays the same.
+     * @param newFirstPlayerStones
+     * @param newSecondPlayerStones
+     */
+    void endTurn(int[] newFirstPlayerStones, int[] newSecondPlayerStones) {
+        ClientConnection current = getCurrentPlayer();
+        if(server.getValidator().isValidTurn(firstPlayerStones, secondPlayerStones, newFirstPlayerStones, newSecondPlayerStones, turn)) {
+            System.arraycopy(newFirstPlayerStones, 0, firstPlayerStones, 0, Constraits.MAX_NUMBER_OF_STONES);
+            System.arraycopy(newSecondPlayerStones, 0, secondPlayerStones, 0, Constraits.MAX_NUMBER_OF_STONES);
+            current.sendOk();
+        } else {
+            logger.debug("Turn of "+current.getNick()+" rejected.");
+            current.sendError(ErrorCode.BAD_TURN);
+        }
+        server.turnPlayed();
+
+        if(allOut(firstPlayerStones)) {
+            end(firstPlayer);
+        } else if (allOut(secondPlayerStones)) {
+            end(secondPlayer);
+        } else {
+            turn = turn == 1 ? 2 : 1;
+            turnStartedAt = System.nanoTime();
+            getCurrentPlayer().sendStartTurn(firstPlayerStones, secondPlayerStones);
+        }
+    }
+
+    /**
+     * The current player didn't end his turn in time, the other player wins.
+     */
+    void turnTimeout() {
+        ClientConnection current = getCurrentPlayer();
+        logger.debug("Turn of "+current.getNick()+" timed out.");
+        current.sendError(ErrorCode.TIMEOUT);
+        end(getOtherPlayer(current));
+    }
+
+    /**
+     * The player left the game, the other player wins.
+     * @param player
+     */
+    void leave(ClientConnection player) {
+        if(!ended) {
+            end(getOtherPlayer(player));
+        }
+    }
+
+    /**
+     * Connection of the player was lost, his seat is kept until he resumes or checkSuspended() ends the game.
+     * @param player
+     */
+    void suspend(ClientConnection player) {
+        logger.debug("Player "+player.getNick()+" disconnected, waiting for resume.");
+        if(player == firstPlayer) {
+            firstSuspendedAt = System.nanoTime();
+        } else if(player == secondPlayer) {
+            secondSuspendedAt = System.nanoTime();
+        }
+    }
+
+    boolean isSuspended(ClientConnection player) {
+        if(ended) {
+            return false;
+        }
+        if(player == firstPlayer) {
+            return firstSuspendedAt != 0;
+        }
+        return player == secondPlayer && secondSuspendedAt != 0;
+    }
+
+    /**
+     * The suspended player logged in again. If it's his turn, the start turn with the current state is sent again,
+     * otherwise he gets it when the opponent ends the turn.
+     * @param suspended Lost connection.
+     * @param player New connection.
+     */
+    void resume(ClientConnection suspended, ClientConnection player) {
+        if(suspended == firstPlayer) {
+            firstPlayer = player;
+            firstSuspendedAt = 0;
+        } else {
+            secondPlayer = player;
+            secondSuspendedAt = 0;
+        }
+        player.setGame(this);
+        logger.debug("Player "+player.getNick()+" resumed.");
+
+        if(getCurrentPlayer() == player) {
+            player.sendStartTurn(firstPlayerStones, secondPlayerStones);
+        }
+    }
+
+    /**
+     * The player who didn't resume in time loses.
+     * @param now
+     * @param timeoutMs
+     */
+    void checkSuspended(long now, int timeoutMs) {
+        long timeoutNanos = timeoutMs * 1000000L;
+        if(firstSuspendedAt != 0 && now - firstSuspendedAt > timeoutNanos) {
+            leave(firstPlayer);
+        } else if (secondSuspendedAt != 0 && now - secondSuspendedAt > timeoutNanos) {
+            leave(secondPlayer);
+        }
+    }
+
+    /**
+     * Sends the end game to both players and closes their connections.
+     */
+    private void end(ClientConnection winner) {
+        if(ended) {
+            return;
+        }
+
+        ended = true;
+        logger.debug("Game "+firstPlayer.getNick()+" x "+secondPlayer.getNick()+" ended, winner: "+winner.getNick());
+        firstPlayer.sendEndGame(winner.getNick());
+        secondPlayer.sendEndGame(winner.getNick());
+        server.gameEnded(this);
+        firstPlayer.closeAfterWrite();
+        secondPlayer.closeAfterWrite();
+    }
+
+    private static boolean allOut(int[] stones) {
+        for (int s : stones) {
+            if(s != Game.OUT_OF_BOARD) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
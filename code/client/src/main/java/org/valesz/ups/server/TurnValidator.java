@@ -0,0 +1,189 @@
+package org.valesz.ups.server;
+
+import org.valesz.ups.common.Constraits;
+import org.valesz.ups.model.game.Board;
+import org.valesz.ups.model.game.Game;
+import org.valesz.ups.model.game.MoveGenerator;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Checks that the turn word sent by a client can be reached from the current state
+ * by the rules of Game.moveStone() and Game.leaveBoard(). Possible moves are generated by MoveGenerator.
+ *
+ * The thrown values are not known to the server, so all possible throws are tried. One turn consists of
+ * throws of 4 or 5 (after which the player throws again) followed by a throw of 1, 2 or 3 (or the last throw of 4 or 5).
+ * After every throw the player can move one of his stones by the thrown value, leave the board with
+ * the stone on the field 30 or do nothing.
+ *
+ * Validator isn't thread safe.
+ *
+ * @author Zdenek Vales
+ */
+public class TurnValidator {
+
+    /**
+     * Max number of throws in one turn. Probability of more throws is less than 0.0005 %.
+     */
+    public static final int MAX_THROWS = 6;
+
+    /**
+     * Max number of searched states, turns which need more are considered invalid.
+     */
+    public static final int MAX_STATES = 200000;
+
+    private static final int MAX_THROW_VALUE = 5;
+
+    /**
+     * Throws which are followed by another throw.
+     */
+    private static final int THROW_AGAIN_VALUE = 4;
+
+    private static final int STONES = Constraits.MAX_NUMBER_OF_STONES;
+
+    /**
+     * Board for every depth of search.
+     */
+    private final Board[] boards;
+
+    /**
+     * Buffer of generated moves for every depth of search.
+     */
+    private final int[][] moves;
+
+    /**
+     * Already searched states together with the number of throws left.
+     */
+    private final Set<Long> visited;
+
+    private int player;
+    private Board target;
+    private int states;
+
+    public TurnValidator() {
+        boards = new Board[MAX_THROWS + 1];
+        for (int i = 0; i < boards.length; i++) {
+            boards[i] = new Board();
+        }
+        moves = new int[MAX_THROWS][MoveGenerator.MAX_MOVES];
+        visited = new HashSet<>();
+    }
+
+    /**
+     * Returns true if the state word is valid: all stones are on fields 1..31 and there are no two stones on one field.
+     * @param firstPlayerStones
+     * @param secondPlayerStones
+     * @return
+     */
+    public static boolean isValidState(int[] firstPlayerStones, int[] secondPlayerStones) {
+        if(firstPlayerStones.length != STONES || secondPlayerStones.length != STONES) {
+            return false;
+        }
+
+        int p1Out = 0, p2Out = 0;
+        for (int i = 0; i < STONES; i++) {
+            int s1 = firstPlayerStones[i];
+            int s2 = secondPlayerStones[i];
+            if(s1 < 1 || s1 > Game.OUT_OF_BOARD || s2 < 1 || s2 > Game.OUT_OF_BOARD) {
+                return false;
+            }
+            p1Out += s1 == Game.OUT_OF_BOARD ? 1 : 0;
+            p2Out += s2 == Game.OUT_OF_BOARD ? 1 : 0;
+        }
+
+        Board board = Board.fromStones(firstPlayerStones, secondPlayerStones);
+        return board.getOutOfBoard(1) == p1Out
+                && board.getOutOfBoard(2) == p2Out
+                && (board.getMask(1) & board.getMask(2)) == 0;
+    }
+
+    /**
+     * Checks that the turn of the player leads from the current state to the new one.
+     *
+     * @param firstPlayerStones Current stones of the first player.
+     * @param secondPlayerStones Current stones of the second player.
+     * @param newFirstPlayerStones Stones of the first player sent by client.
+     * @param newSecondPlayerStones Stones of the second player sent by client.
+     * @param turn 1 or 2, player who played the turn.
+     * @return True if the turn is valid.
+     */
+    public boolean isValidTurn(int[] firstPlayerStones, int[] secondPlayerStones,
+                               int[] newFirstPlayerStones, int[] newSecondPlayerStones, int turn) {
+        if(!isValidState(newFirstPlayerStones, newSecondPlayerStones)) {
+            return false;
+        }
+
+        return isValidTurn(Board.fromStones(firstPlayerStones, secondPlayerStones),
+                Board.fromStones(newFirstPlayerStones, newSecondPlayerStones), turn);
+    }
+
+    /**
+     * Checks that the turn of the player leads from the current board to the new one.
+     * @param current
+     * @param next
+     * @param turn 1 or 2, player who played the turn.
+     * @return
+     */
+    public boolean isValidTurn(Board current, Board next, int turn) {
+        player = turn;
+        target = next;
+        boards[0].set(current);
+        visited.clear();
+        states = 0;
+        return search(0);
+    }
+
+    /**
+     * Tries all throws from the board on the given depth.
+     */
+    private boolean search(int depth) {
+        Board board = boards[depth];
+        if(board.equals(target)) {
+            return true;
+        }
+
+        int throwsLeft = MAX_THROWS - depth;
+        if(throwsLeft == 0 || ++states > MAX_STATES) {
+            return false;
+        }
+
+        // every throw changes at most two stones of each player
+        int playerDiff = Integer.bitCount(board.getMask(player) ^ target.getMask(player));
+        int otherDiff = Integer.bitCount(board.getMask(3 - player) ^ target.getMask(3 - player));
+        if(playerDiff > 2 * throwsLeft || otherDiff > 2 * throwsLeft) {
+            return false;
+        }
+
+        // fields 1..30 of both players and the number of throws left fit to 63 bits
+        long key = ((long) (board.getMask(1) >>> 1) << 33) | ((long) (board.getMask(2) >>> 1) << 3) | throwsLeft;
+        if(!visited.add(key)) {
+            return false;
+        }
+
+        Board next = boards[depth + 1];
+        int[] buffer = moves[depth];
+        for (int thrown = 1; thrown <= MAX_THROW_VALUE; thrown++) {
+            boolean again = thrown >= THROW_AGAIN_VALUE;
+
+            // no move
+            if(again) {
+                next.set(board);
+                if(search(depth + 1)) {
+                    return true;
+                }
+            }
+
+            int count = MoveGenerator.generate(board, player, thrown, buffer);
+            for (int i = 0; i < count; i++) {
+                next.set(board);
+                MoveGenerator.play(next, player, buffer[i]);
+                if(again ? search(depth + 1) : next.equals(target)) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,29 @@
+package org.valesz.ups.common.error;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Zdenek Vales
+ */
+public class ErrorCodeTest {
+
+    @Test
+    public void testGetCodeByInt() {
+        for (ErrorCode ec : ErrorCode.values()) {
+            assertEquals("Wrong error code for "+ec.code+"!", ec, ErrorCode.getCodeByInt(ec.code));
+        }
+        assertEquals("Unknown code expected!", ErrorCode.UNRECOGNIZED_ERROR, ErrorCode.getCodeByInt(10));
+        assertEquals("Unknown code expected!", ErrorCode.UNRECOGNIZED_ERROR, ErrorCode.getCodeByInt(1000));
+        assertEquals("Unknown code expected!", ErrorCode.UNRECOGNIZED_ERROR, ErrorCode.getCodeByInt(-5));
+    }
+
+    @Test
+    public void testGetCodeByBytes() {
+        assertEquals("Wrong error code!", ErrorCode.BAD_TURN, ErrorCode.getCodeByInt("40".getBytes()));
+        assertEquals("Wrong error code!", ErrorCode.NO_CONNECTION, ErrorCode.getCodeByInt("08".getBytes()));
+        assertEquals("Unknown code expected!", ErrorCode.UNRECOGNIZED_ERROR, ErrorCode.getCodeByInt("4a".getBytes()));
+        assertEquals("Unknown code expected!", ErrorCode.UNRECOGNIZED_ERROR, ErrorCode.getCodeByInt(new byte[0]));
+    }
+}
@@ -0,0 +1,57 @@
+package org.valesz.ups.common.message;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Zdenek Vales
+ */
+public class MessageEncoderTest {
+
+    @Test
+    public void testSameAsMessage() {
+        MessageEncoder encoder = new MessageEncoder();
+
+        assertArrayEquals("Wrong OK frame!", Message.createOKMessage().toBytes(), encoder.encodeOk().toBytes());
+        assertArrayEquals("Wrong EXIT frame!", Message.createExitMessage().toBytes(), encoder.encodeExit().toBytes());
+        assertArrayEquals("Wrong ALIVE frame!", Message.createIsAliveMessage().toBytes(), encoder.encodeAlive().toBytes());
+        assertArrayEquals("Wrong BIN frame!", Message.createBinaryMessage().toBytes(), encoder.encodeBinary().toBytes());
+        assertArrayEquals("Wrong nick frame!", Message.createNickMessage("valesz").toBytes(), encoder.encodeNick("valesz").toBytes());
+        assertArrayEquals("Wrong long nick frame!", Message.createNickMessage("valeszvalesz").toBytes(), encoder.encodeNick("valeszvalesz").toBytes());
+    }
+
+    @Test
+    public void testEndTurn() throws Exception {
+        int[] p1 = new int[] {1, 3, 5, 7, 31};
+        int[] p2 = new int[] {2, 4, 6, 8, 10};
+        String expected = "INF01030507310204060810\n";
+
+        MessageEncoder encoder = new MessageEncoder();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoder.encodeEndTurn(p1, p2).writeTo(out);
+        assertEquals("Wrong end turn frame!", expected, out.toString());
+        assertArrayEquals("Message differs from encoder!", out.toByteArray(), Message.createEndTurnMessage(p1, p2).toBytes());
+
+        // same output as String.format("%02d") even for invalid values
+        p1[0] = -1;
+        p2[4] = 123;
+        assertEquals("Wrong invalid end turn frame!", "INF-10305073102040608123\n", new String(encoder.encodeEndTurn(p1, p2).toBytes()));
+    }
+
+    @Test
+    public void testReuseBuffer() {
+        MessageEncoder encoder = new MessageEncoder(4);
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+
+        encoder.encodeNick("valesz").writeTo(buffer);
+        encoder.encodeOk().writeTo(buffer);
+        assertEquals("Wrong length!", 6, encoder.getLength());
+        buffer.flip();
+        assertEquals("Wrong frames!", "CMD6valesz\nINFOK\n", new String(buffer.array(), 0, buffer.limit()));
+    }
+}
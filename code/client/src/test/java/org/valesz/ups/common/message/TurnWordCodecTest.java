@@ -0,0 +1,72 @@
+package org.valesz.ups.common.message;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Zdenek Vales
+ */
+public class TurnWordCodecTest {
+
+    private final byte[] frame = new byte[TurnWordCodec.MAX_FRAME_LEN];
+    private final int[] p1 = new int[5];
+    private final int[] p2 = new int[5];
+
+    private void decode(TurnWordCodec decoder, int len) {
+        int tag = frame[0] & 0xFF;
+        assertTrue("Tag expected!", TurnWordCodec.isTag(tag));
+        assertEquals("Wrong content length!", len - 1, TurnWordCodec.getContentLength(tag));
+        assertTrue("Frame not decoded!", decoder.decode(tag, frame, 1, p1, p2));
+    }
+
+    @Test
+    public void testFullAndDelta() {
+        TurnWordCodec encoder = new TurnWordCodec();
+        TurnWordCodec decoder = new TurnWordCodec();
+
+        int len = encoder.encode(new int[] {1, 3, 5, 7, 9}, new int[] {2, 4, 6, 8, 10}, frame, 0);
+        assertEquals("Full frame expected!", 1 + TurnWordCodec.FULL_LEN, len);
+        decode(decoder, len);
+        assertArrayEquals("Wrong p1 stones!", new int[] {1, 3, 5, 7, 9}, p1);
+        assertArrayEquals("Wrong p2 stones!", new int[] {2, 4, 6, 8, 10}, p2);
+
+        // two stones moved
+        len = encoder.encode(new int[] {1, 3, 5, 7, 12}, new int[] {2, 4, 6, 8, 31}, frame, 0);
+        assertEquals("Delta frame expected!", 4, len);
+        decode(decoder, len);
+        assertArrayEquals("Wrong p1 stones!", new int[] {1, 3, 5, 7, 12}, p1);
+        assertArrayEquals("Wrong p2 stones!", new int[] {2, 4, 6, 8, 31}, p2);
+
+        // nothing moved
+        len = encoder.encode(new int[] {1, 3, 5, 7, 12}, new int[] {2, 4, 6, 8, 31}, frame, 0);
+        assertEquals("Empty delta expected!", 1, len);
+        decode(decoder, len);
+        assertArrayEquals("Wrong p1 stones!", new int[] {1, 3, 5, 7, 12}, p1);
+
+        // too many changes for delta
+        len = encoder.encode(new int[] {11, 13, 15, 17, 19}, new int[] {20, 4, 6, 8, 31}, frame, 0);
+        assertEquals("Full frame expected!", 1 + TurnWordCodec.FULL_LEN, len);
+        decode(decoder, len);
+        assertArrayEquals("Wrong p1 stones!", new int[] {11, 13, 15, 17, 19}, p1);
+        assertArrayEquals("Wrong p2 stones!", new int[] {20, 4, 6, 8, 31}, p2);
+    }
+
+    /**
+     * Text turn word is the base of the next delta, delta without base is rejected.
+     */
+    @Test
+    public void testBase() {
+        TurnWordCodec encoder = new TurnWordCodec();
+        encoder.update(new int[] {1, 3, 5, 7, 9}, new int[] {2, 4, 6, 8, 10});
+        int len = encoder.encode(new int[] {1, 3, 5, 7, 11}, new int[] {2, 4, 6, 8, 10}, frame, 0);
+        assertEquals("Delta frame expected!", 3, len);
+
+        TurnWordCodec decoder = new TurnWordCodec();
+        assertFalse("Delta without base!", decoder.decode(frame[0] & 0xFF, frame, 1, p1, p2));
+
+        decoder.update(new int[] {1, 3, 5, 7, 9}, new int[] {2, 4, 6, 8, 10});
+        decode(decoder, len);
+        assertArrayEquals("Wrong p1 stones!", new int[] {1, 3, 5, 7, 11}, p1);
+    }
+}
@@ -0,0 +1,183 @@
+package org.valesz.ups.engine;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.valesz.ups.model.game.Board;
+import org.valesz.ups.model.game.Game;
+import org.valesz.ups.model.game.MoveGenerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Zdenek Vales
+ */
+public class EndgameTablebaseTest {
+
+    private static final double DELTA = 1e-6;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Every position with up to two stones of each player has its own index.
+     */
+    @Test
+    public void testIndex() {
+        int[][] offsets = EndgameTablebase.offsets(2);
+        int positions = EndgameTablebase.positions(2);
+        boolean[] used = new boolean[positions];
+        // fields of the second stone equal to the first one mean a single stone
+        for (int own1 = 1; own1 <= Game.LAST_FIELD; own1++) {
+            for (int own2 = own1; own2 <= Game.LAST_FIELD; own2++) {
+                int own = Board.bit(own1) | Board.bit(own2);
+                int free = Board.FIELDS & ~own;
+                for (int opponent1 = 1; opponent1 <= Game.LAST_FIELD; opponent1++) {
+                    for (int opponent2 = opponent1; opponent2 <= Game.LAST_FIELD; opponent2++) {
+                        int opponent = Board.bit(opponent1) | Board.bit(opponent2);
+                        if((own & opponent) != 0) {
+                            continue;
+                        }
+                        int index = EndgameTablebase.index(offsets, own, opponent);
+                        assertTrue("Index out of range: "+index, index >= 0 && index < positions);
+                        assertFalse("Index used twice: "+index, used[index]);
+                        used[index] = true;
+                        assertEquals("Wrong expand!", opponent, EndgameTablebase.expand(EndgameTablebase.compress(opponent, own), free));
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < positions; i++) {
+            assertTrue("Index not used: "+i, used[i]);
+        }
+    }
+
+    /**
+     * Written file has the same values and every value is the expected value of its throws.
+     */
+    @Test
+    public void testGenerate() throws IOException {
+        EndgameTablebaseGenerator generator = new EndgameTablebaseGenerator(ForkJoinPool.commonPool(), 1);
+        generator.generate();
+        assertTrue("Not converged: "+generator.getMaxDelta(), generator.getMaxDelta() < EndgameTablebaseGenerator.EPSILON);
+        File file = folder.newFile("tablebase.bin");
+        generator.write(file.toPath());
+        EndgameTablebase tablebase = EndgameTablebase.open(file.toPath());
+
+        assertEquals("Wrong number of positions!", 30 * 29, tablebase.getPositions());
+        assertEquals("Last stone leaves with any throw!", 1, tablebase.probe(Board.bit(Game.LAST_FIELD), Board.bit(1)), DELTA);
+        assertFalse("Too many stones!", tablebase.contains(Board.bit(1) | Board.bit(2), Board.bit(3)));
+
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        for (int ownField = 1; ownField <= Game.LAST_FIELD; ownField++) {
+            int own = Board.bit(ownField);
+            for (int opponentField = 1; opponentField <= Game.LAST_FIELD; opponentField++) {
+                int opponent = Board.bit(opponentField);
+                if(own == opponent) {
+                    continue;
+                }
+                double expected = 0;
+                for (int t = 1; t <= 5; t++) {
+                    int count = MoveGenerator.generate(own, opponent, t, moves);
+                    double best;
+                    if(count == 0) {
+                        best = t >= 4 ? tablebase.probe(own, opponent) : 1 - tablebase.probe(opponent, own);
+                    } else {
+                        best = tablebase.probeMove(own, opponent, t, tablebase.bestMove(own, opponent, t, moves));
+                    }
+                    expected += ExpectiminimaxSearch.THROW_WEIGHTS[t] * best;
+                }
+                double value = tablebase.probe(own, opponent);
+                assertTrue("Not a probability: "+value, value >= 0 && value <= 1);
+                assertEquals("Wrong value of "+own+" "+opponent, expected / ExpectiminimaxSearch.WEIGHT_SUM, value, DELTA);
+            }
+        }
+    }
+
+    /**
+     * Result doesn't depend on the number of threads.
+     */
+    @Test
+    public void testDeterministic() {
+        ForkJoinPool pool = new ForkJoinPool(3);
+        ForkJoinPool single = new ForkJoinPool(1);
+        try {
+            EndgameTablebaseGenerator first = new EndgameTablebaseGenerator(pool, 1);
+            EndgameTablebaseGenerator second = new EndgameTablebaseGenerator(single, 1);
+            first.generate();
+            second.generate();
+            EndgameTablebase firstTable = first.toTablebase();
+            EndgameTablebase secondTable = second.toTablebase();
+            for (int ownField = 1; ownField <= Game.LAST_FIELD; ownField++) {
+            int own = Board.bit(ownField);
+                for (int opponentField = 1; opponentField <= Game.LAST_FIELD; opponentField++) {
+                int opponent = Board.bit(opponentField);
+                    if(own != opponent) {
+                        assertEquals("Different values!", firstTable.probe(own, opponent), secondTable.probe(own, opponent), 0);
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+            single.shutdown();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testOpenWrongFile() throws IOException {
+        File file = folder.newFile("wrong.bin");
+        Files.write(file.toPath(), new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17});
+        EndgameTablebase.open(file.toPath());
+    }
+
+    /**
+     * Table with the last change over EPSILON isn't exact, so it's refused.
+     */
+    @Test(expected = IOException.class)
+    public void testOpenNotConverged() throws IOException {
+        EndgameTablebaseGenerator generator = new EndgameTablebaseGenerator(ForkJoinPool.commonPool(), 1);
+        generator.generate();
+        File file = folder.newFile("tablebase.bin");
+        generator.write(file.toPath());
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            ByteBuffer maxDelta = ByteBuffer.allocate(Float.BYTES).order(ByteOrder.LITTLE_ENDIAN).putFloat(0, 1e-3f);
+            channel.write(maxDelta, 12);
+        }
+        EndgameTablebase.open(file.toPath());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooManyStones() {
+        new EndgameTablebaseGenerator(ForkJoinPool.commonPool(), EndgameTablebase.MAX_STONES + 1);
+    }
+
+    /**
+     * Search plays the move of the tablebase without searching.
+     */
+    @Test
+    public void testSearch() {
+        EndgameTablebaseGenerator generator = new EndgameTablebaseGenerator(ForkJoinPool.commonPool(), 1);
+        generator.generate();
+        EndgameTablebase tablebase = generator.toTablebase();
+        ExpectiminimaxSearch search = new ExpectiminimaxSearch();
+        search.setTablebase(tablebase);
+
+        int own = Board.bit(20);
+        int opponent = Board.bit(22);
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        int move = search.search(new Board(own, opponent), 1, 2, 1000);
+        assertEquals("Wrong move!", tablebase.bestMove(own, opponent, 2, moves), move);
+        assertEquals("Position shouldn't be searched!", 0, search.getDepth());
+        double probability = tablebase.probeMove(own, opponent, 2, move);
+        assertEquals("Wrong value!", ExpectiminimaxSearch.WIN * (2 * probability - 1), search.getValue(), DELTA);
+    }
+}
@@ -0,0 +1,184 @@
+package org.valesz.ups.engine;
+
+import org.junit.Test;
+import org.valesz.ups.model.game.Board;
+import org.valesz.ups.model.game.Game;
+import org.valesz.ups.model.game.MoveGenerator;
+import org.valesz.ups.model.game.Player;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Zdenek Vales
+ */
+public class ExpectiminimaxSearchTest {
+
+    private static final double DELTA = 1e-9;
+
+    private long referenceNodes;
+
+    @Test
+    public void testLeaveWins() {
+        ExpectiminimaxSearch search = new ExpectiminimaxSearch();
+        int move = search.search(new int[] {30, 31, 31, 31, 31}, new int[] {2, 4, 6, 8, 10}, 1, 1, 1000);
+        assertEquals("Last stone should leave!", MoveGenerator.encode(Game.LAST_FIELD, Game.OUT_OF_BOARD), move);
+        assertEquals("Game should be won!", ExpectiminimaxSearch.WIN, search.getValue(), DELTA);
+    }
+
+    @Test
+    public void testNoMove() {
+        ExpectiminimaxSearch search = new ExpectiminimaxSearch();
+        // every stone is blocked by protected opponent's stones
+        int move = search.search(new int[] {1, 31, 31, 31, 31}, new int[] {2, 3, 31, 31, 31}, 1, 2, 1000);
+        assertEquals("No move expected!", ExpectiminimaxSearch.NO_MOVE, move);
+    }
+
+    /**
+     * Pruned search finds the same value as the full expectiminimax in less nodes.
+     */
+    @Test
+    public void testSameAsFullSearch() {
+        Random random = new Random(42);
+        ExpectiminimaxSearch search = new ExpectiminimaxSearch();
+        int depth = 3;
+        search.setMaxDepth(depth);
+        long searchNodes = 0;
+        referenceNodes = 0;
+
+        for (int i = 0; i < 50; i++) {
+            Board board = randomBoard(random);
+            int thrown = 1 + random.nextInt(5);
+            int move = search.search(board, 1, thrown, TimeUnit.MINUTES.toMillis(1));
+            if(move == ExpectiminimaxSearch.NO_MOVE) {
+                continue;
+            }
+            searchNodes += search.getNodes();
+
+            double expected = reference(board.getMask(1), board.getMask(2), thrown, depth);
+            assertEquals("Wrong value of "+board+", thrown "+thrown, expected, search.getValue(), DELTA);
+            assertEquals("Best move has other value: "+board+", thrown "+thrown, expected, valueOf(board, move, thrown, depth), DELTA);
+        }
+
+        assertTrue("Nothing pruned: "+searchNodes+" of "+referenceNodes, searchNodes < referenceNodes);
+    }
+
+    /**
+     * Transposition table cuts off positions reached by other order of moves. Stored values may come
+     * from deeper searches, so the best move has to be only close to the best one of the full search.
+     */
+    @Test
+    public void testTranspositionTable() {
+        Random random = new Random(11);
+        ExpectiminimaxSearch search = new ExpectiminimaxSearch();
+        ExpectiminimaxSearch withTable = new ExpectiminimaxSearch();
+        withTable.setTranspositionTable(new TranspositionTable(1 << 20));
+        int depth = 3;
+        search.setMaxDepth(depth);
+        withTable.setMaxDepth(depth);
+        long searchNodes = 0;
+        long tableNodes = 0;
+
+        for (int i = 0; i < 50; i++) {
+            Board board = randomBoard(random);
+            int thrown = 1 + random.nextInt(5);
+            int move = withTable.search(board, 1, thrown, TimeUnit.MINUTES.toMillis(1));
+            int expected = search.search(board, 1, thrown, TimeUnit.MINUTES.toMillis(1));
+            if(move == ExpectiminimaxSearch.NO_MOVE) {
+                continue;
+            }
+            searchNodes += search.getNodes();
+            tableNodes += withTable.getNodes();
+            assertEquals("Worse move: "+board+", thrown "+thrown,
+                    valueOf(board, expected, thrown, depth), valueOf(board, move, thrown, depth), 0.01);
+        }
+
+        assertTrue("Nothing cut off: "+tableNodes+" of "+searchNodes, tableNodes < searchNodes);
+    }
+
+    @Test
+    public void testTimeBudget() {
+        ExpectiminimaxSearch search = new ExpectiminimaxSearch();
+        Player first = new Player("first", Player.FIRST_PLAYER_INIT_POS);
+        Player second = new Player("second", Player.SECOND_PLAYER_INIT_POS);
+
+        long start = System.nanoTime();
+        int move = search.search(first.getStones(), second.getStones(), 1, 1, 200);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertNotEquals("Move expected!", ExpectiminimaxSearch.NO_MOVE, move);
+        assertTrue("Budget exceeded: "+elapsedMs, elapsedMs < 1000);
+        assertTrue("Too shallow search: "+search.getDepth(), search.getDepth() >= 3);
+    }
+
+    private static Board randomBoard(Random random) {
+        int first = 0;
+        int second = 0;
+        int stones = 1 + random.nextInt(9);
+        for (int i = 0; i < stones; i++) {
+            int bit = Board.bit(1 + random.nextInt(Game.LAST_FIELD));
+            if(((first | second) & bit) != 0) {
+                continue;
+            }
+            if(i % 2 == 0 && Integer.bitCount(first) < 4) {
+                first |= bit;
+            } else if (Integer.bitCount(second) < 4) {
+                second |= bit;
+            }
+        }
+        return new Board(first | Board.bit(Game.LAST_FIELD - 1), second | Board.bit(1));
+    }
+
+    private double valueOf(Board board, int move, int thrown, int depth) {
+        Board next = board.copy();
+        MoveGenerator.play(next, 1, move);
+        if(next.isWinner(1)) {
+            return ExpectiminimaxSearch.WIN;
+        }
+        return thrown >= 4
+                ? referenceChance(next.getMask(1), next.getMask(2), depth - 1)
+                : -referenceChance(next.getMask(2), next.getMask(1), depth - 1);
+    }
+
+    /**
+     * Full expectiminimax without pruning.
+     */
+    private double reference(int own, int opponent, int thrown, int depth) {
+        referenceNodes++;
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        int count = MoveGenerator.generate(own, opponent, thrown, moves);
+        if(count == 0) {
+            return thrown >= 4 ? referenceChance(own, opponent, depth - 1) : -referenceChance(opponent, own, depth - 1);
+        }
+
+        double best = -ExpectiminimaxSearch.WIN;
+        for (int i = 0; i < count; i++) {
+            Board board = new Board(own, opponent);
+            MoveGenerator.play(board, 1, moves[i]);
+            double v;
+            if(board.isWinner(1)) {
+                v = ExpectiminimaxSearch.WIN;
+            } else if (thrown >= 4) {
+                v = referenceChance(board.getMask(1), board.getMask(2), depth - 1);
+            } else {
+                v = -referenceChance(board.getMask(2), board.getMask(1), depth - 1);
+            }
+            best = Math.max(best, v);
+        }
+        return best;
+    }
+
+    private double referenceChance(int own, int opponent, int depth) {
+        referenceNodes++;
+        if(depth == 0) {
+            return ExpectiminimaxSearch.evaluate(own, opponent);
+        }
+        double sum = 0;
+        for (int t = 1; t <= 5; t++) {
+            sum += ExpectiminimaxSearch.THROW_WEIGHTS[t] * reference(own, opponent, t, depth);
+        }
+        return sum / ExpectiminimaxSearch.WEIGHT_SUM;
+    }
+}
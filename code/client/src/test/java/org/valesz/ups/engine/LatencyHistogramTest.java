@@ -0,0 +1,41 @@
+package org.valesz.ups.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Zdenek Vales
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals("Empty histogram should return 0!", 0, histogram.getPercentile(50));
+
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+
+        assertEquals("Wrong count!", 1000, histogram.getCount());
+        assertWithin("p50", 500, histogram.getPercentile(50));
+        assertWithin("p99", 990, histogram.getPercentile(99));
+        assertWithin("p999", 999, histogram.getPercentile(99.9));
+        assertEquals("Small values should be exact!", 1, histogram.getPercentile(0.1));
+    }
+
+    @Test
+    public void testBuckets() {
+        for (long v = 0; v < 100000; v++) {
+            long upper = LatencyHistogram.bucketUpperBound(LatencyHistogram.bucketIndex(v));
+            assertTrue("Value "+v+" above its bucket "+upper, v <= upper);
+            assertTrue("Bucket "+upper+" too wide for "+v, upper - v <= v / 16);
+        }
+    }
+
+    private static void assertWithin(String name, long expected, long actual) {
+        assertTrue(name+" expected about "+expected+", got "+actual, actual >= expected && actual <= expected + expected / 16);
+    }
+}
@@ -0,0 +1,102 @@
+package org.valesz.ups.engine;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.valesz.ups.model.game.Board;
+import org.valesz.ups.model.game.Game;
+import org.valesz.ups.model.game.MoveGenerator;
+import org.valesz.ups.model.game.Player;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Zdenek Vales
+ */
+public class MonteCarloSearchTest {
+
+    private static final long BUDGET = 60000;
+
+    private ForkJoinPool pool;
+    private Board initialBoard;
+
+    @Before
+    public void setUp() {
+        pool = new ForkJoinPool(2);
+        initialBoard = Board.fromStones(new Player("first", Player.FIRST_PLAYER_INIT_POS).getStones(),
+                new Player("second", Player.SECOND_PLAYER_INIT_POS).getStones());
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void testLeaveWins() {
+        MonteCarloSearch search = new MonteCarloSearch(pool, 2, MonteCarloSearch.DEF_MEMORY, 1, MovePolicy.RANDOM);
+        search.setMaxPlayouts(1000);
+        int move = search.search(Board.fromStones(new int[] {30, 31, 31, 31, 31}, new int[] {2, 4, 6, 8, 10}), 1, 1, BUDGET);
+        assertEquals("Last stone should leave!", MoveGenerator.encode(Game.LAST_FIELD, Game.OUT_OF_BOARD), move);
+        assertEquals("Wrong number of playouts!", 2000, search.getPlayouts());
+    }
+
+    /**
+     * Switching the opponent's stone on 9 is clearly the best move (win probability 0.55 against 0.40 and 0.39
+     * by EndgameTablebase), so most of the visits should go to it, not only the final choice.
+     */
+    @Test
+    public void testBestMove() {
+        MonteCarloSearch search = new MonteCarloSearch(pool, 2, MonteCarloSearch.DEF_MEMORY, 1, MovePolicy.GREEDY);
+        search.setMaxPlayouts(5000);
+        Board board = Board.fromStones(new int[] {6, 29, 31, 31, 31}, new int[] {9, 26, 31, 31, 31});
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        int count = MoveGenerator.generate(board, 1, 3, moves);
+
+        int move = search.search(board, 1, 3, BUDGET);
+        assertEquals("Opponent's stone should be switched!", MoveGenerator.encode(6, 9), move);
+        long[] visits = search.getRootVisits();
+        for (int i = 0; i < count; i++) {
+            if(moves[i] == move) {
+                assertTrue("Best move not preferred: "+visits[i]+" of "+search.getPlayouts(), visits[i] > search.getPlayouts() / 2);
+            }
+        }
+    }
+
+    /**
+     * Trees with the same seeds find the same move with the same visits regardless of threads.
+     */
+    @Test
+    public void testDeterministic() {
+        MonteCarloSearch first = new MonteCarloSearch(pool, 3, MonteCarloSearch.DEF_MEMORY, 42, MovePolicy.GREEDY);
+        MonteCarloSearch second = new MonteCarloSearch(ForkJoinPool.commonPool(), 3, MonteCarloSearch.DEF_MEMORY, 42, MovePolicy.GREEDY);
+        first.setMaxPlayouts(2000);
+        second.setMaxPlayouts(2000);
+
+        int firstMove = first.search(initialBoard, 1, 1, BUDGET);
+        int secondMove = second.search(initialBoard, 1, 1, BUDGET);
+        assertEquals("Different moves!", firstMove, secondMove);
+        assertArrayEquals("Different visits!", first.getRootVisits(), second.getRootVisits());
+        assertEquals("Wrong number of playouts!", 6000, first.getPlayouts());
+        assertTrue("Playouts per second not measured!", first.getPlayoutsPerSecond() > 0);
+    }
+
+    /**
+     * Full trees keep running playouts from their leaves.
+     */
+    @Test
+    public void testMemoryBudget() {
+        long memory = 2 * 100 * MonteCarloSearch.NODE_BYTES;
+        MonteCarloSearch search = new MonteCarloSearch(pool, 2, memory, 7, MovePolicy.GREEDY);
+        search.setMaxPlayouts(5000);
+
+        int move = search.search(initialBoard, 1, 1, BUDGET);
+        assertNotEquals("Move expected!", ExpectiminimaxSearch.NO_MOVE, move);
+        assertEquals("Wrong number of playouts!", 10000, search.getPlayouts());
+        assertEquals("Wrong allocated memory!", memory, search.getAllocatedBytes());
+        assertTrue("Memory budget exceeded: "+search.getTreeBytes(), search.getTreeBytes() <= memory);
+        assertTrue("Trees should be full: "+search.getTreeNodes(), search.getTreeNodes() > 150);
+    }
+}
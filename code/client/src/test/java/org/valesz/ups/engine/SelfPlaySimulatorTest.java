@@ -0,0 +1,64 @@
+package org.valesz.ups.engine;
+
+import org.junit.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Zdenek Vales
+ */
+public class SelfPlaySimulatorTest {
+
+    /**
+     * Result depends only on the seed and the number of shards, not on the threads.
+     */
+    @Test
+    public void testDeterministic() {
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            SelfPlayStats first = new SelfPlaySimulator(pool, 4, MovePolicy.RANDOM, MovePolicy.GREEDY, 42).run(1001);
+            SelfPlayStats second = new SelfPlaySimulator(ForkJoinPool.commonPool(), 4, MovePolicy.RANDOM, MovePolicy.GREEDY, 42).run(1001);
+
+            assertEquals("Wrong number of games!", 1001, first.getGames());
+            assertEquals("Different wins!", first.getFirstPlayerWins(), second.getFirstPlayerWins());
+            assertEquals("Different turns!", first.getTurns(), second.getTurns());
+            assertEquals("Different throws!", first.getThrows(), second.getThrows());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testStats() {
+        SelfPlayStats stats = new SelfPlaySimulator(MovePolicy.GREEDY, MovePolicy.GREEDY, 1).run(20000);
+
+        assertEquals("All games should be finished!", 0, stats.getUnfinished());
+        assertEquals("Wrong number of wins!", stats.getGames(), stats.getFirstPlayerWins() + stats.getSecondPlayerWins());
+        assertTrue("Games per second not measured!", stats.getGamesPerSecond() > 0);
+
+        // 1, 2 and 3 end the turn
+        double oneThrow = stats.getTurns(1) / (double) stats.getTurns();
+        assertEquals("Wrong probability of turn with one throw!", 14.0 / 16, oneThrow, 0.01);
+        long turns = 0;
+        for (int i = 1; i <= SelfPlayStats.MAX_COUNTED_THROWS; i++) {
+            turns += stats.getTurns(i);
+        }
+        assertEquals("Wrong histogram of throws!", stats.getTurns(), turns);
+    }
+
+    /**
+     * Turns played by the rules are rejected by TurnValidator only if they are too long.
+     */
+    @Test
+    public void testValidate() {
+        SelfPlaySimulator simulator = new SelfPlaySimulator(MovePolicy.GREEDY, MovePolicy.RANDOM, 3);
+        simulator.setValidate(true);
+        SelfPlayStats stats = simulator.run(200);
+
+        assertEquals("Every turn should be validated!", stats.getTurns(), stats.getValidatedTurns());
+        assertEquals("Valid turn rejected!", 0, stats.getRejectedOtherTurns());
+        assertTrue("Short turn counted as long!", stats.getRejectedLongTurns() <= stats.getLongTurns());
+    }
+}
@@ -0,0 +1,109 @@
+package org.valesz.ups.engine;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Zdenek Vales
+ */
+public class SenetSessionTest {
+
+    private static final int TURNS = 7;
+
+    private static final int GAMES = 4;
+
+    /**
+     * Plays one game on the server side. Every end turn is confirmed and passed to the other player,
+     * after TURNS turns the first player wins.
+     */
+    private static void serveGame(Socket s1, Socket s2) throws Exception {
+        Socket[] sockets = new Socket[] {s1, s2};
+        BufferedReader[] in = new BufferedReader[2];
+        OutputStream[] out = new OutputStream[2];
+        String[] nicks = new String[2];
+        for (int i = 0; i < 2; i++) {
+            in[i] = new BufferedReader(new InputStreamReader(sockets[i].getInputStream()));
+            out[i] = sockets[i].getOutputStream();
+            String nickMsg = in[i].readLine();
+            assertTrue("Nick message expected: "+nickMsg, nickMsg.startsWith("CMD"));
+            nicks[i] = nickMsg.substring(4);
+            out[i].write("INFOK\n".getBytes());
+        }
+        for (int i = 0; i < 2; i++) {
+            out[i].write(("INFSTART_GAME"+nicks[0]+","+nicks[1]+";\n").getBytes());
+        }
+
+        int current = 0;
+        for (int turn = 1; turn <= TURNS; turn++) {
+            String endTurn = in[current].readLine();
+            assertTrue("End turn expected: "+endTurn, endTurn.matches("INF[0-9]{20}"));
+            out[current].write("INFOK\n".getBytes());
+            if(turn < TURNS) {
+                out[1-current].write(("CMD"+endTurn.substring(3)+"\n").getBytes());
+            }
+            current = 1 - current;
+        }
+        for (int i = 0; i < 2; i++) {
+            out[i].write(("INFEND_GAME"+nicks[0]+";").getBytes());
+        }
+        in[0].readLine();
+        in[1].readLine();
+    }
+
+    @Test
+    public void testConcurrentGames() throws Exception {
+        ServerSocket serverSocket = new ServerSocket(0);
+        List<Throwable> serverErrors = new ArrayList<>();
+        Thread server = new Thread(() -> {
+            try {
+                for (int i = 0; i < GAMES; i++) {
+                    Socket s1 = serverSocket.accept();
+                    Socket s2 = serverSocket.accept();
+                    new Thread(() -> {
+                        try {
+                            serveGame(s1, s2);
+                        } catch (Throwable e) {
+                            synchronized (serverErrors) {
+                                serverErrors.add(e);
+                            }
+                        }
+                    }).start();
+                }
+            } catch (Exception e) {
+                serverErrors.add(e);
+            }
+        });
+        server.start();
+
+        List<SenetSession> sessions = new ArrayList<>();
+        for (int i = 0; i < 2*GAMES; i++) {
+            sessions.add(new SenetSession("127.0.0.1", serverSocket.getLocalPort(), "bot"+i));
+        }
+        SenetEngine engine = new SenetEngine(sessions.size());
+        List<SessionResult> results = engine.runAll(sessions);
+        engine.shutdown();
+        serverSocket.close();
+
+        assertEquals("Wrong number of results!", 2*GAMES, results.size());
+        int winners = 0;
+        int turns = 0;
+        for (SessionResult result : results) {
+            assertTrue("Session failed: "+result, result.isOk());
+            assertEquals("No turn should be rejected!", 0, result.getRejectedTurns());
+            winners += result.isWinner() ? 1 : 0;
+            turns += result.getTurns();
+        }
+        assertEquals("Wrong number of winners!", GAMES, winners);
+        assertEquals("Wrong number of turns!", GAMES*TURNS, turns);
+        assertTrue("Server errors: "+serverErrors, serverErrors.isEmpty());
+    }
+}
@@ -0,0 +1,116 @@
+package org.valesz.ups.engine;
+
+import org.junit.Test;
+import org.valesz.ups.model.game.MoveGenerator;
+import org.valesz.ups.model.game.PositionKey;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Zdenek Vales
+ */
+public class TranspositionTableTest {
+
+    @Test
+    public void testStoreProbe() {
+        TranspositionTable table = new TranspositionTable(1 << 20);
+        long key = PositionKey.of(0b110, 0b11000, 1, 2);
+        int move = MoveGenerator.encode(2, 4);
+
+        assertEquals("Empty table should miss!", TranspositionTable.MISS, table.probe(key));
+
+        table.store(key, 5, -12.5, TranspositionTable.LOWER, move);
+        long data = table.probe(key);
+        assertNotEquals("Stored position missing!", TranspositionTable.MISS, data);
+        assertEquals("Wrong value!", -12.5, TranspositionTable.getValue(data), 0);
+        assertEquals("Wrong depth!", 5, TranspositionTable.getDepth(data));
+        assertEquals("Wrong bound!", TranspositionTable.LOWER, TranspositionTable.getBound(data));
+        assertEquals("Wrong move!", move, TranspositionTable.getMove(data));
+        assertEquals("Other position found!", TranspositionTable.MISS, table.probe(PositionKey.withThrown(key, 3)));
+
+        table.store(key, 0, 1, TranspositionTable.EXACT, ExpectiminimaxSearch.NO_MOVE);
+        assertEquals("Wrong move!", ExpectiminimaxSearch.NO_MOVE, TranspositionTable.getMove(table.probe(key)));
+
+        table.clear();
+        assertEquals("Cleared table should miss!", TranspositionTable.MISS, table.probe(key));
+    }
+
+    /**
+     * Bounds which aren't floats are rounded so that they still bound the value.
+     */
+    @Test
+    public void testRounding() {
+        TranspositionTable table = new TranspositionTable(1 << 10);
+        double value = 1.0 / 3;
+        table.store(1, 1, value, TranspositionTable.LOWER, ExpectiminimaxSearch.NO_MOVE);
+        assertTrue("Lower bound rounded up!", TranspositionTable.getValue(table.probe(1)) <= value);
+        table.store(1, 1, value, TranspositionTable.UPPER, ExpectiminimaxSearch.NO_MOVE);
+        assertTrue("Upper bound rounded down!", TranspositionTable.getValue(table.probe(1)) >= value);
+    }
+
+    /**
+     * Deep entry of the current search is kept in the bucket, shallow entries use the other slot.
+     */
+    @Test
+    public void testReplacement() {
+        // one bucket only
+        TranspositionTable table = new TranspositionTable(2 * TranspositionTable.ENTRY_BYTES);
+        assertEquals("Wrong size!", 2, table.getEntries());
+        table.newSearch();
+
+        table.store(1, 10, 1, TranspositionTable.EXACT, ExpectiminimaxSearch.NO_MOVE);
+        table.store(2, 3, 2, TranspositionTable.EXACT, ExpectiminimaxSearch.NO_MOVE);
+        table.store(3, 4, 3, TranspositionTable.EXACT, ExpectiminimaxSearch.NO_MOVE);
+        assertNotEquals("Deep entry replaced!", TranspositionTable.MISS, table.probe(1));
+        assertEquals("Shallow entry not replaced!", TranspositionTable.MISS, table.probe(2));
+        assertNotEquals("Last entry missing!", TranspositionTable.MISS, table.probe(3));
+
+        // entries of the previous search are replaced
+        table.newSearch();
+        table.store(4, 1, 4, TranspositionTable.EXACT, ExpectiminimaxSearch.NO_MOVE);
+        assertEquals("Old entry not replaced!", TranspositionTable.MISS, table.probe(1));
+        assertNotEquals("New entry missing!", TranspositionTable.MISS, table.probe(4));
+    }
+
+    /**
+     * Threads store values derived from the keys to a small table, any hit has to have the value of its key.
+     */
+    @Test
+    public void testConcurrent() {
+        TranspositionTable table = new TranspositionTable(1 << 12);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        AtomicLong hits = new AtomicLong();
+        try {
+            ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[4];
+            for (int i = 0; i < tasks.length; i++) {
+                long seed = i;
+                tasks[i] = pool.submit(() -> {
+                    SplittableRandom random = new SplittableRandom(seed);
+                    for (int j = 0; j < 200000; j++) {
+                        long key = random.nextLong(1000);
+                        long data = table.probe(key);
+                        if(data == TranspositionTable.MISS) {
+                            table.store(key, (int) (key & 0xFF), key, TranspositionTable.EXACT, (int) key);
+                            continue;
+                        }
+                        hits.incrementAndGet();
+                        assertEquals("Wrong value!", key, TranspositionTable.getValue(data), 0);
+                        assertEquals("Wrong depth!", key & 0xFF, TranspositionTable.getDepth(data));
+                        assertEquals("Wrong move!", key, TranspositionTable.getMove(data));
+                    }
+                });
+            }
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertTrue("Nothing found!", hits.get() > 0);
+    }
+}
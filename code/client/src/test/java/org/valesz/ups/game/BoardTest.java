@@ -0,0 +1,76 @@
+package org.valesz.ups.game;
+
+import org.junit.Test;
+import org.valesz.ups.model.game.Board;
+import org.valesz.ups.model.game.Game;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Zdenek Vales
+ */
+public class BoardTest {
+
+    private static final int OUT = Game.OUT_OF_BOARD;
+
+    @Test
+    public void testMasks() {
+        int[] stones = {1, 3, OUT, 30, 5};
+        int mask = Board.toMask(stones);
+        assertEquals("Wrong mask!", (1 << 1) | (1 << 3) | (1 << 5) | (1 << 30), mask);
+        assertArrayEquals("Wrong stones!", new int[] {1, 3, 5, 30, OUT}, Board.toStones(mask, new int[5]));
+
+        Board board = Board.fromStones(stones, new int[] {2, 4, 6, 8, 10});
+        assertEquals("One stone should be out of board!", 1, board.getOutOfBoard(1));
+        assertTrue("Field 7 should be empty!", board.isFieldEmpty(7));
+        assertFalse("Field 4 shouldn't be empty!", board.isFieldEmpty(4));
+        assertTrue("Field 0 doesn't exist!", board.isFieldEmpty(0));
+        assertTrue("Second player should have stone on 4!", board.isStoneOnField(2, 4));
+        assertFalse("First player shouldn't have stone on 4!", board.isStoneOnField(1, 4));
+    }
+
+    @Test
+    public void testMoveStone() {
+        Board board = Board.fromStones(new int[] {1, 7, 9, 11, 13}, new int[] {2, 3, 6, 8, 20});
+        assertFalse("Move to own stone isn't possible!", board.moveStone(1, 7, 9));
+        assertFalse("Protected stone can't be switched!", board.moveStone(1, 1, 3));
+        assertFalse("Move of opponent's stone isn't possible!", board.moveStone(1, 2, 4));
+        assertFalse("Move out of board isn't possible!", board.moveStone(1, 13, 31));
+
+        assertTrue("Move to empty field should be possible!", board.moveStone(1, 13, 14));
+        assertEquals("Wrong board after move!", Board.fromStones(new int[] {1, 7, 9, 11, 14}, new int[] {2, 3, 6, 8, 20}), board);
+
+        assertTrue("Single stone should be switched!", board.moveStone(1, 14, 20));
+        assertEquals("Wrong board after switch!", Board.fromStones(new int[] {1, 7, 9, 11, 20}, new int[] {2, 3, 6, 8, 14}), board);
+    }
+
+    @Test
+    public void testLeaveBoard() {
+        Board board = Board.fromStones(new int[] {30, OUT, OUT, OUT, OUT}, new int[] {2, 4, 6, 8, 10});
+        assertFalse("Second player has no stone on 30!", board.leaveBoard(2));
+        assertTrue("Stone should leave the board!", board.leaveBoard(1));
+        assertTrue("First player should win!", board.isWinner(1));
+    }
+
+    /**
+     * Stones of players and the board of the game stay the same.
+     */
+    @Test
+    public void testGameSync() {
+        Game game = new Game();
+        game.waitingForOpponent("valesz");
+        game.startGame("valesz", "pepa");
+
+        assertTrue("Switch should be possible!", game.moveStone(9, 10));
+        assertArrayEquals("Wrong stones of the first player!", new int[] {1, 3, 5, 7, 10}, game.getFirstPlayer().getStones());
+        assertArrayEquals("Wrong stones of the second player!", new int[] {2, 4, 6, 8, 9}, game.getSecondPlayer().getStones());
+        assertEquals("Board not updated!", Board.fromStones(game.getFirstPlayer().getStones(), game.getSecondPlayer().getStones()), game.getBoard());
+
+        game.newTurn(new int[] {30, 3, 5, 7, 10}, new int[] {2, 4, 6, 8, 9});
+        game.newTurn(new int[] {30, 3, 5, 7, 10}, new int[] {2, 4, 6, 8, 9});
+        assertTrue("Stone on 30 expected!", game.currentPlayerOnLastField());
+        game.leaveBoard();
+        assertArrayEquals("Stone should leave the board!", new int[] {OUT, 3, 5, 7, 10}, game.getFirstPlayer().getStones());
+        assertEquals("Board not updated!", 1, game.getBoard().getOutOfBoard(1));
+    }
+}
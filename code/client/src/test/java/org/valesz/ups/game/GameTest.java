@@ -2,9 +2,9 @@ package org.valesz.ups.game;
 
 import org.junit.Test;
 import org.valesz.ups.model.game.Game;
+import org.valesz.ups.model.game.MoveGenerator;
 
-import static org.junit.Assert.assertFalse;
-import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.*;
 
 /**
  * @author Zdenek Vales
@@ -25,6 +25,46 @@ public class GameTest {
         assertTrue("Move by one backward should be possible!", Game.getInstance().isMoveLengthOk(2,1));
     }
 
+    /**
+     * Thrown values have the probabilities of four two-sided sticks: 4, 6, 4, 1 and 1 of 16.
+     */
+    @Test
+    public void testThrowSticks() {
+        Game game = new Game();
+        int throwsCount = 160000;
+        int[] counts = new int[6];
+        for (int i = 0; i < throwsCount; i++) {
+            game.setThrownValue(-1);
+            counts[game.throwSticks()]++;
+        }
 
+        double[] expected = {0, 4.0 / 16, 6.0 / 16, 4.0 / 16, 1.0 / 16, 1.0 / 16};
+        for (int t = 1; t <= 5; t++) {
+            assertEquals("Wrong probability of "+t+"!", expected[t], counts[t] / (double) throwsCount, 0.01);
+        }
+    }
 
+    /**
+     * Opponent's stone on the field 30 can't be switched if he has a stone out of board.
+     */
+    @Test
+    public void testSwitchOnLastField() {
+        Game game = new Game();
+        game.waitingForOpponent("valesz");
+        game.startGame("valesz", "pepa");
+        game.endTurn();
+        game.newTurn(new int[] {29, 3, 5, 7, 10}, new int[] {30, Game.OUT_OF_BOARD, 4, 6, 8});
+        game.setThrownValue(1);
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        int count = game.generateMoves(moves);
+        for (int i = 0; i < count; i++) {
+            assertNotEquals("Protected stone can't be switched!", MoveGenerator.encode(29, 30), moves[i]);
+        }
+        assertFalse("Protected stone can't be switched!", game.moveStone(29, 30));
+
+        game.endTurn();
+        game.newTurn(new int[] {29, 3, 5, 7, 10}, new int[] {30, 2, 4, 6, 8});
+        assertTrue("Switch should be possible!", game.moveStone(29, 30));
+        assertArrayEquals("Wrong stones of the second player!", new int[] {29, 2, 4, 6, 8}, game.getSecondPlayer().getStones());
+    }
 }
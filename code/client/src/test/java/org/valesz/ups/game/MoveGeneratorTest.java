@@ -0,0 +1,88 @@
+package org.valesz.ups.game;
+
+import org.junit.Test;
+import org.valesz.ups.model.game.Board;
+import org.valesz.ups.model.game.Game;
+import org.valesz.ups.model.game.MoveGenerator;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Zdenek Vales
+ */
+public class MoveGeneratorTest {
+
+    private static final int OUT = Game.OUT_OF_BOARD;
+
+    @Test
+    public void testGenerate() {
+        Board board = Board.fromStones(new int[] {1, 7, 9, 11, 13}, new int[] {2, 3, 6, 8, 20});
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+
+        int count = MoveGenerator.generate(board, 1, 1, moves);
+        int[] expected = {
+                MoveGenerator.encode(7, 8),
+                MoveGenerator.encode(9, 10),
+                MoveGenerator.encode(11, 12),
+                MoveGenerator.encode(13, 14),
+                MoveGenerator.encode(7, 6),
+                MoveGenerator.encode(9, 8),
+                MoveGenerator.encode(11, 10),
+                MoveGenerator.encode(13, 12)
+        };
+        assertArrayEquals("Wrong moves!", expected, Arrays.copyOf(moves, count));
+
+        count = MoveGenerator.generate(board, 2, 2, moves);
+        for (int i = 0; i < count; i++) {
+            int to = MoveGenerator.getTo(moves[i]);
+            assertTrue("Move to a stone of the player!", board.isFieldEmpty(to) || board.isStoneOnField(1, to));
+            assertTrue("Generated move isn't possible!", board.canMove(2, MoveGenerator.getFrom(moves[i]), to));
+        }
+        assertTrue("Move 2 -> 4 expected!", contains(moves, count, MoveGenerator.encode(2, 4)));
+        assertTrue("Switch 3 -> 1 expected!", contains(moves, count, MoveGenerator.encode(3, 1)));
+        assertFalse("Move to own stone isn't possible!", contains(moves, count, MoveGenerator.encode(6, 8)));
+    }
+
+    @Test
+    public void testLeave() {
+        Board board = Board.fromStones(new int[] {28, 30, OUT, OUT, OUT}, new int[] {2, 4, 6, 8, 29});
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+
+        int count = MoveGenerator.generate(board, 1, 3, moves);
+        assertTrue("Leave should be generated!", MoveGenerator.isLeave(moves[count - 1]));
+        assertFalse("Move out of board isn't possible!", contains(moves, count, MoveGenerator.encode(28, 31)));
+
+        assertTrue("Leave should be played!", MoveGenerator.play(board, 1, moves[count - 1]));
+        assertEquals("Wrong board after leave!", Board.fromStones(new int[] {28, OUT, OUT, OUT, OUT}, new int[] {2, 4, 6, 8, 29}), board);
+    }
+
+    /**
+     * Every generated move is accepted by the game.
+     */
+    @Test
+    public void testGameMoves() {
+        Game game = new Game();
+        game.waitingForOpponent("valesz");
+        game.startGame("valesz", "pepa");
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+
+        assertEquals("Sticks not thrown yet!", 0, game.generateMoves(moves));
+        // 4 and 5 would allow another move
+        game.setThrownValue(2);
+        int count = game.generateMoves(moves);
+        assertTrue("Some move should be possible!", count > 0);
+        assertTrue("Move should be played!", game.playMove(moves[0]));
+        assertEquals("Player already moved!", 0, game.generateMoves(moves));
+    }
+
+    private static boolean contains(int[] moves, int count, int move) {
+        for (int i = 0; i < count; i++) {
+            if(moves[i] == move) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,83 @@
+package org.valesz.ups.game;
+
+import org.junit.Test;
+import org.valesz.ups.model.game.Board;
+import org.valesz.ups.model.game.Game;
+import org.valesz.ups.model.game.MoveGenerator;
+import org.valesz.ups.model.game.PositionKey;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Zdenek Vales
+ */
+public class PositionKeyTest {
+
+    @Test
+    public void testOf() {
+        Board board = Board.fromStones(new int[] {1, 7, 30, 31, 31}, new int[] {2, 3, 6, 8, 20});
+        long key = PositionKey.of(board, 2, 4);
+
+        assertEquals("Wrong first player!", board.getMask(1), PositionKey.getFirstPlayerMask(key));
+        assertEquals("Wrong second player!", board.getMask(2), PositionKey.getSecondPlayerMask(key));
+        assertEquals("Wrong player on turn!", 2, PositionKey.getPlayer(key));
+        assertEquals("Wrong thrown value!", 4, PositionKey.getThrown(key));
+
+        key = PositionKey.endTurn(key);
+        assertEquals("Wrong player on turn!", 1, PositionKey.getPlayer(key));
+        assertEquals("Sticks shouldn't be thrown!", 0, PositionKey.getThrown(key));
+        assertNotEquals("Different players, same key!", PositionKey.of(board, 2, 0), key);
+    }
+
+    /**
+     * Key updated by moves is the same as the key of the board after the moves.
+     */
+    @Test
+    public void testPlay() {
+        Random random = new Random(7);
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+
+        for (int game = 0; game < 100; game++) {
+            Board board = Board.fromStones(new int[] {1, 3, 5, 7, 9}, new int[] {2, 4, 6, 8, 10});
+            int player = 1;
+            long key = PositionKey.of(board, player, 0);
+            for (int turn = 0; turn < 500; turn++) {
+                int thrown = 1 + random.nextInt(5);
+                key = PositionKey.withThrown(key, thrown);
+                int count = MoveGenerator.generate(board, player, thrown, moves);
+                if(count > 0) {
+                    int move = moves[random.nextInt(count)];
+                    key = PositionKey.play(key, player, move);
+                    if(MoveGenerator.isLeave(move)) {
+                        board.leaveBoard(player);
+                    } else {
+                        board.moveStone(player, MoveGenerator.getFrom(move), MoveGenerator.getTo(move));
+                    }
+                }
+                assertEquals("Wrong key after move!", PositionKey.of(board, player, thrown), key);
+                if(board.getMask(player) == 0) {
+                    break;
+                }
+                if(thrown < 4) {
+                    key = PositionKey.endTurn(key);
+                    player = 3 - player;
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testGame() {
+        Game game = new Game();
+        game.waitingForOpponent("first");
+        game.startGame("first", "second");
+        long key = game.getPositionKey();
+
+        assertEquals("Wrong position!", PositionKey.of(game.getBoard(), 1, 0), key);
+
+        game.setThrownValue(3);
+        assertEquals("Wrong thrown value!", 3, PositionKey.getThrown(game.getPositionKey()));
+    }
+}
@@ -0,0 +1,102 @@
+package org.valesz.ups.network;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Zdenek Vales
+ */
+public class HeartbeatTest {
+
+    private ServerSocket serverSocket;
+    private Socket client;
+    private Socket server;
+    private BufferedReader inFromClient;
+    private OutputStream outToClient;
+    private MessageDispatcher dispatcher;
+
+    @Before
+    public void setUp() throws Exception {
+        serverSocket = new ServerSocket(0);
+        client = new Socket("127.0.0.1", serverSocket.getLocalPort());
+        server = serverSocket.accept();
+        server.setSoTimeout(5000);
+        inFromClient = new BufferedReader(new InputStreamReader(server.getInputStream()));
+        outToClient = server.getOutputStream();
+        dispatcher = new MessageDispatcher(new MessageDecoder(client.getInputStream()), client.getOutputStream());
+        dispatcher.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        dispatcher.stop();
+        client.close();
+        server.close();
+        serverSocket.close();
+    }
+
+    @Test
+    public void testRtt() throws Exception {
+        Heartbeat heartbeat = new Heartbeat(dispatcher, 60, 3);
+        heartbeat.start(null);
+        for (int i = 0; i < 3; i++) {
+            assertEquals("Alive expected!", "INFALIVE", inFromClient.readLine());
+            outToClient.write("INFOK\n".getBytes());
+            outToClient.flush();
+        }
+
+        // the last answer may be still on the way
+        assertEquals("Alive expected!", "INFALIVE", inFromClient.readLine());
+        heartbeat.stop();
+        RttEstimator rtt = heartbeat.getRtt();
+        assertTrue("Round trip times expected!", rtt.getCount() >= 2);
+        assertTrue("Min RTT should be positive!", rtt.getMin() > 0);
+        assertTrue("Wrong RTT order!", rtt.getMin() <= rtt.getAvg() && rtt.getAvg() <= rtt.getP99());
+        assertEquals("Probe timeout should be derived from RTT!", MessageDispatcher.MIN_PROBE_TIMEOUT, dispatcher.getProbeTimeoutMs());
+        assertFalse("Server is alive!", heartbeat.isDead());
+    }
+
+    @Test
+    public void testMissedHeartbeats() throws Exception {
+        Heartbeat heartbeat = new Heartbeat(dispatcher, 60, 3);
+        CountDownLatch dead = new CountDownLatch(1);
+        heartbeat.start(dead::countDown);
+
+        assertEquals("Alive expected!", "INFALIVE", inFromClient.readLine());
+        assertTrue("Server should be dead!", dead.await(5, TimeUnit.SECONDS));
+        assertTrue("Server should be dead!", heartbeat.isDead());
+        assertEquals("Wrong number of missed heartbeats!", 3, heartbeat.getMissed());
+        assertEquals("No round trip time expected!", 0, heartbeat.getRtt().getAvg());
+    }
+
+    /**
+     * No alive message is needed while the server sends something.
+     */
+    @Test
+    public void testSkipWhenTraffic() throws Exception {
+        // 50 ms interval until round trip time is known
+        Heartbeat heartbeat = new Heartbeat(dispatcher, TcpClient.MAX_ALIVE_TIMEOUT + 150, 3);
+        heartbeat.start(null);
+        for (int i = 0; i < 40; i++) {
+            outToClient.write("INFALIVE\n".getBytes());
+            outToClient.flush();
+            assertEquals("Only answers to server's alive expected!", "INFOK", inFromClient.readLine());
+            Thread.sleep(5);
+        }
+        heartbeat.stop();
+
+        assertEquals("No alive should be sent!", 0, heartbeat.getSentCount());
+        assertTrue("Some checks should be skipped!", heartbeat.getSkippedCount() > 0);
+    }
+}
@@ -0,0 +1,149 @@
+package org.valesz.ups.network;
+
+import org.junit.Test;
+import org.valesz.ups.common.error.BadMsgContentException;
+import org.valesz.ups.common.error.BadMsgTypeReceived;
+import org.valesz.ups.common.error.ReceivingException;
+import org.valesz.ups.common.message.received.AbstractReceivedMessage;
+import org.valesz.ups.common.message.received.ReceivedMessageTypeResolver;
+import org.valesz.ups.common.message.received.StartGameReceivedMessage;
+import org.valesz.ups.common.message.received.StartTurnReceivedMessage;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Zdenek Vales
+ */
+public class MessageDecoderTest {
+
+    /**
+     * Input stream which counts read() calls and times out once after the first chunk.
+     */
+    private static class ChunkedInputStream extends InputStream {
+
+        private final byte[][] chunks;
+        private int chunk = 0;
+        private int reads = 0;
+        private boolean timedOut = false;
+
+        ChunkedInputStream(String... chunks) {
+            this.chunks = new byte[chunks.length][];
+            for (int i = 0; i < chunks.length; i++) {
+                this.chunks[i] = chunks[i].getBytes();
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            throw new UnsupportedOperationException("Byte reads not expected.");
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            reads++;
+            if(chunk == 1 && !timedOut) {
+                timedOut = true;
+                throw new SocketTimeoutException();
+            }
+            if(chunk >= chunks.length) {
+                return -1;
+            }
+            byte[] c = chunks[chunk++];
+            System.arraycopy(c, 0, b, off, c.length);
+            return c.length;
+        }
+    }
+
+    @Test
+    public void testDecodeMoreMessagesFromOneBlock() throws IOException, ReceivingException {
+        String msgs = "\ninfok\nINFSTART_GAMEnick1,nick2;\nInFaLiVe\n";
+        ChunkedInputStream is = new ChunkedInputStream(msgs);
+        MessageDecoder decoder = new MessageDecoder(is);
+
+        assertNotNull("OK expected!", ReceivedMessageTypeResolver.isOk(decoder.decode()));
+        StartGameReceivedMessage startGame = ReceivedMessageTypeResolver.isStartGame(decoder.decode());
+        assertNotNull("START_GAME expected!", startGame);
+        assertEquals("Wrong second nick received!", "nick2", startGame.getSecondNickname());
+        assertNotNull("ALIVE expected!", ReceivedMessageTypeResolver.isAliveMessage(decoder.decode()));
+        assertEquals("Whole input should be read by one call!", 1, is.reads);
+    }
+
+    @Test
+    public void testDecodeAfterTimeout() throws IOException, ReceivingException {
+        ChunkedInputStream is = new ChunkedInputStream("\nCMD0103050709", "0204060810\n");
+        MessageDecoder decoder = new MessageDecoder(is);
+
+        try {
+            decoder.decode();
+            fail("Socket timeout expected!");
+        } catch (SocketTimeoutException ex) {
+            // ok
+        }
+
+        AbstractReceivedMessage message = decoder.decode();
+        StartTurnReceivedMessage startTurn = ReceivedMessageTypeResolver.isStartTurn(message);
+        assertNotNull("Wrong message received! "+message, startTurn);
+        assertArrayEquals("Wrong p1 stones!", new int[] {1,3,5,7,9}, startTurn.getFirstPlayerStones());
+        assertArrayEquals("Wrong p2 stones!", new int[] {2,4,6,8,10}, startTurn.getSecondPlayerStones());
+    }
+
+    @Test
+    public void testBufferedCount() throws IOException, ReceivingException {
+        MessageDecoder decoder = new MessageDecoder(new ByteArrayInputStream("INFOKINFOK".getBytes()));
+        decoder.decode();
+        assertEquals("Second message should be buffered!", 5, decoder.getBufferedCount());
+    }
+
+    private static void feed(MessageDecoder decoder, String data) {
+        decoder.feed(ByteBuffer.wrap(data.getBytes()));
+    }
+
+    /**
+     * Malformed frame costs only one error, the rest of it is skipped up to the next frame boundary.
+     */
+    @Test
+    public void testResync() throws ReceivingException {
+        MessageDecoder decoder = new MessageDecoder();
+        feed(decoder, "INFOKX#garbage\nINFOK");
+        assertNotNull("OK expected!", ReceivedMessageTypeResolver.isOk(decoder.tryDecode()));
+        try {
+            decoder.tryDecode();
+            fail("Bad message type exception expected!");
+        } catch (BadMsgTypeReceived ex) {
+            // ok
+        }
+        assertNotNull("OK expected after resync!", ReceivedMessageTypeResolver.isOk(decoder.tryDecode()));
+        assertEquals("Wrong number of discarded bytes!", 10, decoder.getDiscardedCount());
+
+        // boundary in later chunk
+        feed(decoder, "CMD01x");
+        try {
+            decoder.tryDecode();
+            fail("Bad message content exception expected!");
+        } catch (BadMsgContentException ex) {
+            // ok
+        }
+        assertNull("Nothing to decode yet!", decoder.tryDecode());
+        assertTrue("Decoder should be resyncing!", decoder.isResyncing());
+        feed(decoder, "yzinfok");
+        assertNotNull("OK expected after resync!", ReceivedMessageTypeResolver.isOk(decoder.tryDecode()));
+        assertEquals("Wrong number of discarded bytes!", 13, decoder.getDiscardedCount());
+
+        // the bad byte starts the next frame
+        feed(decoder, "INFOINFOK");
+        try {
+            decoder.tryDecode();
+            fail("Bad message content exception expected!");
+        } catch (BadMsgContentException ex) {
+            // ok
+        }
+        assertNotNull("OK expected after resync!", ReceivedMessageTypeResolver.isOk(decoder.tryDecode()));
+        assertEquals("No bytes should be discarded!", 13, decoder.getDiscardedCount());
+    }
+}
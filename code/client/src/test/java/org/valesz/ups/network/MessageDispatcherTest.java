@@ -0,0 +1,184 @@
+package org.valesz.ups.network;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.valesz.ups.common.error.ErrorCode;
+import org.valesz.ups.common.error.MaxAttemptsReached;
+import org.valesz.ups.common.message.received.AbstractReceivedMessage;
+import org.valesz.ups.common.message.received.ErrorReceivedMessage;
+import org.valesz.ups.common.message.received.ReceivedMessageTypeResolver;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Zdenek Vales
+ */
+public class MessageDispatcherTest {
+
+    private ServerSocket serverSocket;
+    private Socket client;
+    private Socket server;
+    private BufferedReader inFromClient;
+    private OutputStream outToClient;
+    private MessageDispatcher dispatcher;
+
+    @Before
+    public void setUp() throws Exception {
+        serverSocket = new ServerSocket(0);
+        client = new Socket("127.0.0.1", serverSocket.getLocalPort());
+        server = serverSocket.accept();
+        inFromClient = new BufferedReader(new InputStreamReader(server.getInputStream()));
+        outToClient = server.getOutputStream();
+        dispatcher = new MessageDispatcher(new MessageDecoder(client.getInputStream()), client.getOutputStream());
+        dispatcher.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        dispatcher.stop();
+        client.close();
+        server.close();
+        serverSocket.close();
+    }
+
+    /**
+     * Messages received before subscribing are kept, alive message is answered without any subscription.
+     */
+    @Test
+    public void testBacklogAndAlive() throws Exception {
+        outToClient.write("INFALIVE\nINFOK\n".getBytes());
+        outToClient.flush();
+        assertEquals("Alive not answered!", "INFOK", inFromClient.readLine());
+
+        AbstractReceivedMessage received = dispatcher.subscribe(message -> ReceivedMessageTypeResolver.isOk(message) != null,
+                TcpClient.MAX_TIMEOUT, TcpClient.MAX_ATTEMPTS, false).await();
+        assertNotNull("OK expected!", ReceivedMessageTypeResolver.isOk(received));
+    }
+
+    /**
+     * After timeout, alive message is sent by the dispatcher and waiting continues once OK is received.
+     */
+    @Test
+    public void testTimeoutSendsAlive() throws Exception {
+        MessageDispatcher.Subscription subscription = dispatcher.subscribe(message -> ReceivedMessageTypeResolver.isStartTurn(message) != null,
+                100, TcpClient.MAX_ATTEMPTS, true);
+        assertEquals("Alive expected!", "INFALIVE", inFromClient.readLine());
+        outToClient.write("INFOK\nCMD01030507090204060810\n".getBytes());
+        outToClient.flush();
+
+        assertNotNull("START_TURN expected!", ReceivedMessageTypeResolver.isStartTurn(subscription.await()));
+    }
+
+    /**
+     * Alive isn't sent after timeout if the server sent something meanwhile.
+     */
+    @Test
+    public void testTimeoutWithTraffic() throws Exception {
+        MessageDispatcher.Subscription subscription = dispatcher.subscribe(message -> ReceivedMessageTypeResolver.isStartTurn(message) != null,
+                50, TcpClient.INF_ATTEMPTS, true);
+        for (int i = 0; i < 20; i++) {
+            outToClient.write("INFALIVE\n".getBytes());
+            outToClient.flush();
+            assertEquals("Only answers to server's alive expected!", "INFOK", inFromClient.readLine());
+            Thread.sleep(10);
+        }
+        outToClient.write("CMD01030507090204060810\n".getBytes());
+        outToClient.flush();
+
+        assertNotNull("START_TURN expected!", ReceivedMessageTypeResolver.isStartTurn(subscription.await()));
+    }
+
+    @Test(expected = MaxAttemptsReached.class)
+    public void testMaxAttempts() throws Exception {
+        MessageDispatcher.Subscription subscription = dispatcher.subscribe(message -> ReceivedMessageTypeResolver.isStartTurn(message) != null,
+                TcpClient.MAX_TIMEOUT, 2, true);
+        outToClient.write("INFOK\nINFOK\n".getBytes());
+        outToClient.flush();
+
+        subscription.await();
+    }
+
+    /**
+     * Responses complete outstanding requests in the order they were sent, end game completes end turn.
+     */
+    @Test
+    public void testPipelinedRequests() throws Exception {
+        MessageDispatcher.Request nick = dispatcher.sendNick("valesz");
+        MessageDispatcher.Request alive = dispatcher.sendAlive();
+        MessageDispatcher.Request endTurn = dispatcher.sendEndTurn(new int[] {1,3,5,7,9}, new int[] {2,4,6,8,10});
+        assertEquals("Wrong nick message!", "CMD6valesz", inFromClient.readLine());
+        assertEquals("Alive expected!", "INFALIVE", inFromClient.readLine());
+        assertEquals("Wrong end turn message!", "INF01030507090204060810", inFromClient.readLine());
+
+        outToClient.write("INFOK\nINFOK\n".getBytes());
+        outToClient.flush();
+        assertNotNull("OK expected!", ReceivedMessageTypeResolver.isOk(nick.await()));
+        assertNotNull("OK expected!", ReceivedMessageTypeResolver.isOk(alive.await()));
+        assertFalse("End turn not answered yet!", endTurn.getResponse().isDone());
+
+        outToClient.write("INFEND_GAMEvalesz;".getBytes());
+        outToClient.flush();
+        assertEquals("Wrong winner!", "valesz", ReceivedMessageTypeResolver.isEndGame(endTurn.await()).getContent());
+    }
+
+    /**
+     * Request which timed out doesn't take the response of the following request.
+     */
+    @Test
+    public void testRequestTimeout() throws Exception {
+        MessageDispatcher.Request nick = dispatcher.sendNick("valesz").setTimeout(50);
+        MessageDispatcher.Request alive = dispatcher.sendAlive();
+        assertEquals("Wrong nick message!", "CMD6valesz", inFromClient.readLine());
+        assertEquals("Alive expected!", "INFALIVE", inFromClient.readLine());
+        try {
+            nick.await();
+            fail("Nick should time out!");
+        } catch (SocketTimeoutException ex) {
+            // expected
+        }
+
+        outToClient.write("INFOK\n".getBytes());
+        outToClient.flush();
+        assertNotNull("OK expected!", ReceivedMessageTypeResolver.isOk(alive.setTimeout(5000).await()));
+    }
+
+    /**
+     * ERR received while alive is the oldest request isn't its response, it is passed to the subscription.
+     * TIMEOUT isn't the response to any request.
+     */
+    @Test
+    public void testUnsolicitedError() throws Exception {
+        MessageDispatcher.Request alive = dispatcher.sendAlive();
+        assertEquals("Alive expected!", "INFALIVE", inFromClient.readLine());
+        MessageDispatcher.Subscription subscription = dispatcher.subscribe(message -> ReceivedMessageTypeResolver.isError(message) != null,
+                TcpClient.MAX_TIMEOUT, TcpClient.MAX_ATTEMPTS, false);
+
+        outToClient.write("ERR39\n".getBytes());
+        outToClient.flush();
+        ErrorReceivedMessage error = ReceivedMessageTypeResolver.isError(subscription.await());
+        assertNotNull("ERR expected!", error);
+        assertEquals("Wrong error code!", ErrorCode.TIMEOUT, error.getContent().code);
+        assertFalse("Alive not answered yet!", alive.getResponse().isDone());
+
+        outToClient.write("INFOK\n".getBytes());
+        outToClient.flush();
+        assertNotNull("OK expected!", ReceivedMessageTypeResolver.isOk(alive.await()));
+
+        MessageDispatcher.Request nick = dispatcher.sendNick("valesz");
+        assertEquals("Wrong nick message!", "CMD6valesz", inFromClient.readLine());
+        subscription = dispatcher.subscribe(message -> ReceivedMessageTypeResolver.isError(message) != null,
+                TcpClient.MAX_TIMEOUT, TcpClient.MAX_ATTEMPTS, false);
+        outToClient.write("ERR39\nERR45\n".getBytes());
+        outToClient.flush();
+        assertEquals("Wrong error code!", ErrorCode.TIMEOUT, ReceivedMessageTypeResolver.isError(subscription.await()).getContent().code);
+        assertEquals("Wrong error code!", ErrorCode.NICK_ALREADY_EXIST, ReceivedMessageTypeResolver.isError(nick.await()).getContent().code);
+    }
+}
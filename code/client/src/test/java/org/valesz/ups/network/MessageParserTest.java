@@ -0,0 +1,153 @@
+package org.valesz.ups.network;
+
+import org.junit.Test;
+import org.valesz.ups.common.error.BadMsgTypeReceived;
+import org.valesz.ups.common.error.BadNickFormatException;
+import org.valesz.ups.common.error.ErrorCode;
+import org.valesz.ups.common.error.ReceivingException;
+import org.valesz.ups.common.message.TurnWordCodec;
+import org.valesz.ups.common.message.received.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Zdenek Vales
+ */
+public class MessageParserTest {
+
+    private static final String MESSAGES = "INFOK\nINFSTART_GAMEvalesz,pepa;\nCMD01030507090204060810\nERR40\ninfalive\nINFEND_GAMEpepa;";
+
+    /**
+     * Feeds the data to the decoder in chunks of given size and returns parsed messages.
+     */
+    private static List<AbstractReceivedMessage<?>> decodeInChunks(byte[] data, int chunkSize) throws ReceivingException {
+        MessageDecoder decoder = new MessageDecoder();
+        List<AbstractReceivedMessage<?>> messages = new ArrayList<>();
+        for (int i = 0; i < data.length; i += chunkSize) {
+            ByteBuffer chunk = ByteBuffer.wrap(data, i, Math.min(chunkSize, data.length - i));
+            decoder.feed(chunk);
+            AbstractReceivedMessage<?> message;
+            while ((message = decoder.tryDecode()) != null) {
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+
+    @Test
+    public void testPartialReads() throws ReceivingException {
+        byte[] data = MESSAGES.getBytes(StandardCharsets.US_ASCII);
+        for (int chunkSize = 1; chunkSize <= data.length; chunkSize++) {
+            List<AbstractReceivedMessage<?>> messages = decodeInChunks(data, chunkSize);
+            assertEquals("Wrong number of messages for chunk size "+chunkSize+"!", 6, messages.size());
+
+            assertNotNull("OK expected!", ReceivedMessageTypeResolver.isOk(messages.get(0)));
+            StartGameReceivedMessage startGame = ReceivedMessageTypeResolver.isStartGame(messages.get(1));
+            assertEquals("Wrong first nick!", "valesz", startGame.getFirstNickname());
+            assertEquals("Wrong second nick!", "pepa", startGame.getSecondNickname());
+            StartTurnReceivedMessage startTurn = ReceivedMessageTypeResolver.isStartTurn(messages.get(2));
+            assertArrayEquals("Wrong p1 stones!", new int[] {1,3,5,7,9}, startTurn.getFirstPlayerStones());
+            assertArrayEquals("Wrong p2 stones!", new int[] {2,4,6,8,10}, startTurn.getSecondPlayerStones());
+            assertEquals("Wrong error code!", ErrorCode.BAD_TURN, ReceivedMessageTypeResolver.isError(messages.get(3)).getContent().code);
+            assertNotNull("ALIVE expected!", ReceivedMessageTypeResolver.isAliveMessage(messages.get(4)));
+            assertEquals("Wrong winner!", "pepa", ReceivedMessageTypeResolver.isEndGame(messages.get(5)).getContent());
+        }
+    }
+
+    @Test
+    public void testBadNick() throws ReceivingException {
+        MessageParser parser = new MessageParser();
+        String message = "INFSTART_GAME1pepa,valesz;";
+        try {
+            for (int i = 0; i < message.length(); i++) {
+                parser.parse(message.charAt(i));
+            }
+            fail("Bad nick exception expected!");
+        } catch (BadNickFormatException ex) {
+            // ok
+        }
+        assertFalse("Parser should be reset after error!", parser.isParsing());
+    }
+
+    @Test
+    public void testRecoveryAfterBadType() throws ReceivingException {
+        MessageParser parser = new MessageParser();
+        try {
+            parser.parse('X');
+            fail("Bad message type exception expected!");
+        } catch (BadMsgTypeReceived ex) {
+            // ok
+        }
+
+        AbstractReceivedMessage<?> message = null;
+        for (char c : "INFOK".toCharArray()) {
+            message = parser.parse(c);
+        }
+        assertNotNull("OK expected!", ReceivedMessageTypeResolver.isOk(message));
+    }
+
+    /**
+     * Tag byte of binary turn word is a bad message type until binary turn words are negotiated.
+     */
+    @Test
+    public void testBinaryTurnWordNotNegotiated() throws ReceivingException {
+        int[] firstPlayerStones = {1, 3, 5, 7, 9};
+        int[] secondPlayerStones = {2, 4, 6, 8, 10};
+        byte[] frame = new byte[TurnWordCodec.MAX_FRAME_LEN];
+        int len = new TurnWordCodec().encode(firstPlayerStones, secondPlayerStones, frame, 0);
+
+        MessageParser parser = new MessageParser();
+        try {
+            parser.parse(frame[0] & 0xFF);
+            fail("Bad message type exception expected!");
+        } catch (BadMsgTypeReceived ex) {
+            // ok
+        }
+        assertFalse("Parser should be reset after error!", parser.isParsing());
+
+        parser.setBinary(true);
+        AbstractReceivedMessage<?> message = null;
+        for (int i = 0; i < len; i++) {
+            message = parser.parse(frame[i] & 0xFF);
+        }
+        StartTurnReceivedMessage startTurn = ReceivedMessageTypeResolver.isStartTurn(message);
+        assertNotNull("START_TURN expected!", startTurn);
+        assertArrayEquals("Wrong first player stones!", firstPlayerStones, startTurn.getFirstPlayerStones());
+        assertArrayEquals("Wrong second player stones!", secondPlayerStones, startTurn.getSecondPlayerStones());
+    }
+
+    /**
+     * Content-free messages are shared and all messages are dispatched to the right visitor method.
+     */
+    @Test
+    public void testSharedInstancesAndVisitor() throws ReceivingException {
+        List<AbstractReceivedMessage<?>> messages = decodeInChunks(MESSAGES.getBytes(StandardCharsets.US_ASCII), 7);
+        assertSame("OK should be shared!", OkReceivedMessage.INSTANCE, messages.get(0));
+        assertSame("ALIVE should be shared!", AliveReceivedMessage.INSTANCE, messages.get(4));
+
+        ReceivedMessageVisitor<String> names = new ReceivedMessageAdapter<String>() {
+            @Override
+            protected String visitOther(AbstractReceivedMessage message) {
+                return "other";
+            }
+
+            @Override
+            public String visitStartTurn(StartTurnReceivedMessage message) {
+                return "start turn";
+            }
+
+            @Override
+            public String visitEndGame(EndGameReceivedMessage message) {
+                return message.getContent();
+            }
+        };
+        assertEquals("Wrong visitor method!", "other", messages.get(0).accept(names));
+        assertEquals("Wrong visitor method!", "start turn", messages.get(2).accept(names));
+        assertEquals("Wrong visitor method!", "pepa", messages.get(5).accept(names));
+    }
+}
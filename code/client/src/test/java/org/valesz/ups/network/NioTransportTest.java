@@ -0,0 +1,142 @@
+package org.valesz.ups.network;
+
+import org.junit.Test;
+import org.valesz.ups.common.error.ReceivingException;
+import org.valesz.ups.common.message.Message;
+import org.valesz.ups.common.message.received.AbstractReceivedMessage;
+import org.valesz.ups.common.message.received.ReceivedMessageTypeResolver;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Zdenek Vales
+ */
+public class NioTransportTest {
+
+    private static final int CONNECTIONS = 20;
+
+    /**
+     * Listener which collects received messages and counts down when the connection is closed.
+     */
+    private static class CollectingListener implements ConnectionListener {
+
+        final List<AbstractReceivedMessage> messages = new CopyOnWriteArrayList<>();
+        final CountDownLatch closed = new CountDownLatch(1);
+        volatile int errors = 0;
+
+        @Override
+        public void onConnected(NioConnection connection) {
+            connection.send(Message.createNickMessage("valesz"));
+        }
+
+        @Override
+        public void onMessage(NioConnection connection, AbstractReceivedMessage message) {
+            messages.add(message);
+            if(ReceivedMessageTypeResolver.isAliveMessage(message) != null) {
+                connection.send(Message.createOKMessage());
+            }
+        }
+
+        @Override
+        public void onReceivingError(NioConnection connection, ReceivingException ex) {
+            errors++;
+        }
+
+        @Override
+        public void onClosed(NioConnection connection, IOException cause) {
+            closed.countDown();
+        }
+    }
+
+    /**
+     * Server side of one connection: checks the nick, then sends OK, ALIVE and start turn split to several
+     * writes, waits for OK response and closes the connection.
+     */
+    private static void serve(Socket s) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream()));
+        OutputStream out = s.getOutputStream();
+        assertEquals("Wrong nick message!", "CMD6valesz", in.readLine());
+        out.write("INFOK\nINFAL".getBytes());
+        out.flush();
+        out.write("IVE\nxCMD0103050709".getBytes());
+        out.flush();
+        out.write("0204060810\n".getBytes());
+        out.flush();
+        assertEquals("Wrong response to alive!", "INFOK", in.readLine());
+        s.close();
+    }
+
+    @Test
+    public void testMoreConnectionsOneThread() throws Exception {
+        ServerSocket serverSocket = new ServerSocket(0);
+        List<Throwable> serverErrors = new CopyOnWriteArrayList<>();
+        Thread server = new Thread(() -> {
+            for (int i = 0; i < CONNECTIONS; i++) {
+                try {
+                    Socket s = serverSocket.accept();
+                    new Thread(() -> {
+                        try {
+                            serve(s);
+                        } catch (Throwable e) {
+                            serverErrors.add(e);
+                        }
+                    }).start();
+                } catch (IOException e) {
+                    serverErrors.add(e);
+                }
+            }
+        });
+        server.start();
+
+        NioTransport transport = new NioTransport();
+        transport.start();
+        CollectingListener[] listeners = new CollectingListener[CONNECTIONS];
+        for (int i = 0; i < CONNECTIONS; i++) {
+            listeners[i] = new CollectingListener();
+            transport.connect("127.0.0.1", serverSocket.getLocalPort(), listeners[i]);
+        }
+
+        for (CollectingListener listener : listeners) {
+            assertTrue("Connection not closed in time!", listener.closed.await(10, TimeUnit.SECONDS));
+            assertEquals("Wrong number of messages received!", 3, listener.messages.size());
+            assertNotNull("OK expected!", ReceivedMessageTypeResolver.isOk(listener.messages.get(0)));
+            assertNotNull("ALIVE expected!", ReceivedMessageTypeResolver.isAliveMessage(listener.messages.get(1)));
+            assertNotNull("START_TURN expected!", ReceivedMessageTypeResolver.isStartTurn(listener.messages.get(2)));
+            assertEquals("One receiving error expected!", 1, listener.errors);
+        }
+        assertTrue("Server errors: "+serverErrors, serverErrors.isEmpty());
+        assertEquals("All connections should be closed!", 0, transport.getOpenConnections());
+
+        transport.stop();
+        serverSocket.close();
+    }
+
+    /**
+     * Connect after stop() must fail right away instead of waiting for the stopped event loop.
+     */
+    @Test
+    public void testConnectAfterStop() throws Exception {
+        NioTransport transport = new NioTransport();
+        transport.start();
+        transport.stop();
+
+        try {
+            transport.connect("127.0.0.1", 65000, new CollectingListener());
+            fail("IOException expected!");
+        } catch (IOException ex) {
+            // ok
+        }
+        assertEquals("No connection should be open!", 0, transport.getOpenConnections());
+    }
+}
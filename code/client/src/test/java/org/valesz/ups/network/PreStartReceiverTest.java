@@ -61,7 +61,7 @@ public class PreStartReceiverTest {
 
     @Test(expected = MaxAttemptsReached.class)
     public void testWaitForNickResponseFail1() throws IOException, MaxAttemptsReached, EndOfStreamReached {
-        String serverResponse = "\nasdfghjklq";     // send gibberish message
+        String serverResponse = "\na\ns\nd\nf\ng\nh\nj\nk\nl\nq\n";     // send gibberish messages, rest of one frame is skipped
         AbstractReceivedMessage receivedMessage = null;
         DataInputStream inFromServer = new DataInputStream(new ByteArrayInputStream(serverResponse.getBytes()));
         DataOutputStream outToServer = new DataOutputStream(new ByteArrayOutputStream());
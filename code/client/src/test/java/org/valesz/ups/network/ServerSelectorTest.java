@@ -0,0 +1,102 @@
+package org.valesz.ups.network;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.valesz.ups.server.SenetServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Zdenek Vales
+ */
+public class ServerSelectorTest {
+
+    private SenetServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        ServerSelector.clearCache();
+        server = new SenetServer(0);
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+        ServerSelector.clearCache();
+    }
+
+    @Test
+    public void testParse() {
+        List<InetSocketAddress> servers = ServerSelector.parse("127.0.0.1:65001, localhost", 65000);
+        assertEquals("Wrong number of servers!", 2, servers.size());
+        assertEquals("Wrong first server!", "127.0.0.1:65001", ServerSelector.name(servers.get(0)));
+        assertEquals("Wrong second server!", "localhost:65000", ServerSelector.name(servers.get(1)));
+
+        try {
+            ServerSelector.parse(" , ", 65000);
+            fail("Empty list should be rejected!");
+        } catch (IllegalArgumentException ex) {
+            // ok
+        }
+    }
+
+    /**
+     * Working server is selected without waiting for the server which doesn't answer,
+     * the refused one is ranked last next time.
+     */
+    @Test
+    public void testSelect() throws Exception {
+        int refusedPort;
+        try (ServerSocket refused = new ServerSocket(0)) {
+            refusedPort = refused.getLocalPort();
+        }
+
+        // accepts connections, but never answers
+        try (ServerSocket silent = new ServerSocket(0)) {
+            InetSocketAddress refusedServer = InetSocketAddress.createUnresolved("127.0.0.1", refusedPort);
+            InetSocketAddress silentServer = InetSocketAddress.createUnresolved("127.0.0.1", silent.getLocalPort());
+            InetSocketAddress liveServer = InetSocketAddress.createUnresolved("127.0.0.1", server.getPort());
+
+            long start = System.nanoTime();
+            ServerSelector.Candidate selected = new ServerSelector(Arrays.asList(refusedServer, silentServer, liveServer), 5000).select();
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            try {
+                assertEquals("Wrong server selected!", liveServer, selected.getAddress());
+                assertTrue("Connection should be open!", selected.getConnection().isConnected());
+                assertEquals("Alive round trip should be measured!", 1, selected.getConnection().getDispatcher().getRtt().getCount());
+                assertTrue("Selection waited for the silent server: "+elapsedMs, elapsedMs < 5000);
+            } finally {
+                selected.getConnection().close();
+            }
+
+            assertEquals("Refused server should be cached as failed!", Long.MAX_VALUE, ServerSelector.getCachedLatency(refusedServer));
+            assertEquals("Silent server wasn't measured!", -1, ServerSelector.getCachedLatency(silentServer));
+            assertEquals("Wrong ranking!", Arrays.asList(liveServer, silentServer, refusedServer),
+                    ServerSelector.rank(Arrays.asList(refusedServer, silentServer, liveServer)));
+        }
+    }
+
+    @Test
+    public void testNoServer() throws Exception {
+        int refusedPort;
+        try (ServerSocket refused = new ServerSocket(0)) {
+            refusedPort = refused.getLocalPort();
+        }
+
+        try {
+            new ServerSelector(ServerSelector.parse("127.0.0.1:"+refusedPort, 0), 1000).select();
+            fail("Connection should fail!");
+        } catch (IOException ex) {
+            // ok
+        }
+    }
+}
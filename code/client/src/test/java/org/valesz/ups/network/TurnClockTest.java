@@ -0,0 +1,115 @@
+package org.valesz.ups.network;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Zdenek Vales
+ */
+public class TurnClockTest {
+
+    /**
+     * Counts ticks and signals the expiry.
+     */
+    private static class CountingListener implements TurnClock.Listener {
+        private final AtomicInteger ticks = new AtomicInteger();
+        private final CountDownLatch expired = new CountDownLatch(1);
+
+        @Override
+        public void tick(TurnClock clock) {
+            ticks.incrementAndGet();
+        }
+
+        @Override
+        public void expired(TurnClock clock) {
+            expired.countDown();
+        }
+    }
+
+    @Test
+    public void testExpiry() throws InterruptedException {
+        CountingListener listener = new CountingListener();
+        TurnClock clock = new TurnClock(200, 50, listener);
+        long start = System.nanoTime();
+        clock.start();
+        assertTrue("Clock should run!", clock.isRunning());
+
+        assertTrue("Clock should expire!", listener.expired.await(2, TimeUnit.SECONDS));
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("Clock expired too early: "+elapsedMs, elapsedMs >= 200);
+        assertTrue("Clock should be expired!", clock.isExpired());
+        assertFalse("Clock shouldn't run!", clock.isRunning());
+        assertEquals("No time should remain!", 0, clock.getRemainingMs());
+        // ticks at 50, 100 and 150 ms, late tick may be skipped
+        int ticks = listener.ticks.get();
+        assertTrue("Wrong number of ticks: "+ticks, ticks > 0 && ticks <= 3);
+    }
+
+    /**
+     * Many clocks run at once, cancelled ones never expire.
+     */
+    @Test
+    public void testManyClocks() throws InterruptedException {
+        int count = 100;
+        CountDownLatch expired = new CountDownLatch(count / 2);
+        AtomicInteger cancelledExpired = new AtomicInteger();
+        TurnClock[] clocks = new TurnClock[count];
+        for (int i = 0; i < count; i++) {
+            boolean cancelled = i % 2 == 1;
+            clocks[i] = new TurnClock(100, 0, clock -> {
+                if(cancelled) {
+                    cancelledExpired.incrementAndGet();
+                } else {
+                    expired.countDown();
+                }
+            });
+            clocks[i].start();
+        }
+        for (int i = 1; i < count; i += 2) {
+            clocks[i].cancel();
+        }
+
+        assertTrue("All clocks should expire!", expired.await(2, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        assertEquals("Cancelled clock expired!", 0, cancelledExpired.get());
+    }
+
+    @Test
+    public void testPauseResume() throws InterruptedException {
+        CountingListener listener = new CountingListener();
+        TurnClock clock = new TurnClock(150, 0, listener);
+        long start = System.nanoTime();
+        clock.start();
+        clock.pause();
+        assertTrue("Clock should be paused!", clock.isPaused());
+        long remaining = clock.getRemainingMs();
+
+        assertFalse("Paused clock expired!", listener.expired.await(300, TimeUnit.MILLISECONDS));
+        assertEquals("Time passed while paused!", remaining, clock.getRemainingMs());
+
+        clock.resume();
+        assertTrue("Clock should expire!", listener.expired.await(2, TimeUnit.SECONDS));
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("Pause wasn't added to the deadline: "+elapsedMs, elapsedMs >= 450);
+    }
+
+    /**
+     * Clock of the turn received from the server is started the 99th percentile of round trip time earlier.
+     */
+    @Test
+    public void testServerStart() {
+        MessageDispatcher dispatcher = new MessageDispatcher(new MessageDecoder(), null);
+        dispatcher.getRtt().recordNanos(TimeUnit.SECONDS.toNanos(5));
+        TurnClock clock = new TurnClock(60000, 0, c -> {});
+
+        clock.start(dispatcher);
+        long elapsedMs = clock.getElapsedMs();
+        clock.cancel();
+        assertTrue("Round trip time wasn't subtracted: "+elapsedMs, elapsedMs >= 5000 && elapsedMs < 10000);
+    }
+}
@@ -0,0 +1,273 @@
+package org.valesz.ups.server;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.valesz.ups.engine.SenetEngine;
+import org.valesz.ups.engine.SenetSession;
+import org.valesz.ups.engine.SessionResult;
+import org.valesz.ups.engine.SimpleStrategy;
+import org.valesz.ups.network.NioTransport;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Zdenek Vales
+ */
+public class SenetServerTest {
+
+    private static final int GAMES = 10;
+
+    private SenetServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new SenetServer(0);
+        server.setAliveInterval(50);
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    /**
+     * Raw client which reads messages line by line.
+     */
+    private class RawClient implements AutoCloseable {
+
+        final Socket socket;
+        final BufferedReader in;
+        final OutputStream out;
+
+        RawClient() throws Exception {
+            socket = new Socket("127.0.0.1", server.getPort());
+            socket.setSoTimeout(5000);
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            out = socket.getOutputStream();
+        }
+
+        void send(String message) throws Exception {
+            out.write(message.getBytes());
+            out.flush();
+        }
+
+        /**
+         * Returns the next line which isn't alive message.
+         */
+        String receive() throws Exception {
+            String line;
+            while ((line = in.readLine()) != null && line.equals("INFALIVE")) {
+                send("INFOK\n");
+            }
+            return line;
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    /**
+     * Complete games of headless sessions, all turns have to be accepted.
+     */
+    @Test(timeout = 60000)
+    public void testGames() throws Exception {
+        playGames(false);
+    }
+
+    /**
+     * The same with binary turn words.
+     */
+    @Test(timeout = 60000)
+    public void testBinaryGames() throws Exception {
+        playGames(true);
+    }
+
+    /**
+     * The same with all sessions connected by one NioTransport, all connections have to be closed after the games.
+     */
+    @Test(timeout = 60000)
+    public void testNioGames() throws Exception {
+        NioTransport transport = new NioTransport();
+        transport.start();
+        playGames(true, transport);
+
+        // connections are closed by the event loop thread
+        long deadline = System.currentTimeMillis() + 5000;
+        while (transport.getOpenConnections() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals("All connections should be closed!", 0, transport.getOpenConnections());
+        transport.stop();
+    }
+
+    private void playGames(boolean binary) throws Exception {
+        playGames(binary, null);
+    }
+
+    private void playGames(boolean binary, NioTransport transport) throws Exception {
+        List<SenetSession> sessions = new ArrayList<>();
+        for (int i = 0; i < 2 * GAMES; i++) {
+            SenetSession session = new SenetSession("127.0.0.1", server.getPort(), "bot"+i);
+            session.setBinaryTurnWords(binary);
+            session.setTransport(transport);
+            sessions.add(session);
+        }
+
+        SenetEngine engine = new SenetEngine(sessions.size());
+        List<SessionResult> results = engine.runAll(sessions);
+        engine.shutdown();
+
+        int winners = 0;
+        for (SessionResult result : results) {
+            assertTrue("Session failed: "+result, result.isOk());
+            assertEquals("No turn should be rejected: "+result, 0, result.getRejectedTurns());
+            assertTrue("No turn played: "+result, result.getTurns() > 0);
+            winners += result.isWinner() ? 1 : 0;
+        }
+        assertEquals("Wrong number of winners!", GAMES, winners);
+        assertEquals("Wrong number of played games!", GAMES, server.getGamesPlayed());
+        assertEquals("No game should be running!", 0, server.getRunningGames());
+    }
+
+    /**
+     * Connection of the first bot is closed in the middle of its turn, the bot resumes the game.
+     */
+    @Test(timeout = 60000)
+    public void testResume() throws Exception {
+        server.setResumeTimeout(5000);
+        SimpleStrategy strategy = new SimpleStrategy();
+        SenetSession[] dropping = new SenetSession[1];
+        int[] turns = new int[1];
+        dropping[0] = new SenetSession("127.0.0.1", server.getPort(), "bot0", game -> {
+            strategy.playTurn(game);
+            if(++turns[0] == 3) {
+                try {
+                    dropping[0].getConnection().getSocket().close();
+                } catch (Exception ex) {
+                    fail("Socket not closed: "+ex.getMessage());
+                }
+            }
+        });
+        dropping[0].setResume(true);
+        SenetSession other = new SenetSession("127.0.0.1", server.getPort(), "bot1");
+        other.setResume(true);
+
+        SenetEngine engine = new SenetEngine(2);
+        List<SessionResult> results = engine.runAll(Arrays.asList(dropping[0], other));
+        engine.shutdown();
+
+        for (SessionResult result : results) {
+            assertTrue("Session failed: "+result, result.isOk());
+        }
+        assertEquals("First bot should resume once!", 1, results.get(0).getResumes());
+        assertTrue("Resume time should be measured!", results.get(0).getResumeNanos() > 0);
+        assertEquals("Second bot shouldn't resume!", 0, results.get(1).getResumes());
+        assertTrue("Both bots should agree on the winner!", results.get(0).isWinner() != results.get(1).isWinner());
+        assertEquals("Wrong number of played games!", 1, server.getGamesPlayed());
+    }
+
+    /**
+     * The player who is on turn gets the start turn again after resume.
+     */
+    @Test
+    public void testResumeSeat() throws Exception {
+        server.setResumeTimeout(5000);
+        try (RawClient c1 = new RawClient(); RawClient c2 = new RawClient()) {
+            c1.send("CMD6valesz\n");
+            assertEquals("OK expected!", "INFOK", c1.receive());
+            c2.send("CMD4pepa\n");
+            assertEquals("OK expected!", "INFOK", c2.receive());
+            assertEquals("Start game expected!", "INFSTART_GAMEvalesz,pepa;", c1.receive());
+            assertEquals("Start game expected!", "INFSTART_GAMEvalesz,pepa;", c2.receive());
+            c1.socket.close();
+
+            // server may not notice the closed connection right away
+            String response = "ERR45";
+            for (int i = 0; i < 50 && response.equals("ERR45"); i++) {
+                try (RawClient c3 = new RawClient()) {
+                    c3.send("CMD6valesz\n");
+                    response = c3.receive();
+                    if(response.equals("INFOK")) {
+                        assertEquals("Start turn expected!", "CMD01030507090204060810", c3.receive());
+                        c3.send("INF01030507110204060810\n");
+                        assertEquals("OK expected!", "INFOK", c3.receive());
+                        assertEquals("Start turn expected!", "CMD01030507110204060810", c2.receive());
+                    } else {
+                        Thread.sleep(20);
+                    }
+                }
+            }
+            assertEquals("Seat wasn't resumed!", "INFOK", response);
+        }
+    }
+
+    @Test
+    public void testNick() throws Exception {
+        try (RawClient c1 = new RawClient(); RawClient c2 = new RawClient()) {
+            c1.send("CMD2ab\n");
+            assertEquals("Bad nick expected!", "ERR46", c1.receive());
+            c1.send("CMD6valesz\n");
+            assertEquals("OK expected!", "INFOK", c1.receive());
+
+            c2.send("INFOK\n");
+            assertEquals("Unexpected message expected!", "ERR37", c2.receive());
+            c2.send("CMD6valesz\n");
+            assertEquals("Nick exists expected!", "ERR45", c2.receive());
+            c2.send("CMD6valesz\n");
+            assertEquals("Too many attempts expected!", "ERR38", c2.receive());
+            assertNull("Connection should be closed!", c2.receive());
+        }
+    }
+
+    @Test
+    public void testTurns() throws Exception {
+        try (RawClient c1 = new RawClient(); RawClient c2 = new RawClient()) {
+            c1.send("CMD6valesz\n");
+            assertEquals("OK expected!", "INFOK", c1.receive());
+            // messages split into more parts
+            c1.send("infal");
+            c1.send("ive\n");
+            assertEquals("OK expected!", "INFOK", c1.receive());
+            c2.send("CMD4");
+            c2.send("pe");
+            c2.send("pa\n");
+            assertEquals("OK expected!", "INFOK", c2.receive());
+            assertEquals("Start game expected!", "INFSTART_GAMEvalesz,pepa;", c1.receive());
+            assertEquals("Start game expected!", "INFSTART_GAMEvalesz,pepa;", c2.receive());
+
+            c2.send("INF01030507090204060811\n");
+            assertEquals("Not my turn expected!", "ERR42", c2.receive());
+
+            // first player can't move the stone of the second player
+            c1.send("INF01030507090204060811\n");
+            assertEquals("Bad turn expected!", "ERR40", c1.receive());
+            assertEquals("Start turn with old state expected!", "CMD01030507090204060810", c2.receive());
+
+            // second player moves from 10 to 13
+            c2.send("INF01030507090204060813\n");
+            assertEquals("OK expected!", "INFOK", c2.receive());
+            assertEquals("Start turn expected!", "CMD01030507090204060813", c1.receive());
+
+            // two stones on one field
+            c1.send("INF01030507130204060813\n");
+            assertEquals("Bad turn expected!", "ERR40", c1.receive());
+            assertEquals("Start turn with old state expected!", "CMD01030507090204060813", c2.receive());
+
+            c2.send("INFEXIT\n");
+            assertEquals("End game expected!", "INFEND_GAMEvalesz;", c1.receive());
+        }
+    }
+}
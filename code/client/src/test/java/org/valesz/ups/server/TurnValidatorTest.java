@@ -0,0 +1,56 @@
+package org.valesz.ups.server;
+
+import org.junit.Test;
+import org.valesz.ups.model.game.Game;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Zdenek Vales
+ */
+public class TurnValidatorTest {
+
+    private static final int OUT = Game.OUT_OF_BOARD;
+    private static final int[] P1 = {1, 3, 5, 7, 9};
+    private static final int[] P2 = {2, 4, 6, 8, 10};
+
+    private final TurnValidator validator = new TurnValidator();
+
+    @Test
+    public void testSimpleTurns() {
+        assertTrue("No move should be valid!", validator.isValidTurn(P1, P2, P1, P2, 1));
+        assertTrue("Move 9 -> 11 should be valid!", validator.isValidTurn(P1, P2, new int[] {1, 3, 5, 7, 11}, P2, 1));
+        assertTrue("Order of stones doesn't matter!", validator.isValidTurn(P1, P2, new int[] {11, 3, 5, 7, 1}, P2, 1));
+        assertTrue("Move back 3 -> 2 with switch should be valid!", validator.isValidTurn(P1, P2, new int[] {1, 2, 5, 7, 9}, new int[] {3, 4, 6, 8, 10}, 1));
+        assertFalse("Opponent can't move!", validator.isValidTurn(P1, P2, P1, new int[] {2, 4, 6, 8, 11}, 1));
+        assertFalse("Two stones on one field!", validator.isValidTurn(P1, P2, new int[] {1, 3, 5, 7, 10}, P2, 1));
+        assertFalse("Field 0 doesn't exist!", validator.isValidTurn(P1, P2, new int[] {0, 3, 5, 7, 9}, P2, 1));
+    }
+
+    @Test
+    public void testSwitch() {
+        // stones on 4 and 5 protect each other
+        int[] p1 = {1, 3, 9, 11, 18};
+        int[] p2 = {4, 5, 20, 22, 24};
+        assertFalse("Protected stone can't be switched!", validator.isValidTurn(p1, p2, new int[] {1, 4, 9, 11, 18}, new int[] {3, 5, 20, 22, 24}, 1));
+        assertTrue("Single stone can be switched!", validator.isValidTurn(p1, p2, new int[] {1, 3, 9, 11, 20}, new int[] {4, 5, 18, 22, 24}, 1));
+    }
+
+    @Test
+    public void testThrowAgain() {
+        // 9 -> 13 after throwing 4, 13 -> 14 after throwing 1
+        assertTrue("Two moves after throwing 4 should be valid!", validator.isValidTurn(P1, P2, new int[] {1, 3, 5, 7, 14}, P2, 1));
+        // 10 -> 15 -> 19 -> 21
+        assertTrue("Three moves after throwing 5 and 4 should be valid!", validator.isValidTurn(P1, P2, P1, new int[] {2, 4, 6, 8, 21}, 2));
+    }
+
+    @Test
+    public void testLeaveBoard() {
+        int[] p1 = {30, 28, OUT, OUT, OUT};
+        assertTrue("Leaving the board should be valid!", validator.isValidTurn(p1, P2, new int[] {OUT, 28, OUT, OUT, OUT}, P2, 1));
+        assertTrue("Move after leaving the board should be valid!", validator.isValidTurn(p1, P2, new int[] {OUT, 30, OUT, OUT, OUT}, P2, 1));
+        // the stone on the field 2 is too far from the field 30
+        assertFalse("Stone can't leave the board from the field 2!", validator.isValidTurn(new int[] {2, OUT, OUT, OUT, OUT}, new int[] {3, 5, 7, 9, 11},
+                new int[] {OUT, OUT, OUT, OUT, OUT}, new int[] {3, 5, 7, 9, 11}, 1));
+    }
+}